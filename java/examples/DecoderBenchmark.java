@@ -0,0 +1,123 @@
+package examples;
+
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.stream.AllocationHandler;
+import org.openapitools.client.stream.AllocationProjection;
+import org.openapitools.client.stream.AllocationStreamReader;
+
+import okio.Buffer;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Decoder Benchmark
+ *
+ * Compares full model deserialization with projected streaming decodes of a synthetic
+ * AllocationSetRange response. Usage: DecoderBenchmark [windows] [podsPerWindow] [iterations]
+ */
+public class DecoderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int windows = args.length > 0 ? Integer.parseInt(args[0]) : 24;
+        int pods = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        byte[] body = JSON.serialize(generate(windows, pods)).getBytes("UTF-8");
+        System.out.println("============================================================");
+        System.out.println("Decoder Benchmark: " + windows + " windows x " + pods + " pods, "
+            + (body.length / 1024) + " KiB");
+        System.out.println("============================================================");
+
+        run("full model", body, iterations, null);
+        run("projection: all fields", body, iterations, AllocationProjection.ALL);
+        run("projection: cost, namespace", body, iterations,
+            AllocationProjection.of("cost", "properties.namespace"));
+        run("projection: cost", body, iterations, AllocationProjection.of("cost"));
+    }
+
+    private static void run(String label, byte[] body, int iterations, AllocationProjection projection) throws IOException {
+        // Warm up before measuring
+        for (int i = 0; i < Math.max(3, iterations / 4); i++) {
+            decode(body, projection);
+        }
+        long start = System.nanoTime();
+        double checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            checksum += decode(body, projection);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double mbPerSecond = (double) body.length * iterations / (1024 * 1024) / seconds;
+        System.out.println(String.format("%-30s %8.1f MiB/s %8.2f ms/op  (checksum %.1f)",
+            label, mbPerSecond, seconds * 1000 / iterations, checksum));
+    }
+
+    private static double decode(byte[] body, AllocationProjection projection) throws IOException {
+        Buffer source = new Buffer().write(body);
+        if (projection == null) {
+            AllocationSetRange range = JSON.deserialize(source, AllocationSetRange.class);
+            double total = 0;
+            for (Map<String, Allocation> window : range.getData()) {
+                for (Allocation allocation : window.values()) {
+                    total += allocation.getCost();
+                }
+            }
+            return total;
+        }
+        final double[] total = new double[1];
+        AllocationStreamReader.decoder(projection, new AllocationHandler() {
+            @Override
+            public void onAllocation(int window, String key, Allocation allocation) {
+                total[0] += allocation.getCost();
+            }
+        }).decode(source);
+        return total[0];
+    }
+
+    private static AllocationSetRange generate(int windows, int pods) {
+        Random random = new Random(42);
+        OffsetDateTime start = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        String[] namespaces = {"kube-system", "default", "team-a", "team-b"};
+        AllocationSetRange range = new AllocationSetRange();
+        for (int w = 0; w < windows; w++) {
+            Map<String, Allocation> window = new LinkedHashMap<String, Allocation>();
+            for (int p = 0; p < pods; p++) {
+                String namespace = namespaces[random.nextInt(namespaces.length)];
+                Map<String, String> labels = new HashMap<String, String>();
+                labels.put("app", "app-" + random.nextInt(8));
+                AllocationProperties properties = new AllocationProperties()
+                    .cluster("cluster-1")
+                    .node("node-" + random.nextInt(16))
+                    .namespace(namespace)
+                    .controller("controller-" + random.nextInt(64))
+                    .controllerKind("ReplicaSet")
+                    .pod("pod-" + p)
+                    .labels(labels)
+                    .providerID("provider-" + p);
+                Allocation allocation = new Allocation()
+                    .name(namespace + "/pod-" + p)
+                    .properties(properties)
+                    .start(start.plusHours(w))
+                    .end(start.plusHours(w + 1))
+                    .cpuCoreRequestAverage(random.nextFloat() * 4)
+                    .cpuCoreUsageAverage(random.nextFloat() * 2)
+                    .ramByteRequestAverage(random.nextFloat() * 1e9f)
+                    .ramByteUsageAverage(random.nextFloat() * 5e8f)
+                    .cost(random.nextFloat() * 10)
+                    .costRatio(random.nextFloat())
+                    .customCost(random.nextFloat());
+                window.put(allocation.getName(), allocation);
+            }
+            range.addDataItem(window);
+        }
+        return range;
+    }
+}
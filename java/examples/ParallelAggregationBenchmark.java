@@ -0,0 +1,111 @@
+package examples;
+
+import org.openapitools.client.aggregation.AllocationAggregator;
+import org.openapitools.client.aggregation.ParallelAggregator;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostAggregate;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parallel Aggregation Benchmark
+ *
+ * Aggregates a synthetic range by namespace, controller, node and label:team on 1 to N threads.
+ * Usage: ParallelAggregationBenchmark [windows] [podsPerWindow] [iterations]
+ */
+public class ParallelAggregationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int windows = args.length > 0 ? Integer.parseInt(args[0]) : 96;
+        int pods = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        AllocationSetRange range = generate(windows, pods);
+        List<List<CostAggregate>> views = new ArrayList<List<CostAggregate>>();
+        for (CostAggregate aggregate : Arrays.asList(CostAggregate.NAMESPACE, CostAggregate.CONTROLLER,
+                CostAggregate.NODE, CostAggregate.label("team"))) {
+            views.add(Arrays.asList(aggregate));
+        }
+
+        System.out.println("============================================================");
+        System.out.println("Parallel Aggregation Benchmark: " + windows + " windows x " + pods + " pods, "
+            + views.size() + " views");
+        System.out.println("============================================================");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            new AllocationAggregator(views).aggregate(range).getResult(views.get(0));
+        }
+        double sequential = (System.nanoTime() - start) / 1e6 / iterations;
+        System.out.println(String.format("%-22s %10.1f ms/op", "sequential", sequential));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+        for (int threads : threadCounts) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                ParallelAggregator aggregator = new ParallelAggregator(pool, ParallelAggregator.DEFAULT_CHUNK_SIZE);
+                // Warm up before measuring
+                aggregator.aggregate(range, views);
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    aggregator.aggregate(range, views);
+                }
+                double millis = (System.nanoTime() - start) / 1e6 / iterations;
+                System.out.println(String.format("%-22s %10.1f ms/op  speedup %.2fx",
+                    "parallel, " + threads + " threads", millis, sequential / millis));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static AllocationSetRange generate(int windows, int pods) {
+        Random random = new Random(42);
+        OffsetDateTime start = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        String[] namespaces = {"kube-system", "default", "team-a", "team-b", "team-c"};
+        AllocationSetRange range = new AllocationSetRange();
+        for (int w = 0; w < windows; w++) {
+            Map<String, Allocation> window = new LinkedHashMap<String, Allocation>();
+            for (int p = 0; p < pods; p++) {
+                String namespace = namespaces[random.nextInt(namespaces.length)];
+                Map<String, String> labels = new HashMap<String, String>();
+                labels.put("team", "team-" + random.nextInt(10));
+                AllocationProperties properties = new AllocationProperties()
+                    .node("node-" + random.nextInt(50))
+                    .namespace(namespace)
+                    .controller("controller-" + random.nextInt(200))
+                    .controllerKind("ReplicaSet")
+                    .pod("pod-" + p)
+                    .labels(labels);
+                Allocation allocation = new Allocation()
+                    .name(namespace + "/pod-" + p)
+                    .properties(properties)
+                    .start(start.plusHours(w))
+                    .end(start.plusHours(w + 1))
+                    .cpuCoreRequestAverage(random.nextFloat() * 4)
+                    .cpuCoreUsageAverage(random.nextFloat() * 2)
+                    .cost(random.nextFloat() * 10)
+                    .costRatio(random.nextFloat());
+                window.put(allocation.getName(), allocation);
+            }
+            range.addDataItem(window);
+        }
+        return range;
+    }
+}
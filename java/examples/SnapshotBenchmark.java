@@ -0,0 +1,139 @@
+package examples;
+
+import org.openapitools.client.JSON;
+import org.openapitools.client.aggregation.AllocationMetric;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostAggregate;
+import org.openapitools.client.snapshot.SnapshotReader;
+import org.openapitools.client.snapshot.SnapshotWriter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Snapshot Benchmark
+ *
+ * Compares the size of a synthetic range as JSON and as a snapshot file, and the time to answer
+ * "total cost" and "cost by namespace" from each. Usage: SnapshotBenchmark [windows] [pods] [iterations]
+ */
+public class SnapshotBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int windows = args.length > 0 ? Integer.parseInt(args[0]) : 48;
+        int pods = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        AllocationSetRange range = generate(windows, pods);
+        byte[] json = JSON.serialize(range).getBytes(StandardCharsets.UTF_8);
+        Path file = Files.createTempFile("snapshot-", ".bin");
+        try {
+            long start = System.nanoTime();
+            SnapshotWriter.write(range, Collections.<String, String>emptyMap(), file);
+            double writeMillis = (System.nanoTime() - start) / 1e6;
+            long size = Files.size(file);
+
+            System.out.println("============================================================");
+            System.out.println("Snapshot Benchmark: " + windows + " windows x " + pods + " pods");
+            System.out.println("============================================================");
+            System.out.println(String.format("JSON         %10d KiB", json.length / 1024));
+            System.out.println(String.format("snapshot     %10d KiB  (%.1fx smaller, written in %.1f ms)",
+                size / 1024, (double) json.length / size, writeMillis));
+
+            // Warm up before measuring
+            for (int i = 0; i < 3; i++) {
+                fromJson(json);
+                fromSnapshot(file);
+            }
+            start = System.nanoTime();
+            double checksum = 0;
+            for (int i = 0; i < iterations; i++) {
+                checksum += fromJson(json);
+            }
+            System.out.println(String.format("%-40s %8.2f ms/op  (checksum %.1f)",
+                "JSON: deserialize, sum, group", (System.nanoTime() - start) / 1e6 / iterations, checksum));
+            start = System.nanoTime();
+            checksum = 0;
+            for (int i = 0; i < iterations; i++) {
+                checksum += fromSnapshot(file);
+            }
+            System.out.println(String.format("%-40s %8.2f ms/op  (checksum %.1f)",
+                "snapshot: open, sum, group", (System.nanoTime() - start) / 1e6 / iterations, checksum));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static double fromJson(byte[] json) {
+        AllocationSetRange range = JSON.deserialize(new String(json, StandardCharsets.UTF_8), AllocationSetRange.class);
+        double total = 0;
+        Map<String, Double> byNamespace = new HashMap<String, Double>();
+        for (Map<String, Allocation> window : range.getData()) {
+            for (Allocation allocation : window.values()) {
+                total += allocation.getCost();
+                String namespace = allocation.getProperties().getNamespace();
+                Double sum = byNamespace.get(namespace);
+                byNamespace.put(namespace, (sum == null ? 0 : sum) + allocation.getCost());
+            }
+        }
+        return total + byNamespace.size();
+    }
+
+    private static double fromSnapshot(Path file) throws Exception {
+        SnapshotReader snapshot = SnapshotReader.open(file);
+        double total = snapshot.sum(AllocationMetric.COST);
+        return total + snapshot.sumBy(AllocationMetric.COST, CostAggregate.NAMESPACE).size();
+    }
+
+    private static AllocationSetRange generate(int windows, int pods) {
+        Random random = new Random(42);
+        OffsetDateTime start = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        String[] namespaces = {"kube-system", "default", "team-a", "team-b", "team-c"};
+        // pods keep their properties across windows, as in real clusters
+        AllocationProperties[] properties = new AllocationProperties[pods];
+        for (int p = 0; p < pods; p++) {
+            Map<String, String> labels = new HashMap<String, String>();
+            labels.put("app", "app-" + random.nextInt(40));
+            labels.put("team", "team-" + random.nextInt(10));
+            properties[p] = new AllocationProperties()
+                .cluster("cluster-1")
+                .node("node-" + random.nextInt(50))
+                .namespace(namespaces[random.nextInt(namespaces.length)])
+                .controller("controller-" + random.nextInt(200))
+                .controllerKind("ReplicaSet")
+                .pod("pod-" + p)
+                .labels(labels)
+                .providerID("provider-" + p);
+        }
+        AllocationSetRange range = new AllocationSetRange();
+        for (int w = 0; w < windows; w++) {
+            Map<String, Allocation> window = new LinkedHashMap<String, Allocation>();
+            for (int p = 0; p < pods; p++) {
+                Allocation allocation = new Allocation()
+                    .name(properties[p].getNamespace() + "/pod-" + p)
+                    .properties(properties[p])
+                    .start(start.plusHours(w))
+                    .end(start.plusHours(w + 1))
+                    .cpuCoreRequestAverage(0.25f * (1 + random.nextInt(16)))
+                    .cpuCoreUsageAverage(random.nextFloat() * 2)
+                    .ramByteRequestAverage(268435456f * (1 + random.nextInt(16)))
+                    .ramByteUsageAverage(random.nextFloat() * 5e8f)
+                    .cost(random.nextFloat() * 10)
+                    .costRatio(random.nextFloat())
+                    .customCost(0f);
+                window.put(allocation.getName(), allocation);
+            }
+            range.addDataItem(window);
+        }
+        return range;
+    }
+}
@@ -20,6 +20,7 @@ import okhttp3.logging.HttpLoggingInterceptor;
 import okhttp3.logging.HttpLoggingInterceptor.Level;
 import okio.Buffer;
 import okio.BufferedSink;
+import okio.BufferedSource;
 import okio.Okio;
 
 import javax.net.ssl.*;
@@ -55,12 +56,27 @@ import org.openapitools.client.auth.Authentication;
 import org.openapitools.client.auth.HttpBasicAuth;
 import org.openapitools.client.auth.HttpBearerAuth;
 import org.openapitools.client.auth.ApiKeyAuth;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.ratelimit.RateLimiter;
+import org.openapitools.client.schedule.CallScheduler;
+import org.openapitools.client.spill.MappedAllocationSetRange;
+import org.openapitools.client.spill.ResponseSpiller;
 
 /**
  * <p>ApiClient class.</p>
  */
 public class ApiClient {
 
+    /**
+     * Default number of bytes of an unsuccessful response body kept in {@link ApiException#getResponseBody()}.
+     */
+    public static final long DEFAULT_MAX_ERROR_BODY_BYTES = 64 * 1024;
+
+    /**
+     * Default time after the end of a window before {@link #setDiskCache(File, long)} treats its data as final.
+     */
+    public static final long DEFAULT_CACHE_SETTLE_SECONDS = 3600;
+
     protected String basePath = "http://localhost";
     protected List<ServerConfiguration> servers = new ArrayList<ServerConfiguration>(Arrays.asList(
     new ServerConfiguration(
@@ -75,6 +91,9 @@ public class ApiClient {
     protected Map<String, String> defaultHeaderMap = new HashMap<String, String>();
     protected Map<String, String> defaultCookieMap = new HashMap<String, String>();
     protected String tempFolderPath = null;
+    protected long maxErrorBodyBytes = DEFAULT_MAX_ERROR_BODY_BYTES;
+    protected long spillThreshold = -1;
+    protected volatile int requestDefaultsVersion = 0;
 
     protected Map<String, Authentication> authentications;
 
@@ -91,6 +110,15 @@ public class ApiClient {
     protected JSON json;
 
     protected HttpLoggingInterceptor loggingInterceptor;
+    protected DebugLoggingInterceptor debugLoggingInterceptor;
+    protected RateLimiter rateLimiter;
+    protected CallScheduler callScheduler;
+
+    /**
+     * The state read by every call of a client created by {@link Builder}, null for a mutable client.
+     * Being final, it is safely published with everything it references.
+     */
+    private final Settings settings;
 
     /**
      * Basic constructor for ApiClient
@@ -102,6 +130,7 @@ public class ApiClient {
         // Setup authentications (key: authentication name, value: authentication).
         // Prevent the authentications from being modified.
         authentications = Collections.unmodifiableMap(authentications);
+        settings = null;
     }
 
     /**
@@ -117,6 +146,91 @@ public class ApiClient {
         // Setup authentications (key: authentication name, value: authentication).
         // Prevent the authentications from being modified.
         authentications = Collections.unmodifiableMap(authentications);
+        settings = null;
+    }
+
+    /**
+     * Constructor of an immutable client, applying every setting once.
+     *
+     * @param builder The builder
+     */
+    protected ApiClient(Builder builder) {
+        init();
+        if (builder.httpClient == null) {
+            initHttpClient(builder.interceptors);
+        } else {
+            OkHttpClient.Builder clientBuilder = builder.httpClient.newBuilder();
+            clientBuilder.interceptors().addAll(builder.interceptors);
+            httpClient = clientBuilder.build();
+        }
+        if (builder.basePath != null) {
+            setBasePath(builder.basePath);
+        }
+        defaultHeaderMap.putAll(builder.defaultHeaders);
+        defaultCookieMap.putAll(builder.defaultCookies);
+        verifyingSsl = builder.verifyingSsl;
+        sslCaCert = builder.sslCaCert;
+        keyManagers = builder.keyManagers;
+        if (!verifyingSsl || sslCaCert != null || keyManagers != null) {
+            applySslSettings();
+        }
+        setDebugging(builder.debugging);
+        if (builder.debugLogging != null) {
+            setDebugLogging(builder.debugLogging);
+        }
+        rateLimiter = builder.rateLimiter;
+        callScheduler = builder.callScheduler;
+        tempFolderPath = builder.tempFolderPath;
+        maxErrorBodyBytes = builder.maxErrorBodyBytes;
+        spillThreshold = builder.spillThreshold;
+        if (builder.diskCacheDirectory != null) {
+            setDiskCache(builder.diskCacheDirectory, builder.diskCacheSize, builder.diskCacheSettleSeconds);
+        }
+        OkHttpClient.Builder timeouts = httpClient.newBuilder();
+        if (builder.connectTimeout >= 0) {
+            timeouts.connectTimeout(builder.connectTimeout, TimeUnit.MILLISECONDS);
+        }
+        if (builder.readTimeout >= 0) {
+            timeouts.readTimeout(builder.readTimeout, TimeUnit.MILLISECONDS);
+        }
+        if (builder.writeTimeout >= 0) {
+            timeouts.writeTimeout(builder.writeTimeout, TimeUnit.MILLISECONDS);
+        }
+        httpClient = timeouts.build();
+
+        defaultHeaderMap = Collections.unmodifiableMap(defaultHeaderMap);
+        defaultCookieMap = Collections.unmodifiableMap(defaultCookieMap);
+        servers = Collections.unmodifiableList(servers);
+        authentications = Collections.unmodifiableMap(authentications);
+        settings = new Settings(this);
+    }
+
+    /**
+     * Create a builder of an immutable client, safe to share between threads: its settings are
+     * fixed when built, and its setters throw {@link IllegalStateException}.
+     *
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Check whether this client was created by {@link Builder} and cannot be reconfigured.
+     *
+     * @return True if immutable
+     */
+    public boolean isImmutable() {
+        return settings != null;
+    }
+
+    /**
+     * Fail if this client is immutable; called by every setter.
+     */
+    protected void checkMutable() {
+        if (settings != null) {
+            throw new IllegalStateException("This ApiClient is immutable; configure it with ApiClient.builder()");
+        }
     }
 
     protected void initHttpClient() {
@@ -160,8 +274,10 @@ public class ApiClient {
      * @return An instance of ApiClient
      */
     public ApiClient setBasePath(String basePath) {
+        checkMutable();
         this.basePath = basePath;
         this.serverIndex = null;
+        requestDefaultsVersion++;
         return this;
     }
 
@@ -170,7 +286,9 @@ public class ApiClient {
     }
 
     public ApiClient setServers(List<ServerConfiguration> servers) {
+        checkMutable();
         this.servers = servers;
+        requestDefaultsVersion++;
         return this;
     }
 
@@ -179,7 +297,9 @@ public class ApiClient {
     }
 
     public ApiClient setServerIndex(Integer serverIndex) {
+        checkMutable();
         this.serverIndex = serverIndex;
+        requestDefaultsVersion++;
         return this;
     }
 
@@ -188,7 +308,9 @@ public class ApiClient {
     }
 
     public ApiClient setServerVariables(Map<String, String> serverVariables) {
+        checkMutable();
         this.serverVariables = serverVariables;
+        requestDefaultsVersion++;
         return this;
     }
 
@@ -198,7 +320,7 @@ public class ApiClient {
      * @return An instance of OkHttpClient
      */
     public OkHttpClient getHttpClient() {
-        return httpClient;
+        return settings != null ? settings.httpClient : httpClient;
     }
 
     /**
@@ -209,6 +331,7 @@ public class ApiClient {
      * @throws java.lang.NullPointerException when newHttpClient is null
      */
     public ApiClient setHttpClient(OkHttpClient newHttpClient) {
+        checkMutable();
         this.httpClient = Objects.requireNonNull(newHttpClient, "HttpClient must not be null!");
         return this;
     }
@@ -229,6 +352,7 @@ public class ApiClient {
      * @return Api client
      */
     public ApiClient setJSON(JSON json) {
+        checkMutable();
         this.json = json;
         return this;
     }
@@ -251,6 +375,7 @@ public class ApiClient {
      * @return ApiClient
      */
     public ApiClient setVerifyingSsl(boolean verifyingSsl) {
+        checkMutable();
         this.verifyingSsl = verifyingSsl;
         applySslSettings();
         return this;
@@ -273,6 +398,7 @@ public class ApiClient {
      * @return ApiClient
      */
     public ApiClient setSslCaCert(InputStream sslCaCert) {
+        checkMutable();
         this.sslCaCert = sslCaCert;
         applySslSettings();
         return this;
@@ -295,6 +421,7 @@ public class ApiClient {
      * @return ApiClient
      */
     public ApiClient setKeyManagers(KeyManager[] managers) {
+        checkMutable();
         this.keyManagers = managers;
         applySslSettings();
         return this;
@@ -316,6 +443,7 @@ public class ApiClient {
      * @return a {@link org.openapitools.client.ApiClient} object
      */
     public ApiClient setDateFormat(DateFormat dateFormat) {
+        checkMutable();
         JSON.setDateFormat(dateFormat);
         return this;
     }
@@ -327,6 +455,7 @@ public class ApiClient {
      * @return a {@link org.openapitools.client.ApiClient} object
      */
     public ApiClient setSqlDateFormat(DateFormat dateFormat) {
+        checkMutable();
         JSON.setSqlDateFormat(dateFormat);
         return this;
     }
@@ -338,6 +467,7 @@ public class ApiClient {
      * @return a {@link org.openapitools.client.ApiClient} object
      */
     public ApiClient setOffsetDateTimeFormat(DateTimeFormatter dateFormat) {
+        checkMutable();
         JSON.setOffsetDateTimeFormat(dateFormat);
         return this;
     }
@@ -349,6 +479,7 @@ public class ApiClient {
      * @return a {@link org.openapitools.client.ApiClient} object
      */
     public ApiClient setLocalDateFormat(DateTimeFormatter dateFormat) {
+        checkMutable();
         JSON.setLocalDateFormat(dateFormat);
         return this;
     }
@@ -360,6 +491,7 @@ public class ApiClient {
      * @return a {@link org.openapitools.client.ApiClient} object
      */
     public ApiClient setLenientOnJson(boolean lenientOnJson) {
+        checkMutable();
         JSON.setLenientOnJson(lenientOnJson);
         return this;
     }
@@ -390,6 +522,7 @@ public class ApiClient {
      * @param username Username
      */
     public void setUsername(String username) {
+        checkMutable();
         for (Authentication auth : authentications.values()) {
             if (auth instanceof HttpBasicAuth) {
                 ((HttpBasicAuth) auth).setUsername(username);
@@ -405,6 +538,7 @@ public class ApiClient {
      * @param password Password
      */
     public void setPassword(String password) {
+        checkMutable();
         for (Authentication auth : authentications.values()) {
             if (auth instanceof HttpBasicAuth) {
                 ((HttpBasicAuth) auth).setPassword(password);
@@ -420,6 +554,7 @@ public class ApiClient {
      * @param apiKey API key
      */
     public void setApiKey(String apiKey) {
+        checkMutable();
         for (Authentication auth : authentications.values()) {
             if (auth instanceof ApiKeyAuth) {
                 ((ApiKeyAuth) auth).setApiKey(apiKey);
@@ -435,6 +570,7 @@ public class ApiClient {
      * @param apiKeyPrefix API key prefix
      */
     public void setApiKeyPrefix(String apiKeyPrefix) {
+        checkMutable();
         for (Authentication auth : authentications.values()) {
             if (auth instanceof ApiKeyAuth) {
                 ((ApiKeyAuth) auth).setApiKeyPrefix(apiKeyPrefix);
@@ -450,6 +586,7 @@ public class ApiClient {
      * @param accessToken Access token
      */
     public void setAccessToken(String accessToken) {
+        checkMutable();
         throw new RuntimeException("No OAuth2 authentication configured!");
     }
 
@@ -462,6 +599,7 @@ public class ApiClient {
      * @param service Service to access to
      */
     public void setAWS4Configuration(String accessKey, String secretKey, String region, String service) {
+        checkMutable();
         throw new RuntimeException("No AWS4 authentication configured!");
     }
 
@@ -475,6 +613,7 @@ public class ApiClient {
      * @param service Service to access to
      */
     public void setAWS4Configuration(String accessKey, String secretKey, String sessionToken, String region, String service) {
+        checkMutable();
         throw new RuntimeException("No AWS4 authentication configured!");
     }
 
@@ -497,7 +636,9 @@ public class ApiClient {
      * @return ApiClient
      */
     public ApiClient addDefaultHeader(String key, String value) {
+        checkMutable();
         defaultHeaderMap.put(key, value);
+        requestDefaultsVersion++;
         return this;
     }
 
@@ -509,10 +650,23 @@ public class ApiClient {
      * @return ApiClient
      */
     public ApiClient addDefaultCookie(String key, String value) {
+        checkMutable();
         defaultCookieMap.put(key, value);
+        requestDefaultsVersion++;
         return this;
     }
 
+    /**
+     * Get the version of the settings applied to every request: the base path and servers,
+     * default headers and default cookies. The version changes whenever one of them is set,
+     * so requests rendered ahead of time can tell when they are stale.
+     *
+     * @return The version
+     */
+    public int getRequestDefaultsVersion() {
+        return requestDefaultsVersion;
+    }
+
     /**
      * Check that whether debugging is enabled for this API client.
      *
@@ -529,6 +683,7 @@ public class ApiClient {
      * @return ApiClient
      */
     public ApiClient setDebugging(boolean debugging) {
+        checkMutable();
         if (debugging != this.debugging) {
             if (debugging) {
                 loggingInterceptor = new HttpLoggingInterceptor();
@@ -545,6 +700,82 @@ public class ApiClient {
         return this;
     }
 
+    /**
+     * Get the sampled, size-capped debug logger.
+     *
+     * @return The interceptor, null if not installed
+     */
+    public DebugLoggingInterceptor getDebugLogging() {
+        return debugLoggingInterceptor;
+    }
+
+    /**
+     * Install a sampled, size-capped debug logger, replacing the previous one, which is closed. Unlike
+     * {@link #setDebugging(boolean)} it never buffers whole bodies and logs off the request thread,
+     * so it can stay enabled in production.
+     *
+     * @param interceptor The interceptor, null to remove it
+     * @return ApiClient
+     */
+    public ApiClient setDebugLogging(DebugLoggingInterceptor interceptor) {
+        checkMutable();
+        final OkHttpClient.Builder builder = httpClient.newBuilder();
+        builder.interceptors().remove(debugLoggingInterceptor);
+        if (interceptor != null) {
+            builder.addInterceptor(interceptor);
+        }
+        httpClient = builder.build();
+        if (debugLoggingInterceptor != null && debugLoggingInterceptor != interceptor) {
+            debugLoggingInterceptor.close();
+        }
+        debugLoggingInterceptor = interceptor;
+        return this;
+    }
+
+    /**
+     * Get the client-side rate limiter.
+     *
+     * @return The rate limiter, null if requests are not limited
+     */
+    public RateLimiter getRateLimiter() {
+        return settings != null ? settings.rateLimiter : rateLimiter;
+    }
+
+    /**
+     * Pace requests with a client-side rate limiter, applied by the {@code execute} and
+     * {@code executeAsync} methods before a call is sent.
+     *
+     * @param rateLimiter The rate limiter, null to disable limiting
+     * @return ApiClient
+     */
+    public ApiClient setRateLimiter(RateLimiter rateLimiter) {
+        checkMutable();
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * Get the scheduler of asynchronous calls.
+     *
+     * @return The scheduler, null if calls go to the dispatcher right away
+     */
+    public CallScheduler getCallScheduler() {
+        return settings != null ? settings.callScheduler : callScheduler;
+    }
+
+    /**
+     * Queue asynchronous calls by priority and call class before they reach the OkHttp dispatcher,
+     * applied by the {@code executeAsync} methods ahead of the rate limiter.
+     *
+     * @param callScheduler The scheduler, null to send calls right away
+     * @return ApiClient
+     */
+    public ApiClient setCallScheduler(CallScheduler callScheduler) {
+        checkMutable();
+        this.callScheduler = callScheduler;
+        return this;
+    }
+
     /**
      * The path of temporary folder used to store downloaded files from endpoints
      * with file response. The default value is <code>null</code>, i.e. using
@@ -554,7 +785,7 @@ public class ApiClient {
      * @return Temporary folder path
      */
     public String getTempFolderPath() {
-        return tempFolderPath;
+        return settings != null ? settings.tempFolderPath : tempFolderPath;
     }
 
     /**
@@ -564,10 +795,110 @@ public class ApiClient {
      * @return ApiClient
      */
     public ApiClient setTempFolderPath(String tempFolderPath) {
+        checkMutable();
         this.tempFolderPath = tempFolderPath;
         return this;
     }
 
+    /**
+     * Get the maximum number of bytes of an error response body that is captured into
+     * {@link ApiException#getResponseBody()}.
+     *
+     * @return Size cap in bytes, a negative value means unlimited
+     */
+    public long getMaxErrorBodyBytes() {
+        return settings != null ? settings.maxErrorBodyBytes : maxErrorBodyBytes;
+    }
+
+    /**
+     * Set the maximum number of bytes of an error response body that is captured into
+     * {@link ApiException#getResponseBody()}. Longer bodies are truncated to this prefix,
+     * so a misbehaving server cannot force a large copy on the error path.
+     * A negative value disables the cap.
+     *
+     * @param maxErrorBodyBytes Size cap in bytes
+     * @return ApiClient
+     */
+    public ApiClient setMaxErrorBodyBytes(long maxErrorBodyBytes) {
+        checkMutable();
+        this.maxErrorBodyBytes = maxErrorBodyBytes;
+        return this;
+    }
+
+    /**
+     * Get the response size above which {@link AllocationSetRange} responses are spilled to disk.
+     *
+     * @return Threshold in bytes, a negative value means spilling is disabled
+     */
+    public long getSpillThreshold() {
+        return settings != null ? settings.spillThreshold : spillThreshold;
+    }
+
+    /**
+     * Spill {@link AllocationSetRange} responses larger than the given number of bytes into a
+     * temporary file (under {@link #getTempFolderPath()}), memory-map it and return a
+     * {@link MappedAllocationSetRange} that decodes allocations lazily on access.
+     * Smaller responses are decoded as usual. A negative value (the default) disables spilling.
+     *
+     * @param spillThreshold Threshold in bytes
+     * @return ApiClient
+     */
+    public ApiClient setSpillThreshold(long spillThreshold) {
+        checkMutable();
+        this.spillThreshold = spillThreshold;
+        return this;
+    }
+
+    /**
+     * Get the HTTP disk cache.
+     *
+     * @return The cache, null if none is configured
+     */
+    public Cache getDiskCache() {
+        return getHttpClient().cache();
+    }
+
+    /**
+     * Cache responses on disk, treating windows that ended at least an hour ago as final.
+     *
+     * @param directory The cache directory, null to disable the cache
+     * @param maxSize The cache size in bytes
+     * @return ApiClient
+     * @see #setDiskCache(File, long, long)
+     */
+    public ApiClient setDiskCache(File directory, long maxSize) {
+        return setDiskCache(directory, maxSize, DEFAULT_CACHE_SETTLE_SECONDS);
+    }
+
+    /**
+     * Cache responses on disk. A {@link WindowCacheInterceptor} sets the cache headers the API does not
+     * send: responses for absolute windows that ended at least {@code settleSeconds} ago are kept and
+     * served from disk, also across restarts, while rolling windows such as {@code 7d} are always fetched.
+     *
+     * @param directory The cache directory, null to disable the cache
+     * @param maxSize The cache size in bytes
+     * @param settleSeconds The time after the end of a window before its data is treated as final
+     * @return ApiClient
+     */
+    public ApiClient setDiskCache(File directory, long maxSize, long settleSeconds) {
+        checkMutable();
+        OkHttpClient.Builder builder = httpClient.newBuilder();
+        Iterator<Interceptor> interceptors = builder.networkInterceptors().iterator();
+        while (interceptors.hasNext()) {
+            if (interceptors.next() instanceof WindowCacheInterceptor) {
+                interceptors.remove();
+            }
+        }
+        if (directory == null) {
+            builder.cache(null);
+        } else {
+            builder.cache(new Cache(directory, maxSize));
+            builder.addNetworkInterceptor(new WindowCacheInterceptor(settleSeconds));
+        }
+        httpClient = builder.build();
+        return this;
+    }
+
     /**
      * Get connection timeout (in milliseconds).
      *
@@ -586,6 +917,7 @@ public class ApiClient {
      * @return Api client
      */
     public ApiClient setConnectTimeout(int connectionTimeout) {
+        checkMutable();
         httpClient = httpClient.newBuilder().connectTimeout(connectionTimeout, TimeUnit.MILLISECONDS).build();
         return this;
     }
@@ -608,6 +940,7 @@ public class ApiClient {
      * @return Api client
      */
     public ApiClient setReadTimeout(int readTimeout) {
+        checkMutable();
         httpClient = httpClient.newBuilder().readTimeout(readTimeout, TimeUnit.MILLISECONDS).build();
         return this;
     }
@@ -630,6 +963,7 @@ public class ApiClient {
      * @return Api client
      */
     public ApiClient setWriteTimeout(int writeTimeout) {
+        checkMutable();
         httpClient = httpClient.newBuilder().writeTimeout(writeTimeout, TimeUnit.MILLISECONDS).build();
         return this;
     }
@@ -922,7 +1256,11 @@ public class ApiClient {
         }
         try {
             if (isJsonMime(contentType)) {
-                return JSON.deserialize(respBody.byteStream(), returnType);
+                long threshold = getSpillThreshold();
+                if (threshold >= 0 && AllocationSetRange.class.equals(returnType)) {
+                    return (T) ResponseSpiller.read(respBody.source(), respBody.contentLength(), threshold, getTempFolderPath());
+                }
+                return JSON.deserialize(respBody.source(), returnType);
             } else if (returnType.equals(String.class)) {
                 String respBodyString = respBody.string();
                 if (respBodyString.isEmpty()) {
@@ -935,7 +1273,7 @@ public class ApiClient {
                     "Content type \"" + contentType + "\" is not supported for type: " + returnType,
                     response.code(),
                     response.headers().toMultimap(),
-                    response.body().string());
+                    readErrorBody(respBody));
             }
         } catch (IOException e) {
             throw new ApiException(e);
@@ -1031,10 +1369,11 @@ public class ApiClient {
                 prefix = "download-";
         }
 
-        if (tempFolderPath == null)
+        String folder = getTempFolderPath();
+        if (folder == null)
             return Files.createTempFile(prefix, suffix).toFile();
         else
-            return Files.createTempFile(Paths.get(tempFolderPath), prefix, suffix).toFile();
+            return Files.createTempFile(Paths.get(folder), prefix, suffix).toFile();
     }
 
     /**
@@ -1061,13 +1400,38 @@ public class ApiClient {
      * @throws org.openapitools.client.ApiException If fail to execute the call
      */
     public <T> ApiResponse<T> execute(Call call, Type returnType) throws ApiException {
+        admit(call);
         try {
             Response response = call.execute();
             T data = handleResponse(response, returnType);
             return new ApiResponse<T>(response.code(), response.headers().toMultimap(), data);
         } catch (IOException e) {
-            throw new ApiException(e);
+            throw failure(call, e);
+        }
+    }
+
+    /**
+     * Execute HTTP call and return the successful response with its body not read yet, for the caller
+     * to consume at its own pace and close. The call stays open until then.
+     *
+     * @param call Call
+     * @return The successful response
+     * @throws org.openapitools.client.ApiException If fail to execute the call or the response has an
+     *                      unsuccessful status code; the response is closed
+     */
+    public Response open(Call call) throws ApiException {
+        admit(call);
+        Response response;
+        try {
+            response = call.execute();
+        } catch (IOException e) {
+            throw failure(call, e);
+        }
+        if (!response.isSuccessful()) {
+            // closes the body and throws
+            handleResponse(response, null);
         }
+        return response;
     }
 
     /**
@@ -1092,10 +1456,10 @@ public class ApiClient {
      */
     @SuppressWarnings("unchecked")
     public <T> void executeAsync(Call call, final Type returnType, final ApiCallback<T> callback) {
-        call.enqueue(new Callback() {
+        enqueue(call, callback, new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
-                callback.onFailure(new ApiException(e), 0, null);
+                callback.onFailure(failure(call, e), 0, null);
             }
 
             @Override
@@ -1115,6 +1479,222 @@ public class ApiClient {
         });
     }
 
+    /**
+     * Admit a call on the calling thread: check its {@link Deadline}, take its rate limiter permits
+     * and set the remaining budget as its timeout.
+     *
+     * @param call The call
+     * @throws org.openapitools.client.ApiException If the deadline has passed, the permits are refused or the wait is interrupted
+     */
+    protected void admit(Call call) throws ApiException {
+        Deadline deadline = call.request().tag(Deadline.class);
+        if (deadline != null) {
+            deadline.check();
+        }
+        RateLimiter limiter = getRateLimiter();
+        if (limiter != null) {
+            limiter.acquire(call.request());
+        }
+        applyDeadline(call);
+    }
+
+    /**
+     * Set the remaining budget of the {@link Deadline} of a call, if any, as its timeout.
+     *
+     * @param call The call, not started yet
+     * @throws org.openapitools.client.DeadlineExceededException If the deadline has passed
+     */
+    protected void applyDeadline(Call call) throws DeadlineExceededException {
+        Deadline deadline = call.request().tag(Deadline.class);
+        if (deadline != null) {
+            long remaining = deadline.remainingNanos();
+            if (remaining <= 0) {
+                throw new DeadlineExceededException(deadline, null);
+            }
+            call.timeout().timeout(remaining, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Wrap the I/O failure of a call, as a {@link DeadlineExceededException} if it was cancelled by its deadline.
+     *
+     * @param call The call
+     * @param e The failure
+     * @return The exception
+     */
+    protected ApiException failure(Call call, IOException e) {
+        Deadline deadline = call.request().tag(Deadline.class);
+        if (deadline != null && deadline.isExpired()) {
+            return new DeadlineExceededException(deadline, e);
+        }
+        return new ApiException(e);
+    }
+
+    /**
+     * Enqueue a call once the call scheduler and then the rate limiter admit it, with the remaining
+     * budget of its {@link Deadline} as its timeout, reporting a refusal or a passed deadline to the callback.
+     *
+     * @param call The call
+     * @param callback The callback notified of a refusal
+     * @param responseCallback The callback receiving the response
+     */
+    protected void enqueue(final Call call, final ApiCallback<?> callback, final Callback responseCallback) {
+        final CallScheduler scheduler = getCallScheduler();
+        if (scheduler == null) {
+            send(call, callback, responseCallback, null);
+            return;
+        }
+        try {
+            scheduler.submit(call.request(), new CallScheduler.Task() {
+                @Override
+                public void send(Runnable release) {
+                    ApiClient.this.send(call, callback, responseCallback, release);
+                }
+
+                @Override
+                public void fail(ApiException e) {
+                    callback.onFailure(e, 0, null);
+                }
+            });
+        } catch (ApiException e) {
+            callback.onFailure(e, 0, null);
+        }
+    }
+
+    private void send(final Call call, final ApiCallback<?> callback, final Callback responseCallback, final Runnable release) {
+        final Callback completion = release == null ? responseCallback : new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                try {
+                    responseCallback.onFailure(call, e);
+                } finally {
+                    release.run();
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    responseCallback.onResponse(call, response);
+                } finally {
+                    release.run();
+                }
+            }
+        };
+        Runnable send = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    applyDeadline(call);
+                    call.enqueue(completion);
+                } catch (ApiException e) {
+                    refuse(callback, e, release);
+                } catch (RuntimeException e) {
+                    // e.g. a call executed already; may run on the rate limiter timer, out of reach of the scheduler
+                    refuse(callback, new ApiException(e), release);
+                }
+            }
+        };
+        RateLimiter limiter = getRateLimiter();
+        if (limiter == null) {
+            send.run();
+            return;
+        }
+        try {
+            limiter.submit(call.request(), send);
+        } catch (ApiException e) {
+            refuse(callback, e, release);
+        }
+    }
+
+    private static void refuse(ApiCallback<?> callback, ApiException e, Runnable release) {
+        try {
+            callback.onFailure(e, 0, null);
+        } finally {
+            if (release != null) {
+                release.run();
+            }
+        }
+    }
+
+    /**
+     * Execute HTTP call and decode the HTTP response body with the given decoder
+     * while it is being read, instead of deserializing it into a return type.
+     *
+     * @param <T> The decoded type
+     * @param call Call
+     * @param decoder The decoder applied to the body of a successful response
+     * @return ApiResponse object containing response status, headers and the decoded value,
+     *   which is null for an empty or 204 response
+     * @throws org.openapitools.client.ApiException If fail to execute the call or decode the body
+     */
+    public <T> ApiResponse<T> executeStreaming(Call call, ResponseDecoder<T> decoder) throws ApiException {
+        admit(call);
+        try {
+            Response response = call.execute();
+            T data = handleStreamingResponse(response, decoder);
+            return new ApiResponse<T>(response.code(), response.headers().toMultimap(), data);
+        } catch (IOException e) {
+            throw failure(call, e);
+        }
+    }
+
+    /**
+     * Execute HTTP call asynchronously and decode the response body with the given decoder.
+     * The decoder runs on the OkHttp dispatcher thread.
+     *
+     * @param <T> The decoded type
+     * @param call Call
+     * @param decoder The decoder applied to the body of a successful response
+     * @param callback ApiCallback
+     * @see #executeStreaming(Call, ResponseDecoder)
+     */
+    public <T> void executeStreamingAsync(Call call, final ResponseDecoder<T> decoder, final ApiCallback<T> callback) {
+        enqueue(call, callback, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                callback.onFailure(failure(call, e), 0, null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                T result;
+                try {
+                    result = handleStreamingResponse(response, decoder);
+                } catch (ApiException e) {
+                    callback.onFailure(e, response.code(), response.headers().toMultimap());
+                    return;
+                } catch (Exception e) {
+                    callback.onFailure(new ApiException(e), response.code(), response.headers().toMultimap());
+                    return;
+                }
+                callback.onSuccess(result, response.code(), response.headers().toMultimap());
+            }
+        });
+    }
+
+    /**
+     * Handle the given response, decoding the body with the given decoder when the response is successful.
+     *
+     * @param <T> The decoded type
+     * @param response Response
+     * @param decoder The decoder
+     * @return The decoded value, null for an empty or 204 response
+     * @throws org.openapitools.client.ApiException If the response has an unsuccessful status code or
+     *                      fail to decode the response body
+     */
+    public <T> T handleStreamingResponse(Response response, ResponseDecoder<T> decoder) throws ApiException {
+        if (!response.isSuccessful() || response.code() == 204 || response.body() == null) {
+            // closes the body, throws for unsuccessful responses
+            return handleResponse(response, null);
+        }
+        try (ResponseBody body = response.body()) {
+            return decoder.decode(body.source());
+        } catch (IOException e) {
+            throw new ApiException(response.message(), e, response.code(), response.headers().toMultimap());
+        }
+    }
+
     /**
      * Handle the given response, return the deserialized object when the response is successful.
      *
@@ -1145,7 +1725,7 @@ public class ApiClient {
             String respBody = null;
             if (response.body() != null) {
                 try {
-                    respBody = response.body().string();
+                    respBody = readErrorBody(response.body());
                 } catch (IOException e) {
                     throw new ApiException(response.message(), e, response.code(), response.headers().toMultimap());
                 }
@@ -1154,6 +1734,30 @@ public class ApiClient {
         }
     }
 
+    /**
+     * Read an error response body as a UTF-8 string, capped at {@link #getMaxErrorBodyBytes()} bytes.
+     * The body is closed afterwards.
+     *
+     * @param body The response body
+     * @return The (possibly truncated) body string
+     * @throws java.io.IOException If fail to read the response body
+     */
+    protected String readErrorBody(ResponseBody body) throws IOException {
+        try {
+            long maxBytes = getMaxErrorBodyBytes();
+            if (maxBytes < 0) {
+                return body.string();
+            }
+            BufferedSource source = body.source();
+            // request() buffers at most one segment past the cap, never the whole body
+            source.request(maxBytes);
+            long available = Math.min(maxBytes, source.getBuffer().size());
+            return source.readUtf8(available);
+        } finally {
+            body.close();
+        }
+    }
+
     /**
      * Build HTTP call with the given options.
      *
@@ -1174,7 +1778,23 @@ public class ApiClient {
     public Call buildCall(String baseUrl, String path, String method, List<Pair> queryParams, List<Pair> collectionQueryParams, Object body, Map<String, String> headerParams, Map<String, String> cookieParams, Map<String, Object> formParams, String[] authNames, ApiCallback callback) throws ApiException {
         Request request = buildRequest(baseUrl, path, method, queryParams, collectionQueryParams, body, headerParams, cookieParams, formParams, authNames, callback);
 
-        return httpClient.newCall(request);
+        return getHttpClient().newCall(request);
+    }
+
+    /**
+     * Build HTTP call from a request rendered ahead of time, e.g. by {@code CostQuery#toRequest}.
+     *
+     * @param request The request
+     * @param callback Callback for upload/download progress
+     * @return The HTTP call
+     */
+    public Call buildCall(Request request, ApiCallback callback) {
+        if (callback != null) {
+            // Associate callback with request so interceptor can
+            // access it when creating ProgressResponseBody
+            request = request.newBuilder().tag(callback).build();
+        }
+        return getHttpClient().newCall(request);
     }
 
     /**
@@ -1261,19 +1881,7 @@ public class ApiClient {
         if (baseUrl != null) {
             url.append(baseUrl).append(path);
         } else {
-            String baseURL;
-            if (serverIndex != null) {
-                if (serverIndex < 0 || serverIndex >= servers.size()) {
-                    throw new ArrayIndexOutOfBoundsException(String.format(
-                        Locale.ROOT,
-                        "Invalid index %d when selecting the host settings. Must be less than %d", serverIndex, servers.size()
-                    ));
-                }
-                baseURL = servers.get(serverIndex).URL(serverVariables);
-            } else {
-                baseURL = basePath;
-            }
-            url.append(baseURL).append(path);
+            url.append(settings != null ? settings.baseUrl : resolveBaseUrl()).append(path);
         }
 
         if (queryParams != null && !queryParams.isEmpty()) {
@@ -1313,6 +1921,24 @@ public class ApiClient {
         return url.toString();
     }
 
+    /**
+     * Resolve the base URL from the selected server, or the base path if none is selected.
+     *
+     * @return The base URL
+     */
+    protected String resolveBaseUrl() {
+        if (serverIndex != null) {
+            if (serverIndex < 0 || serverIndex >= servers.size()) {
+                throw new ArrayIndexOutOfBoundsException(String.format(
+                    Locale.ROOT,
+                    "Invalid index %d when selecting the host settings. Must be less than %d", serverIndex, servers.size()
+                ));
+            }
+            return servers.get(serverIndex).URL(serverVariables);
+        }
+        return basePath;
+    }
+
     /**
      * Set header parameters to the request builder, including default headers.
      *
@@ -1323,7 +1949,7 @@ public class ApiClient {
         for (Entry<String, String> param : headerParams.entrySet()) {
             reqBuilder.header(param.getKey(), parameterToString(param.getValue()));
         }
-        for (Entry<String, String> header : defaultHeaderMap.entrySet()) {
+        for (Entry<String, String> header : (settings != null ? settings.defaultHeaders : defaultHeaderMap).entrySet()) {
             if (!headerParams.containsKey(header.getKey())) {
                 reqBuilder.header(header.getKey(), parameterToString(header.getValue()));
             }
@@ -1340,7 +1966,7 @@ public class ApiClient {
         for (Entry<String, String> param : cookieParams.entrySet()) {
             reqBuilder.addHeader("Cookie", String.format(Locale.ROOT, "%s=%s", param.getKey(), param.getValue()));
         }
-        for (Entry<String, String> param : defaultCookieMap.entrySet()) {
+        for (Entry<String, String> param : (settings != null ? settings.defaultCookies : defaultCookieMap).entrySet()) {
             if (!cookieParams.containsKey(param.getKey())) {
                 reqBuilder.addHeader("Cookie", String.format(Locale.ROOT, "%s=%s", param.getKey(), param.getValue()));
             }
@@ -1584,4 +2210,239 @@ public class ApiClient {
         // empty http request body
         return "";
     }
+
+    /**
+     * The per-call state of an immutable client, computed once.
+     */
+    private static final class Settings {
+        final OkHttpClient httpClient;
+        final String baseUrl;
+        final Map<String, String> defaultHeaders;
+        final Map<String, String> defaultCookies;
+        final String tempFolderPath;
+        final long maxErrorBodyBytes;
+        final long spillThreshold;
+        final RateLimiter rateLimiter;
+        final CallScheduler callScheduler;
+
+        Settings(ApiClient client) {
+            this.httpClient = client.httpClient;
+            this.baseUrl = client.resolveBaseUrl();
+            this.defaultHeaders = client.defaultHeaderMap;
+            this.defaultCookies = client.defaultCookieMap;
+            this.tempFolderPath = client.tempFolderPath;
+            this.maxErrorBodyBytes = client.maxErrorBodyBytes;
+            this.spillThreshold = client.spillThreshold;
+            this.rateLimiter = client.rateLimiter;
+            this.callScheduler = client.callScheduler;
+        }
+    }
+
+    /**
+     * Builder of an immutable {@link ApiClient}. Settings not given keep the defaults of {@link #ApiClient()}.
+     */
+    public static final class Builder {
+        private OkHttpClient httpClient;
+        private final List<Interceptor> interceptors = new ArrayList<Interceptor>();
+        private String basePath;
+        private final Map<String, String> defaultHeaders = new LinkedHashMap<String, String>();
+        private final Map<String, String> defaultCookies = new LinkedHashMap<String, String>();
+        private boolean verifyingSsl = true;
+        private InputStream sslCaCert;
+        private KeyManager[] keyManagers;
+        private boolean debugging;
+        private DebugLoggingInterceptor debugLogging;
+        private RateLimiter rateLimiter;
+        private CallScheduler callScheduler;
+        private String tempFolderPath;
+        private long maxErrorBodyBytes = DEFAULT_MAX_ERROR_BODY_BYTES;
+        private long spillThreshold = -1;
+        private File diskCacheDirectory;
+        private long diskCacheSize;
+        private long diskCacheSettleSeconds = DEFAULT_CACHE_SETTLE_SECONDS;
+        private int connectTimeout = -1;
+        private int readTimeout = -1;
+        private int writeTimeout = -1;
+
+        private Builder() {
+        }
+
+        /**
+         * @param httpClient The client to derive the HTTP client from, instead of a new one
+         * @return This builder
+         */
+        public Builder httpClient(OkHttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        /**
+         * @param interceptor An application interceptor to add to the HTTP client
+         * @return This builder
+         */
+        public Builder interceptor(Interceptor interceptor) {
+            interceptors.add(Objects.requireNonNull(interceptor, "interceptor"));
+            return this;
+        }
+
+        /**
+         * @param basePath Base path of the URL (e.g http://localhost)
+         * @return This builder
+         */
+        public Builder basePath(String basePath) {
+            this.basePath = basePath;
+            return this;
+        }
+
+        public Builder defaultHeader(String key, String value) {
+            defaultHeaders.put(key, value);
+            return this;
+        }
+
+        public Builder defaultCookie(String key, String value) {
+            defaultCookies.put(key, value);
+            return this;
+        }
+
+        public Builder userAgent(String userAgent) {
+            return defaultHeader("User-Agent", userAgent);
+        }
+
+        /**
+         * @param verifyingSsl True, the default, to verify certificates and host names
+         * @return This builder
+         * @see ApiClient#setVerifyingSsl(boolean)
+         */
+        public Builder verifyingSsl(boolean verifyingSsl) {
+            this.verifyingSsl = verifyingSsl;
+            return this;
+        }
+
+        /**
+         * @param sslCaCert The CA certificates to trust, read when built
+         * @return This builder
+         */
+        public Builder sslCaCert(InputStream sslCaCert) {
+            this.sslCaCert = sslCaCert;
+            return this;
+        }
+
+        public Builder keyManagers(KeyManager[] keyManagers) {
+            this.keyManagers = keyManagers;
+            return this;
+        }
+
+        public Builder debugging(boolean debugging) {
+            this.debugging = debugging;
+            return this;
+        }
+
+        /**
+         * @param debugLogging A sampled, size-capped debug logger
+         * @return This builder
+         * @see ApiClient#setDebugLogging(DebugLoggingInterceptor)
+         */
+        public Builder debugLogging(DebugLoggingInterceptor debugLogging) {
+            this.debugLogging = debugLogging;
+            return this;
+        }
+
+        /**
+         * @param rateLimiter A client-side rate limiter
+         * @return This builder
+         * @see ApiClient#setRateLimiter(RateLimiter)
+         */
+        public Builder rateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * @param callScheduler A scheduler of asynchronous calls
+         * @return This builder
+         * @see ApiClient#setCallScheduler(CallScheduler)
+         */
+        public Builder callScheduler(CallScheduler callScheduler) {
+            this.callScheduler = callScheduler;
+            return this;
+        }
+
+        public Builder tempFolderPath(String tempFolderPath) {
+            this.tempFolderPath = tempFolderPath;
+            return this;
+        }
+
+        /**
+         * @param maxErrorBodyBytes See {@link ApiClient#setMaxErrorBodyBytes(long)}
+         * @return This builder
+         */
+        public Builder maxErrorBodyBytes(long maxErrorBodyBytes) {
+            this.maxErrorBodyBytes = maxErrorBodyBytes;
+            return this;
+        }
+
+        /**
+         * @param spillThreshold See {@link ApiClient#setSpillThreshold(long)}
+         * @return This builder
+         */
+        public Builder spillThreshold(long spillThreshold) {
+            this.spillThreshold = spillThreshold;
+            return this;
+        }
+
+        /**
+         * @param directory The cache directory
+         * @param maxSize The cache size in bytes
+         * @return This builder
+         * @see ApiClient#setDiskCache(File, long)
+         */
+        public Builder diskCache(File directory, long maxSize) {
+            return diskCache(directory, maxSize, DEFAULT_CACHE_SETTLE_SECONDS);
+        }
+
+        /**
+         * @param directory The cache directory
+         * @param maxSize The cache size in bytes
+         * @param settleSeconds The time after the end of a window before its data is treated as final
+         * @return This builder
+         * @see ApiClient#setDiskCache(File, long, long)
+         */
+        public Builder diskCache(File directory, long maxSize, long settleSeconds) {
+            this.diskCacheDirectory = directory;
+            this.diskCacheSize = maxSize;
+            this.diskCacheSettleSeconds = settleSeconds;
+            return this;
+        }
+
+        /**
+         * @param connectTimeout Connect timeout in milliseconds, 0 for none
+         * @return This builder
+         */
+        public Builder connectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param readTimeout Read timeout in milliseconds, 0 for none
+         * @return This builder
+         */
+        public Builder readTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * @param writeTimeout Write timeout in milliseconds, 0 for none
+         * @return This builder
+         */
+        public Builder writeTimeout(int writeTimeout) {
+            this.writeTimeout = writeTimeout;
+            return this;
+        }
+
+        public ApiClient build() {
+            return new ApiClient(this);
+        }
+    }
 }
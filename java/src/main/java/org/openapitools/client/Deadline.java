@@ -0,0 +1,86 @@
+package org.openapitools.client;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a piece of work must be done, passed down as a shrinking budget through
+ * every call, retry and sub-query made on its behalf.
+ * <p>
+ * Calls made through {@link org.openapitools.client.api.DefaultApi#withDeadline(Deadline)} carry the
+ * deadline: {@link ApiClient} fails them with {@link DeadlineExceededException} if it has passed,
+ * bounds rate limiter waits by it, and sets the remaining budget as the OkHttp call timeout, so a call
+ * running past the deadline is cancelled, including the reading of its response body.
+ * </p>
+ */
+public final class Deadline {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Create a deadline a given time from now.
+     *
+     * @param timeout The budget
+     * @return The deadline
+     */
+    public static Deadline after(Duration timeout) {
+        return after(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Create a deadline a given time from now.
+     *
+     * @param timeout The budget
+     * @param unit The unit of the budget
+     * @return The deadline
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Get the budget left.
+     *
+     * @return The nanoseconds left, zero or negative once passed
+     */
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * Get the earlier of this deadline and a given time from now, e.g. to bound a single attempt of
+     * several within the overall budget.
+     *
+     * @param timeout The budget of the sub-task
+     * @return The deadline of the sub-task
+     */
+    public Deadline within(Duration timeout) {
+        long candidate = System.nanoTime() + timeout.toNanos();
+        return candidate - deadlineNanos < 0 ? new Deadline(candidate) : this;
+    }
+
+    /**
+     * Fail if the deadline has passed.
+     *
+     * @throws DeadlineExceededException if the deadline has passed
+     */
+    public void check() throws DeadlineExceededException {
+        long remaining = remainingNanos();
+        if (remaining <= 0) {
+            throw new DeadlineExceededException(this, null);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + TimeUnit.NANOSECONDS.toMillis(remainingNanos()) + "ms}";
+    }
+}
@@ -0,0 +1,12 @@
+package org.openapitools.client;
+
+/**
+ * Thrown when a call is not started or is cancelled because its {@link Deadline} has passed.
+ */
+public class DeadlineExceededException extends ApiException {
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(Deadline deadline, Throwable cause) {
+        super("Deadline exceeded by " + Math.max(0, -deadline.remainingNanos() / 1000000) + "ms", cause, 0, null);
+    }
+}
@@ -0,0 +1,347 @@
+package org.openapitools.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.logging.HttpLoggingInterceptor;
+import okio.Buffer;
+
+/**
+ * An HTTP debug logger cheap enough to leave on in production, unlike {@link HttpLoggingInterceptor}
+ * at {@code BODY} level, which buffers and logs whole responses.
+ * <p>
+ * Only one call in {@code sampleRate} is logged, plus every call that fails, gets an unsuccessful
+ * response or takes longer than the slow threshold to receive the response headers. Bodies are logged
+ * at most up to {@code maxBodyBytes}: only that prefix of a response is buffered, the rest streams to
+ * the caller as usual. Every call is logged as one message, with credential headers redacted, and the
+ * messages are handed to the logger by a background thread through a bounded queue; when the queue is
+ * full messages are dropped and counted rather than slowing down requests. {@link #close()} stops the
+ * thread once the queued messages are written; {@code ApiClient.setDebugLogging} closes the logger
+ * it replaces.
+ * </p>
+ * <pre>
+ * apiClient.setDebugLogging(DebugLoggingInterceptor.builder()
+ *     .level(DebugLoggingInterceptor.Level.BODY)
+ *     .maxBodyBytes(2048)
+ *     .sampleRate(100)
+ *     .slowThresholdMillis(2000)
+ *     .build());
+ * </pre>
+ */
+public final class DebugLoggingInterceptor implements Interceptor, Closeable {
+
+    /**
+     * What a logged call shows.
+     */
+    public enum Level {
+        /** Request line, response status and duration. */
+        BASIC,
+        /** Also request and response headers. */
+        HEADERS,
+        /** Also a prefix of the request and response bodies. */
+        BODY
+    }
+
+    private final Level level;
+    private final long maxBodyBytes;
+    private final long sampleRate;
+    private final long slowThresholdNanos;
+    private final Set<String> redactedHeaders;
+    private final HttpLoggingInterceptor.Logger logger;
+    private final BlockingQueue<String> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong logged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private DebugLoggingInterceptor(Builder builder) {
+        this.level = builder.level;
+        this.maxBodyBytes = builder.maxBodyBytes;
+        this.sampleRate = builder.sampleRate;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(builder.slowThresholdMillis);
+        this.redactedHeaders = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        this.redactedHeaders.addAll(builder.redactedHeaders);
+        this.logger = builder.logger;
+        if (builder.queueCapacity > 0) {
+            this.queue = new ArrayBlockingQueue<String>(builder.queueCapacity);
+            this.writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "api-debug-log");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            this.queue = null;
+            this.writer = null;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The number of messages handed to the logger or queued for it
+     */
+    public long getLogged() {
+        return logged.get();
+    }
+
+    /**
+     * @return The number of messages dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stop the logger thread once it has written the queued messages. Calls still running through the
+     * interceptor afterwards log on their own thread.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (writer != null) {
+                writer.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean sampled = calls.getAndIncrement() % sampleRate == 0;
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            StringBuilder message;
+            try {
+                message = requestMessage(request);
+            } catch (IOException bodyFailure) {
+                // the request body could not be read again: log the call without it, keep the cause
+                e.addSuppressed(bodyFailure);
+                message = requestHead(request);
+            }
+            message.append("<-- HTTP FAILED: ").append(e).append(" (").append(millis(start)).append("ms)");
+            emit(message.toString());
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sampled || !response.isSuccessful() || elapsed >= slowThresholdNanos) {
+            StringBuilder message = requestMessage(request);
+            message.append("<-- ").append(response.code());
+            if (!response.message().isEmpty()) {
+                message.append(' ').append(response.message());
+            }
+            message.append(' ').append(response.request().url())
+                .append(" (").append(TimeUnit.NANOSECONDS.toMillis(elapsed)).append("ms")
+                .append(elapsed >= slowThresholdNanos ? ", slow" : "").append(")\n");
+            if (level != Level.BASIC) {
+                headers(message, response.headers());
+            }
+            ResponseBody body = response.body();
+            if (level == Level.BODY && body != null) {
+                // reads only the prefix; the caller still gets the whole body
+                ResponseBody prefix = response.peekBody(maxBodyBytes);
+                body(message, prefix.bytes(), body.contentLength());
+            }
+            emit(message.toString());
+        }
+        return response;
+    }
+
+    private StringBuilder requestMessage(Request request) throws IOException {
+        StringBuilder message = requestHead(request);
+        RequestBody body = request.body();
+        if (level == Level.BODY && body != null && !body.isDuplex() && !body.isOneShot()) {
+            Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            long size = buffer.size();
+            body(message, buffer.readByteArray(Math.min(size, maxBodyBytes)), size);
+        }
+        return message;
+    }
+
+    private StringBuilder requestHead(Request request) {
+        StringBuilder message = new StringBuilder(256);
+        message.append("--> ").append(request.method()).append(' ').append(request.url()).append('\n');
+        if (level != Level.BASIC) {
+            headers(message, request.headers());
+        }
+        return message;
+    }
+
+    private void headers(StringBuilder message, Headers headers) {
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            message.append(name).append(": ")
+                .append(redactedHeaders.contains(name) ? "██" : headers.value(i)).append('\n');
+        }
+    }
+
+    private static void body(StringBuilder message, byte[] prefix, long length) {
+        message.append(new String(prefix, StandardCharsets.UTF_8)).append('\n');
+        if (length < 0 || length > prefix.length) {
+            message.append("(body truncated to ").append(prefix.length).append(" of ")
+                .append(length < 0 ? "unknown" : Long.toString(length)).append(" bytes)\n");
+        }
+    }
+
+    private static long millis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private void emit(String message) {
+        if (queue == null || closed) {
+            logger.log(message);
+            logged.incrementAndGet();
+        } else if (queue.offer(message)) {
+            logged.incrementAndGet();
+            if (closed && queue.remove(message)) {
+                // closed after the check above: the writer may have stopped already
+                write(message);
+            }
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            String message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException e) {
+                // closed: write what is left and stop
+                while ((message = queue.poll()) != null) {
+                    write(message);
+                }
+                return;
+            }
+            write(message);
+        }
+    }
+
+    private void write(String message) {
+        try {
+            logger.log(message);
+        } catch (RuntimeException e) {
+            // a failing logger must not stop the writer
+        }
+    }
+
+    public static final class Builder {
+        private Level level = Level.HEADERS;
+        private long maxBodyBytes = 4096;
+        private long sampleRate = 1;
+        private long slowThresholdMillis = 5000;
+        private final Set<String> redactedHeaders = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        private HttpLoggingInterceptor.Logger logger = HttpLoggingInterceptor.Logger.DEFAULT;
+        private int queueCapacity = 1024;
+
+        private Builder() {
+            redactedHeaders.add("Authorization");
+            redactedHeaders.add("Proxy-Authorization");
+            redactedHeaders.add("Cookie");
+            redactedHeaders.add("Set-Cookie");
+        }
+
+        /**
+         * @param level What a logged call shows, {@link Level#HEADERS} by default
+         * @return This builder
+         */
+        public Builder level(Level level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * @param maxBodyBytes The body prefix logged at {@link Level#BODY}, 4096 bytes by default
+         * @return This builder
+         */
+        public Builder maxBodyBytes(long maxBodyBytes) {
+            if (maxBodyBytes < 0) {
+                throw new IllegalArgumentException("The body cap must not be negative: " + maxBodyBytes);
+            }
+            this.maxBodyBytes = maxBodyBytes;
+            return this;
+        }
+
+        /**
+         * @param sampleRate Log one call in this many, 1 (every call) by default; failed and slow calls are always logged
+         * @return This builder
+         */
+        public Builder sampleRate(long sampleRate) {
+            if (sampleRate <= 0) {
+                throw new IllegalArgumentException("The sample rate must be positive: " + sampleRate);
+            }
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        /**
+         * @param slowThresholdMillis The time to the response headers from which a call is always logged, 5000 by default
+         * @return This builder
+         */
+        public Builder slowThresholdMillis(long slowThresholdMillis) {
+            if (slowThresholdMillis < 0) {
+                throw new IllegalArgumentException("The slow threshold must not be negative: " + slowThresholdMillis);
+            }
+            this.slowThresholdMillis = slowThresholdMillis;
+            return this;
+        }
+
+        /**
+         * @param name A header whose value is not logged, in addition to the credential headers redacted by default
+         * @return This builder
+         */
+        public Builder redactHeader(String name) {
+            redactedHeaders.add(name);
+            return this;
+        }
+
+        /**
+         * @param logger The logger, the platform logger of OkHttp by default
+         * @return This builder
+         */
+        public Builder logger(HttpLoggingInterceptor.Logger logger) {
+            this.logger = logger;
+            return this;
+        }
+
+        /**
+         * @param queueCapacity The messages waiting for the logger thread at most, 1024 by default; 0 to log on the calling thread
+         * @return This builder
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            if (queueCapacity < 0) {
+                throw new IllegalArgumentException("The queue capacity must not be negative: " + queueCapacity);
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public DebugLoggingInterceptor build() {
+            return new DebugLoggingInterceptor(this);
+        }
+    }
+}
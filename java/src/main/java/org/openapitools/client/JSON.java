@@ -24,6 +24,7 @@ import com.google.gson.JsonElement;
 import io.gsonfire.GsonFireBuilder;
 import io.gsonfire.TypeSelector;
 
+import okio.BufferedSource;
 import okio.ByteString;
 
 import java.io.IOException;
@@ -186,6 +187,28 @@ public class JSON {
         }
     }
 
+    /**
+    * Deserialize the given JSON source to a Java object, decoding UTF-8 directly from
+    * the source's buffer without an intermediate {@link InputStreamReader}.
+    * The source is closed once the object has been read.
+    *
+    * @param <T>        Type
+    * @param source     The JSON source, e.g. {@code ResponseBody.source()}
+    * @param returnType The type to deserialize into
+    * @return The deserialized Java object
+    */
+    public static <T> T deserialize(BufferedSource source, Type returnType) throws IOException {
+        try (Utf8SourceReader reader = new Utf8SourceReader(source)) {
+            if (isLenientOnJson) {
+                JsonReader jsonReader = new JsonReader(reader);
+                jsonReader.setLenient(true);
+                return gson.fromJson(jsonReader, returnType);
+            } else {
+                return gson.fromJson(reader, returnType);
+            }
+        }
+    }
+
     /**
      * Gson TypeAdapter for Byte Array type
      */
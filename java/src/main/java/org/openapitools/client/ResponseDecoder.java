@@ -0,0 +1,22 @@
+package org.openapitools.client;
+
+import java.io.IOException;
+
+import okio.BufferedSource;
+
+/**
+ * Decodes a successful response body straight from its source, as an alternative to
+ * deserializing it into the declared return type.
+ *
+ * @param <T> The decoded type
+ */
+public interface ResponseDecoder<T> {
+    /**
+     * Decode the response body. The source is closed by the caller afterwards.
+     *
+     * @param source The response body source
+     * @return The decoded value
+     * @throws IOException If fail to read or decode the body
+     */
+    T decode(BufferedSource source) throws IOException;
+}
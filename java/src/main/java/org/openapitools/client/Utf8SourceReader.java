@@ -0,0 +1,168 @@
+package org.openapitools.client;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import okio.Buffer;
+import okio.BufferedSource;
+
+/**
+ * A {@link Reader} that decodes UTF-8 straight out of the segments of an okio {@link BufferedSource}.
+ * <p>
+ * Unlike wrapping {@code source.inputStream()} in an {@link java.io.InputStreamReader}, no intermediate
+ * byte buffer or {@link java.nio.charset.CharsetDecoder} is allocated: ASCII runs are copied from the
+ * segment arrays into the caller's char buffer in a single pass, and only multi-byte sequences take the
+ * slower per-byte path. Malformed input is replaced with U+FFFD, like the JDK decoder does.
+ * </p>
+ * <p>
+ * The reader only requests more bytes from the underlying source when it has nothing left to return,
+ * so it never blocks on the network while decoded characters are available.
+ * </p>
+ */
+public class Utf8SourceReader extends Reader {
+
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    private final BufferedSource source;
+    private final Buffer buffer;
+    private final Buffer.UnsafeCursor cursor = new Buffer.UnsafeCursor();
+
+    // the low surrogate of a supplementary code point that did not fit into the previous read
+    private char pendingLowSurrogate;
+    private boolean closed;
+
+    public Utf8SourceReader(BufferedSource source) {
+        this.source = source;
+        this.buffer = source.getBuffer();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        if (pendingLowSurrogate != 0) {
+            cbuf[off + count++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+
+        while (count < len) {
+            if (buffer.size() == 0) {
+                // only block for more input when nothing has been decoded yet
+                if (count > 0 || !source.request(1)) {
+                    break;
+                }
+            }
+
+            // fast path: copy the ASCII prefix of the head segment without intermediate copies
+            int consumed;
+            boolean multiByte;
+            buffer.readUnsafe(cursor);
+            try {
+                cursor.seek(0);
+                byte[] data = cursor.data;
+                int start = cursor.start;
+                int end = Math.min(cursor.end, start + (len - count));
+                int i = start;
+                int out = off + count;
+                while (i < end && data[i] >= 0) {
+                    cbuf[out++] = (char) data[i++];
+                }
+                consumed = i - start;
+                multiByte = i < cursor.end && data[i] < 0;
+            } finally {
+                cursor.close();
+            }
+            if (consumed > 0) {
+                buffer.skip(consumed);
+                count += consumed;
+            }
+
+            if (multiByte && count < len) {
+                count += readCodePoint(cbuf, off + count, len - count);
+            }
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    /**
+     * Decode a single multi-byte sequence starting at the head of the buffer.
+     *
+     * @return the number of chars written, 1 or 2
+     */
+    private int readCodePoint(char[] cbuf, int off, int room) throws IOException {
+        int b0 = buffer.readByte() & 0xff;
+        int extra;
+        int codePoint;
+        int min;
+        if (b0 >= 0xc2 && b0 <= 0xdf) {
+            extra = 1;
+            codePoint = b0 & 0x1f;
+            min = 0x80;
+        } else if (b0 >= 0xe0 && b0 <= 0xef) {
+            extra = 2;
+            codePoint = b0 & 0x0f;
+            min = 0x800;
+        } else if (b0 >= 0xf0 && b0 <= 0xf4) {
+            extra = 3;
+            codePoint = b0 & 0x07;
+            min = 0x10000;
+        } else {
+            cbuf[off] = REPLACEMENT_CHAR;
+            return 1;
+        }
+
+        // consume continuation bytes one at a time so that a truncated sequence only swallows itself
+        for (int i = 0; i < extra; i++) {
+            if (!source.request(1)) {
+                cbuf[off] = REPLACEMENT_CHAR;
+                return 1;
+            }
+            int b = buffer.getByte(0) & 0xff;
+            if ((b & 0xc0) != 0x80) {
+                cbuf[off] = REPLACEMENT_CHAR;
+                return 1;
+            }
+            buffer.skip(1);
+            codePoint = (codePoint << 6) | (b & 0x3f);
+        }
+
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            cbuf[off] = REPLACEMENT_CHAR;
+            return 1;
+        }
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            cbuf[off] = (char) codePoint;
+            return 1;
+        }
+
+        cbuf[off] = Character.highSurrogate(codePoint);
+        char low = Character.lowSurrogate(codePoint);
+        if (room > 1) {
+            cbuf[off + 1] = low;
+            return 2;
+        }
+        pendingLowSurrogate = low;
+        return 1;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return pendingLowSurrogate != 0 || buffer.size() > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.openapitools.client;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.CacheControl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.openapitools.client.query.CostWindow;
+
+/**
+ * A network interceptor that sets the cache headers of responses from the {@code window} query parameter,
+ * as the API sends none.
+ * <p>
+ * A window of two absolute bounds, RFC 3339 timestamps or unix seconds separated by a comma, that ended
+ * at least the settle delay ago is history that no longer changes: its response is marked cacheable for
+ * a year. Any other window, such as {@code 7d}, {@code today} or a range still open, is relative to the
+ * time of the request and its response is marked not to be stored. Requests without a window and
+ * non-GET requests are left as they are, and failed responses are never stored.
+ * </p>
+ */
+public class WindowCacheInterceptor implements Interceptor {
+
+    static final CacheControl IMMUTABLE = new CacheControl.Builder()
+        .maxAge(365, TimeUnit.DAYS)
+        .immutable()
+        .build();
+    static final CacheControl NO_STORE = new CacheControl.Builder().noStore().build();
+
+    private final long settleSeconds;
+
+    /**
+     * Create an interceptor.
+     *
+     * @param settleSeconds The time after the end of a window before its data is treated as final
+     */
+    public WindowCacheInterceptor(long settleSeconds) {
+        if (settleSeconds < 0) {
+            throw new IllegalArgumentException("The settle delay must not be negative: " + settleSeconds);
+        }
+        this.settleSeconds = settleSeconds;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        String window = request.url().queryParameter("window");
+        if (window == null || !"GET".equals(request.method())) {
+            return response;
+        }
+        boolean cacheable = response.isSuccessful() && isClosed(window, System.currentTimeMillis() / 1000 - settleSeconds);
+        return response.newBuilder()
+            .removeHeader("Pragma")
+            .removeHeader("Expires")
+            .header("Cache-Control", cacheable ? IMMUTABLE.toString() : NO_STORE.toString())
+            .build();
+    }
+
+    /**
+     * Check whether a window is an absolute range ending no later than a point in time.
+     *
+     * @param window The window parameter
+     * @param epochSecond The point in time
+     * @return True if the window has two absolute bounds and its end is not after the point in time
+     */
+    static boolean isClosed(String window, long epochSecond) {
+        long[] range = CostWindow.parseRange(window);
+        return range != null && range[1] <= epochSecond;
+    }
+}
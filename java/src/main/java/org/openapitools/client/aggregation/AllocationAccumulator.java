@@ -0,0 +1,248 @@
+package org.openapitools.client.aggregation;
+
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+
+/**
+ * Running totals of the allocations merged into one group.
+ * <p>
+ * Resource averages are combined by duration: every member contributes {@code average * duration}
+ * and the sum is divided by the duration of the merged time range, the way usage hours add up on
+ * the server. {@code costRatio} is a cost-weighted average. Properties are intersected, keeping only
+ * the values all members agree on.
+ * </p>
+ */
+final class AllocationAccumulator {
+
+    private static final int CPU_CORE_REQUEST_AVERAGE = 0;
+    private static final int CPU_CORE_USAGE_AVERAGE = 1;
+    private static final int RAM_BYTE_REQUEST_AVERAGE = 2;
+    private static final int RAM_BYTE_USAGE_AVERAGE = 3;
+    private static final int AVERAGES = 4;
+
+    private static final int HAS_COST = 1;
+    private static final int HAS_CUSTOM_COST = 1 << 1;
+    private static final int HAS_COST_RATIO = 1 << 2;
+    private static final int HAS_AVERAGE = 1 << 3; // one bit per average, shifted by its index
+
+    private OffsetDateTime start;
+    private OffsetDateTime end;
+    private boolean timed = true;
+
+    private final double[] averageSums = new double[AVERAGES];
+    private final double[] weightedAverageSums = new double[AVERAGES];
+    private int present;
+
+    private double cost;
+    private double customCost;
+    private double costRatioSum;
+    private double costWeightedRatioSum;
+    private double ratioCost;
+    private int ratioCount;
+
+    private AllocationProperties properties;
+    private int count;
+
+    /**
+     * Merge an allocation into the group.
+     *
+     * @param allocation The allocation
+     */
+    void add(Allocation allocation) {
+        count++;
+        OffsetDateTime s = allocation.getStart();
+        OffsetDateTime e = allocation.getEnd();
+        double seconds = 0;
+        if (s == null || e == null) {
+            timed = false;
+        } else {
+            seconds = e.toEpochSecond() - s.toEpochSecond();
+            if (start == null || s.isBefore(start)) {
+                start = s;
+            }
+            if (end == null || e.isAfter(end)) {
+                end = e;
+            }
+        }
+        addAverage(CPU_CORE_REQUEST_AVERAGE, allocation.getCpuCoreRequestAverage(), seconds);
+        addAverage(CPU_CORE_USAGE_AVERAGE, allocation.getCpuCoreUsageAverage(), seconds);
+        addAverage(RAM_BYTE_REQUEST_AVERAGE, allocation.getRamByteRequestAverage(), seconds);
+        addAverage(RAM_BYTE_USAGE_AVERAGE, allocation.getRamByteUsageAverage(), seconds);
+
+        Float c = allocation.getCost();
+        if (c != null) {
+            cost += c;
+            present |= HAS_COST;
+        }
+        Float cc = allocation.getCustomCost();
+        if (cc != null) {
+            customCost += cc;
+            present |= HAS_CUSTOM_COST;
+        }
+        Float ratio = allocation.getCostRatio();
+        if (ratio != null) {
+            costRatioSum += ratio;
+            ratioCount++;
+            if (c != null) {
+                costWeightedRatioSum += ratio * c;
+                ratioCost += c;
+            }
+            present |= HAS_COST_RATIO;
+        }
+        intersect(allocation.getProperties());
+    }
+
+    /**
+     * Merge the totals of another group into this one.
+     *
+     * @param other The other group
+     */
+    void merge(AllocationAccumulator other) {
+        count += other.count;
+        timed &= other.timed;
+        if (other.start != null && (start == null || other.start.isBefore(start))) {
+            start = other.start;
+        }
+        if (other.end != null && (end == null || other.end.isAfter(end))) {
+            end = other.end;
+        }
+        for (int i = 0; i < AVERAGES; i++) {
+            averageSums[i] += other.averageSums[i];
+            weightedAverageSums[i] += other.weightedAverageSums[i];
+        }
+        present |= other.present;
+        cost += other.cost;
+        customCost += other.customCost;
+        costRatioSum += other.costRatioSum;
+        costWeightedRatioSum += other.costWeightedRatioSum;
+        ratioCost += other.ratioCost;
+        ratioCount += other.ratioCount;
+        intersect(other.properties);
+    }
+
+    /**
+     * Get the number of merged allocations.
+     *
+     * @return The count
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Get the total cost of the group.
+     *
+     * @return The cost
+     */
+    double cost() {
+        return cost;
+    }
+
+    /**
+     * Build the merged allocation.
+     *
+     * @param name The group name
+     * @return A new allocation
+     */
+    Allocation toAllocation(String name) {
+        Allocation allocation = new Allocation().name(name).start(start).end(end);
+        double seconds = timed && start != null ? end.toEpochSecond() - start.toEpochSecond() : 0;
+        allocation.setCpuCoreRequestAverage(average(CPU_CORE_REQUEST_AVERAGE, seconds));
+        allocation.setCpuCoreUsageAverage(average(CPU_CORE_USAGE_AVERAGE, seconds));
+        allocation.setRamByteRequestAverage(average(RAM_BYTE_REQUEST_AVERAGE, seconds));
+        allocation.setRamByteUsageAverage(average(RAM_BYTE_USAGE_AVERAGE, seconds));
+        if ((present & HAS_COST) != 0) {
+            allocation.setCost((float) cost);
+        }
+        if ((present & HAS_CUSTOM_COST) != 0) {
+            allocation.setCustomCost((float) customCost);
+        }
+        if ((present & HAS_COST_RATIO) != 0) {
+            allocation.setCostRatio((float) (ratioCost > 0 ? costWeightedRatioSum / ratioCost : costRatioSum / ratioCount));
+        }
+        allocation.setProperties(properties == null ? null : copy(properties));
+        return allocation;
+    }
+
+    private void addAverage(int index, Float value, double seconds) {
+        if (value != null) {
+            averageSums[index] += value;
+            weightedAverageSums[index] += value * seconds;
+            present |= HAS_AVERAGE << index;
+        }
+    }
+
+    private Float average(int index, double seconds) {
+        if ((present & (HAS_AVERAGE << index)) == 0) {
+            return null;
+        }
+        return (float) (seconds > 0 ? weightedAverageSums[index] / seconds : averageSums[index]);
+    }
+
+    private void intersect(AllocationProperties other) {
+        if (other == null) {
+            return;
+        }
+        if (properties == null) {
+            properties = copy(other);
+            return;
+        }
+        if (!equal(properties.getCluster(), other.getCluster())) {
+            properties.setCluster(null);
+        }
+        if (!equal(properties.getNode(), other.getNode())) {
+            properties.setNode(null);
+        }
+        if (!equal(properties.getController(), other.getController())) {
+            properties.setController(null);
+        }
+        if (!equal(properties.getControllerKind(), other.getControllerKind())) {
+            properties.setControllerKind(null);
+        }
+        if (!equal(properties.getNamespace(), other.getNamespace())) {
+            properties.setNamespace(null);
+        }
+        if (!equal(properties.getPod(), other.getPod())) {
+            properties.setPod(null);
+        }
+        if (!equal(properties.getProviderID(), other.getProviderID())) {
+            properties.setProviderID(null);
+        }
+        Map<String, String> labels = properties.getLabels();
+        if (labels != null && !labels.isEmpty()) {
+            Map<String, String> otherLabels = other.getLabels();
+            if (otherLabels == null || otherLabels.isEmpty()) {
+                labels.clear();
+            } else {
+                Iterator<Map.Entry<String, String>> it = labels.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, String> e = it.next();
+                    if (!equal(e.getValue(), otherLabels.get(e.getKey()))) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private static AllocationProperties copy(AllocationProperties p) {
+        return new AllocationProperties()
+            .cluster(p.getCluster())
+            .node(p.getNode())
+            .controller(p.getController())
+            .controllerKind(p.getControllerKind())
+            .namespace(p.getNamespace())
+            .pod(p.getPod())
+            .labels(p.getLabels() == null ? null : new HashMap<String, String>(p.getLabels()))
+            .providerID(p.getProviderID());
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
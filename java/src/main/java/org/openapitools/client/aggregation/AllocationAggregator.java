@@ -0,0 +1,311 @@
+package org.openapitools.client.aggregation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostAggregate;
+import org.openapitools.client.stream.AllocationHandler;
+import org.openapitools.client.stream.AllocationProjection;
+
+/**
+ * Groups pod-level allocations locally, so that one unaggregated fetch serves several aggregate views.
+ * <p>
+ * Every view is a list of {@link CostAggregate} dimensions, grouped the way the server does it: the
+ * key of a group joins the dimension values with {@code /}, missing values become
+ * {@value #UNALLOCATED_KEY}, and idle entries keep their key. All views are computed in a single pass
+ * over the input, either from a decoded range or while streaming:
+ * </p>
+ * <pre>
+ * AllocationAggregator aggregator = AllocationAggregator.of(
+ *     CostAggregate.NAMESPACE, CostAggregate.CONTROLLER, CostAggregate.NODE, CostAggregate.label("team"));
+ * api.streamCost(query, aggregator.projection(), aggregator);
+ * AllocationSetRange byNamespace = aggregator.getResult(CostAggregate.NAMESPACE);
+ * </pre>
+ * <p>
+ * See {@link AllocationAccumulator} for how the fields of a group are combined. Instances are not thread-safe.
+ * </p>
+ */
+public class AllocationAggregator implements AllocationHandler {
+
+    /**
+     * Key of the idle cost entries.
+     */
+    public static final String IDLE_KEY = "__idle__";
+
+    /**
+     * Group key of allocations without a value for a dimension.
+     */
+    public static final String UNALLOCATED_KEY = "__unallocated__";
+
+    private final List<List<CostAggregate>> views;
+    // per view, per window; a null map stands for a null window
+    private final List<List<Map<String, AllocationAccumulator>>> groups;
+    private final List<Map<String, AllocationAccumulator>> current;
+
+    /**
+     * Create an aggregator computing the given views.
+     *
+     * @param views The views, each a non-empty list of dimensions
+     * @throws IllegalArgumentException if a view is empty
+     */
+    public AllocationAggregator(List<List<CostAggregate>> views) {
+        List<List<CostAggregate>> copy = new ArrayList<List<CostAggregate>>();
+        for (List<CostAggregate> view : views) {
+            if (view.isEmpty()) {
+                throw new IllegalArgumentException("An aggregate view needs at least one dimension");
+            }
+            copy.add(Collections.unmodifiableList(new ArrayList<CostAggregate>(view)));
+        }
+        this.views = Collections.unmodifiableList(copy);
+        this.groups = new ArrayList<List<Map<String, AllocationAccumulator>>>(copy.size());
+        this.current = new ArrayList<Map<String, AllocationAccumulator>>(copy.size());
+        for (int i = 0; i < copy.size(); i++) {
+            groups.add(new ArrayList<Map<String, AllocationAccumulator>>());
+            current.add(null);
+        }
+    }
+
+    /**
+     * Create an aggregator with one single-dimension view per given dimension.
+     *
+     * @param dimensions The dimensions
+     * @return The aggregator
+     */
+    public static AllocationAggregator of(CostAggregate... dimensions) {
+        List<List<CostAggregate>> views = new ArrayList<List<CostAggregate>>();
+        for (CostAggregate dimension : dimensions) {
+            views.add(Collections.singletonList(dimension));
+        }
+        return new AllocationAggregator(views);
+    }
+
+    /**
+     * Get the views.
+     *
+     * @return The views, in order
+     */
+    public List<List<CostAggregate>> getViews() {
+        return views;
+    }
+
+    /**
+     * Get the projection holding every field the views need, to be used when streaming the input.
+     *
+     * @return The projection
+     */
+    public AllocationProjection projection() {
+        List<String> fields = new ArrayList<String>(Arrays.asList(
+            Allocation.SERIALIZED_NAME_START,
+            Allocation.SERIALIZED_NAME_END,
+            Allocation.SERIALIZED_NAME_CPU_CORE_REQUEST_AVERAGE,
+            Allocation.SERIALIZED_NAME_CPU_CORE_USAGE_AVERAGE,
+            Allocation.SERIALIZED_NAME_RAM_BYTE_REQUEST_AVERAGE,
+            Allocation.SERIALIZED_NAME_RAM_BYTE_USAGE_AVERAGE,
+            Allocation.SERIALIZED_NAME_COST,
+            Allocation.SERIALIZED_NAME_COST_RATIO,
+            Allocation.SERIALIZED_NAME_CUSTOM_COST));
+        for (List<CostAggregate> view : views) {
+            for (CostAggregate dimension : view) {
+                addPropertyFields(fields, dimension);
+            }
+        }
+        return AllocationProjection.of(fields);
+    }
+
+    /**
+     * Aggregate every window of a decoded range.
+     *
+     * @param range The pod-level range
+     * @return This aggregator
+     */
+    public AllocationAggregator aggregate(AllocationSetRange range) {
+        if (range.getData() == null) {
+            return this;
+        }
+        int window = 0;
+        for (Map<String, Allocation> allocations : range.getData()) {
+            onWindow(window, allocations == null);
+            if (allocations != null) {
+                for (Map.Entry<String, Allocation> e : allocations.entrySet()) {
+                    onAllocation(window, e.getKey(), e.getValue());
+                }
+            }
+            window++;
+        }
+        return this;
+    }
+
+    @Override
+    public void onWindow(int window, boolean isNull) {
+        for (int i = 0; i < views.size(); i++) {
+            Map<String, AllocationAccumulator> map = isNull ? null : new LinkedHashMap<String, AllocationAccumulator>();
+            groups.get(i).add(map);
+            current.set(i, map);
+        }
+    }
+
+    @Override
+    public void onAllocation(int window, String key, Allocation allocation) {
+        if (allocation == null) {
+            return;
+        }
+        for (int i = 0; i < views.size(); i++) {
+            Map<String, AllocationAccumulator> map = current.get(i);
+            if (map == null) {
+                // entries before the first window header are grouped into an implicit window
+                onWindow(window, false);
+                map = current.get(i);
+            }
+            String group = groupKey(views.get(i), key, allocation);
+            AllocationAccumulator accumulator = map.get(group);
+            if (accumulator == null) {
+                accumulator = new AllocationAccumulator();
+                map.put(group, accumulator);
+            }
+            accumulator.add(allocation);
+        }
+    }
+
+    /**
+     * Get the result of a view.
+     *
+     * @param view The dimensions of the view
+     * @return A range with one map per input window, keyed by group
+     * @throws IllegalArgumentException if the view was not requested
+     */
+    public AllocationSetRange getResult(CostAggregate... view) {
+        return getResult(Arrays.asList(view));
+    }
+
+    /**
+     * Get the result of a view.
+     *
+     * @param view The dimensions of the view
+     * @return A range with one map per input window, keyed by group
+     * @throws IllegalArgumentException if the view was not requested
+     */
+    public AllocationSetRange getResult(List<CostAggregate> view) {
+        int index = views.indexOf(view);
+        if (index < 0) {
+            throw new IllegalArgumentException("The view " + view + " is not computed by this aggregator");
+        }
+        return toRange(groups.get(index));
+    }
+
+    /**
+     * Discard all groups, keeping the views.
+     */
+    public void reset() {
+        for (int i = 0; i < views.size(); i++) {
+            groups.get(i).clear();
+            current.set(i, null);
+        }
+    }
+
+    static AllocationSetRange toRange(List<Map<String, AllocationAccumulator>> windows) {
+        AllocationSetRange range = new AllocationSetRange();
+        for (Map<String, AllocationAccumulator> window : windows) {
+            if (window == null) {
+                range.addDataItem(null);
+                continue;
+            }
+            Map<String, Allocation> allocations = new LinkedHashMap<String, Allocation>();
+            for (Map.Entry<String, AllocationAccumulator> e : window.entrySet()) {
+                allocations.put(e.getKey(), e.getValue().toAllocation(e.getKey()));
+            }
+            range.addDataItem(allocations);
+        }
+        return range;
+    }
+
+    /**
+     * Compute the group key of an allocation in a view.
+     *
+     * @param view The dimensions
+     * @param key The entry key of the allocation
+     * @param allocation The allocation
+     * @return The group key
+     */
+    static String groupKey(List<CostAggregate> view, String key, Allocation allocation) {
+        if (key != null && key.endsWith(IDLE_KEY)) {
+            return key;
+        }
+        AllocationProperties properties = allocation.getProperties();
+        if (view.size() == 1) {
+            return valueOf(view.get(0), properties);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < view.size(); i++) {
+            if (i > 0) {
+                sb.append('/');
+            }
+            sb.append(valueOf(view.get(i), properties));
+        }
+        return sb.toString();
+    }
+
+    private static String valueOf(CostAggregate dimension, AllocationProperties properties) {
+        String value = null;
+        if (properties != null) {
+            switch (dimension.getDimension()) {
+                case NAMESPACE:
+                    value = properties.getNamespace();
+                    break;
+                case CONTROLLER:
+                    value = properties.getController();
+                    String kind = properties.getControllerKind();
+                    if (value != null && !value.isEmpty() && kind != null && !kind.isEmpty()) {
+                        value = kind + ":" + value;
+                    }
+                    break;
+                case CONTROLLER_KIND:
+                    value = properties.getControllerKind();
+                    break;
+                case NODE:
+                    value = properties.getNode();
+                    break;
+                case LABEL:
+                    value = properties.getLabels() == null ? null : properties.getLabels().get(dimension.getLabelKey());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return value == null || value.isEmpty() ? UNALLOCATED_KEY : value;
+    }
+
+    /**
+     * Add the projection fields holding the value of a dimension.
+     *
+     * @param fields The field names to add to
+     * @param dimension The dimension
+     */
+    static void addPropertyFields(List<String> fields, CostAggregate dimension) {
+        fields.add(Allocation.SERIALIZED_NAME_PROPERTIES + "." + propertyOf(dimension));
+        if (dimension.getDimension() == CostAggregate.Dimension.CONTROLLER) {
+            fields.add(Allocation.SERIALIZED_NAME_PROPERTIES + "." + AllocationProperties.SERIALIZED_NAME_CONTROLLER_KIND);
+        }
+    }
+
+    private static String propertyOf(CostAggregate dimension) {
+        switch (dimension.getDimension()) {
+            case NAMESPACE:
+                return AllocationProperties.SERIALIZED_NAME_NAMESPACE;
+            case CONTROLLER:
+                return AllocationProperties.SERIALIZED_NAME_CONTROLLER;
+            case CONTROLLER_KIND:
+                return AllocationProperties.SERIALIZED_NAME_CONTROLLER_KIND;
+            case NODE:
+                return AllocationProperties.SERIALIZED_NAME_NODE;
+            default:
+                return AllocationProperties.SERIALIZED_NAME_LABELS;
+        }
+    }
+}
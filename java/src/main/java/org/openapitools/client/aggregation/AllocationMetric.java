@@ -0,0 +1,56 @@
+package org.openapitools.client.aggregation;
+
+import org.openapitools.client.model.Allocation;
+
+/**
+ * A numeric field of {@link Allocation}.
+ */
+public enum AllocationMetric {
+    COST(Allocation.SERIALIZED_NAME_COST),
+    CUSTOM_COST(Allocation.SERIALIZED_NAME_CUSTOM_COST),
+    COST_RATIO(Allocation.SERIALIZED_NAME_COST_RATIO),
+    CPU_CORE_REQUEST_AVERAGE(Allocation.SERIALIZED_NAME_CPU_CORE_REQUEST_AVERAGE),
+    CPU_CORE_USAGE_AVERAGE(Allocation.SERIALIZED_NAME_CPU_CORE_USAGE_AVERAGE),
+    RAM_BYTE_REQUEST_AVERAGE(Allocation.SERIALIZED_NAME_RAM_BYTE_REQUEST_AVERAGE),
+    RAM_BYTE_USAGE_AVERAGE(Allocation.SERIALIZED_NAME_RAM_BYTE_USAGE_AVERAGE);
+
+    private final String field;
+
+    AllocationMetric(String field) {
+        this.field = field;
+    }
+
+    /**
+     * Get the JSON name of the field, as used by projections.
+     *
+     * @return The field name
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Read the field of an allocation.
+     *
+     * @param allocation The allocation
+     * @return The value, null if the field is not set
+     */
+    public Float get(Allocation allocation) {
+        switch (this) {
+            case COST:
+                return allocation.getCost();
+            case CUSTOM_COST:
+                return allocation.getCustomCost();
+            case COST_RATIO:
+                return allocation.getCostRatio();
+            case CPU_CORE_REQUEST_AVERAGE:
+                return allocation.getCpuCoreRequestAverage();
+            case CPU_CORE_USAGE_AVERAGE:
+                return allocation.getCpuCoreUsageAverage();
+            case RAM_BYTE_REQUEST_AVERAGE:
+                return allocation.getRamByteRequestAverage();
+            default:
+                return allocation.getRamByteUsageAverage();
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package org.openapitools.client.aggregation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostAggregate;
+import org.openapitools.client.stream.AllocationHandler;
+import org.openapitools.client.stream.AllocationProjection;
+
+/**
+ * Compares a metric between two result sets, e.g. this week's costs against last week's, by hash join.
+ * <p>
+ * Entries are matched on the allocation name or on a tuple of dimensions, and entries of one side with
+ * the same key are summed. One side, the build side, is loaded into an open-addressing table of keys
+ * and primitive sums; the other side is streamed against it. Probing adds no entry for a key the build
+ * side holds, but does add one for every key it lacks: the entries of such a key are summed across
+ * windows and rows, so it cannot be reported before the probe side ends. The table thus ends up with
+ * the distinct keys of both sides together, whichever side is built, at worst the keys of the build
+ * side plus those of the probe side, at about 40 bytes each beyond the key strings; only the entries
+ * themselves are streamed. For streamed inputs:
+ * </p>
+ * <pre>
+ * CostDiff diff = CostDiff.by(AllocationMetric.COST, CostAggregate.NAMESPACE);
+ * CostDiff.Table lastWeek = api.streamCost(lastWeekQuery, diff.projection(), diff.table(CostDiff.Side.BEFORE));
+ * CostDiff.Probe thisWeek = api.streamCost(thisWeekQuery, diff.projection(), lastWeek.probe());
+ * for (CostDiff.Change change : thisWeek.getResult().getChanged()) { ... }
+ * </pre>
+ */
+public class CostDiff {
+
+    /**
+     * The side of a comparison.
+     */
+    public enum Side {
+        BEFORE, AFTER
+    }
+
+    /**
+     * The kind of a change.
+     */
+    public enum Kind {
+        ADDED, REMOVED, CHANGED
+    }
+
+    private final AllocationMetric metric;
+    private final List<CostAggregate> dimensions;
+    private final double minAbsoluteDelta;
+
+    /**
+     * Create a diff.
+     *
+     * @param metric The metric to compare
+     * @param dimensions The dimensions forming the key, or null to match on the allocation name
+     * @param minAbsoluteDelta The smallest absolute delta reported as a change
+     * @throws IllegalArgumentException if the dimensions are empty or the delta is negative
+     */
+    public CostDiff(AllocationMetric metric, List<CostAggregate> dimensions, double minAbsoluteDelta) {
+        if (dimensions != null && dimensions.isEmpty()) {
+            throw new IllegalArgumentException("A diff key needs at least one dimension");
+        }
+        if (!(minAbsoluteDelta >= 0)) {
+            throw new IllegalArgumentException("The minimum delta must not be negative: " + minAbsoluteDelta);
+        }
+        this.metric = metric;
+        this.dimensions = dimensions == null ? null : Collections.unmodifiableList(new ArrayList<CostAggregate>(dimensions));
+        this.minAbsoluteDelta = minAbsoluteDelta;
+    }
+
+    /**
+     * Create a diff matching entries on the allocation name, reporting every non-zero change.
+     *
+     * @param metric The metric to compare
+     * @return The diff
+     */
+    public static CostDiff byName(AllocationMetric metric) {
+        return new CostDiff(metric, null, 0);
+    }
+
+    /**
+     * Create a diff matching entries on a tuple of dimensions, reporting every non-zero change.
+     *
+     * @param metric The metric to compare
+     * @param dimensions The dimensions forming the key
+     * @return The diff
+     */
+    public static CostDiff by(AllocationMetric metric, CostAggregate... dimensions) {
+        return new CostDiff(metric, Arrays.asList(dimensions), 0);
+    }
+
+    /**
+     * Get the projection holding the metric and the key fields, to be used when streaming the inputs.
+     *
+     * @return The projection
+     */
+    public AllocationProjection projection() {
+        List<String> fields = new ArrayList<String>();
+        fields.add(metric.getField());
+        if (dimensions == null) {
+            fields.add(Allocation.SERIALIZED_NAME_NAME);
+        } else {
+            for (CostAggregate dimension : dimensions) {
+                AllocationAggregator.addPropertyFields(fields, dimension);
+            }
+        }
+        return AllocationProjection.of(fields);
+    }
+
+    /**
+     * Compare two decoded result sets, building the hash table on the one with fewer entries.
+     *
+     * @param before The earlier result set
+     * @param after The later result set
+     * @return The changes
+     */
+    public Result diff(AllocationSetRange before, AllocationSetRange after) {
+        boolean buildBefore = count(before) <= count(after);
+        Table table = table(buildBefore ? Side.BEFORE : Side.AFTER);
+        feed(buildBefore ? before : after, table);
+        Probe probe = table.probe();
+        feed(buildBefore ? after : before, probe);
+        return probe.getResult();
+    }
+
+    /**
+     * Create an empty build table, to be filled by streaming one side into it.
+     *
+     * @param side The side streamed into the table
+     * @return The table
+     */
+    public Table table(Side side) {
+        return new Table(side);
+    }
+
+    private String keyOf(String key, Allocation allocation) {
+        if (dimensions == null) {
+            return allocation.getName() != null ? allocation.getName() : key;
+        }
+        return AllocationAggregator.groupKey(dimensions, key, allocation);
+    }
+
+    private double valueOf(Allocation allocation) {
+        Float value = metric.get(allocation);
+        return value == null || value.isNaN() ? 0 : value;
+    }
+
+    private static int count(AllocationSetRange range) {
+        int count = 0;
+        if (range.getData() != null) {
+            for (Map<String, Allocation> window : range.getData()) {
+                count += window == null ? 0 : window.size();
+            }
+        }
+        return count;
+    }
+
+    private static void feed(AllocationSetRange range, AllocationHandler handler) {
+        if (range.getData() == null) {
+            return;
+        }
+        try {
+            for (int w = 0; w < range.getData().size(); w++) {
+                Map<String, Allocation> window = range.getData().get(w);
+                handler.onWindow(w, window == null);
+                if (window != null) {
+                    for (Map.Entry<String, Allocation> e : window.entrySet()) {
+                        handler.onAllocation(w, e.getKey(), e.getValue());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // the handlers of this class never throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The build side: a hash table of keys and metric sums.
+     */
+    public final class Table implements AllocationHandler {
+        private final Side side;
+        private final KeyTable keys = new KeyTable();
+        private boolean probed;
+
+        private Table(Side side) {
+            this.side = side;
+        }
+
+        @Override
+        public void onAllocation(int window, String key, Allocation allocation) {
+            if (probed) {
+                throw new IllegalStateException("The table is already being probed");
+            }
+            if (allocation != null) {
+                keys.add(keyOf(key, allocation), valueOf(allocation), 0, KeyTable.BUILD);
+            }
+        }
+
+        /**
+         * Get the number of distinct keys of the build side.
+         *
+         * @return The number of keys
+         */
+        public int size() {
+            return keys.size();
+        }
+
+        /**
+         * Start probing with the other side. The table cannot be filled any further.
+         *
+         * @return The probe, to stream the other side into
+         */
+        public Probe probe() {
+            probed = true;
+            return new Probe(this);
+        }
+    }
+
+    /**
+     * The probe side, streamed against a {@link Table}.
+     */
+    public final class Probe implements AllocationHandler {
+        private final Table table;
+        private Result result;
+
+        private Probe(Table table) {
+            this.table = table;
+        }
+
+        @Override
+        public void onAllocation(int window, String key, Allocation allocation) {
+            if (result != null) {
+                throw new IllegalStateException("The result was already computed");
+            }
+            if (allocation != null) {
+                table.keys.add(keyOf(key, allocation), 0, valueOf(allocation), KeyTable.PROBE);
+            }
+        }
+
+        /**
+         * Get the changes once the probe side has been streamed in full.
+         *
+         * @return The changes
+         */
+        public Result getResult() {
+            if (result == null) {
+                result = table.keys.result(table.side == Side.BEFORE, minAbsoluteDelta);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A change of one key.
+     */
+    public static final class Change {
+        private final String key;
+        private final Kind kind;
+        private final double before;
+        private final double after;
+
+        Change(String key, Kind kind, double before, double after) {
+            this.key = key;
+            this.kind = kind;
+            this.before = before;
+            this.after = after;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return The value before, 0 for an added key
+         */
+        public double getBefore() {
+            return before;
+        }
+
+        /**
+         * @return The value after, 0 for a removed key
+         */
+        public double getAfter() {
+            return after;
+        }
+
+        public double getDelta() {
+            return after - before;
+        }
+
+        /**
+         * @return The delta relative to the value before, NaN if that is 0
+         */
+        public double getRelativeDelta() {
+            return before == 0 ? Double.NaN : (after - before) / Math.abs(before);
+        }
+
+        @Override
+        public String toString() {
+            return "Change{" + kind + " " + key + ": " + before + " -> " + after + "}";
+        }
+    }
+
+    /**
+     * The outcome of a diff. Every list is ordered by descending absolute delta.
+     */
+    public static final class Result {
+        private static final Comparator<Change> BY_DELTA = new Comparator<Change>() {
+            @Override
+            public int compare(Change a, Change b) {
+                int c = Double.compare(Math.abs(b.getDelta()), Math.abs(a.getDelta()));
+                return c != 0 ? c : a.key.compareTo(b.key);
+            }
+        };
+
+        private final List<Change> added;
+        private final List<Change> removed;
+        private final List<Change> changed;
+        private final int unchanged;
+        private final double totalBefore;
+        private final double totalAfter;
+
+        Result(List<Change> added, List<Change> removed, List<Change> changed, int unchanged, double totalBefore, double totalAfter) {
+            Collections.sort(added, BY_DELTA);
+            Collections.sort(removed, BY_DELTA);
+            Collections.sort(changed, BY_DELTA);
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.changed = Collections.unmodifiableList(changed);
+            this.unchanged = unchanged;
+            this.totalBefore = totalBefore;
+            this.totalAfter = totalAfter;
+        }
+
+        /**
+         * @return The keys only present after
+         */
+        public List<Change> getAdded() {
+            return added;
+        }
+
+        /**
+         * @return The keys only present before
+         */
+        public List<Change> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return The keys present on both sides whose delta reaches the minimum
+         */
+        public List<Change> getChanged() {
+            return changed;
+        }
+
+        /**
+         * @return The number of keys present on both sides with a smaller delta
+         */
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        public double getTotalBefore() {
+            return totalBefore;
+        }
+
+        public double getTotalAfter() {
+            return totalAfter;
+        }
+
+        /**
+         * Get all changes, added, removed and changed together.
+         *
+         * @return The changes
+         */
+        public List<Change> getChanges() {
+            List<Change> all = new ArrayList<Change>(added.size() + removed.size() + changed.size());
+            all.addAll(added);
+            all.addAll(removed);
+            all.addAll(changed);
+            Collections.sort(all, BY_DELTA);
+            return all;
+        }
+    }
+
+    /**
+     * Open-addressing hash table of keys with the sums of both sides in primitive arrays.
+     */
+    static final class KeyTable {
+        static final byte BUILD = 1;
+        static final byte PROBE = 2;
+
+        private String[] keys = new String[16];
+        private int[] hashes = new int[16];
+        private double[] build = new double[16];
+        private double[] probe = new double[16];
+        private byte[] sides = new byte[16];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void add(String key, double buildValue, double probeValue, byte side) {
+            int hash = spread(key.hashCode());
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != null) {
+                if (hashes[slot] == hash && keys[slot].equals(key)) {
+                    build[slot] += buildValue;
+                    probe[slot] += probeValue;
+                    sides[slot] |= side;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            hashes[slot] = hash;
+            build[slot] = buildValue;
+            probe[slot] = probeValue;
+            sides[slot] = side;
+            if (++size * 4 > keys.length * 3) {
+                resize();
+            }
+        }
+
+        Result result(boolean buildIsBefore, double minAbsoluteDelta) {
+            List<Change> added = new ArrayList<Change>();
+            List<Change> removed = new ArrayList<Change>();
+            List<Change> changed = new ArrayList<Change>();
+            int unchanged = 0;
+            double totalBefore = 0;
+            double totalAfter = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] == null) {
+                    continue;
+                }
+                double before = buildIsBefore ? build[slot] : probe[slot];
+                double after = buildIsBefore ? probe[slot] : build[slot];
+                totalBefore += before;
+                totalAfter += after;
+                boolean inBefore = (sides[slot] & (buildIsBefore ? BUILD : PROBE)) != 0;
+                boolean inAfter = (sides[slot] & (buildIsBefore ? PROBE : BUILD)) != 0;
+                if (!inBefore) {
+                    added.add(new Change(keys[slot], Kind.ADDED, 0, after));
+                } else if (!inAfter) {
+                    removed.add(new Change(keys[slot], Kind.REMOVED, before, 0));
+                } else if (Math.abs(after - before) > minAbsoluteDelta
+                        || (minAbsoluteDelta == 0 && after != before)) {
+                    changed.add(new Change(keys[slot], Kind.CHANGED, before, after));
+                } else {
+                    unchanged++;
+                }
+            }
+            return new Result(added, removed, changed, unchanged, totalBefore, totalAfter);
+        }
+
+        private void resize() {
+            String[] oldKeys = keys;
+            int[] oldHashes = hashes;
+            double[] oldBuild = build;
+            double[] oldProbe = probe;
+            byte[] oldSides = sides;
+            int capacity = oldKeys.length * 2;
+            keys = new String[capacity];
+            hashes = new int[capacity];
+            build = new double[capacity];
+            probe = new double[capacity];
+            sides = new byte[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int slot = oldHashes[i] & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    hashes[slot] = oldHashes[i];
+                    build[slot] = oldBuild[i];
+                    probe[slot] = oldProbe[i];
+                    sides[slot] = oldSides[i];
+                }
+            }
+        }
+
+        private static int spread(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.openapitools.client.aggregation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.query.CostAggregate;
+import org.openapitools.client.stream.AllocationHandler;
+import org.openapitools.client.stream.AllocationProjection;
+
+/**
+ * Builds per-group distributions of CPU and RAM efficiency while a response streams.
+ * <p>
+ * The efficiency of an entry is its average usage divided by its average request. Every group of
+ * every view keeps one {@link QuantileSketch} per resource, so memory depends on the number of groups
+ * only, not on the number of entries. Entries without a positive request and idle entries are
+ * skipped. Collectors filled from different clusters or windows can be combined with
+ * {@link #merge(EfficiencySketchCollector)}, and single sketches with {@link QuantileSketch#toBytes()}.
+ * </p>
+ * <pre>
+ * EfficiencySketchCollector efficiency = EfficiencySketchCollector.of(CostAggregate.NAMESPACE);
+ * api.streamAllocation(query, efficiency.projection(), efficiency);
+ * double p90 = efficiency.getCpuSketches(CostAggregate.NAMESPACE).get("default").getQuantile(0.9);
+ * </pre>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public class EfficiencySketchCollector implements AllocationHandler {
+
+    private final List<List<CostAggregate>> views;
+    private final double relativeAccuracy;
+    // per view, group key to CPU and RAM sketch
+    private final List<Map<String, QuantileSketch[]>> groups;
+
+    /**
+     * Create a collector.
+     *
+     * @param views The views, each a non-empty list of dimensions
+     * @param relativeAccuracy The relative accuracy of the sketches
+     * @throws IllegalArgumentException if a view is empty or the accuracy is out of range
+     */
+    public EfficiencySketchCollector(List<List<CostAggregate>> views, double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("The relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        List<List<CostAggregate>> copy = new ArrayList<List<CostAggregate>>(views.size());
+        for (List<CostAggregate> view : views) {
+            if (view.isEmpty()) {
+                throw new IllegalArgumentException("An aggregate view needs at least one dimension");
+            }
+            copy.add(Collections.unmodifiableList(new ArrayList<CostAggregate>(view)));
+        }
+        this.views = Collections.unmodifiableList(copy);
+        this.relativeAccuracy = relativeAccuracy;
+        this.groups = new ArrayList<Map<String, QuantileSketch[]>>(copy.size());
+        for (int v = 0; v < copy.size(); v++) {
+            groups.add(new LinkedHashMap<String, QuantileSketch[]>());
+        }
+    }
+
+    /**
+     * Create a collector with the default accuracy and one single-dimension view per dimension.
+     *
+     * @param dimensions The dimensions
+     * @return The collector
+     */
+    public static EfficiencySketchCollector of(CostAggregate... dimensions) {
+        List<List<CostAggregate>> views = new ArrayList<List<CostAggregate>>(dimensions.length);
+        for (CostAggregate dimension : dimensions) {
+            views.add(Collections.singletonList(dimension));
+        }
+        return new EfficiencySketchCollector(views, QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public List<List<CostAggregate>> getViews() {
+        return views;
+    }
+
+    /**
+     * Get the projection holding the usage and request averages and the grouping dimensions, to be used
+     * when streaming the input.
+     *
+     * @return The projection
+     */
+    public AllocationProjection projection() {
+        List<String> fields = new ArrayList<String>(Arrays.asList(
+            Allocation.SERIALIZED_NAME_CPU_CORE_REQUEST_AVERAGE,
+            Allocation.SERIALIZED_NAME_CPU_CORE_USAGE_AVERAGE,
+            Allocation.SERIALIZED_NAME_RAM_BYTE_REQUEST_AVERAGE,
+            Allocation.SERIALIZED_NAME_RAM_BYTE_USAGE_AVERAGE));
+        for (List<CostAggregate> view : views) {
+            for (CostAggregate dimension : view) {
+                AllocationAggregator.addPropertyFields(fields, dimension);
+            }
+        }
+        return AllocationProjection.of(fields);
+    }
+
+    @Override
+    public void onAllocation(int window, String key, Allocation allocation) {
+        if (allocation == null || (key != null && key.endsWith(AllocationAggregator.IDLE_KEY))) {
+            return;
+        }
+        double cpu = efficiency(allocation.getCpuCoreUsageAverage(), allocation.getCpuCoreRequestAverage());
+        double ram = efficiency(allocation.getRamByteUsageAverage(), allocation.getRamByteRequestAverage());
+        if (Double.isNaN(cpu) && Double.isNaN(ram)) {
+            return;
+        }
+        for (int v = 0; v < views.size(); v++) {
+            QuantileSketch[] sketches = sketches(groups.get(v), AllocationAggregator.groupKey(views.get(v), key, allocation));
+            if (!Double.isNaN(cpu)) {
+                sketches[0].add(cpu);
+            }
+            if (!Double.isNaN(ram)) {
+                sketches[1].add(ram);
+            }
+        }
+    }
+
+    /**
+     * Get the CPU efficiency sketches of a view.
+     *
+     * @param view The dimensions of the view
+     * @return Group key to sketch, groups in order of first appearance
+     * @throws IllegalArgumentException if the view was not requested
+     */
+    public Map<String, QuantileSketch> getCpuSketches(CostAggregate... view) {
+        return sketches(Arrays.asList(view), 0);
+    }
+
+    /**
+     * Get the RAM efficiency sketches of a view.
+     *
+     * @param view The dimensions of the view
+     * @return Group key to sketch, groups in order of first appearance
+     * @throws IllegalArgumentException if the view was not requested
+     */
+    public Map<String, QuantileSketch> getRamSketches(CostAggregate... view) {
+        return sketches(Arrays.asList(view), 1);
+    }
+
+    /**
+     * Add the sketches of another collector with the same views to this one.
+     *
+     * @param other The other collector
+     * @throws IllegalArgumentException if the views or the accuracy differ
+     */
+    public void merge(EfficiencySketchCollector other) {
+        if (!views.equals(other.views) || relativeAccuracy != other.relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge collectors with different views or accuracy");
+        }
+        for (int v = 0; v < views.size(); v++) {
+            Map<String, QuantileSketch[]> target = groups.get(v);
+            for (Map.Entry<String, QuantileSketch[]> e : other.groups.get(v).entrySet()) {
+                QuantileSketch[] sketches = sketches(target, e.getKey());
+                sketches[0].merge(e.getValue()[0]);
+                sketches[1].merge(e.getValue()[1]);
+            }
+        }
+    }
+
+    /**
+     * Discard all sketches.
+     */
+    public void reset() {
+        for (Map<String, QuantileSketch[]> map : groups) {
+            map.clear();
+        }
+    }
+
+    private QuantileSketch[] sketches(Map<String, QuantileSketch[]> map, String group) {
+        QuantileSketch[] sketches = map.get(group);
+        if (sketches == null) {
+            sketches = new QuantileSketch[] {
+                new QuantileSketch(relativeAccuracy, QuantileSketch.DEFAULT_MAX_BUCKETS),
+                new QuantileSketch(relativeAccuracy, QuantileSketch.DEFAULT_MAX_BUCKETS)
+            };
+            map.put(group, sketches);
+        }
+        return sketches;
+    }
+
+    private Map<String, QuantileSketch> sketches(List<CostAggregate> view, int resource) {
+        int index = views.indexOf(view);
+        if (index < 0) {
+            throw new IllegalArgumentException("The view " + view + " is not computed by this collector");
+        }
+        Map<String, QuantileSketch> result = new LinkedHashMap<String, QuantileSketch>();
+        for (Map.Entry<String, QuantileSketch[]> e : groups.get(index).entrySet()) {
+            result.put(e.getKey(), e.getValue()[resource]);
+        }
+        return result;
+    }
+
+    private static double efficiency(Float usage, Float request) {
+        if (usage == null || request == null || !(request > 0) || !(usage >= 0)
+                || Float.isInfinite(usage) || Float.isInfinite(request)) {
+            return Double.NaN;
+        }
+        return usage.doubleValue() / request.doubleValue();
+    }
+}
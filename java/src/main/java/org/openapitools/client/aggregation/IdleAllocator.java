@@ -0,0 +1,385 @@
+package org.openapitools.client.aggregation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.ShareSplit;
+import org.openapitools.client.stream.AllocationHandler;
+
+/**
+ * Shares idle costs over the other allocations locally, so one response fetched with
+ * {@code idle=true, shareIdle=false, idleByNode=true} serves every {@code shareSplit} variant, shared
+ * by cluster or by node.
+ * <p>
+ * Idle entries are the ones whose key ends with {@value AllocationAggregator#IDLE_KEY}. With
+ * {@link ShareSplit#WEIGHTED} every allocation receives idle cost in proportion to its own cost,
+ * falling back to an even split when the window has no cost; with {@link ShareSplit#EVEN} every
+ * allocation receives the same share. When sharing by node, the idle cost of a node only goes to
+ * the allocations on that node. Idle cost that has no allocation to go to is kept as an
+ * {@value AllocationAggregator#IDLE_KEY} entry.
+ * </p>
+ * <p>
+ * Sharing by node needs the idle entries per node of an {@code idleByNode=true} response, keyed
+ * {@code <cluster>/<node>/__idle__} or carrying their node property. Cluster-level idle entries,
+ * as returned without {@code idleByNode}, make sharing by node fail with an
+ * {@link IllegalArgumentException} rather than leave all idle cost unshared.
+ * </p>
+ * <p>
+ * The server splits CPU, RAM and GPU idle costs separately by the matching resource cost; as the
+ * response only carries the total cost, results agree with the server exactly when every allocation
+ * has the same mix of resource costs. Otherwise the share of an allocation differs by at most the
+ * idle cost times the largest difference between its share of the cost of one resource and its
+ * share of the total cost; {@link #deviation} measures the difference against a server response.
+ * Every window is processed in linear time.
+ * </p>
+ */
+public class IdleAllocator {
+
+    private final ShareSplit shareSplit;
+    private final boolean byNode;
+
+    /**
+     * Create an allocator.
+     *
+     * @param shareSplit The idle cost allocation policy
+     * @param byNode True to share the idle cost of every node over the allocations on that node only,
+     *               which needs a response fetched with {@code idleByNode=true}
+     */
+    public IdleAllocator(ShareSplit shareSplit, boolean byNode) {
+        this.shareSplit = shareSplit == null ? ShareSplit.WEIGHTED : shareSplit;
+        this.byNode = byNode;
+    }
+
+    public ShareSplit getShareSplit() {
+        return shareSplit;
+    }
+
+    public boolean isByNode() {
+        return byNode;
+    }
+
+    /**
+     * Share the idle costs of every window of a range.
+     *
+     * @param range A range fetched with idle costs that are not shared
+     * @return A new range holding copies of the allocations with their idle share added to the cost;
+     *   the input is not modified
+     */
+    public AllocationSetRange apply(AllocationSetRange range) {
+        AllocationSetRange result = new AllocationSetRange();
+        if (range.getData() == null) {
+            result.setData(null);
+            return result;
+        }
+        Window window = new Window();
+        for (Map<String, Allocation> allocations : range.getData()) {
+            if (allocations == null) {
+                result.addDataItem(null);
+                continue;
+            }
+            window.clear();
+            for (Map.Entry<String, Allocation> e : allocations.entrySet()) {
+                window.add(e.getKey(), e.getValue());
+            }
+            Map<String, Allocation> shared = new LinkedHashMap<String, Allocation>();
+            window.share();
+            for (int i = 0; i < window.size; i++) {
+                shared.put(window.keys.get(i), window.result(i));
+            }
+            if (window.leftoverIdle != null) {
+                shared.put(AllocationAggregator.IDLE_KEY, window.leftoverIdle);
+            }
+            result.addDataItem(shared);
+        }
+        return result;
+    }
+
+    /**
+     * Measure how far a locally shared range is from the server's result for the same query fetched
+     * with {@code shareIdle=true}, e.g. to check the local sharing of a dataset.
+     *
+     * @param local The range shared by an allocator
+     * @param server The range fetched with {@code shareIdle=true} and the same policy
+     * @return The largest difference in cost of an entry, as a fraction of the total cost of its window
+     *   on the server; an entry missing on one side counts with its whole cost
+     */
+    public static double deviation(AllocationSetRange local, AllocationSetRange server) {
+        List<Map<String, Allocation>> localWindows = local.getData();
+        List<Map<String, Allocation>> serverWindows = server.getData();
+        int windows = Math.max(localWindows == null ? 0 : localWindows.size(), serverWindows == null ? 0 : serverWindows.size());
+        double max = 0;
+        for (int w = 0; w < windows; w++) {
+            Map<String, Allocation> l = window(localWindows, w);
+            Map<String, Allocation> s = window(serverWindows, w);
+            double total = 0;
+            for (Allocation allocation : s.values()) {
+                total += cost(allocation);
+            }
+            double worst = 0;
+            for (Map.Entry<String, Allocation> e : s.entrySet()) {
+                worst = Math.max(worst, Math.abs(cost(l.get(e.getKey())) - cost(e.getValue())));
+            }
+            for (Map.Entry<String, Allocation> e : l.entrySet()) {
+                if (!s.containsKey(e.getKey())) {
+                    worst = Math.max(worst, Math.abs(cost(e.getValue())));
+                }
+            }
+            if (worst > 0) {
+                max = Math.max(max, total > 0 ? worst / total : Double.POSITIVE_INFINITY);
+            }
+        }
+        return max;
+    }
+
+    private static Map<String, Allocation> window(List<Map<String, Allocation>> windows, int w) {
+        Map<String, Allocation> window = windows == null || w >= windows.size() ? null : windows.get(w);
+        return window == null ? new HashMap<String, Allocation>() : window;
+    }
+
+    private static double cost(Allocation allocation) {
+        return allocation == null || allocation.getCost() == null ? 0 : allocation.getCost();
+    }
+
+    /**
+     * Create a handler that shares idle costs while streaming and forwards the result. Only the
+     * entries of the current window are held in memory.
+     *
+     * @param downstream The handler receiving the allocations with their idle share added
+     * @return The handler
+     */
+    public AllocationHandler handler(final AllocationHandler downstream) {
+        return new AllocationHandler() {
+            private final Window window = new Window();
+            private int index = -1;
+
+            @Override
+            public void onWindow(int w, boolean isNull) throws IOException {
+                flush();
+                index = w;
+                downstream.onWindow(w, isNull);
+            }
+
+            @Override
+            public void onAllocation(int w, String key, Allocation allocation) throws IOException {
+                index = w;
+                window.add(key, allocation);
+            }
+
+            @Override
+            public void onEnd() throws IOException {
+                flush();
+                downstream.onEnd();
+            }
+
+            private void flush() throws IOException {
+                if (index < 0) {
+                    return;
+                }
+                window.share();
+                for (int i = 0; i < window.size; i++) {
+                    downstream.onAllocation(index, window.keys.get(i), window.result(i));
+                }
+                if (window.leftoverIdle != null) {
+                    downstream.onAllocation(index, AllocationAggregator.IDLE_KEY, window.leftoverIdle);
+                }
+                window.clear();
+                index = -1;
+            }
+        };
+    }
+
+    /**
+     * The entries of one window, with the regular allocations' costs and nodes held in columns.
+     */
+    private final class Window {
+        final List<String> keys = new ArrayList<String>();
+        final List<Allocation> allocations = new ArrayList<Allocation>();
+        final List<String> idleNodes = new ArrayList<String>();
+        double[] costs = new double[64];
+        double[] shares = new double[64];
+        String[] nodes = new String[64];
+        double[] idleCosts = new double[8];
+        int size;
+        int idleSize;
+        Allocation leftoverIdle;
+        Allocation idleTemplate;
+
+        void add(String key, Allocation allocation) {
+            if (allocation == null) {
+                return;
+            }
+            if (key != null && key.endsWith(AllocationAggregator.IDLE_KEY)) {
+                if (idleSize == idleCosts.length) {
+                    idleCosts = Arrays.copyOf(idleCosts, idleSize * 2);
+                }
+                idleCosts[idleSize++] = allocation.getCost() == null ? 0 : allocation.getCost();
+                idleNodes.add(byNode ? nodeOf(key, allocation) : null);
+                if (idleTemplate == null) {
+                    idleTemplate = allocation;
+                }
+                return;
+            }
+            if (size == costs.length) {
+                costs = Arrays.copyOf(costs, size * 2);
+                shares = Arrays.copyOf(shares, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            keys.add(key);
+            allocations.add(allocation);
+            costs[size] = allocation.getCost() == null ? 0 : allocation.getCost();
+            shares[size] = 0;
+            nodes[size] = allocation.getProperties() == null ? null : allocation.getProperties().getNode();
+            size++;
+        }
+
+        void share() {
+            leftoverIdle = null;
+            if (idleSize == 0) {
+                return;
+            }
+            double leftover = 0;
+            if (!byNode) {
+                double idle = 0;
+                for (int i = 0; i < idleSize; i++) {
+                    idle += idleCosts[i];
+                }
+                leftover = distribute(idle);
+            } else {
+                Map<String, Double> idleByNode = new HashMap<String, Double>();
+                for (int i = 0; i < idleSize; i++) {
+                    String node = idleNodes.get(i);
+                    if (node == null) {
+                        leftover += idleCosts[i];
+                    } else {
+                        Double sum = idleByNode.get(node);
+                        idleByNode.put(node, sum == null ? idleCosts[i] : sum + idleCosts[i]);
+                    }
+                }
+                leftover += distributeByNode(idleByNode);
+            }
+            if (leftover > 0) {
+                leftoverIdle = new Allocation()
+                    .name(AllocationAggregator.IDLE_KEY)
+                    .start(idleTemplate.getStart())
+                    .end(idleTemplate.getEnd())
+                    .cost((float) leftover);
+            }
+        }
+
+        /**
+         * Share idle cost over all allocations.
+         *
+         * @return The idle cost that could not be shared
+         */
+        private double distribute(double idle) {
+            if (size == 0) {
+                return idle;
+            }
+            double total = 0;
+            for (int i = 0; i < size; i++) {
+                total += costs[i];
+            }
+            boolean weighted = shareSplit == ShareSplit.WEIGHTED && total > 0;
+            for (int i = 0; i < size; i++) {
+                shares[i] += weighted ? idle * costs[i] / total : idle / size;
+            }
+            return 0;
+        }
+
+        /**
+         * Share the idle cost of every node over the allocations on that node, in one pass.
+         *
+         * @return The idle cost of nodes without allocations
+         */
+        private double distributeByNode(Map<String, Double> idleByNode) {
+            Map<String, double[]> totals = new HashMap<String, double[]>();
+            for (int i = 0; i < size; i++) {
+                if (nodes[i] != null && idleByNode.containsKey(nodes[i])) {
+                    double[] t = totals.get(nodes[i]);
+                    if (t == null) {
+                        t = new double[2];
+                        totals.put(nodes[i], t);
+                    }
+                    t[0] += costs[i];
+                    t[1]++;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                double[] t = nodes[i] == null ? null : totals.get(nodes[i]);
+                if (t != null) {
+                    double idle = idleByNode.get(nodes[i]);
+                    boolean weighted = shareSplit == ShareSplit.WEIGHTED && t[0] > 0;
+                    shares[i] += weighted ? idle * costs[i] / t[0] : idle / t[1];
+                }
+            }
+            double leftover = 0;
+            for (Map.Entry<String, Double> e : idleByNode.entrySet()) {
+                if (!totals.containsKey(e.getKey())) {
+                    leftover += e.getValue();
+                }
+            }
+            return leftover;
+        }
+
+        Allocation result(int i) {
+            Allocation allocation = allocations.get(i);
+            if (shares[i] == 0) {
+                return copy(allocation, allocation.getCost());
+            }
+            return copy(allocation, (float) (costs[i] + shares[i]));
+        }
+
+        void clear() {
+            keys.clear();
+            allocations.clear();
+            idleNodes.clear();
+            size = 0;
+            idleSize = 0;
+            leftoverIdle = null;
+            idleTemplate = null;
+        }
+    }
+
+    /**
+     * Get the node of an idle entry of an {@code idleByNode=true} response.
+     *
+     * @throws IllegalArgumentException if the entry is cluster-level idle
+     */
+    private static String nodeOf(String key, Allocation idle) {
+        AllocationProperties properties = idle.getProperties();
+        if (properties != null && properties.getNode() != null && !properties.getNode().isEmpty()) {
+            return properties.getNode();
+        }
+        // node idle entries are keyed "<cluster>/<node>/__idle__", cluster idle entries "<cluster>/__idle__"
+        String prefix = key.substring(0, Math.max(0, key.length() - AllocationAggregator.IDLE_KEY.length() - 1));
+        int slash = prefix.lastIndexOf('/');
+        if (slash >= 0 && slash < prefix.length() - 1) {
+            return prefix.substring(slash + 1);
+        }
+        throw new IllegalArgumentException("Idle entry " + key + " is not per node;"
+            + " sharing by node needs a response fetched with idleByNode=true");
+    }
+
+    private static Allocation copy(Allocation a, Float cost) {
+        return new Allocation()
+            .name(a.getName())
+            .properties(a.getProperties())
+            .start(a.getStart())
+            .end(a.getEnd())
+            .cpuCoreRequestAverage(a.getCpuCoreRequestAverage())
+            .cpuCoreUsageAverage(a.getCpuCoreUsageAverage())
+            .ramByteRequestAverage(a.getRamByteRequestAverage())
+            .ramByteUsageAverage(a.getRamByteUsageAverage())
+            .cost(cost)
+            .costRatio(a.getCostRatio())
+            .customCost(a.getCustomCost());
+    }
+}
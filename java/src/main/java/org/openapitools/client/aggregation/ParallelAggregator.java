@@ -0,0 +1,242 @@
+package org.openapitools.client.aggregation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostAggregate;
+
+/**
+ * Aggregates decoded ranges on several threads.
+ * <p>
+ * The work is split by window, and windows with more entries than the chunk size are further split
+ * into key ranges. Every chunk groups into accumulators of its own, and chunks are merged in input
+ * order once all of them are done, so the result does not depend on thread scheduling: group order
+ * and floating point sums are the same on every run and for every pool size. Group keys and merge
+ * rules are those of {@link AllocationAggregator}.
+ * </p>
+ */
+public class ParallelAggregator {
+
+    /**
+     * Default number of entries per chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final Executor executor;
+    private final int chunkSize;
+
+    /**
+     * Create an aggregator running on the common fork-join pool.
+     */
+    public ParallelAggregator() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create an aggregator.
+     *
+     * @param executor The executor running the chunks, e.g. a {@link ForkJoinPool}
+     * @param chunkSize The maximum number of entries per chunk
+     * @throws IllegalArgumentException if the chunk size is not positive
+     */
+    public ParallelAggregator(Executor executor, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be positive: " + chunkSize);
+        }
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Aggregate a range by one view.
+     *
+     * @param range The pod-level range
+     * @param view The dimensions of the view
+     * @return A range with one map per input window, keyed by group
+     */
+    public AllocationSetRange aggregate(AllocationSetRange range, CostAggregate... view) {
+        List<CostAggregate> dimensions = Arrays.asList(view);
+        return aggregate(range, Collections.singletonList(dimensions)).get(dimensions);
+    }
+
+    /**
+     * Aggregate a range by several views in one pass.
+     *
+     * @param range The pod-level range
+     * @param views The views, each a non-empty list of dimensions
+     * @return The result of every view
+     * @throws IllegalArgumentException if a view is empty
+     */
+    public Map<List<CostAggregate>, AllocationSetRange> aggregate(AllocationSetRange range, final List<List<CostAggregate>> views) {
+        for (List<CostAggregate> view : views) {
+            if (view.isEmpty()) {
+                throw new IllegalArgumentException("An aggregate view needs at least one dimension");
+            }
+        }
+        List<Chunk> chunks = split(range);
+        List<CompletableFuture<List<Map<String, AllocationAccumulator>>>> futures =
+            new ArrayList<CompletableFuture<List<Map<String, AllocationAccumulator>>>>(chunks.size());
+        for (final Chunk chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(new Supplier<List<Map<String, AllocationAccumulator>>>() {
+                @Override
+                public List<Map<String, AllocationAccumulator>> get() {
+                    return chunk.group(views);
+                }
+            }, executor));
+        }
+
+        int windowCount = range.getData() == null ? 0 : range.getData().size();
+        // per view, per window
+        List<List<Map<String, AllocationAccumulator>>> merged = new ArrayList<List<Map<String, AllocationAccumulator>>>();
+        for (int v = 0; v < views.size(); v++) {
+            List<Map<String, AllocationAccumulator>> windows = new ArrayList<Map<String, AllocationAccumulator>>(windowCount);
+            for (int w = 0; w < windowCount; w++) {
+                windows.add(range.getData().get(w) == null ? null : new LinkedHashMap<String, AllocationAccumulator>());
+            }
+            merged.add(windows);
+        }
+        for (int c = 0; c < chunks.size(); c++) {
+            List<Map<String, AllocationAccumulator>> partial = join(futures.get(c));
+            int window = chunks.get(c).window;
+            for (int v = 0; v < views.size(); v++) {
+                Map<String, AllocationAccumulator> target = merged.get(v).get(window);
+                for (Map.Entry<String, AllocationAccumulator> e : partial.get(v).entrySet()) {
+                    AllocationAccumulator accumulator = target.get(e.getKey());
+                    if (accumulator == null) {
+                        target.put(e.getKey(), e.getValue());
+                    } else {
+                        accumulator.merge(e.getValue());
+                    }
+                }
+            }
+        }
+
+        Map<List<CostAggregate>, AllocationSetRange> result = new LinkedHashMap<List<CostAggregate>, AllocationSetRange>();
+        for (int v = 0; v < views.size(); v++) {
+            result.put(views.get(v), AllocationAggregator.toRange(merged.get(v)));
+        }
+        return result;
+    }
+
+    /**
+     * Sum a metric over every entry of a range; entries without a value count as zero.
+     *
+     * @param range The range
+     * @param metric The metric
+     * @return The sum
+     */
+    public double sum(AllocationSetRange range, final AllocationMetric metric) {
+        List<Chunk> chunks = split(range);
+        List<CompletableFuture<Double>> futures = new ArrayList<CompletableFuture<Double>>(chunks.size());
+        for (final Chunk chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(new Supplier<Double>() {
+                @Override
+                public Double get() {
+                    return chunk.sum(metric);
+                }
+            }, executor));
+        }
+        double sum = 0;
+        for (CompletableFuture<Double> future : futures) {
+            sum += join(future);
+        }
+        return sum;
+    }
+
+    private List<Chunk> split(AllocationSetRange range) {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        if (range.getData() == null) {
+            return chunks;
+        }
+        for (int w = 0; w < range.getData().size(); w++) {
+            Map<String, Allocation> window = range.getData().get(w);
+            if (window == null || window.isEmpty()) {
+                continue;
+            }
+            List<Map.Entry<String, Allocation>> entries = new ArrayList<Map.Entry<String, Allocation>>(window.entrySet());
+            for (int from = 0; from < entries.size(); from += chunkSize) {
+                chunks.add(new Chunk(w, entries, from, Math.min(entries.size(), from + chunkSize)));
+            }
+        }
+        return chunks;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A key range of one window.
+     */
+    private static final class Chunk {
+        final int window;
+        final List<Map.Entry<String, Allocation>> entries;
+        final int from;
+        final int to;
+
+        Chunk(int window, List<Map.Entry<String, Allocation>> entries, int from, int to) {
+            this.window = window;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        List<Map<String, AllocationAccumulator>> group(List<List<CostAggregate>> views) {
+            List<Map<String, AllocationAccumulator>> groups = new ArrayList<Map<String, AllocationAccumulator>>(views.size());
+            for (int v = 0; v < views.size(); v++) {
+                groups.add(new LinkedHashMap<String, AllocationAccumulator>());
+            }
+            for (int i = from; i < to; i++) {
+                Allocation allocation = entries.get(i).getValue();
+                if (allocation == null) {
+                    continue;
+                }
+                String key = entries.get(i).getKey();
+                for (int v = 0; v < views.size(); v++) {
+                    String group = AllocationAggregator.groupKey(views.get(v), key, allocation);
+                    Map<String, AllocationAccumulator> map = groups.get(v);
+                    AllocationAccumulator accumulator = map.get(group);
+                    if (accumulator == null) {
+                        accumulator = new AllocationAccumulator();
+                        map.put(group, accumulator);
+                    }
+                    accumulator.add(allocation);
+                }
+            }
+            return groups;
+        }
+
+        double sum(AllocationMetric metric) {
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                Allocation allocation = entries.get(i).getValue();
+                Float value = allocation == null ? null : metric.get(allocation);
+                if (value != null) {
+                    sum += value;
+                }
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package org.openapitools.client.aggregation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A mergeable quantile sketch over non-negative values with a relative error guarantee.
+ * <p>
+ * Values are counted in logarithmic buckets in the manner of DDSketch: a value {@code x} falls
+ * into bucket {@code ceil(log(x) / log(gamma))} with {@code gamma = (1 + a) / (1 - a)}, so every
+ * quantile is returned within a relative error {@code a} of the exact one. Memory is bounded by the
+ * maximum number of buckets; once it is reached the lowest buckets are collapsed into one, which only
+ * affects the accuracy of the lowest quantiles. Sketches with the same accuracy merge by adding bucket
+ * counts, and {@link #toBytes()} gives a compact form to ship sketches of many clusters and windows to
+ * one place.
+ * </p>
+ * <pre>
+ * QuantileSketch sketch = new QuantileSketch();
+ * sketch.add(0.42);
+ * double p90 = sketch.getQuantile(0.9);
+ * </pre>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public class QuantileSketch {
+
+    /**
+     * Default relative accuracy, 1%.
+     */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    /**
+     * Default maximum number of buckets. With the default accuracy this covers values from about 1e-9 to 1e9
+     * without collapsing.
+     */
+    public static final int DEFAULT_MAX_BUCKETS = 2048;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    // Values below this are counted as zero; it keeps bucket indexes within int range.
+    private static final double MIN_INDEXABLE_VALUE = 1e-12;
+
+    private final double relativeAccuracy;
+    private final int maxBuckets;
+    private final double gamma;
+    private final double logGamma;
+
+    // counts[i] is the count of bucket offset + i
+    private long[] counts = new long[0];
+    private int offset;
+    private long zeroCount;
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Create a sketch with the default accuracy and size.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BUCKETS);
+    }
+
+    /**
+     * Create a sketch.
+     *
+     * @param relativeAccuracy The relative accuracy of quantiles, between 0 and 1 exclusive
+     * @param maxBuckets The maximum number of buckets
+     * @throws IllegalArgumentException if an argument is out of range
+     */
+    public QuantileSketch(double relativeAccuracy, int maxBuckets) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("The relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        if (maxBuckets <= 0) {
+            throw new IllegalArgumentException("The maximum number of buckets must be positive: " + maxBuckets);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBuckets = maxBuckets;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public int getMaxBuckets() {
+        return maxBuckets;
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param value The value, zero or positive
+     * @throws IllegalArgumentException if the value is negative or not a number
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Add a value several times.
+     *
+     * @param value The value, zero or positive
+     * @param n The number of occurrences
+     * @throws IllegalArgumentException if the value is negative or not a number, or n is negative
+     */
+    public void add(double value, long n) {
+        if (!(value >= 0) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Only finite non-negative values can be added: " + value);
+        }
+        if (n < 0) {
+            throw new IllegalArgumentException("The number of occurrences must not be negative: " + n);
+        }
+        if (n == 0) {
+            return;
+        }
+        if (value < MIN_INDEXABLE_VALUE) {
+            zeroCount += n;
+        } else {
+            int index = (int) Math.ceil(Math.log(value) / logGamma);
+            increment(index, n);
+        }
+        count += n;
+        sum += value * n;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add the counts of another sketch to this one.
+     *
+     * @param other The other sketch
+     * @throws IllegalArgumentException if the sketches have a different accuracy
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with relative accuracy "
+                + relativeAccuracy + " and " + other.relativeAccuracy);
+        }
+        if (other.count == 0) {
+            return;
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                increment(other.offset + i, other.counts[i]);
+            }
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Get the value at a quantile.
+     *
+     * @param q The quantile, between 0 and 1 inclusive
+     * @return The value, NaN if the sketch is empty
+     * @throws IllegalArgumentException if the quantile is out of range
+     */
+    public double getQuantile(double q) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("The quantile must be between 0 and 1: " + q);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        // rank of the value, zero-based
+        long rank = (long) (q * (count - 1));
+        if (rank < zeroCount) {
+            return 0;
+        }
+        long seen = zeroCount;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                double value = 2 * Math.pow(gamma, offset + i) / (gamma + 1);
+                // the extremes are known exactly; clamp so the estimate never leaves them
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return The number of values added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The sum of the values added
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return The smallest value added, NaN if the sketch is empty
+     */
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * @return The largest value added, NaN if the sketch is empty
+     */
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Serialize the sketch. Only non-empty buckets are written.
+     *
+     * @return The bytes, to be read back with {@link #fromBytes(byte[])}
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(FORMAT_VERSION);
+            out.writeDouble(relativeAccuracy);
+            out.writeInt(maxBuckets);
+            out.writeLong(count);
+            out.writeDouble(sum);
+            out.writeDouble(min);
+            out.writeDouble(max);
+            out.writeLong(zeroCount);
+            int buckets = 0;
+            for (long c : counts) {
+                if (c != 0) {
+                    buckets++;
+                }
+            }
+            out.writeInt(buckets);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    out.writeInt(offset + i);
+                    out.writeLong(counts[i]);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // cannot happen with an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a sketch written by {@link #toBytes()}.
+     *
+     * @param bytes The bytes
+     * @return The sketch
+     * @throws IllegalArgumentException if the bytes are not a valid sketch
+     */
+    public static QuantileSketch fromBytes(byte[] bytes) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported sketch format version: " + version);
+            }
+            QuantileSketch sketch = new QuantileSketch(in.readDouble(), in.readInt());
+            long count = in.readLong();
+            double sum = in.readDouble();
+            double min = in.readDouble();
+            double max = in.readDouble();
+            sketch.zeroCount = in.readLong();
+            int buckets = in.readInt();
+            long total = sketch.zeroCount;
+            for (int i = 0; i < buckets; i++) {
+                int index = in.readInt();
+                long c = in.readLong();
+                if (c <= 0) {
+                    throw new IllegalArgumentException("Invalid bucket count: " + c);
+                }
+                sketch.increment(index, c);
+                total += c;
+            }
+            if (total != count || in.available() != 0) {
+                throw new IllegalArgumentException("Corrupt sketch");
+            }
+            sketch.count = count;
+            sketch.sum = sum;
+            sketch.min = min;
+            sketch.max = max;
+            return sketch;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated sketch", e);
+        }
+    }
+
+    private void increment(int index, long n) {
+        if (counts.length == 0) {
+            counts = new long[Math.min(maxBuckets, 64)];
+            offset = index - counts.length / 2;
+        } else if (index < offset || index >= offset + counts.length) {
+            grow(index);
+        }
+        // indexes below a collapsed range count into its lowest bucket
+        counts[Math.max(index, offset) - offset] += n;
+    }
+
+    private void grow(int index) {
+        int low = index;
+        int high = index;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                low = Math.min(low, offset + i);
+                high = Math.max(high, offset + i);
+            }
+        }
+        if ((long) high - low + 1 > maxBuckets) {
+            low = high - maxBuckets + 1;
+        }
+        int span = high - low + 1;
+        int length = Math.max(span, Math.min(counts.length * 2, maxBuckets));
+        // leave the headroom on the side that grows
+        int newOffset = index < offset ? high - length + 1 : low;
+        long[] resized = new long[length];
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                resized[Math.max(offset + i, newOffset) - newOffset] += counts[i];
+            }
+        }
+        counts = resized;
+        offset = newOffset;
+    }
+
+    @Override
+    public String toString() {
+        return "QuantileSketch{count=" + count + ", relativeAccuracy=" + relativeAccuracy + ", buckets=" + counts.length + "}";
+    }
+}
@@ -0,0 +1,275 @@
+package org.openapitools.client.aggregation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.query.CostAggregate;
+import org.openapitools.client.stream.AllocationHandler;
+import org.openapitools.client.stream.AllocationProjection;
+
+/**
+ * Keeps the K entries with the highest value of a metric while a response streams, optionally per group.
+ * <p>
+ * Every group holds a bounded min-heap over primitive values, so memory stays at K entries per group
+ * however large the response is, and an entry that does not beat the current minimum is dropped
+ * without allocating. Entries of all windows compete with each other; ties keep the entry seen first.
+ * </p>
+ * <pre>
+ * TopKCollector top = new TopKCollector(50, AllocationMetric.COST, null);
+ * api.streamCost(query, top.projection(), top);
+ * for (TopKCollector.Entry entry : top.getTop()) { ... }
+ * </pre>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public class TopKCollector implements AllocationHandler {
+
+    private static final String ALL = "";
+
+    private final int k;
+    private final AllocationMetric metric;
+    private final List<CostAggregate> groupBy;
+    private final Map<String, Heap> heaps = new LinkedHashMap<String, Heap>();
+
+    /**
+     * Create a collector.
+     *
+     * @param k The number of entries to keep per group
+     * @param metric The metric to rank by
+     * @param groupBy The dimension to group by, null to rank all entries together
+     * @throws IllegalArgumentException if k is not positive
+     */
+    public TopKCollector(int k, AllocationMetric metric, CostAggregate groupBy) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+        this.metric = metric;
+        this.groupBy = groupBy == null ? null : Collections.singletonList(groupBy);
+    }
+
+    /**
+     * Get the projection holding the metric and the grouping dimension, to be used when streaming
+     * the input. Use {@link AllocationProjection#with} to keep more fields on the retained entries.
+     *
+     * @return The projection
+     */
+    public AllocationProjection projection() {
+        List<String> fields = new ArrayList<String>();
+        fields.add(metric.getField());
+        if (groupBy != null) {
+            AllocationAggregator.addPropertyFields(fields, groupBy.get(0));
+        }
+        return AllocationProjection.of(fields);
+    }
+
+    @Override
+    public void onAllocation(int window, String key, Allocation allocation) {
+        if (allocation == null) {
+            return;
+        }
+        Float value = metric.get(allocation);
+        if (value == null || value.isNaN()) {
+            return;
+        }
+        String group = groupBy == null ? ALL : AllocationAggregator.groupKey(groupBy, key, allocation);
+        Heap heap = heaps.get(group);
+        if (heap == null) {
+            heap = new Heap(k);
+            heaps.put(group, heap);
+        }
+        heap.offer(value, window, key, allocation);
+    }
+
+    /**
+     * Get the top entries of all groups, highest value first. Without grouping these are the
+     * overall top K entries.
+     *
+     * @return The entries
+     */
+    public List<Entry> getTop() {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Heap heap : heaps.values()) {
+            heap.drainTo(entries);
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    /**
+     * Get the top entries of every group, highest value first.
+     *
+     * @return Group key to entries, groups in order of first appearance
+     */
+    public Map<String, List<Entry>> getTopByGroup() {
+        Map<String, List<Entry>> result = new LinkedHashMap<String, List<Entry>>();
+        for (Map.Entry<String, Heap> e : heaps.entrySet()) {
+            List<Entry> entries = new ArrayList<Entry>();
+            e.getValue().drainTo(entries);
+            Collections.sort(entries);
+            result.put(e.getKey(), entries);
+        }
+        return result;
+    }
+
+    /**
+     * Discard all retained entries.
+     */
+    public void reset() {
+        heaps.clear();
+    }
+
+    /**
+     * A retained entry.
+     */
+    public static final class Entry implements Comparable<Entry> {
+        private final double value;
+        private final long sequence;
+        private final int window;
+        private final String key;
+        private final Allocation allocation;
+
+        Entry(double value, long sequence, int window, String key, Allocation allocation) {
+            this.value = value;
+            this.sequence = sequence;
+            this.window = window;
+            this.key = key;
+            this.allocation = allocation;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public int getWindow() {
+            return window;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The allocation, limited to the projected fields
+         */
+        public Allocation getAllocation() {
+            return allocation;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int c = Double.compare(o.value, value);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{window=" + window + ", key=" + key + ", value=" + value + "}";
+        }
+    }
+
+    /**
+     * Bounded min-heap over parallel arrays; the root is the smallest retained value, the latest among equals.
+     */
+    private static final class Heap {
+        private final int capacity;
+        private double[] values = new double[8];
+        private long[] sequences = new long[8];
+        private int[] windows = new int[8];
+        private String[] keys = new String[8];
+        private Allocation[] allocations = new Allocation[8];
+        private int size;
+        private long nextSequence;
+
+        Heap(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void offer(double value, int window, String key, Allocation allocation) {
+            long sequence = nextSequence++;
+            if (size < capacity) {
+                if (size == values.length) {
+                    int n = Math.min(capacity, size * 2);
+                    values = Arrays.copyOf(values, n);
+                    sequences = Arrays.copyOf(sequences, n);
+                    windows = Arrays.copyOf(windows, n);
+                    keys = Arrays.copyOf(keys, n);
+                    allocations = Arrays.copyOf(allocations, n);
+                }
+                set(size, value, sequence, window, key, allocation);
+                siftUp(size++);
+            } else if (value > values[0]) {
+                set(0, value, sequence, window, key, allocation);
+                siftDown(0);
+            }
+        }
+
+        void drainTo(List<Entry> entries) {
+            for (int i = 0; i < size; i++) {
+                entries.add(new Entry(values[i], sequences[i], windows[i], keys[i], allocations[i]));
+            }
+        }
+
+        private void set(int i, double value, long sequence, int window, String key, Allocation allocation) {
+            values[i] = value;
+            sequences[i] = sequence;
+            windows[i] = window;
+            keys[i] = key;
+            allocations[i] = allocation;
+        }
+
+        private boolean less(int a, int b) {
+            return values[a] < values[b] || (values[a] == values[b] && sequences[a] > sequences[b]);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(i, parent)) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int smallest = left + 1 < size && less(left + 1, left) ? left + 1 : left;
+                if (!less(smallest, i)) {
+                    break;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            double v = values[a];
+            values[a] = values[b];
+            values[b] = v;
+            long s = sequences[a];
+            sequences[a] = sequences[b];
+            sequences[b] = s;
+            int w = windows[a];
+            windows[a] = windows[b];
+            windows[b] = w;
+            String key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            Allocation allocation = allocations[a];
+            allocations[a] = allocations[b];
+            allocations[b] = allocation;
+        }
+    }
+}
@@ -18,6 +18,7 @@ import org.openapitools.client.ApiClient;
 import org.openapitools.client.ApiException;
 import org.openapitools.client.ApiResponse;
 import org.openapitools.client.Configuration;
+import org.openapitools.client.Deadline;
 import org.openapitools.client.Pair;
 import org.openapitools.client.ProgressRequestBody;
 import org.openapitools.client.ProgressResponseBody;
@@ -27,7 +28,16 @@ import com.google.gson.reflect.TypeToken;
 import java.io.IOException;
 
 
+import org.openapitools.client.model.Allocation;
 import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostQuery;
+import org.openapitools.client.reactive.AllocationPublisher;
+import org.openapitools.client.schedule.CallClass;
+import org.openapitools.client.stream.AllocationHandler;
+import org.openapitools.client.stream.AllocationProjection;
+import org.openapitools.client.stream.AllocationSetRangeCollector;
+import org.openapitools.client.stream.AllocationStreamReader;
+import org.reactivestreams.Publisher;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
@@ -39,6 +49,8 @@ public class DefaultApi {
     private ApiClient localVarApiClient;
     private int localHostIndex;
     private String localCustomBaseUrl;
+    private Deadline localDeadline;
+    private CallClass localCallClass;
 
     public DefaultApi() {
         this(Configuration.getDefaultApiClient());
@@ -72,6 +84,60 @@ public class DefaultApi {
         this.localCustomBaseUrl = customBaseUrl;
     }
 
+    public Deadline getDeadline() {
+        return localDeadline;
+    }
+
+    /**
+     * Get a copy of this API whose calls carry a deadline: they fail without being sent once it has
+     * passed, and are cancelled when it passes while they run. Pass the copy, or the deadline, down to
+     * retry and sub-query layers so they share the remaining budget.
+     *
+     * @param deadline The deadline, null for none
+     * @return The copy
+     */
+    public DefaultApi withDeadline(Deadline deadline) {
+        DefaultApi copy = copy();
+        copy.localDeadline = deadline;
+        return copy;
+    }
+
+    public CallClass getCallClass() {
+        return localCallClass;
+    }
+
+    /**
+     * Get a copy of this API whose asynchronous calls wait in the queue of a call class of the
+     * {@link org.openapitools.client.schedule.CallScheduler} of the client, if it has one.
+     *
+     * @param callClass The call class, null for {@link CallClass#DEFAULT}
+     * @return The copy
+     */
+    public DefaultApi withCallClass(CallClass callClass) {
+        DefaultApi copy = copy();
+        copy.localCallClass = callClass;
+        return copy;
+    }
+
+    private DefaultApi copy() {
+        DefaultApi copy = new DefaultApi(localVarApiClient);
+        copy.localHostIndex = localHostIndex;
+        copy.localCustomBaseUrl = localCustomBaseUrl;
+        copy.localDeadline = localDeadline;
+        copy.localCallClass = localCallClass;
+        return copy;
+    }
+
+    private okhttp3.Call tagged(okhttp3.Call call) {
+        if (localDeadline == null && localCallClass == null) {
+            return call;
+        }
+        return localVarApiClient.buildCall(call.request().newBuilder()
+            .tag(Deadline.class, localDeadline)
+            .tag(CallClass.class, localCallClass)
+            .build(), null);
+    }
+
     /**
      * Build call for getAllocation
      * @param window The time range to be queried. (required)
@@ -172,7 +238,7 @@ public class DefaultApi {
         }
 
         String[] localVarAuthNames = new String[] {  };
-        return localVarApiClient.buildCall(basePath, localVarPath, "GET", localVarQueryParams, localVarCollectionQueryParams, localVarPostBody, localVarHeaderParams, localVarCookieParams, localVarFormParams, localVarAuthNames, _callback);
+        return tagged(localVarApiClient.buildCall(basePath, localVarPath, "GET", localVarQueryParams, localVarCollectionQueryParams, localVarPostBody, localVarHeaderParams, localVarCookieParams, localVarFormParams, localVarAuthNames, _callback));
     }
 
     @SuppressWarnings("rawtypes")
@@ -274,6 +340,134 @@ public class DefaultApi {
         localVarApiClient.executeAsync(localVarCall, localVarReturnType, _callback);
         return localVarCall;
     }
+
+    /**
+     * Compute allocation, decoding only the projected fields
+     * 
+     * @param window The time range to be queried. (required)
+     * @param filter The filter options for workloads. (optional)
+     * @param step The interval that is used to split the time range. (optional)
+     * @param aggregate The aggregate options for the returned results from different dimensions. (optional)
+     * @param idle Specifies whether to display or process idle costs. (optional, default to true)
+     * @param shareIdle Specifies whether to allocate idle costs to each resource. (optional, default to false)
+     * @param shareSplit The idle cost allocation policy. (optional, default to weighted)
+     * @param idleByNode Specifies whether to aggregate idle costs of each node. This parameter takes effect only if you set the aggregate parameter to node and the shareIdle parameter to false. (optional, default to false)
+     * @param format The format that is used to export costs. (optional, default to json)
+     * @param projection The Allocation fields to materialize; all other fields are skipped while decoding (required)
+     * @return AllocationSetRange whose allocations only carry the projected fields
+     * @throws ApiException If fail to call the API, e.g. server error or cannot deserialize the response body
+     */
+    public AllocationSetRange getAllocation(@javax.annotation.Nonnull String window, @javax.annotation.Nullable String filter, @javax.annotation.Nullable String step, @javax.annotation.Nullable String aggregate, @javax.annotation.Nullable Boolean idle, @javax.annotation.Nullable Boolean shareIdle, @javax.annotation.Nullable String shareSplit, @javax.annotation.Nullable Boolean idleByNode, @javax.annotation.Nullable String format, @javax.annotation.Nonnull AllocationProjection projection) throws ApiException {
+        AllocationSetRangeCollector localVarCollector = streamAllocation(window, filter, step, aggregate, idle, shareIdle, shareSplit, idleByNode, format, projection, new AllocationSetRangeCollector());
+        return localVarCollector == null ? null : localVarCollector.getRange();
+    }
+
+    /**
+     * Compute allocation, streaming every entry to the given handler as it is decoded
+     * 
+     * @param window The time range to be queried. (required)
+     * @param filter The filter options for workloads. (optional)
+     * @param step The interval that is used to split the time range. (optional)
+     * @param aggregate The aggregate options for the returned results from different dimensions. (optional)
+     * @param idle Specifies whether to display or process idle costs. (optional, default to true)
+     * @param shareIdle Specifies whether to allocate idle costs to each resource. (optional, default to false)
+     * @param shareSplit The idle cost allocation policy. (optional, default to weighted)
+     * @param idleByNode Specifies whether to aggregate idle costs of each node. This parameter takes effect only if you set the aggregate parameter to node and the shareIdle parameter to false. (optional, default to false)
+     * @param format The format that is used to export costs. (optional, default to json)
+     * @param projection The Allocation fields to materialize; all other fields are skipped while decoding (required)
+     * @param handler The handler receiving windows and entries (required)
+     * @param <H> The handler type
+     * @return The handler, or null if the response had no body
+     * @throws ApiException If fail to call the API, e.g. server error or cannot decode the response body
+     */
+    public <H extends AllocationHandler> H streamAllocation(@javax.annotation.Nonnull String window, @javax.annotation.Nullable String filter, @javax.annotation.Nullable String step, @javax.annotation.Nullable String aggregate, @javax.annotation.Nullable Boolean idle, @javax.annotation.Nullable Boolean shareIdle, @javax.annotation.Nullable String shareSplit, @javax.annotation.Nullable Boolean idleByNode, @javax.annotation.Nullable String format, @javax.annotation.Nonnull AllocationProjection projection, @javax.annotation.Nonnull H handler) throws ApiException {
+        okhttp3.Call localVarCall = getAllocationValidateBeforeCall(window, filter, step, aggregate, idle, shareIdle, shareSplit, idleByNode, format, null);
+        return localVarApiClient.executeStreaming(localVarCall, AllocationStreamReader.decoder(projection, handler)).getData();
+    }
+
+    /**
+     * Build call for getAllocation from a query. The request is rendered once per query instance and reused.
+     * @param query The query (required)
+     * @param _callback Callback for upload/download progress
+     * @return Call to execute
+     * @throws ApiException If fail to serialize the request body object
+     */
+    public okhttp3.Call getAllocationCall(@javax.annotation.Nonnull CostQuery query, final ApiCallback _callback) throws ApiException {
+        // verify the required parameter 'query' is set
+        if (query == null) {
+            throw new ApiException("Missing the required parameter 'query' when calling getAllocation(Async)");
+        }
+        okhttp3.Request localVarRequest = query.toRequest(localVarApiClient, localCustomBaseUrl, "/v2/allocation");
+        return tagged(localVarApiClient.buildCall(localVarRequest, _callback));
+    }
+
+    /**
+     * Compute allocation
+     * 
+     * @param query The query (required)
+     * @return AllocationSetRange
+     * @throws ApiException If fail to call the API, e.g. server error or cannot deserialize the response body
+     */
+    public AllocationSetRange getAllocation(@javax.annotation.Nonnull CostQuery query) throws ApiException {
+        ApiResponse<AllocationSetRange> localVarResp = getAllocationWithHttpInfo(query);
+        return localVarResp.getData();
+    }
+
+    /**
+     * Compute allocation
+     * 
+     * @param query The query (required)
+     * @return ApiResponse&lt;AllocationSetRange&gt;
+     * @throws ApiException If fail to call the API, e.g. server error or cannot deserialize the response body
+     */
+    public ApiResponse<AllocationSetRange> getAllocationWithHttpInfo(@javax.annotation.Nonnull CostQuery query) throws ApiException {
+        okhttp3.Call localVarCall = getAllocationCall(query, null);
+        Type localVarReturnType = new TypeToken<AllocationSetRange>(){}.getType();
+        return localVarApiClient.execute(localVarCall, localVarReturnType);
+    }
+
+    /**
+     * Compute allocation (asynchronously)
+     * 
+     * @param query The query (required)
+     * @param _callback The callback to be executed when the API call finishes
+     * @return The request call
+     * @throws ApiException If fail to process the API call, e.g. serializing the request body object
+     */
+    public okhttp3.Call getAllocationAsync(@javax.annotation.Nonnull CostQuery query, final ApiCallback<AllocationSetRange> _callback) throws ApiException {
+        okhttp3.Call localVarCall = getAllocationCall(query, _callback);
+        Type localVarReturnType = new TypeToken<AllocationSetRange>(){}.getType();
+        localVarApiClient.executeAsync(localVarCall, localVarReturnType, _callback);
+        return localVarCall;
+    }
+
+    /**
+     * Compute allocation, streaming every entry to the given handler as it is decoded
+     * 
+     * @param query The query (required)
+     * @param projection The Allocation fields to materialize; all other fields are skipped while decoding (required)
+     * @param handler The handler receiving windows and entries (required)
+     * @param <H> The handler type
+     * @return The handler, or null if the response had no body
+     * @throws ApiException If fail to call the API, e.g. server error or cannot decode the response body
+     */
+    public <H extends AllocationHandler> H streamAllocation(@javax.annotation.Nonnull CostQuery query, @javax.annotation.Nonnull AllocationProjection projection, @javax.annotation.Nonnull H handler) throws ApiException {
+        okhttp3.Call localVarCall = getAllocationCall(query, null);
+        return localVarApiClient.executeStreaming(localVarCall, AllocationStreamReader.decoder(projection, handler)).getData();
+    }
+
+    /**
+     * Compute allocation, publishing every entry to subscribers as it is decoded, as far as they request
+     * 
+     * @param query The query (required)
+     * @param projection The Allocation fields to materialize; all other fields are skipped while decoding (required)
+     * @return The publisher, running the call for every subscription
+     * @throws ApiException If fail to build the call
+     */
+    public Publisher<Allocation> publishAllocation(@javax.annotation.Nonnull CostQuery query, @javax.annotation.Nonnull AllocationProjection projection) throws ApiException {
+        okhttp3.Call localVarCall = getAllocationCall(query, null);
+        return new AllocationPublisher(localVarApiClient, localVarCall, projection);
+    }
     /**
      * Build call for getCost
      * @param window The time range to be queried. (required)
@@ -374,7 +568,7 @@ public class DefaultApi {
         }
 
         String[] localVarAuthNames = new String[] {  };
-        return localVarApiClient.buildCall(basePath, localVarPath, "GET", localVarQueryParams, localVarCollectionQueryParams, localVarPostBody, localVarHeaderParams, localVarCookieParams, localVarFormParams, localVarAuthNames, _callback);
+        return tagged(localVarApiClient.buildCall(basePath, localVarPath, "GET", localVarQueryParams, localVarCollectionQueryParams, localVarPostBody, localVarHeaderParams, localVarCookieParams, localVarFormParams, localVarAuthNames, _callback));
     }
 
     @SuppressWarnings("rawtypes")
@@ -476,4 +670,132 @@ public class DefaultApi {
         localVarApiClient.executeAsync(localVarCall, localVarReturnType, _callback);
         return localVarCall;
     }
+
+    /**
+     * Get estimated cost, decoding only the projected fields
+     * 
+     * @param window The time range to be queried. (required)
+     * @param filter The filter options for workloads. (optional)
+     * @param step The interval that is used to split the time range. (optional)
+     * @param aggregate The aggregate options for the returned results from different dimensions. (optional)
+     * @param idle Specifies whether to display or process idle costs. (optional, default to true)
+     * @param shareIdle Specifies whether to allocate idle costs to each resource. (optional, default to false)
+     * @param shareSplit The idle cost allocation policy. (optional, default to weighted)
+     * @param idleByNode Specifies whether to aggregate idle costs of each node. This parameter takes effect only if you set the aggregate parameter to node and the shareIdle parameter to false. (optional, default to false)
+     * @param format The format that is used to export costs. (optional, default to json)
+     * @param projection The Allocation fields to materialize; all other fields are skipped while decoding (required)
+     * @return AllocationSetRange whose allocations only carry the projected fields
+     * @throws ApiException If fail to call the API, e.g. server error or cannot deserialize the response body
+     */
+    public AllocationSetRange getCost(@javax.annotation.Nonnull String window, @javax.annotation.Nullable String filter, @javax.annotation.Nullable String step, @javax.annotation.Nullable String aggregate, @javax.annotation.Nullable Boolean idle, @javax.annotation.Nullable Boolean shareIdle, @javax.annotation.Nullable String shareSplit, @javax.annotation.Nullable Boolean idleByNode, @javax.annotation.Nullable String format, @javax.annotation.Nonnull AllocationProjection projection) throws ApiException {
+        AllocationSetRangeCollector localVarCollector = streamCost(window, filter, step, aggregate, idle, shareIdle, shareSplit, idleByNode, format, projection, new AllocationSetRangeCollector());
+        return localVarCollector == null ? null : localVarCollector.getRange();
+    }
+
+    /**
+     * Get estimated cost, streaming every entry to the given handler as it is decoded
+     * 
+     * @param window The time range to be queried. (required)
+     * @param filter The filter options for workloads. (optional)
+     * @param step The interval that is used to split the time range. (optional)
+     * @param aggregate The aggregate options for the returned results from different dimensions. (optional)
+     * @param idle Specifies whether to display or process idle costs. (optional, default to true)
+     * @param shareIdle Specifies whether to allocate idle costs to each resource. (optional, default to false)
+     * @param shareSplit The idle cost allocation policy. (optional, default to weighted)
+     * @param idleByNode Specifies whether to aggregate idle costs of each node. This parameter takes effect only if you set the aggregate parameter to node and the shareIdle parameter to false. (optional, default to false)
+     * @param format The format that is used to export costs. (optional, default to json)
+     * @param projection The Allocation fields to materialize; all other fields are skipped while decoding (required)
+     * @param handler The handler receiving windows and entries (required)
+     * @param <H> The handler type
+     * @return The handler, or null if the response had no body
+     * @throws ApiException If fail to call the API, e.g. server error or cannot decode the response body
+     */
+    public <H extends AllocationHandler> H streamCost(@javax.annotation.Nonnull String window, @javax.annotation.Nullable String filter, @javax.annotation.Nullable String step, @javax.annotation.Nullable String aggregate, @javax.annotation.Nullable Boolean idle, @javax.annotation.Nullable Boolean shareIdle, @javax.annotation.Nullable String shareSplit, @javax.annotation.Nullable Boolean idleByNode, @javax.annotation.Nullable String format, @javax.annotation.Nonnull AllocationProjection projection, @javax.annotation.Nonnull H handler) throws ApiException {
+        okhttp3.Call localVarCall = getCostValidateBeforeCall(window, filter, step, aggregate, idle, shareIdle, shareSplit, idleByNode, format, null);
+        return localVarApiClient.executeStreaming(localVarCall, AllocationStreamReader.decoder(projection, handler)).getData();
+    }
+
+    /**
+     * Build call for getCost from a query. The request is rendered once per query instance and reused.
+     * @param query The query (required)
+     * @param _callback Callback for upload/download progress
+     * @return Call to execute
+     * @throws ApiException If fail to serialize the request body object
+     */
+    public okhttp3.Call getCostCall(@javax.annotation.Nonnull CostQuery query, final ApiCallback _callback) throws ApiException {
+        // verify the required parameter 'query' is set
+        if (query == null) {
+            throw new ApiException("Missing the required parameter 'query' when calling getCost(Async)");
+        }
+        okhttp3.Request localVarRequest = query.toRequest(localVarApiClient, localCustomBaseUrl, "/v2/cost");
+        return tagged(localVarApiClient.buildCall(localVarRequest, _callback));
+    }
+
+    /**
+     * Get estimated cost
+     * 
+     * @param query The query (required)
+     * @return AllocationSetRange
+     * @throws ApiException If fail to call the API, e.g. server error or cannot deserialize the response body
+     */
+    public AllocationSetRange getCost(@javax.annotation.Nonnull CostQuery query) throws ApiException {
+        ApiResponse<AllocationSetRange> localVarResp = getCostWithHttpInfo(query);
+        return localVarResp.getData();
+    }
+
+    /**
+     * Get estimated cost
+     * 
+     * @param query The query (required)
+     * @return ApiResponse&lt;AllocationSetRange&gt;
+     * @throws ApiException If fail to call the API, e.g. server error or cannot deserialize the response body
+     */
+    public ApiResponse<AllocationSetRange> getCostWithHttpInfo(@javax.annotation.Nonnull CostQuery query) throws ApiException {
+        okhttp3.Call localVarCall = getCostCall(query, null);
+        Type localVarReturnType = new TypeToken<AllocationSetRange>(){}.getType();
+        return localVarApiClient.execute(localVarCall, localVarReturnType);
+    }
+
+    /**
+     * Get estimated cost (asynchronously)
+     * 
+     * @param query The query (required)
+     * @param _callback The callback to be executed when the API call finishes
+     * @return The request call
+     * @throws ApiException If fail to process the API call, e.g. serializing the request body object
+     */
+    public okhttp3.Call getCostAsync(@javax.annotation.Nonnull CostQuery query, final ApiCallback<AllocationSetRange> _callback) throws ApiException {
+        okhttp3.Call localVarCall = getCostCall(query, _callback);
+        Type localVarReturnType = new TypeToken<AllocationSetRange>(){}.getType();
+        localVarApiClient.executeAsync(localVarCall, localVarReturnType, _callback);
+        return localVarCall;
+    }
+
+    /**
+     * Get estimated cost, streaming every entry to the given handler as it is decoded
+     * 
+     * @param query The query (required)
+     * @param projection The Allocation fields to materialize; all other fields are skipped while decoding (required)
+     * @param handler The handler receiving windows and entries (required)
+     * @param <H> The handler type
+     * @return The handler, or null if the response had no body
+     * @throws ApiException If fail to call the API, e.g. server error or cannot decode the response body
+     */
+    public <H extends AllocationHandler> H streamCost(@javax.annotation.Nonnull CostQuery query, @javax.annotation.Nonnull AllocationProjection projection, @javax.annotation.Nonnull H handler) throws ApiException {
+        okhttp3.Call localVarCall = getCostCall(query, null);
+        return localVarApiClient.executeStreaming(localVarCall, AllocationStreamReader.decoder(projection, handler)).getData();
+    }
+
+    /**
+     * Get estimated cost, publishing every entry to subscribers as it is decoded, as far as they request
+     * 
+     * @param query The query (required)
+     * @param projection The Allocation fields to materialize; all other fields are skipped while decoding (required)
+     * @return The publisher, running the call for every subscription
+     * @throws ApiException If fail to build the call
+     */
+    public Publisher<Allocation> publishCost(@javax.annotation.Nonnull CostQuery query, @javax.annotation.Nonnull AllocationProjection projection) throws ApiException {
+        okhttp3.Call localVarCall = getCostCall(query, null);
+        return new AllocationPublisher(localVarApiClient, localVarCall, projection);
+    }
 }
@@ -0,0 +1,213 @@
+package org.openapitools.client.backfill;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openapitools.client.Pair;
+import org.openapitools.client.query.CostQuery;
+
+/**
+ * A durable record of completed backfill tasks, one task id per line of a local file.
+ * <p>
+ * The file also records the query the tasks ran with, less its window, on a line of its own
+ * starting with {@code #query }. {@link #bind(CostQuery)} refuses a checkpoint of another query, so
+ * its tasks are not skipped for data that was never fetched.
+ * </p>
+ * <p>
+ * Completions are written to the file immediately but synced to disk in batches: by the completion
+ * that finds {@code syncBatch} completions pending or {@code syncInterval} passed since the last sync,
+ * and on {@link #sync()} and {@link #close()}. No timer is involved, the interval is only checked when
+ * a task completes, so the last completions of a stalled or finished run stay unsynced until the next
+ * completion, {@code sync()} or {@code close()}. A crash of the process loses nothing written; a crash
+ * of the machine loses the unsynced completions, however old, whose tasks then run again. A line torn
+ * by a crash is dropped when the file is opened again.
+ * </p>
+ */
+public final class BackfillCheckpoint implements Closeable {
+
+    public static final int DEFAULT_SYNC_BATCH = 64;
+    public static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofSeconds(1);
+
+    private static final String QUERY_PREFIX = "#query ";
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int syncBatch;
+    private final long syncIntervalNanos;
+    private final Set<String> completed = new HashSet<String>();
+    private String query;
+    private int pending;
+    private long lastSync = System.nanoTime();
+
+    private BackfillCheckpoint(Path file, FileChannel channel, int syncBatch, Duration syncInterval) {
+        this.file = file;
+        this.channel = channel;
+        this.syncBatch = syncBatch;
+        this.syncIntervalNanos = syncInterval.toNanos();
+    }
+
+    /**
+     * Open a checkpoint file with the default sync batching, creating it if it does not exist.
+     *
+     * @param file The file
+     * @return The checkpoint
+     * @throws IOException if the file cannot be read or created
+     */
+    public static BackfillCheckpoint open(Path file) throws IOException {
+        return open(file, DEFAULT_SYNC_BATCH, DEFAULT_SYNC_INTERVAL);
+    }
+
+    /**
+     * Open a checkpoint file, creating it if it does not exist.
+     *
+     * @param file The file
+     * @param syncBatch The number of pending completions that triggers a sync; 1 syncs every completion
+     * @param syncInterval The time since the last sync after which the next completion syncs
+     * @return The checkpoint
+     * @throws IOException if the file cannot be read or created
+     */
+    public static BackfillCheckpoint open(Path file, int syncBatch, Duration syncInterval) throws IOException {
+        if (syncBatch <= 0) {
+            throw new IllegalArgumentException("The sync batch must be positive: " + syncBatch);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        BackfillCheckpoint checkpoint = new BackfillCheckpoint(file, channel, syncBatch, syncInterval);
+        try {
+            checkpoint.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return checkpoint;
+    }
+
+    private void load() throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                if (i > lineStart) {
+                    String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                    if (line.startsWith(QUERY_PREFIX)) {
+                        query = line.substring(QUERY_PREFIX.length());
+                    } else {
+                        completed.add(line);
+                    }
+                }
+                lineStart = i + 1;
+            }
+        }
+        // drop a torn last line so the next completion starts on a line of its own
+        channel.truncate(lineStart);
+        channel.position(lineStart);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Record the query the tasks of this checkpoint run with, or check that it is the recorded one.
+     * The window of the query is ignored, as every task replaces it.
+     *
+     * @param query The query
+     * @throws IllegalStateException if the checkpoint records another query, or completions but no query
+     * @throws IOException if the query cannot be recorded
+     */
+    public synchronized void bind(CostQuery query) throws IOException {
+        String key = keyOf(query);
+        if (this.query == null) {
+            if (!completed.isEmpty()) {
+                throw new IllegalStateException("The checkpoint " + file + " records completed tasks but no query");
+            }
+            write(QUERY_PREFIX + key);
+            channel.force(false);
+            this.query = key;
+        } else if (!this.query.equals(key)) {
+            throw new IllegalStateException("The checkpoint " + file + " belongs to the query \"" + this.query + "\", not \"" + key + "\"");
+        }
+    }
+
+    private static String keyOf(CostQuery query) {
+        List<Pair> params = new ArrayList<Pair>();
+        for (Pair param : query.getQueryParams()) {
+            if (!"window".equals(param.getName())) {
+                params.add(param);
+            }
+        }
+        return CostQuery.keyOf(params);
+    }
+
+    public synchronized boolean isDone(BackfillTask task) {
+        return completed.contains(task.getId());
+    }
+
+    public synchronized int getCompletedCount() {
+        return completed.size();
+    }
+
+    /**
+     * Record a task as completed.
+     *
+     * @param task The task
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void markDone(BackfillTask task) throws IOException {
+        if (!completed.add(task.getId())) {
+            return;
+        }
+        write(task.getId());
+        pending++;
+        if (pending >= syncBatch || System.nanoTime() - lastSync >= syncIntervalNanos) {
+            sync();
+        }
+    }
+
+    private void write(String record) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+    }
+
+    /**
+     * Sync pending completions to disk.
+     *
+     * @throws IOException if the sync fails
+     */
+    public synchronized void sync() throws IOException {
+        if (pending > 0) {
+            channel.force(false);
+            pending = 0;
+        }
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Sync pending completions and close the file.
+     *
+     * @throws IOException if the sync fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+}
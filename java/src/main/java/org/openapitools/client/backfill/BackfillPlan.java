@@ -0,0 +1,62 @@
+package org.openapitools.client.backfill;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The tasks of a backfill: every cluster crossed with every sub-window of a time range.
+ * <p>
+ * Tasks are ordered sub-window first, so a partially run plan has covered the oldest data of all
+ * clusters rather than all data of a few.
+ * </p>
+ */
+public final class BackfillPlan {
+
+    private final List<BackfillTask> tasks;
+
+    public BackfillPlan(List<BackfillTask> tasks) {
+        this.tasks = Collections.unmodifiableList(new ArrayList<BackfillTask>(tasks));
+    }
+
+    /**
+     * Plan a backfill.
+     *
+     * @param clusters The cluster names
+     * @param from The start of the range, inclusive
+     * @param to The end of the range, exclusive; the last sub-window is cut short to end here
+     * @param step The length of a sub-window
+     * @return The plan
+     * @throws IllegalArgumentException if the step is not positive or the range is empty
+     */
+    public static BackfillPlan of(Collection<String> clusters, Instant from, Instant to, Duration step) {
+        if (step.isZero() || step.isNegative()) {
+            throw new IllegalArgumentException("The step must be positive: " + step);
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("The range is empty: " + from + " to " + to);
+        }
+        List<BackfillTask> tasks = new ArrayList<BackfillTask>();
+        for (Instant start = from; start.isBefore(to); start = start.plus(step)) {
+            Instant end = start.plus(step);
+            if (end.isAfter(to)) {
+                end = to;
+            }
+            for (String cluster : clusters) {
+                tasks.add(new BackfillTask(cluster, start, end));
+            }
+        }
+        return new BackfillPlan(tasks);
+    }
+
+    public List<BackfillTask> getTasks() {
+        return tasks;
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+}
@@ -0,0 +1,347 @@
+package org.openapitools.client.backfill;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openapitools.client.ApiException;
+import org.openapitools.client.Deadline;
+import org.openapitools.client.DeadlineExceededException;
+import org.openapitools.client.api.DefaultApi;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostQuery;
+
+/**
+ * Runs a {@link BackfillPlan} on a bounded worker pool and records progress in a checkpoint, so an
+ * interrupted backfill resumes where it stopped:
+ * <pre>
+ * try (BackfillCheckpoint checkpoint = BackfillCheckpoint.open(Paths.get("backfill.checkpoint"))) {
+ *     BackfillRunner runner = BackfillRunner.builder(apis, query, sink, checkpoint)
+ *         .threads(8)
+ *         .requestsPerSecond(4)
+ *         .build();
+ *     BackfillRunner.Result result = runner.run(BackfillPlan.of(apis.keySet(), from, to, Duration.ofDays(1)));
+ * }
+ * </pre>
+ * <p>
+ * Every task fetches {@code getAllocation} with the query's window replaced by the task's sub-window,
+ * from the API of the task's cluster, hands the result to the sink and is then checkpointed. Tasks
+ * already in the checkpoint are skipped; the checkpoint is bound to the query, less its window, so a
+ * checkpoint of another query is refused. Requests of all workers share one rate limit. Network errors,
+ * 429 and 5xx responses and sink failures are retried with exponential backoff; a task that still fails
+ * is reported in the result and runs again on the next run.
+ * </p>
+ */
+public final class BackfillRunner {
+
+    private final Map<String, DefaultApi> apis;
+    private final CostQuery query;
+    private final BackfillSink sink;
+    private final BackfillCheckpoint checkpoint;
+    private final int threads;
+    private final long permitIntervalNanos;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+
+    private long nextPermit;
+
+    private BackfillRunner(Builder builder) {
+        this.apis = new LinkedHashMap<String, DefaultApi>(builder.apis);
+        this.query = builder.query;
+        this.sink = builder.sink;
+        this.checkpoint = builder.checkpoint;
+        this.threads = builder.threads;
+        this.permitIntervalNanos = builder.requestsPerSecond > 0 ? (long) (1e9 / builder.requestsPerSecond) : 0;
+        this.maxAttempts = builder.maxAttempts;
+        this.retryBackoffMillis = builder.retryBackoffMillis;
+    }
+
+    /**
+     * Create a builder.
+     *
+     * @param apis The API of every cluster, by cluster name
+     * @param query The query to run for every task; its window is replaced
+     * @param sink The sink receiving the data
+     * @param checkpoint The checkpoint recording completed tasks
+     * @return The builder
+     */
+    public static Builder builder(Map<String, DefaultApi> apis, CostQuery query, BackfillSink sink, BackfillCheckpoint checkpoint) {
+        return new Builder(apis, query, sink, checkpoint);
+    }
+
+    /**
+     * Run every task of a plan that is not checkpointed yet, and wait for all of them.
+     *
+     * @param plan The plan
+     * @return The outcome
+     * @throws IOException if the checkpoint cannot be synced at the end
+     * @throws InterruptedException if interrupted while waiting; running tasks are interrupted too
+     */
+    public Result run(BackfillPlan plan) throws IOException, InterruptedException {
+        return run(plan, null);
+    }
+
+    /**
+     * Run every task of a plan that is not checkpointed yet within a deadline. Requests, retries and
+     * backoff waits share the remaining budget; once it is exhausted running requests are cancelled and
+     * tasks not completed are reported failed with a {@link DeadlineExceededException}, to run again
+     * on the next run.
+     *
+     * @param plan The plan
+     * @param deadline The deadline, null for none
+     * @return The outcome
+     * @throws IllegalStateException if the checkpoint belongs to another query
+     * @throws IOException if the checkpoint cannot be synced at the end
+     * @throws InterruptedException if interrupted while waiting; running tasks are interrupted too
+     */
+    public Result run(BackfillPlan plan, final Deadline deadline) throws IOException, InterruptedException {
+        checkpoint.bind(query);
+        List<BackfillTask> pending = new ArrayList<BackfillTask>();
+        int skipped = 0;
+        for (BackfillTask task : plan.getTasks()) {
+            if (checkpoint.isDone(task)) {
+                skipped++;
+            } else {
+                pending.add(task);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, pending.size())));
+        Map<BackfillTask, Exception> failed = new LinkedHashMap<BackfillTask, Exception>();
+        List<BackfillTask> timedOut = new ArrayList<BackfillTask>();
+        int completed = 0;
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(pending.size());
+            for (final BackfillTask task : pending) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        runTask(task, deadline);
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    if (deadline == null) {
+                        futures.get(i).get();
+                    } else {
+                        futures.get(i).get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+                    }
+                    completed++;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    failed.put(pending.get(i), (Exception) cause);
+                } catch (TimeoutException e) {
+                    futures.get(i).cancel(true);
+                    failed.put(pending.get(i), new DeadlineExceededException(deadline, null));
+                    timedOut.add(pending.get(i));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            checkpoint.sync();
+        }
+        for (BackfillTask task : timedOut) {
+            // the task may have been checkpointed between the timeout and its cancellation
+            if (checkpoint.isDone(task)) {
+                failed.remove(task);
+                completed++;
+            }
+        }
+        return new Result(completed, skipped, failed);
+    }
+
+    private void runTask(BackfillTask task, Deadline deadline) throws Exception {
+        DefaultApi api = apis.get(task.getCluster());
+        if (api == null) {
+            throw new IllegalArgumentException("No API for cluster " + task.getCluster());
+        }
+        if (deadline != null) {
+            api = api.withDeadline(deadline);
+        }
+        CostQuery fetch = query.withWindow(task.getWindow());
+        for (int attempt = 1; ; attempt++) {
+            long backoff = retryBackoffMillis << Math.min(attempt - 1, 16);
+            try {
+                acquire();
+                AllocationSetRange range = api.getAllocation(fetch);
+                sink.accept(task, range);
+                checkpoint.markDone(task);
+                return;
+            } catch (ApiException e) {
+                if (attempt >= maxAttempts || !isRetryable(e) || !fitsBudget(backoff, deadline)) {
+                    throw e;
+                }
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || !fitsBudget(backoff, deadline)) {
+                    throw e;
+                }
+            }
+            Thread.sleep(backoff);
+        }
+    }
+
+    private static boolean isRetryable(ApiException e) {
+        if (e instanceof DeadlineExceededException) {
+            return false;
+        }
+        // code 0 is a failure before any response, e.g. a connection error
+        return e.getCode() == 0 || e.getCode() == 429 || e.getCode() >= 500;
+    }
+
+    /**
+     * Check whether a retry after the given backoff still starts before the deadline.
+     */
+    private static boolean fitsBudget(long backoffMillis, Deadline deadline) {
+        return deadline == null || TimeUnit.MILLISECONDS.toNanos(backoffMillis) < deadline.remainingNanos();
+    }
+
+    /**
+     * Wait for the next request slot of the shared rate limit.
+     */
+    private void acquire() throws InterruptedException {
+        if (permitIntervalNanos == 0) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long permit = Math.max(now, nextPermit);
+            nextPermit = permit + permitIntervalNanos;
+            wait = permit - now;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * The outcome of a run.
+     */
+    public static final class Result {
+        private final int completed;
+        private final int skipped;
+        private final Map<BackfillTask, Exception> failed;
+
+        Result(int completed, int skipped, Map<BackfillTask, Exception> failed) {
+            this.completed = completed;
+            this.skipped = skipped;
+            this.failed = Collections.unmodifiableMap(failed);
+        }
+
+        /**
+         * @return The number of tasks run to completion by this run
+         */
+        public int getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return The number of tasks skipped because the checkpoint had them
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return The failed tasks and their last error, in plan order
+         */
+        public Map<BackfillTask, Exception> getFailed() {
+            return failed;
+        }
+
+        public boolean isComplete() {
+            return failed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "Result{completed=" + completed + ", skipped=" + skipped + ", failed=" + failed.size() + "}";
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, DefaultApi> apis;
+        private final CostQuery query;
+        private final BackfillSink sink;
+        private final BackfillCheckpoint checkpoint;
+        private int threads = 4;
+        private double requestsPerSecond;
+        private int maxAttempts = 3;
+        private long retryBackoffMillis = 1000;
+
+        private Builder(Map<String, DefaultApi> apis, CostQuery query, BackfillSink sink, BackfillCheckpoint checkpoint) {
+            this.apis = apis;
+            this.query = query;
+            this.sink = sink;
+            this.checkpoint = checkpoint;
+        }
+
+        /**
+         * @param threads The number of tasks run at once, 4 by default
+         * @return This builder
+         */
+        public Builder threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param requestsPerSecond The request rate over all workers; 0, the default, for no limit
+         * @return This builder
+         */
+        public Builder requestsPerSecond(double requestsPerSecond) {
+            if (!(requestsPerSecond >= 0)) {
+                throw new IllegalArgumentException("The request rate must not be negative: " + requestsPerSecond);
+            }
+            this.requestsPerSecond = requestsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param maxAttempts The number of attempts per task, 3 by default
+         * @return This builder
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts <= 0) {
+                throw new IllegalArgumentException("The number of attempts must be positive: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param retryBackoffMillis The wait before the first retry, doubled for every further retry; 1000 by default
+         * @return This builder
+         */
+        public Builder retryBackoffMillis(long retryBackoffMillis) {
+            if (retryBackoffMillis < 0) {
+                throw new IllegalArgumentException("The retry backoff must not be negative: " + retryBackoffMillis);
+            }
+            this.retryBackoffMillis = retryBackoffMillis;
+            return this;
+        }
+
+        public BackfillRunner build() {
+            return new BackfillRunner(this);
+        }
+    }
+}
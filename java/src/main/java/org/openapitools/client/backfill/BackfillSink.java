@@ -0,0 +1,30 @@
+package org.openapitools.client.backfill;
+
+import java.io.IOException;
+
+import org.openapitools.client.model.AllocationSetRange;
+
+/**
+ * Receives the data of completed backfill tasks, e.g. to append it to a
+ * {@link org.openapitools.client.store.SegmentStore}:
+ * <pre>
+ * BackfillSink sink = (task, range) -&gt; store.append(range);
+ * </pre>
+ * <p>
+ * A task is recorded as completed only after the sink returns, so the sink should make the data
+ * durable before returning. It is called from several worker threads at once and must be thread-safe.
+ * Tasks interrupted between the sink and the checkpoint are run again on resume, so a sink may see
+ * the same task twice.
+ * </p>
+ */
+public interface BackfillSink {
+
+    /**
+     * Accept the data of a task.
+     *
+     * @param task The task
+     * @param range The fetched data
+     * @throws IOException to fail the task
+     */
+    void accept(BackfillTask task, AllocationSetRange range) throws IOException;
+}
@@ -0,0 +1,86 @@
+package org.openapitools.client.backfill;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * One unit of backfill work: a sub-window of one cluster.
+ */
+public final class BackfillTask {
+
+    private final String cluster;
+    private final Instant start;
+    private final Instant end;
+    private final String id;
+
+    /**
+     * Create a task.
+     *
+     * @param cluster The cluster name
+     * @param start The start of the sub-window, inclusive
+     * @param end The end of the sub-window, exclusive
+     * @throws IllegalArgumentException if the cluster name holds a line break or starts with {@code #}, or
+     *                                  the window is empty
+     */
+    public BackfillTask(String cluster, Instant start, Instant end) {
+        if (cluster.indexOf('\n') >= 0 || cluster.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Cluster names cannot contain line breaks: " + cluster);
+        }
+        if (cluster.startsWith("#")) {
+            // reserved for the records of the checkpoint other than tasks
+            throw new IllegalArgumentException("Cluster names cannot start with '#': " + cluster);
+        }
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("The task window is empty: " + start + " to " + end);
+        }
+        this.cluster = cluster;
+        this.start = start;
+        this.end = end;
+        this.id = cluster + " " + getWindow();
+    }
+
+    public String getCluster() {
+        return cluster;
+    }
+
+    public Instant getStart() {
+        return start;
+    }
+
+    public Instant getEnd() {
+        return end;
+    }
+
+    /**
+     * Get the sub-window in the format of the {@code window} query parameter.
+     *
+     * @return The window, e.g. {@code 2025-01-01T00:00:00Z,2025-01-02T00:00:00Z}
+     */
+    public String getWindow() {
+        return DateTimeFormatter.ISO_INSTANT.format(start) + "," + DateTimeFormatter.ISO_INSTANT.format(end);
+    }
+
+    /**
+     * Get the identity of the task, as recorded in a checkpoint.
+     *
+     * @return The cluster and window
+     */
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof BackfillTask && id.equals(((BackfillTask) o).id));
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
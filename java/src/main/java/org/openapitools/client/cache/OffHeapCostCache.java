@@ -0,0 +1,499 @@
+package org.openapitools.client.cache;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.client.Pair;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostQuery;
+import org.openapitools.client.snapshot.SnapshotReader;
+import org.openapitools.client.snapshot.SnapshotWriter;
+
+/**
+ * A cache of query results kept outside the Java heap.
+ * <p>
+ * Every result is encoded in the snapshot format of {@link SnapshotWriter} and appended to one of a
+ * fixed number of direct {@link ByteBuffer} slabs, so the cached allocations add no objects for the
+ * garbage collector to trace; only a small index entry per cached query stays on the heap. Hits are
+ * served as {@link SnapshotReader} views over the slab, which decode fields on access, without
+ * rebuilding the model objects unless {@link CachedResult#toRange()} is called.
+ * </p>
+ * <p>
+ * Slabs are filled in turn; when none has room left the oldest slab is emptied, dropping its entries,
+ * and reused. A slab is never reused while a result read from it is open, so close results promptly.
+ * Results larger than a slab are not cached.
+ * </p>
+ * <pre>
+ * OffHeapCostCache cache = OffHeapCostCache.builder().capacity(1L &lt;&lt; 30).build();
+ * try (OffHeapCostCache.CachedResult cached = cache.get(query)) {
+ *     if (cached != null) {
+ *         double cost = cached.getReader().sum(AllocationMetric.COST);
+ *     }
+ * }
+ * </pre>
+ */
+public final class OffHeapCostCache implements Closeable {
+
+    public static final long DEFAULT_CAPACITY = 256L << 20;
+    public static final int DEFAULT_SLAB_SIZE = 16 << 20;
+
+    // rough heap cost of an index entry: entry object, hash map node and table slot, key string header
+    private static final int ENTRY_OVERHEAD = 48 + 32 + 8 + 40;
+
+    private final int slabSize;
+    private final Slab[] slabs;
+    private final long expireAfterWriteNanos;
+    private final Map<String, Entry> index = new HashMap<String, Entry>();
+    private int current;
+    private long keyChars;
+    private long hits;
+    private long misses;
+    private long puts;
+    private long rejections;
+    private long evictions;
+    private long expirations;
+    private boolean closed;
+
+    private OffHeapCostCache(Builder builder) {
+        this.slabSize = builder.slabSize;
+        this.slabs = new Slab[(int) Math.max(1, builder.capacity / builder.slabSize)];
+        for (int s = 0; s < slabs.length; s++) {
+            slabs[s] = new Slab();
+        }
+        this.expireAfterWriteNanos = builder.expireAfterWrite == null ? 0 : builder.expireAfterWrite.toNanos();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Cache the result of a query under its {@link CostQuery#canonicalKey() canonical key}, recording
+     * its parameters as the snapshot metadata.
+     *
+     * @param query The query
+     * @param range The result
+     * @return True if cached, false if the result does not fit
+     */
+    public boolean put(CostQuery query, AllocationSetRange range) {
+        Map<String, String> metadata = new LinkedHashMap<String, String>();
+        for (Pair param : query.getQueryParams()) {
+            metadata.put(param.getName(), param.getValue());
+        }
+        return put(query.canonicalKey(), range, metadata);
+    }
+
+    /**
+     * Cache a result, replacing any result cached under the same key.
+     *
+     * @param key The key
+     * @param range The result
+     * @param metadata Metadata stored with the result
+     * @return True if cached, false if the result does not fit
+     */
+    public boolean put(String key, AllocationSetRange range, Map<String, String> metadata) {
+        // encode outside the lock; the bytes are short-lived
+        byte[] bytes = SnapshotWriter.encode(range, metadata);
+        synchronized (this) {
+            checkOpen();
+            remove(key);
+            Slab slab = bytes.length <= slabSize ? slabWithRoom(bytes.length) : null;
+            if (slab == null) {
+                rejections++;
+                return false;
+            }
+            if (slab.buffer == null) {
+                slab.buffer = ByteBuffer.allocateDirect(slabSize);
+            }
+            ByteBuffer target = slab.buffer.duplicate();
+            target.position(slab.used);
+            target.put(bytes);
+            Entry entry = new Entry(slab, slab.used, bytes.length,
+                expireAfterWriteNanos == 0 ? 0 : System.nanoTime() + expireAfterWriteNanos);
+            slab.used += bytes.length;
+            slab.live += bytes.length;
+            slab.keys.add(key);
+            index.put(key, entry);
+            keyChars += key.length();
+            puts++;
+            return true;
+        }
+    }
+
+    /**
+     * Look up the cached result of a query.
+     *
+     * @param query The query
+     * @return The result, to be closed after use; null if not cached
+     */
+    public CachedResult get(CostQuery query) {
+        return get(query.canonicalKey());
+    }
+
+    /**
+     * Look up a cached result.
+     *
+     * @param key The key
+     * @return The result, to be closed after use; null if not cached
+     */
+    public CachedResult get(String key) {
+        Slab slab;
+        ByteBuffer bytes;
+        synchronized (this) {
+            checkOpen();
+            Entry entry = index.get(key);
+            if (entry != null && entry.expiresAt != 0 && System.nanoTime() - entry.expiresAt >= 0) {
+                remove(key);
+                expirations++;
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            slab = entry.slab;
+            ByteBuffer view = slab.buffer.duplicate();
+            view.position(entry.offset);
+            view.limit(entry.offset + entry.length);
+            bytes = view.slice();
+            // pinned, the slab cannot be reused while the reader is built outside the lock
+            slab.pins++;
+        }
+        boolean read = false;
+        try {
+            CachedResult result = new CachedResult(key, slab, SnapshotReader.read(bytes));
+            read = true;
+            return result;
+        } finally {
+            if (!read) {
+                release(slab);
+            }
+        }
+    }
+
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Drop a cached result. Its space is reclaimed when its slab is reused.
+     *
+     * @param key The key
+     */
+    public synchronized void invalidate(String key) {
+        remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        for (String key : new ArrayList<String>(index.keySet())) {
+            remove(key);
+        }
+    }
+
+    public synchronized Stats getStats() {
+        long allocated = 0;
+        long live = 0;
+        for (Slab slab : slabs) {
+            allocated += slab.buffer == null ? 0 : slabSize;
+            live += slab.live;
+        }
+        long heap = (long) index.size() * ENTRY_OVERHEAD + keyChars * 2 + (long) slabs.length * 64;
+        return new Stats(hits, misses, puts, rejections, evictions, expirations, index.size(),
+            live, allocated, (long) slabs.length * slabSize, heap);
+    }
+
+    /**
+     * Drop all results and release the slabs. Open results stay readable until garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        index.clear();
+        keyChars = 0;
+        for (Slab slab : slabs) {
+            slab.buffer = null;
+            slab.keys.clear();
+            slab.used = 0;
+            slab.live = 0;
+        }
+        closed = true;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The cache is closed");
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = index.remove(key);
+        if (entry != null) {
+            entry.slab.live -= entry.length;
+            keyChars -= key.length();
+        }
+    }
+
+    /**
+     * Find the slab to append to, emptying the oldest unpinned slab if the current one is full.
+     */
+    private Slab slabWithRoom(int length) {
+        if (slabSize - slabs[current].used >= length) {
+            return slabs[current];
+        }
+        for (int i = 1; i <= slabs.length; i++) {
+            int candidate = (current + i) % slabs.length;
+            Slab slab = slabs[candidate];
+            if (slab.pins == 0) {
+                evict(slab);
+                current = candidate;
+                return slab;
+            }
+        }
+        return null;
+    }
+
+    private void evict(Slab slab) {
+        for (String key : slab.keys) {
+            Entry entry = index.get(key);
+            if (entry != null && entry.slab == slab) {
+                remove(key);
+                evictions++;
+            }
+        }
+        slab.keys.clear();
+        slab.used = 0;
+        slab.live = 0;
+    }
+
+    private synchronized void release(Slab slab) {
+        slab.pins--;
+    }
+
+    private static final class Slab {
+        ByteBuffer buffer;
+        int used;
+        int live;
+        int pins;
+        final List<String> keys = new ArrayList<String>();
+    }
+
+    private static final class Entry {
+        final Slab slab;
+        final int offset;
+        final int length;
+        final long expiresAt;
+
+        Entry(Slab slab, int offset, int length, long expiresAt) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * A cached result. Its slab is not reused until it is closed.
+     */
+    public final class CachedResult implements Closeable {
+        private final String key;
+        private final Slab slab;
+        private final SnapshotReader reader;
+        private boolean open = true;
+
+        CachedResult(String key, Slab slab, SnapshotReader reader) {
+            this.key = key;
+            this.slab = slab;
+            this.reader = reader;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Get the view over the cached bytes.
+         *
+         * @return The reader, valid until this result is closed
+         */
+        public SnapshotReader getReader() {
+            if (!open) {
+                throw new IllegalStateException("The cached result is closed");
+            }
+            return reader;
+        }
+
+        /**
+         * Decode the whole result into model objects on the heap.
+         *
+         * @return The range
+         */
+        public AllocationSetRange toRange() {
+            return getReader().toRange();
+        }
+
+        @Override
+        public void close() {
+            if (open) {
+                open = false;
+                release(slab);
+            }
+        }
+    }
+
+    /**
+     * A point-in-time view of the cache counters and memory use.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long puts;
+        private final long rejections;
+        private final long evictions;
+        private final long expirations;
+        private final int entries;
+        private final long liveBytes;
+        private final long allocatedBytes;
+        private final long capacityBytes;
+        private final long heapBytes;
+
+        Stats(long hits, long misses, long puts, long rejections, long evictions, long expirations, int entries,
+              long liveBytes, long allocatedBytes, long capacityBytes, long heapBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+            this.rejections = rejections;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.entries = entries;
+            this.liveBytes = liveBytes;
+            this.allocatedBytes = allocatedBytes;
+            this.capacityBytes = capacityBytes;
+            this.heapBytes = heapBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getPuts() {
+            return puts;
+        }
+
+        /**
+         * @return The number of results not cached because they were larger than a slab or every slab was in use
+         */
+        public long getRejections() {
+            return rejections;
+        }
+
+        /**
+         * @return The number of results dropped to reuse their slab
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getExpirations() {
+            return expirations;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return The off-heap bytes of the cached results
+         */
+        public long getLiveBytes() {
+            return liveBytes;
+        }
+
+        /**
+         * @return The off-heap bytes of the slabs allocated so far
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getCapacityBytes() {
+            return capacityBytes;
+        }
+
+        /**
+         * @return An estimate of the heap bytes used by the index
+         */
+        public long getHeapBytes() {
+            return heapBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hits=" + hits + ", misses=" + misses + ", puts=" + puts + ", rejections=" + rejections
+                + ", evictions=" + evictions + ", expirations=" + expirations + ", entries=" + entries
+                + ", liveBytes=" + liveBytes + ", allocatedBytes=" + allocatedBytes + ", capacityBytes=" + capacityBytes
+                + ", heapBytes=" + heapBytes + "}";
+        }
+    }
+
+    public static final class Builder {
+        private long capacity = DEFAULT_CAPACITY;
+        private int slabSize = DEFAULT_SLAB_SIZE;
+        private Duration expireAfterWrite;
+
+        private Builder() {
+        }
+
+        /**
+         * @param capacity The off-heap bytes to use at most, rounded down to whole slabs; 256 MiB by default
+         * @return This builder
+         */
+        public Builder capacity(long capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param slabSize The size of a slab and so of the largest cacheable result; 16 MiB by default
+         * @return This builder
+         */
+        public Builder slabSize(int slabSize) {
+            if (slabSize <= 0) {
+                throw new IllegalArgumentException("The slab size must be positive: " + slabSize);
+            }
+            this.slabSize = slabSize;
+            return this;
+        }
+
+        /**
+         * @param expireAfterWrite The time after which a result is no longer served, null, the default, for never
+         * @return This builder
+         */
+        public Builder expireAfterWrite(Duration expireAfterWrite) {
+            if (expireAfterWrite != null && (expireAfterWrite.isZero() || expireAfterWrite.isNegative())) {
+                throw new IllegalArgumentException("The expiry must be positive: " + expireAfterWrite);
+            }
+            this.expireAfterWrite = expireAfterWrite;
+            return this;
+        }
+
+        public OffHeapCostCache build() {
+            if (capacity < slabSize) {
+                throw new IllegalArgumentException("The capacity " + capacity + " is smaller than a slab of " + slabSize);
+            }
+            return new OffHeapCostCache(this);
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package org.openapitools.client.collector;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.DefaultApi;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostQuery;
+
+/**
+ * Runs registered cost queries periodically with {@link DefaultApi#getCost(CostQuery)} and hands the
+ * results to subscribers, instead of a hand-written {@link ScheduledExecutorService} loop per query.
+ * <pre>
+ * CostCollector collector = CostCollector.builder(api).threads(2).build();
+ * collector.subscribe(new CostCollector.Subscriber() {
+ *     public void onResult(CostCollector.Result result) { ... }
+ * });
+ * collector.register("namespaces", query, Duration.ofMinutes(1));
+ * </pre>
+ * <p>
+ * The first run of a query starts at a random point of its first period and every later run is moved by
+ * a random jitter, so queries and processes registered at the same time do not call the API in the same
+ * second. A run that comes while the previous run of the query is still going is skipped rather than
+ * queued. When a run fails or takes longer than the slow fraction of the period, the period of the query
+ * doubles, up to the maximum backoff, and halves back with every fast run.
+ * </p>
+ * <p>
+ * Results, including failures, go through a bounded queue to a single delivery thread calling the
+ * subscribers in turn, so a slow subscriber does not hold up the queries. When the queue is full the
+ * oldest result is dropped and counted.
+ * </p>
+ */
+public final class CostCollector implements Closeable {
+
+    /**
+     * Receives the results of every query, on the delivery thread.
+     */
+    public interface Subscriber {
+
+        /**
+         * @param result The result of a run, successful or not
+         */
+        void onResult(Result result);
+    }
+
+    private final DefaultApi api;
+    private final double jitter;
+    private final double slowFraction;
+    private final int maxBackoff;
+    private final ScheduledExecutorService executor;
+    private final BlockingQueue<Result> queue;
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread delivery;
+
+    private CostCollector(Builder builder) {
+        this.api = builder.api;
+        this.jitter = builder.jitter;
+        this.slowFraction = builder.slowFraction;
+        this.maxBackoff = builder.maxBackoff;
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(builder.threads, daemonThreads("cost-collector"));
+        pool.setRemoveOnCancelPolicy(true);
+        this.executor = pool;
+        this.queue = new ArrayBlockingQueue<Result>(builder.queueCapacity);
+        this.delivery = daemonThreads("cost-collector-delivery").newThread(new Runnable() {
+            @Override
+            public void run() {
+                deliver();
+            }
+        });
+        delivery.start();
+    }
+
+    /**
+     * Create a builder.
+     *
+     * @param api The API to fetch with
+     * @return The builder
+     */
+    public static Builder builder(DefaultApi api) {
+        return new Builder(api);
+    }
+
+    /**
+     * Run a query periodically, starting within its first period.
+     *
+     * @param name The name of the query, reported with its results
+     * @param query The query
+     * @param period The time between runs
+     * @return The registration, to cancel the query
+     * @throws IllegalArgumentException if the period is not positive
+     * @throws RejectedExecutionException if the collector is closed
+     */
+    public Registration register(String name, CostQuery query, Duration period) {
+        if (period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("The period must be positive: " + period);
+        }
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The collector is closed");
+        }
+        Registration registration = new Registration(name, query, period.toNanos());
+        registration.schedule(ThreadLocalRandom.current().nextLong(registration.periodNanos));
+        return registration;
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * @return The number of results dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stop running queries and delivering results. Queued results are not delivered. Calls already
+     * running are not aborted: their threads are interrupted, but OkHttp may still complete the call
+     * or wait for its timeout; their results are discarded.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        delivery.interrupt();
+    }
+
+    private void publish(Result result) {
+        while (!queue.offer(result)) {
+            // the freshest data matters most, so make room by dropping the oldest result
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    private void deliver() {
+        while (true) {
+            Result result;
+            try {
+                result = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Subscriber subscriber : subscribers) {
+                try {
+                    subscriber.onResult(result);
+                } catch (RuntimeException e) {
+                    // a failing subscriber must not stop the others or the delivery thread
+                }
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * A query registered with the collector.
+     */
+    public final class Registration {
+        private final String name;
+        private final CostQuery query;
+        private final long periodNanos;
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        // guarded by this
+        private boolean running;
+        private boolean cancelled;
+        private int backoff = 1;
+        private ScheduledFuture<?> next;
+
+        Registration(String name, CostQuery query, long periodNanos) {
+            this.name = name;
+            this.query = query;
+            this.periodNanos = periodNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public CostQuery getQuery() {
+            return query;
+        }
+
+        /**
+         * @return The time between runs with the current backoff applied
+         */
+        public synchronized Duration getEffectivePeriod() {
+            return Duration.ofNanos(periodNanos * backoff);
+        }
+
+        /**
+         * @return The number of runs completed, successful or not
+         */
+        public long getRuns() {
+            return runs.get();
+        }
+
+        /**
+         * @return The number of runs skipped because the previous run was still going
+         */
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Stop running the query; a running call completes and its result is still delivered.
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+
+        private synchronized void schedule(long delayNanos) {
+            if (cancelled || executor.isShutdown()) {
+                return;
+            }
+            try {
+                next = executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        tick();
+                    }
+                }, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed meanwhile: a run still going ends without a successor
+            }
+        }
+
+        private void tick() {
+            long start = System.nanoTime();
+            double offset = jitter == 0 ? 0 : ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+            synchronized (this) {
+                // the next run is due a period after this one, however long this one takes
+                schedule(Math.max(0, (long) (periodNanos * backoff * (1 + offset))));
+                if (running) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+                running = true;
+            }
+            Instant time = Instant.now();
+            AllocationSetRange range = null;
+            ApiException error = null;
+            try {
+                range = api.getCost(query);
+            } catch (ApiException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new ApiException(e);
+            }
+            long latency = System.nanoTime() - start;
+            synchronized (this) {
+                running = false;
+                boolean slow = error != null || latency > periodNanos * slowFraction;
+                int previous = backoff;
+                backoff = slow ? Math.min(maxBackoff, backoff * 2) : Math.max(1, backoff / 2);
+                // move the next run, scheduled with the previous backoff, unless it has started already
+                if (backoff != previous && next.cancel(false)) {
+                    long due = start + (long) (periodNanos * backoff * (1 + offset));
+                    schedule(Math.max(0, due - System.nanoTime()));
+                }
+            }
+            runs.incrementAndGet();
+            if (error != null) {
+                failures.incrementAndGet();
+            }
+            publish(new Result(this, time, latency, range, error));
+        }
+    }
+
+    /**
+     * The outcome of a run of a registered query.
+     */
+    public static final class Result {
+        private final Registration registration;
+        private final Instant time;
+        private final long latencyNanos;
+        private final AllocationSetRange range;
+        private final ApiException error;
+
+        Result(Registration registration, Instant time, long latencyNanos, AllocationSetRange range, ApiException error) {
+            this.registration = registration;
+            this.time = time;
+            this.latencyNanos = latencyNanos;
+            this.range = range;
+            this.error = error;
+        }
+
+        public Registration getRegistration() {
+            return registration;
+        }
+
+        public String getName() {
+            return registration.getName();
+        }
+
+        /**
+         * @return The time the run started
+         */
+        public Instant getTime() {
+            return time;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         * @return The response, null if the run failed
+         */
+        public AllocationSetRange getRange() {
+            return range;
+        }
+
+        /**
+         * @return The failure, null if the run succeeded
+         */
+        public ApiException getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    public static final class Builder {
+        private final DefaultApi api;
+        private int threads = 2;
+        private double jitter = 0.1;
+        private double slowFraction = 0.5;
+        private int maxBackoff = 8;
+        private int queueCapacity = 256;
+
+        private Builder(DefaultApi api) {
+            this.api = api;
+        }
+
+        /**
+         * @param threads The queries running at once at most, 2 by default
+         * @return This builder
+         */
+        public Builder threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("The thread count must be positive: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param jitter The fraction of the period every run is moved by at most, earlier or later, 0.1 by default
+         * @return This builder
+         */
+        public Builder jitter(double jitter) {
+            if (!(jitter >= 0 && jitter < 1)) {
+                throw new IllegalArgumentException("The jitter must be at least 0 and below 1: " + jitter);
+            }
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * @param slowFraction The fraction of the period from which a run is slow and backs off, 0.5 by default
+         * @return This builder
+         */
+        public Builder slowFraction(double slowFraction) {
+            if (!(slowFraction > 0)) {
+                throw new IllegalArgumentException("The slow fraction must be positive: " + slowFraction);
+            }
+            this.slowFraction = slowFraction;
+            return this;
+        }
+
+        /**
+         * @param maxBackoff The factor a period is multiplied by at most when backing off, 8 by default; 1 to never back off
+         * @return This builder
+         */
+        public Builder maxBackoff(int maxBackoff) {
+            if (maxBackoff < 1) {
+                throw new IllegalArgumentException("The maximum backoff must be at least 1: " + maxBackoff);
+            }
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * @param queueCapacity The results waiting for the subscribers at most, 256 by default
+         * @return This builder
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            if (queueCapacity <= 0) {
+                throw new IllegalArgumentException("The queue capacity must be positive: " + queueCapacity);
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public CostCollector build() {
+            return new CostCollector(this);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package org.openapitools.client.collector;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.DefaultApi;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.query.CostQuery;
+import org.openapitools.client.stream.AllocationHandler;
+import org.openapitools.client.stream.AllocationProjection;
+
+/**
+ * Keeps per-key cost totals over a sliding window without re-fetching the whole window.
+ * <p>
+ * The window is split into step-sized buckets held in a ring buffer. Every {@link #tick()} fetches
+ * only the steps completed since the previous tick, adds them to the running totals and evicts the
+ * buckets that fell out of the window. The first tick fills all buckets with a single query using
+ * the {@code step} parameter. Keys are the entry keys of the response, so aggregate the query by the
+ * dimension to track, e.g. {@code namespace}.
+ * </p>
+ * <pre>
+ * CostQuery query = CostQuery.builder("1h").aggregate(CostAggregate.NAMESPACE).build();
+ * IncrementalCostTracker tracker = new IncrementalCostTracker(api, query, Duration.ofHours(1), 24);
+ * tracker.tick();                        // e.g. once a minute
+ * Map&lt;String, Double&gt; last24h = tracker.getTotals();
+ * </pre>
+ * <p>
+ * Step boundaries are aligned to the epoch. Methods are synchronized, so the tracker can be ticked
+ * and read from different threads.
+ * </p>
+ */
+public class IncrementalCostTracker {
+
+    private static final AllocationProjection PROJECTION =
+        AllocationProjection.of(Allocation.SERIALIZED_NAME_COST, Allocation.SERIALIZED_NAME_START);
+
+    private final DefaultApi api;
+    private final CostQuery query;
+    private final long stepMillis;
+    private final String step;
+    private final Duration delay;
+    private final Clock clock;
+
+    private final Bucket[] ring;
+    private int head;
+    private int filled;
+    private long end = Long.MIN_VALUE;
+    private final Map<String, Total> totals = new HashMap<String, Total>();
+
+    /**
+     * Create a tracker over {@code buckets * step}.
+     *
+     * @param api The API to fetch with
+     * @param query The query; its window is replaced on every fetch
+     * @param step The bucket size, a whole number of seconds
+     * @param buckets The number of buckets in the window
+     */
+    public IncrementalCostTracker(DefaultApi api, CostQuery query, Duration step, int buckets) {
+        this(api, query, step, buckets, Duration.ZERO, Clock.systemUTC());
+    }
+
+    /**
+     * Create a tracker over {@code buckets * step}.
+     *
+     * @param api The API to fetch with
+     * @param query The query; its window is replaced on every fetch
+     * @param step The bucket size, a whole number of seconds
+     * @param buckets The number of buckets in the window
+     * @param delay How long to wait after a step ends before fetching it, to let the server settle its data
+     * @param clock The clock deciding which steps are complete
+     * @throws IllegalArgumentException if the step or bucket count is invalid
+     */
+    public IncrementalCostTracker(DefaultApi api, CostQuery query, Duration step, int buckets, Duration delay, Clock clock) {
+        if (step.getSeconds() <= 0 || step.getNano() != 0) {
+            throw new IllegalArgumentException("The step must be a positive whole number of seconds: " + step);
+        }
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("The bucket count must be positive: " + buckets);
+        }
+        this.api = api;
+        this.query = query;
+        this.stepMillis = step.toMillis();
+        this.step = formatDuration(step.getSeconds());
+        this.delay = delay;
+        this.clock = clock;
+        this.ring = new Bucket[buckets];
+    }
+
+    /**
+     * Fetch the steps completed since the last tick and slide the window forward.
+     *
+     * @return The number of steps fetched, 0 if no step completed since the last tick
+     * @throws ApiException If fail to fetch; the tracker is left unchanged
+     */
+    public synchronized int tick() throws ApiException {
+        long now = clock.millis() - delay.toMillis();
+        long newEnd = Math.floorDiv(now, stepMillis) * stepMillis;
+        if (end != Long.MIN_VALUE && newEnd <= end) {
+            return 0;
+        }
+        long steps = end == Long.MIN_VALUE ? ring.length : Math.min(ring.length, (newEnd - end) / stepMillis);
+        long start = newEnd - steps * stepMillis;
+
+        CostQuery fetch = query.toBuilder()
+            .window(formatWindow(start, newEnd))
+            .step(steps > 1 ? step : null)
+            .build();
+        BucketHandler handler = new BucketHandler(start, stepMillis, (int) steps);
+        api.streamCost(fetch, PROJECTION, handler);
+
+        for (Bucket bucket : handler.buckets) {
+            push(bucket);
+        }
+        end = newEnd;
+        return (int) steps;
+    }
+
+    /**
+     * Get the total cost of every key over the window.
+     *
+     * @return A new map of key to cost
+     */
+    public synchronized Map<String, Double> getTotals() {
+        Map<String, Double> result = new HashMap<String, Double>(totals.size() * 2);
+        for (Map.Entry<String, Total> e : totals.entrySet()) {
+            result.put(e.getKey(), e.getValue().cost);
+        }
+        return result;
+    }
+
+    /**
+     * Get the total cost of one key over the window.
+     *
+     * @param key The key
+     * @return The cost, 0 if the key has no cost in the window
+     */
+    public synchronized double getTotal(String key) {
+        Total total = totals.get(key);
+        return total == null ? 0 : total.cost;
+    }
+
+    /**
+     * Get the end of the window, exclusive.
+     *
+     * @return The end, null before the first tick
+     */
+    public synchronized Instant getEnd() {
+        return end == Long.MIN_VALUE ? null : Instant.ofEpochMilli(end);
+    }
+
+    /**
+     * Get the number of buckets holding data.
+     *
+     * @return The number of filled buckets, up to the bucket count
+     */
+    public synchronized int getFilledBuckets() {
+        return filled;
+    }
+
+    private void push(Bucket bucket) {
+        Bucket evicted = ring[head];
+        if (evicted != null) {
+            for (int i = 0; i < evicted.size; i++) {
+                Total total = totals.get(evicted.keys[i]);
+                total.cost -= evicted.costs[i];
+                if (--total.buckets == 0) {
+                    totals.remove(evicted.keys[i]);
+                }
+            }
+        } else {
+            filled++;
+        }
+        for (int i = 0; i < bucket.size; i++) {
+            Total total = totals.get(bucket.keys[i]);
+            if (total == null) {
+                total = new Total();
+                totals.put(bucket.keys[i], total);
+            }
+            total.cost += bucket.costs[i];
+            total.buckets++;
+        }
+        ring[head] = bucket;
+        head = (head + 1) % ring.length;
+    }
+
+    private static String formatWindow(long start, long end) {
+        return DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(start)) + ","
+            + DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(end));
+    }
+
+    static String formatDuration(long seconds) {
+        if (seconds % 86400 == 0) {
+            return seconds / 86400 + "d";
+        }
+        if (seconds % 3600 == 0) {
+            return seconds / 3600 + "h";
+        }
+        if (seconds % 60 == 0) {
+            return seconds / 60 + "m";
+        }
+        return seconds + "s";
+    }
+
+    private static final class Total {
+        double cost;
+        int buckets;
+    }
+
+    /**
+     * The costs of one step, one entry per key.
+     */
+    private static final class Bucket {
+        String[] keys = new String[16];
+        double[] costs = new double[16];
+        int size;
+
+        void add(String key, double cost) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                costs = Arrays.copyOf(costs, size * 2);
+            }
+            keys[size] = key;
+            costs[size] = cost;
+            size++;
+        }
+    }
+
+    /**
+     * Sorts the entries of a response into one bucket per step, by the start of every allocation.
+     */
+    private static final class BucketHandler implements AllocationHandler {
+        final Bucket[] buckets;
+        private final long start;
+        private final long stepMillis;
+
+        BucketHandler(long start, long stepMillis, int steps) {
+            this.start = start;
+            this.stepMillis = stepMillis;
+            this.buckets = new Bucket[steps];
+            for (int i = 0; i < steps; i++) {
+                buckets[i] = new Bucket();
+            }
+        }
+
+        @Override
+        public void onAllocation(int window, String key, Allocation allocation) {
+            if (allocation == null || allocation.getCost() == null) {
+                return;
+            }
+            // the server omits windows without data, so the window number is only a fallback
+            int index = window;
+            if (allocation.getStart() != null) {
+                index = (int) Math.floorDiv(allocation.getStart().toInstant().toEpochMilli() - start, stepMillis);
+            }
+            if (index >= 0 && index < buckets.length) {
+                buckets[index].add(key, allocation.getCost());
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package org.openapitools.client.exporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openapitools.client.ApiException;
+import org.openapitools.client.api.DefaultApi;
+import org.openapitools.client.query.CostQuery;
+
+/**
+ * An embeddable Prometheus/OpenMetrics exporter for cost data, built on the JDK HTTP server.
+ * <p>
+ * A background thread runs the query with {@link DefaultApi#streamCost} on a fixed schedule and renders
+ * the entries of the last window of the response as gauges, labelled with the entry key and the
+ * namespace, controller and pod of the entry. The rendered payload, gzipped too if enabled, is swapped
+ * in atomically, and scrapes write the current bytes as they are: scrape latency does not depend on
+ * API latency and scrapes never trigger API calls. When a refresh fails the previous data stays
+ * exposed, and the exporter's own metrics report the failure.
+ * </p>
+ * <pre>
+ * CostExporter exporter = CostExporter.builder(api, CostQuery.builder("1h").build())
+ *     .port(9402)
+ *     .refreshInterval(Duration.ofMinutes(1))
+ *     .build();
+ * exporter.start();
+ * </pre>
+ */
+public final class CostExporter implements Closeable {
+
+    static final String OPENMETRICS_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    static final String TEXT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final byte[] EOF = "# EOF\n".getBytes(StandardCharsets.UTF_8);
+
+    private final DefaultApi api;
+    private final CostQuery query;
+    private final InetSocketAddress address;
+    private final String path;
+    private final String prefix;
+    private final long refreshMillis;
+    private final boolean gzip;
+
+    private final AtomicReference<Payload> payload = new AtomicReference<Payload>();
+    private final Object refreshLock = new Object();
+    private byte[] data = new byte[0];
+    private long refreshes;
+    private long failures;
+    private double lastSuccessSeconds;
+    private double lastDurationSeconds;
+    private int series;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ScheduledExecutorService refresher;
+
+    private CostExporter(Builder builder) {
+        this.api = builder.api;
+        this.query = builder.query;
+        this.address = builder.address;
+        this.path = builder.path;
+        this.prefix = builder.prefix;
+        this.refreshMillis = builder.refreshInterval.toMillis();
+        this.gzip = builder.gzip;
+        payload.set(render());
+    }
+
+    /**
+     * Create a builder.
+     *
+     * @param api The API to fetch with
+     * @param query The query run on every refresh; a single window without {@code step} is the usual choice
+     * @return The builder
+     */
+    public static Builder builder(DefaultApi api, CostQuery query) {
+        return new Builder(api, query);
+    }
+
+    /**
+     * Start serving and refreshing. The first refresh runs immediately in the background.
+     *
+     * @throws IOException if the server cannot bind
+     * @throws IllegalStateException if already started
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The exporter is already started");
+        }
+        HttpServer httpServer = HttpServer.create(address, 0);
+        httpServer.createContext(path, new ScrapeHandler());
+        serverExecutor = Executors.newFixedThreadPool(2, daemonThreads("cost-exporter-http"));
+        httpServer.setExecutor(serverExecutor);
+        httpServer.start();
+        server = httpServer;
+        refresher = Executors.newSingleThreadScheduledExecutor(daemonThreads("cost-exporter-refresh"));
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, 0, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the address the server is bound to, e.g. to find the port when started on port 0.
+     *
+     * @return The address, null if not started
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return server == null ? null : server.getAddress();
+    }
+
+    /**
+     * Run the query and swap in a new payload now. Called by the background refresher; may also be
+     * called directly, e.g. without starting the server, to use {@link #getPayload}.
+     *
+     * @return True if the query succeeded; on failure the previous data stays exposed
+     */
+    public boolean refresh() {
+        synchronized (refreshLock) {
+            long start = System.nanoTime();
+            boolean success;
+            try {
+                MetricsRenderer renderer = new MetricsRenderer(prefix);
+                api.streamCost(query, MetricsRenderer.projection(), renderer);
+                data = renderer.render();
+                series = renderer.getSeries();
+                lastSuccessSeconds = System.currentTimeMillis() / 1000.0;
+                success = true;
+            } catch (ApiException | RuntimeException e) {
+                failures++;
+                success = false;
+            }
+            refreshes++;
+            lastDurationSeconds = (System.nanoTime() - start) / 1e9;
+            payload.set(render());
+            return success;
+        }
+    }
+
+    /**
+     * Get the current scrape body.
+     *
+     * @param openMetrics True for the OpenMetrics format, false for the Prometheus text format
+     * @return The bytes; not to be modified
+     */
+    public byte[] getPayload(boolean openMetrics) {
+        Payload current = payload.get();
+        return openMetrics ? current.openMetrics : current.text;
+    }
+
+    /**
+     * Stop serving and refreshing.
+     */
+    @Override
+    public synchronized void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (serverExecutor != null) {
+            serverExecutor.shutdownNow();
+            serverExecutor = null;
+        }
+    }
+
+    private Payload render() {
+        byte[] text = render(false);
+        byte[] openMetrics = render(true);
+        return new Payload(text, openMetrics, gzip ? gzip(text) : null, gzip ? gzip(openMetrics) : null);
+    }
+
+    private byte[] render(boolean openMetrics) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + 1024);
+        out.write(data, 0, data.length);
+        gauge(out, "exporter_last_success_timestamp_seconds", "Time of the last successful refresh.", lastSuccessSeconds);
+        gauge(out, "exporter_refresh_duration_seconds", "Duration of the last refresh.", lastDurationSeconds);
+        gauge(out, "exporter_series", "Number of allocations exposed.", series);
+        counter(out, openMetrics, "exporter_refreshes", "Refreshes run.", refreshes);
+        counter(out, openMetrics, "exporter_refresh_failures", "Refreshes that failed.", failures);
+        if (openMetrics) {
+            out.write(EOF, 0, EOF.length);
+        }
+        return out.toByteArray();
+    }
+
+    private void gauge(ByteArrayOutputStream out, String name, String help, double value) {
+        String metric = prefix + name;
+        MetricsRenderer.write(out, "# HELP " + metric + " " + help + "\n# TYPE " + metric + " gauge\n"
+            + metric + " " + MetricsRenderer.number(value) + "\n");
+    }
+
+    private void counter(ByteArrayOutputStream out, boolean openMetrics, String name, String help, long value) {
+        // OpenMetrics names the family without the _total suffix of its sample, the text format with it
+        String family = prefix + name + (openMetrics ? "" : "_total");
+        MetricsRenderer.write(out, "# HELP " + family + " " + help + "\n# TYPE " + family + " counter\n"
+            + prefix + name + "_total " + value + "\n");
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream zip = new GZIPOutputStream(out)) {
+            zip.write(bytes);
+        } catch (IOException e) {
+            // cannot happen with an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * The rendered bodies of one refresh.
+     */
+    private static final class Payload {
+        final byte[] text;
+        final byte[] openMetrics;
+        final byte[] textGzip;
+        final byte[] openMetricsGzip;
+
+        Payload(byte[] text, byte[] openMetrics, byte[] textGzip, byte[] openMetricsGzip) {
+            this.text = text;
+            this.openMetrics = openMetrics;
+            this.textGzip = textGzip;
+            this.openMetricsGzip = openMetricsGzip;
+        }
+    }
+
+    private final class ScrapeHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                Headers request = exchange.getRequestHeaders();
+                String accept = request.getFirst("Accept");
+                boolean openMetrics = accept != null && accept.contains("application/openmetrics-text");
+                String acceptEncoding = request.getFirst("Accept-Encoding");
+                Payload current = payload.get();
+                byte[] body = openMetrics ? current.openMetrics : current.text;
+                byte[] zipped = openMetrics ? current.openMetricsGzip : current.textGzip;
+                Headers response = exchange.getResponseHeaders();
+                response.set("Content-Type", openMetrics ? OPENMETRICS_TYPE : TEXT_TYPE);
+                if (zipped != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    response.set("Content-Encoding", "gzip");
+                    body = zipped;
+                }
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final DefaultApi api;
+        private final CostQuery query;
+        private InetSocketAddress address = new InetSocketAddress(9402);
+        private String path = "/metrics";
+        private String prefix = "ack_";
+        private Duration refreshInterval = Duration.ofMinutes(1);
+        private boolean gzip = true;
+
+        private Builder(DefaultApi api, CostQuery query) {
+            this.api = api;
+            this.query = query;
+        }
+
+        /**
+         * @param port The port to listen on, on all interfaces; 9402 by default, 0 for any free port
+         * @return This builder
+         */
+        public Builder port(int port) {
+            this.address = new InetSocketAddress(port);
+            return this;
+        }
+
+        public Builder address(InetSocketAddress address) {
+            this.address = address;
+            return this;
+        }
+
+        /**
+         * @param path The scrape path, {@code /metrics} by default
+         * @return This builder
+         */
+        public Builder path(String path) {
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * @param prefix The metric name prefix, {@code ack_} by default
+         * @return This builder
+         */
+        public Builder prefix(String prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        /**
+         * @param refreshInterval The delay between the end of a refresh and the start of the next, one minute by default
+         * @return This builder
+         */
+        public Builder refreshInterval(Duration refreshInterval) {
+            if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+                throw new IllegalArgumentException("The refresh interval must be positive: " + refreshInterval);
+            }
+            this.refreshInterval = refreshInterval;
+            return this;
+        }
+
+        /**
+         * @param gzip Whether to keep a gzipped copy of every payload for scrapers accepting it, true by default
+         * @return This builder
+         */
+        public Builder gzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+
+        public CostExporter build() {
+            return new CostExporter(this);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.openapitools.client.exporter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.openapitools.client.aggregation.AllocationMetric;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.stream.AllocationHandler;
+import org.openapitools.client.stream.AllocationProjection;
+
+/**
+ * Renders the entries of the last window of a streamed response as gauge samples, one series per
+ * entry and metric, grouped by metric family as the exposition formats require.
+ */
+final class MetricsRenderer implements AllocationHandler {
+
+    static final AllocationMetric[] METRICS = {
+        AllocationMetric.COST,
+        AllocationMetric.CUSTOM_COST,
+        AllocationMetric.CPU_CORE_REQUEST_AVERAGE,
+        AllocationMetric.CPU_CORE_USAGE_AVERAGE,
+        AllocationMetric.RAM_BYTE_REQUEST_AVERAGE,
+        AllocationMetric.RAM_BYTE_USAGE_AVERAGE,
+    };
+
+    private static final String[] HELP = {
+        "Cost of the allocation over the query window.",
+        "Custom cost of the allocation over the query window.",
+        "Average CPU cores requested over the query window.",
+        "Average CPU cores used over the query window.",
+        "Average RAM bytes requested over the query window.",
+        "Average RAM bytes used over the query window.",
+    };
+
+    private final String[] names = new String[METRICS.length];
+    private final ByteArrayOutputStream[] families = new ByteArrayOutputStream[METRICS.length];
+    private final StringBuilder line = new StringBuilder(256);
+    private int series;
+
+    MetricsRenderer(String prefix) {
+        for (int m = 0; m < families.length; m++) {
+            names[m] = prefix + METRICS[m].name().toLowerCase(Locale.ROOT);
+            families[m] = new ByteArrayOutputStream();
+        }
+    }
+
+    static AllocationProjection projection() {
+        List<String> fields = new ArrayList<String>();
+        for (AllocationMetric metric : METRICS) {
+            fields.add(metric.getField());
+        }
+        fields.add(Allocation.SERIALIZED_NAME_PROPERTIES + "." + AllocationProperties.SERIALIZED_NAME_NAMESPACE);
+        fields.add(Allocation.SERIALIZED_NAME_PROPERTIES + "." + AllocationProperties.SERIALIZED_NAME_CONTROLLER_KIND);
+        fields.add(Allocation.SERIALIZED_NAME_PROPERTIES + "." + AllocationProperties.SERIALIZED_NAME_CONTROLLER);
+        fields.add(Allocation.SERIALIZED_NAME_PROPERTIES + "." + AllocationProperties.SERIALIZED_NAME_POD);
+        return AllocationProjection.of(fields);
+    }
+
+    @Override
+    public void onWindow(int window, boolean isNull) {
+        if (!isNull) {
+            // only the last window is exposed
+            for (ByteArrayOutputStream family : families) {
+                family.reset();
+            }
+            series = 0;
+        }
+    }
+
+    @Override
+    public void onAllocation(int window, String key, Allocation allocation) {
+        if (allocation == null) {
+            return;
+        }
+        line.setLength(0);
+        line.append("{allocation=\"");
+        escape(key == null ? "" : key);
+        line.append('"');
+        AllocationProperties properties = allocation.getProperties();
+        if (properties != null) {
+            label("namespace", properties.getNamespace());
+            label("controller_kind", properties.getControllerKind());
+            label("controller", properties.getController());
+            label("pod", properties.getPod());
+        }
+        line.append("} ");
+        String labels = line.toString();
+        for (int m = 0; m < METRICS.length; m++) {
+            Float value = METRICS[m].get(allocation);
+            if (value != null) {
+                write(families[m], names[m] + labels + number(value) + "\n");
+            }
+        }
+        series++;
+    }
+
+    int getSeries() {
+        return series;
+    }
+
+    /**
+     * Get the rendered families.
+     *
+     * @return The metric text, without a terminating {@code # EOF}
+     */
+    byte[] render() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int m = 0; m < METRICS.length; m++) {
+            write(out, "# HELP " + names[m] + " " + HELP[m] + "\n# TYPE " + names[m] + " gauge\n");
+            byte[] samples = families[m].toByteArray();
+            out.write(samples, 0, samples.length);
+        }
+        return out.toByteArray();
+    }
+
+    private void label(String name, String value) {
+        if (value != null && !value.isEmpty()) {
+            line.append(',').append(name).append("=\"");
+            escape(value);
+            line.append('"');
+        }
+    }
+
+    private void escape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                line.append('\\').append(c);
+            } else if (c == '\n') {
+                line.append("\\n");
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    static String number(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String number(Float value) {
+        // the shortest decimal of the float, not of its widened double
+        return number(Double.parseDouble(value.toString()));
+    }
+
+    static void write(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,401 @@
+package org.openapitools.client.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.IntConsumer;
+
+import org.openapitools.client.aggregation.AllocationMetric;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostFilter;
+import org.openapitools.client.query.FilterField;
+import org.openapitools.client.stream.AllocationHandler;
+
+/**
+ * An immutable inverted index over the entries of fetched allocations.
+ * <p>
+ * Every non-null entry becomes a row, numbered in response order. Namespace, node, controller kind,
+ * controller, cluster and every label key/value map to a {@link RowBitmap} of rows, so multi-predicate
+ * questions are answered with bitmap AND/OR instead of scanning allocations, and the metrics of the
+ * matching rows are summed from primitive columns:
+ * </p>
+ * <pre>
+ * AllocationIndex index = AllocationIndex.build(range);
+ * RowBitmap rows = index.label("team", "a")
+ *     .and(index.label("env", "prod"))
+ *     .and(index.rows(FilterField.NODE, "node-1", "node-2"));
+ * double cost = index.sum(AllocationMetric.COST, rows);
+ * </pre>
+ */
+public final class AllocationIndex {
+
+    private static final FilterField[] INDEXED_FIELDS = {
+        FilterField.CLUSTER, FilterField.NODE, FilterField.NAMESPACE, FilterField.CONTROLLER_KIND, FilterField.CONTROLLER,
+    };
+
+    private final int rowCount;
+    private final int[] windows;
+    private final int[] windowStarts;
+    private final String[] keys;
+    private final Allocation[] allocations;
+    private final float[][] metrics;
+    private final Map<FilterField, Map<String, RowBitmap>> fields;
+    private final Map<String, Map<String, RowBitmap>> labels;
+    private final RowBitmap all;
+
+    private AllocationIndex(Builder builder) {
+        this.rowCount = builder.rowCount;
+        this.windows = Arrays.copyOf(builder.windows, rowCount);
+        this.windowStarts = Arrays.copyOf(builder.windowStarts, builder.windowCount + 1);
+        this.windowStarts[builder.windowCount] = rowCount;
+        this.keys = Arrays.copyOf(builder.keys, rowCount);
+        this.allocations = Arrays.copyOf(builder.allocations, rowCount);
+        this.metrics = new float[AllocationMetric.values().length][];
+        for (int m = 0; m < metrics.length; m++) {
+            metrics[m] = Arrays.copyOf(builder.metrics[m], rowCount);
+        }
+        this.fields = new EnumMap<FilterField, Map<String, RowBitmap>>(FilterField.class);
+        for (Map.Entry<FilterField, Map<String, RowBitmap.Builder>> e : builder.fields.entrySet()) {
+            fields.put(e.getKey(), buildPostings(e.getValue()));
+        }
+        this.labels = new HashMap<String, Map<String, RowBitmap>>();
+        for (Map.Entry<String, Map<String, RowBitmap.Builder>> e : builder.labels.entrySet()) {
+            labels.put(e.getKey(), buildPostings(e.getValue()));
+        }
+        this.all = RowBitmap.range(0, rowCount);
+    }
+
+    /**
+     * Index every entry of a range.
+     *
+     * @param range The range
+     * @return The index
+     */
+    public static AllocationIndex build(AllocationSetRange range) {
+        Builder builder = new Builder();
+        if (range.getData() != null) {
+            int window = 0;
+            for (Map<String, Allocation> allocations : range.getData()) {
+                builder.onWindow(window, allocations == null);
+                if (allocations != null) {
+                    for (Map.Entry<String, Allocation> e : allocations.entrySet()) {
+                        builder.onAllocation(window, e.getKey(), e.getValue());
+                    }
+                }
+                window++;
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Create a builder that indexes entries as they are streamed.
+     *
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get the number of windows, including null windows.
+     *
+     * @return The window count
+     */
+    public int getWindowCount() {
+        return windowStarts.length - 1;
+    }
+
+    /**
+     * Get every row.
+     *
+     * @return All rows
+     */
+    public RowBitmap all() {
+        return all;
+    }
+
+    /**
+     * Get the rows of a window.
+     *
+     * @param window The window number
+     * @return The rows, empty for a null window
+     */
+    public RowBitmap window(int window) {
+        return RowBitmap.range(windowStarts[window], windowStarts[window + 1]);
+    }
+
+    /**
+     * Get the rows whose field has one of the given values.
+     *
+     * @param field The field; {@link FilterField#POD} is not indexed
+     * @param values The values
+     * @return The rows
+     * @throws IllegalArgumentException if the field is not indexed
+     */
+    public RowBitmap rows(FilterField field, String... values) {
+        Map<String, RowBitmap> postings = fields.get(field);
+        if (postings == null) {
+            throw new IllegalArgumentException("The field `" + field + "` is not indexed");
+        }
+        return union(postings, values);
+    }
+
+    /**
+     * Get the rows with one of the given values for a label.
+     *
+     * @param key The label key
+     * @param values The label values
+     * @return The rows
+     */
+    public RowBitmap label(String key, String... values) {
+        Map<String, RowBitmap> postings = labels.get(key);
+        return postings == null ? RowBitmap.empty() : union(postings, values);
+    }
+
+    /**
+     * Get the rows carrying a label, whatever its value.
+     *
+     * @param key The label key
+     * @return The rows
+     */
+    public RowBitmap hasLabel(String key) {
+        Map<String, RowBitmap> postings = labels.get(key);
+        return postings == null ? RowBitmap.empty() : RowBitmap.or(postings.values());
+    }
+
+    /**
+     * Get the rows matching a filter: clauses are intersected, the values of a clause united.
+     *
+     * @param filter The filter
+     * @return The rows
+     * @throws IllegalArgumentException if the filter uses a field that is not indexed
+     */
+    public RowBitmap matching(CostFilter filter) {
+        RowBitmap result = all;
+        for (FilterField field : FilterField.values()) {
+            SortedSet<String> values = filter.getValues(field);
+            if (!values.isEmpty()) {
+                result = result.and(rows(field, values.toArray(new String[0])));
+            }
+        }
+        for (Map.Entry<String, SortedSet<String>> e : filter.getLabels().entrySet()) {
+            result = result.and(label(e.getKey(), e.getValue().toArray(new String[0])));
+        }
+        return result;
+    }
+
+    /**
+     * Get the distinct values of a field.
+     *
+     * @param field The field
+     * @return The values
+     */
+    public Set<String> values(FilterField field) {
+        Map<String, RowBitmap> postings = fields.get(field);
+        return postings == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(postings.keySet());
+    }
+
+    /**
+     * Get the distinct label keys.
+     *
+     * @return The label keys
+     */
+    public Set<String> labelKeys() {
+        return Collections.unmodifiableSet(labels.keySet());
+    }
+
+    /**
+     * Sum a metric over rows; rows without a value count as zero.
+     *
+     * @param metric The metric
+     * @param rows The rows
+     * @return The sum
+     */
+    public double sum(AllocationMetric metric, RowBitmap rows) {
+        final float[] column = metrics[metric.ordinal()];
+        final double[] sum = new double[1];
+        rows.forEach(new IntConsumer() {
+            @Override
+            public void accept(int row) {
+                float value = column[row];
+                if (!Float.isNaN(value)) {
+                    sum[0] += value;
+                }
+            }
+        });
+        return sum[0];
+    }
+
+    /**
+     * Count rows.
+     *
+     * @param rows The rows
+     * @return The number of rows
+     */
+    public int count(RowBitmap rows) {
+        return rows.cardinality();
+    }
+
+    /**
+     * Get the value of a metric in a row.
+     *
+     * @param metric The metric
+     * @param row The row
+     * @return The value, NaN if the allocation has none
+     */
+    public float metric(AllocationMetric metric, int row) {
+        return metrics[metric.ordinal()][row];
+    }
+
+    /**
+     * Get the window a row belongs to.
+     *
+     * @param row The row
+     * @return The window number
+     */
+    public int windowOf(int row) {
+        return windows[row];
+    }
+
+    public String key(int row) {
+        return keys[row];
+    }
+
+    public Allocation allocation(int row) {
+        return allocations[row];
+    }
+
+    private static RowBitmap union(Map<String, RowBitmap> postings, String[] values) {
+        if (values.length == 1) {
+            RowBitmap rows = postings.get(values[0]);
+            return rows == null ? RowBitmap.empty() : rows;
+        }
+        List<RowBitmap> bitmaps = new ArrayList<RowBitmap>(values.length);
+        for (String value : values) {
+            RowBitmap rows = postings.get(value);
+            if (rows != null) {
+                bitmaps.add(rows);
+            }
+        }
+        return RowBitmap.or(bitmaps);
+    }
+
+    private static Map<String, RowBitmap> buildPostings(Map<String, RowBitmap.Builder> builders) {
+        Map<String, RowBitmap> postings = new HashMap<String, RowBitmap>(builders.size() * 2);
+        for (Map.Entry<String, RowBitmap.Builder> e : builders.entrySet()) {
+            postings.put(e.getKey(), e.getValue().build());
+        }
+        return postings;
+    }
+
+    /**
+     * Builds an index from entries in response order, e.g. while streaming with
+     * {@code DefaultApi#streamCost}. Only the projected fields are indexed and summed.
+     */
+    public static final class Builder implements AllocationHandler {
+        private int rowCount;
+        private int windowCount;
+        private int[] windows = new int[1024];
+        private int[] windowStarts = new int[16];
+        private String[] keys = new String[1024];
+        private Allocation[] allocations = new Allocation[1024];
+        private final float[][] metrics = new float[AllocationMetric.values().length][1024];
+        private final Map<FilterField, Map<String, RowBitmap.Builder>> fields =
+            new EnumMap<FilterField, Map<String, RowBitmap.Builder>>(FilterField.class);
+        private final Map<String, Map<String, RowBitmap.Builder>> labels = new HashMap<String, Map<String, RowBitmap.Builder>>();
+
+        private Builder() {
+            for (FilterField field : INDEXED_FIELDS) {
+                fields.put(field, new HashMap<String, RowBitmap.Builder>());
+            }
+        }
+
+        @Override
+        public void onWindow(int window, boolean isNull) {
+            if (windowCount + 1 >= windowStarts.length) {
+                windowStarts = Arrays.copyOf(windowStarts, windowStarts.length * 2);
+            }
+            windowStarts[windowCount++] = rowCount;
+        }
+
+        @Override
+        public void onAllocation(int window, String key, Allocation allocation) {
+            if (allocation == null) {
+                return;
+            }
+            if (windowCount == 0) {
+                onWindow(window, false);
+            }
+            if (rowCount == keys.length) {
+                int n = rowCount * 2;
+                windows = Arrays.copyOf(windows, n);
+                keys = Arrays.copyOf(keys, n);
+                allocations = Arrays.copyOf(allocations, n);
+                for (int m = 0; m < metrics.length; m++) {
+                    metrics[m] = Arrays.copyOf(metrics[m], n);
+                }
+            }
+            int row = rowCount++;
+            windows[row] = windowCount - 1;
+            keys[row] = key;
+            allocations[row] = allocation;
+            for (AllocationMetric metric : AllocationMetric.values()) {
+                Float value = metric.get(allocation);
+                metrics[metric.ordinal()][row] = value == null ? Float.NaN : value;
+            }
+            AllocationProperties properties = allocation.getProperties();
+            if (properties == null) {
+                return;
+            }
+            post(fields.get(FilterField.CLUSTER), properties.getCluster(), row);
+            post(fields.get(FilterField.NODE), properties.getNode(), row);
+            post(fields.get(FilterField.NAMESPACE), properties.getNamespace(), row);
+            post(fields.get(FilterField.CONTROLLER_KIND), properties.getControllerKind(), row);
+            post(fields.get(FilterField.CONTROLLER), properties.getController(), row);
+            if (properties.getLabels() != null) {
+                for (Map.Entry<String, String> e : properties.getLabels().entrySet()) {
+                    Map<String, RowBitmap.Builder> postings = labels.get(e.getKey());
+                    if (postings == null) {
+                        postings = new HashMap<String, RowBitmap.Builder>();
+                        labels.put(e.getKey(), postings);
+                    }
+                    post(postings, e.getValue(), row);
+                }
+            }
+        }
+
+        private static void post(Map<String, RowBitmap.Builder> postings, String value, int row) {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            RowBitmap.Builder builder = postings.get(value);
+            if (builder == null) {
+                builder = new RowBitmap.Builder();
+                postings.put(value, builder);
+            }
+            builder.add(row);
+        }
+
+        /**
+         * Build the index. The builder must not be used afterwards.
+         *
+         * @return The index
+         */
+        public AllocationIndex build() {
+            return new AllocationIndex(this);
+        }
+    }
+}
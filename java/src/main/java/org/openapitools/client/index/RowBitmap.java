@@ -0,0 +1,512 @@
+package org.openapitools.client.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable compressed set of non-negative row ids.
+ * <p>
+ * Ids are partitioned by their high 16 bits into chunks of 65536. A chunk with up to
+ * {@value #ARRAY_MAX} ids is stored as a sorted {@code char[]}, a denser chunk as a 65536-bit
+ * {@code long[]}, which keeps both sparse postings (one label value) and dense ones (one window)
+ * small and makes AND/OR run word by word.
+ * </p>
+ */
+public final class RowBitmap {
+
+    static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private static final RowBitmap EMPTY = new RowBitmap(new int[0], new Object[0], 0);
+
+    // sorted high 16 bits of every chunk, and the chunk: char[] (exact length) or long[WORDS]
+    private final int[] keys;
+    private final Object[] chunks;
+    private final int cardinality;
+
+    private RowBitmap(int[] keys, Object[] chunks, int cardinality) {
+        this.keys = keys;
+        this.chunks = chunks;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Get the empty bitmap.
+     *
+     * @return The empty bitmap
+     */
+    public static RowBitmap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create a bitmap of a range of ids.
+     *
+     * @param from The first id, inclusive
+     * @param to The last id, exclusive
+     * @return The bitmap
+     */
+    public static RowBitmap range(int from, int to) {
+        Builder builder = new Builder();
+        for (int i = from; i < to; i++) {
+            builder.add(i);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Create a bitmap of the given ids.
+     *
+     * @param ids The ids, in any order
+     * @return The bitmap
+     */
+    public static RowBitmap of(int... ids) {
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        Builder builder = new Builder();
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                builder.add(sorted[i]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get the number of ids.
+     *
+     * @return The cardinality
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Check whether an id is in the set.
+     *
+     * @param id The id
+     * @return True if the id is present
+     */
+    public boolean contains(int id) {
+        int index = Arrays.binarySearch(keys, id >>> 16);
+        if (index < 0) {
+            return false;
+        }
+        Object chunk = chunks[index];
+        char low = (char) id;
+        if (chunk instanceof char[]) {
+            return Arrays.binarySearch((char[]) chunk, low) >= 0;
+        }
+        return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    /**
+     * Pass every id to the consumer, in ascending order.
+     *
+     * @param consumer The consumer
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int c = 0; c < keys.length; c++) {
+            int high = keys[c] << 16;
+            Object chunk = chunks[c];
+            if (chunk instanceof char[]) {
+                for (char low : (char[]) chunk) {
+                    consumer.accept(high | low);
+                }
+            } else {
+                long[] words = (long[]) chunk;
+                for (int w = 0; w < WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        consumer.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the ids as an array.
+     *
+     * @return The ids in ascending order
+     */
+    public int[] toArray() {
+        final int[] ids = new int[cardinality];
+        forEach(new IntConsumer() {
+            private int i;
+
+            @Override
+            public void accept(int id) {
+                ids[i++] = id;
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * Intersect with another bitmap.
+     *
+     * @param other The other bitmap
+     * @return The ids in both bitmaps
+     */
+    public RowBitmap and(RowBitmap other) {
+        int[] resultKeys = new int[Math.min(keys.length, other.keys.length)];
+        Object[] resultChunks = new Object[resultKeys.length];
+        int n = 0;
+        int total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Object chunk = and(chunks[i], other.chunks[j]);
+                int size = size(chunk);
+                if (size > 0) {
+                    resultKeys[n] = keys[i];
+                    resultChunks[n++] = chunk;
+                    total += size;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new RowBitmap(Arrays.copyOf(resultKeys, n), Arrays.copyOf(resultChunks, n), total);
+    }
+
+    /**
+     * Unite with another bitmap.
+     *
+     * @param other The other bitmap
+     * @return The ids in either bitmap
+     */
+    public RowBitmap or(RowBitmap other) {
+        int[] resultKeys = new int[keys.length + other.keys.length];
+        Object[] resultChunks = new Object[resultKeys.length];
+        int n = 0;
+        int total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            Object chunk;
+            int key;
+            if (j >= other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                key = keys[i];
+                chunk = chunks[i++];
+            } else if (i >= keys.length || keys[i] > other.keys[j]) {
+                key = other.keys[j];
+                chunk = other.chunks[j++];
+            } else {
+                key = keys[i];
+                chunk = or(chunks[i++], other.chunks[j++]);
+            }
+            resultKeys[n] = key;
+            resultChunks[n++] = chunk;
+            total += size(chunk);
+        }
+        return new RowBitmap(Arrays.copyOf(resultKeys, n), Arrays.copyOf(resultChunks, n), total);
+    }
+
+    /**
+     * Remove the ids of another bitmap.
+     *
+     * @param other The other bitmap
+     * @return The ids in this bitmap but not in the other
+     */
+    public RowBitmap andNot(RowBitmap other) {
+        int[] resultKeys = new int[keys.length];
+        Object[] resultChunks = new Object[keys.length];
+        int n = 0;
+        int total = 0;
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Object chunk = j < other.keys.length && other.keys[j] == keys[i] ? andNot(chunks[i], other.chunks[j]) : chunks[i];
+            int size = size(chunk);
+            if (size > 0) {
+                resultKeys[n] = keys[i];
+                resultChunks[n++] = chunk;
+                total += size;
+            }
+        }
+        return new RowBitmap(Arrays.copyOf(resultKeys, n), Arrays.copyOf(resultChunks, n), total);
+    }
+
+    /**
+     * Unite several bitmaps.
+     *
+     * @param bitmaps The bitmaps
+     * @return The ids in any of the bitmaps
+     */
+    public static RowBitmap or(Iterable<RowBitmap> bitmaps) {
+        RowBitmap result = EMPTY;
+        for (RowBitmap bitmap : bitmaps) {
+            result = result.or(bitmap);
+        }
+        return result;
+    }
+
+    private static int size(Object chunk) {
+        if (chunk instanceof char[]) {
+            return ((char[]) chunk).length;
+        }
+        int size = 0;
+        for (long word : (long[]) chunk) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    private static Object and(Object a, Object b) {
+        if (a instanceof char[] && b instanceof char[]) {
+            char[] x = (char[]) a;
+            char[] y = (char[]) b;
+            char[] out = new char[Math.min(x.length, y.length)];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < x.length && j < y.length) {
+                if (x[i] < y[j]) {
+                    i++;
+                } else if (x[i] > y[j]) {
+                    j++;
+                } else {
+                    out[n++] = x[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+        if (a instanceof char[] || b instanceof char[]) {
+            char[] x = (char[]) (a instanceof char[] ? a : b);
+            long[] words = (long[]) (a instanceof char[] ? b : a);
+            char[] out = new char[x.length];
+            int n = 0;
+            for (char low : x) {
+                if ((words[low >>> 6] & (1L << low)) != 0) {
+                    out[n++] = low;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+        long[] x = (long[]) a;
+        long[] y = (long[]) b;
+        long[] out = new long[WORDS];
+        for (int w = 0; w < WORDS; w++) {
+            out[w] = x[w] & y[w];
+        }
+        return compact(out);
+    }
+
+    private static Object or(Object a, Object b) {
+        if (a instanceof char[] && b instanceof char[]) {
+            char[] x = (char[]) a;
+            char[] y = (char[]) b;
+            char[] out = new char[x.length + y.length];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < x.length || j < y.length) {
+                if (j >= y.length || (i < x.length && x[i] < y[j])) {
+                    out[n++] = x[i++];
+                } else if (i >= x.length || x[i] > y[j]) {
+                    out[n++] = y[j++];
+                } else {
+                    out[n++] = x[i++];
+                    j++;
+                }
+            }
+            if (n <= ARRAY_MAX) {
+                return Arrays.copyOf(out, n);
+            }
+            return toWords(out, n);
+        }
+        long[] out;
+        if (a instanceof char[] || b instanceof char[]) {
+            char[] x = (char[]) (a instanceof char[] ? a : b);
+            out = ((long[]) (a instanceof char[] ? b : a)).clone();
+            for (char low : x) {
+                out[low >>> 6] |= 1L << low;
+            }
+        } else {
+            long[] x = (long[]) a;
+            long[] y = (long[]) b;
+            out = new long[WORDS];
+            for (int w = 0; w < WORDS; w++) {
+                out[w] = x[w] | y[w];
+            }
+        }
+        return out;
+    }
+
+    private static Object andNot(Object a, Object b) {
+        if (a instanceof char[]) {
+            char[] x = (char[]) a;
+            char[] out = new char[x.length];
+            int n = 0;
+            if (b instanceof char[]) {
+                char[] y = (char[]) b;
+                int j = 0;
+                for (char low : x) {
+                    while (j < y.length && y[j] < low) {
+                        j++;
+                    }
+                    if (j >= y.length || y[j] != low) {
+                        out[n++] = low;
+                    }
+                }
+            } else {
+                long[] words = (long[]) b;
+                for (char low : x) {
+                    if ((words[low >>> 6] & (1L << low)) == 0) {
+                        out[n++] = low;
+                    }
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+        long[] out = ((long[]) a).clone();
+        if (b instanceof char[]) {
+            for (char low : (char[]) b) {
+                out[low >>> 6] &= ~(1L << low);
+            }
+        } else {
+            long[] y = (long[]) b;
+            for (int w = 0; w < WORDS; w++) {
+                out[w] &= ~y[w];
+            }
+        }
+        return compact(out);
+    }
+
+    private static long[] toWords(char[] lows, int n) {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < n; i++) {
+            words[lows[i] >>> 6] |= 1L << lows[i];
+        }
+        return words;
+    }
+
+    private static Object compact(long[] words) {
+        int size = size(words);
+        if (size > ARRAY_MAX) {
+            return words;
+        }
+        char[] lows = new char[size];
+        int n = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                lows[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return lows;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RowBitmap)) {
+            return false;
+        }
+        RowBitmap other = (RowBitmap) o;
+        return cardinality == other.cardinality && Arrays.equals(toArray(), other.toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return "RowBitmap{cardinality=" + cardinality + "}";
+    }
+
+    /**
+     * Builds a bitmap from ids added in ascending order.
+     */
+    public static final class Builder {
+        private int[] keys = new int[4];
+        private Object[] chunks = new Object[4];
+        private int count;
+        private int cardinality;
+        private int last = -1;
+        private char[] lows = new char[16];
+        private long[] words;
+        private int size;
+
+        /**
+         * Add an id.
+         *
+         * @param id The id, greater than every id added before
+         * @return The builder
+         * @throws IllegalArgumentException if the id is negative or not ascending
+         */
+        public Builder add(int id) {
+            if (id <= last) {
+                throw new IllegalArgumentException("Row ids must be added in ascending order: " + id + " after " + last);
+            }
+            int key = id >>> 16;
+            if (last < 0 || key != last >>> 16) {
+                flush();
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                    chunks = Arrays.copyOf(chunks, count * 2);
+                }
+                keys[count] = key;
+            }
+            char low = (char) id;
+            if (words != null) {
+                words[low >>> 6] |= 1L << low;
+            } else if (size == ARRAY_MAX) {
+                words = toWords(lows, size);
+                words[low >>> 6] |= 1L << low;
+            } else {
+                if (size == lows.length) {
+                    lows = Arrays.copyOf(lows, Math.min(ARRAY_MAX, size * 2));
+                }
+                lows[size] = low;
+            }
+            size++;
+            last = id;
+            return this;
+        }
+
+        private void flush() {
+            if (size == 0) {
+                return;
+            }
+            chunks[count++] = words != null ? words : Arrays.copyOf(lows, size);
+            cardinality += size;
+            words = null;
+            size = 0;
+        }
+
+        /**
+         * Build the bitmap. The builder must not be used afterwards.
+         *
+         * @return The bitmap
+         */
+        public RowBitmap build() {
+            flush();
+            if (count == 0) {
+                return EMPTY;
+            }
+            return new RowBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(chunks, count), cardinality);
+        }
+    }
+}
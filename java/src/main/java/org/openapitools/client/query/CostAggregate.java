@@ -0,0 +1,131 @@
+package org.openapitools.client.query;
+
+/**
+ * A dimension the results are aggregated by, e.g. {@code namespace} or {@code label:app}.
+ */
+public final class CostAggregate {
+
+    /**
+     * The kind of aggregate dimension.
+     */
+    public enum Dimension {
+        NAMESPACE("namespace"),
+        CONTROLLER("controller"),
+        CONTROLLER_KIND("controllerKind"),
+        NODE("node"),
+        LABEL("label");
+
+        private final String value;
+
+        Dimension(String value) {
+            this.value = value;
+        }
+
+        /**
+         * Get the dimension name used in the aggregate parameter.
+         *
+         * @return The dimension name
+         */
+        public String getValue() {
+            return value;
+        }
+    }
+
+    private static final String LABEL_PREFIX = "label:";
+
+    public static final CostAggregate NAMESPACE = new CostAggregate(Dimension.NAMESPACE, null);
+    public static final CostAggregate CONTROLLER = new CostAggregate(Dimension.CONTROLLER, null);
+    public static final CostAggregate CONTROLLER_KIND = new CostAggregate(Dimension.CONTROLLER_KIND, null);
+    public static final CostAggregate NODE = new CostAggregate(Dimension.NODE, null);
+
+    private final Dimension dimension;
+    private final String labelKey;
+    private final String value;
+
+    private CostAggregate(Dimension dimension, String labelKey) {
+        this.dimension = dimension;
+        this.labelKey = labelKey;
+        this.value = labelKey == null ? dimension.getValue() : LABEL_PREFIX + labelKey;
+    }
+
+    /**
+     * Aggregate by the value of a label.
+     *
+     * @param key The label key
+     * @return The aggregate
+     * @throws IllegalArgumentException if the key is empty or contains a comma
+     */
+    public static CostAggregate label(String key) {
+        if (key == null || key.isEmpty() || key.indexOf(',') >= 0) {
+            throw new IllegalArgumentException("Invalid label key for aggregate: `" + key + "`");
+        }
+        return new CostAggregate(Dimension.LABEL, key);
+    }
+
+    /**
+     * Parse a single aggregate option, e.g. {@code controllerKind} or {@code label:app}.
+     *
+     * @param value The aggregate option
+     * @return The aggregate
+     * @throws IllegalArgumentException if the option is not supported
+     */
+    public static CostAggregate parse(String value) {
+        if (value.startsWith(LABEL_PREFIX)) {
+            return label(value.substring(LABEL_PREFIX.length()));
+        }
+        for (CostAggregate aggregate : new CostAggregate[] {NAMESPACE, CONTROLLER, CONTROLLER_KIND, NODE}) {
+            if (aggregate.value.equals(value)) {
+                return aggregate;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported aggregate option: `" + value + "`");
+    }
+
+    /**
+     * Get the dimension.
+     *
+     * @return The dimension
+     */
+    public Dimension getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Get the label key.
+     *
+     * @return The label key, null unless the dimension is {@link Dimension#LABEL}
+     */
+    public String getLabelKey() {
+        return labelKey;
+    }
+
+    /**
+     * Get the option as used in the aggregate parameter.
+     *
+     * @return The aggregate option
+     */
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CostAggregate)) {
+            return false;
+        }
+        return value.equals(((CostAggregate) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
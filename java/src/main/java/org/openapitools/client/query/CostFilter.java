@@ -0,0 +1,228 @@
+package org.openapitools.client.query;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An immutable workload filter, rendered as the filter expression of the cost API, e.g.
+ * {@code namespace:"kube-system"+controllerKind:"ReplicaSet"+label[app]:"ack-cost-exporter"}.
+ * <p>
+ * Clauses are combined with AND; the values of one clause are alternatives. The expression is
+ * canonical: fields appear in {@link FilterField} order followed by labels sorted by key, and the
+ * values of every clause are sorted and de-duplicated, so equal filters always render the same.
+ * </p>
+ */
+public final class CostFilter {
+
+    private final Map<FilterField, SortedSet<String>> fields;
+    private final Map<String, SortedSet<String>> labels;
+    private final String expression;
+
+    private CostFilter(Map<FilterField, SortedSet<String>> fields, Map<String, SortedSet<String>> labels) {
+        this.fields = fields;
+        this.labels = labels;
+        this.expression = render(fields, labels);
+    }
+
+    /**
+     * Create a new builder.
+     *
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the accepted values of a field.
+     *
+     * @param field The field
+     * @return The values, empty if the field is not filtered
+     */
+    public SortedSet<String> getValues(FilterField field) {
+        SortedSet<String> values = fields.get(field);
+        return values == null ? Collections.<String>emptySortedSet() : values;
+    }
+
+    /**
+     * Get the accepted values of every filtered label.
+     *
+     * @return Label key to accepted values, sorted by key
+     */
+    public Map<String, SortedSet<String>> getLabels() {
+        return labels;
+    }
+
+    /**
+     * Check whether the filter has no clauses.
+     *
+     * @return True if the filter matches every workload
+     */
+    public boolean isEmpty() {
+        return expression.isEmpty();
+    }
+
+    /**
+     * Get the filter expression.
+     *
+     * @return The canonical expression, empty if the filter has no clauses
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    private static String render(Map<FilterField, SortedSet<String>> fields, Map<String, SortedSet<String>> labels) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<FilterField, SortedSet<String>> e : fields.entrySet()) {
+            appendClause(sb, e.getKey().getValue(), e.getValue());
+        }
+        for (Map.Entry<String, SortedSet<String>> e : labels.entrySet()) {
+            appendClause(sb, "label[" + e.getKey() + "]", e.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static void appendClause(StringBuilder sb, String name, SortedSet<String> values) {
+        if (sb.length() > 0) {
+            sb.append('+');
+        }
+        sb.append(name).append(':');
+        boolean first = true;
+        for (String value : values) {
+            if (!first) {
+                sb.append(',');
+            }
+            sb.append('"').append(value).append('"');
+            first = false;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CostFilter)) {
+            return false;
+        }
+        return expression.equals(((CostFilter) o).expression);
+    }
+
+    @Override
+    public int hashCode() {
+        return expression.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * Builder of {@link CostFilter}. Adding values to a clause that already exists widens it.
+     */
+    public static final class Builder {
+        private final Map<FilterField, SortedSet<String>> fields = new EnumMap<FilterField, SortedSet<String>>(FilterField.class);
+        private final Map<String, SortedSet<String>> labels = new TreeMap<String, SortedSet<String>>();
+
+        private Builder() {
+        }
+
+        /**
+         * Accept workloads whose field has one of the given values.
+         *
+         * @param field The field
+         * @param values The accepted values
+         * @return The builder
+         * @throws IllegalArgumentException if a value is empty or contains a double quote
+         */
+        public Builder field(FilterField field, String... values) {
+            SortedSet<String> set = fields.get(field);
+            if (set == null) {
+                set = new TreeSet<String>();
+                fields.put(field, set);
+            }
+            addValues(set, values);
+            return this;
+        }
+
+        /**
+         * Accept workloads whose label has one of the given values.
+         *
+         * @param key The label key
+         * @param values The accepted values
+         * @return The builder
+         * @throws IllegalArgumentException if the key or a value is invalid
+         */
+        public Builder label(String key, String... values) {
+            if (key == null || key.isEmpty() || key.indexOf(']') >= 0 || key.indexOf('"') >= 0) {
+                throw new IllegalArgumentException("Invalid label key for filter: `" + key + "`");
+            }
+            SortedSet<String> set = labels.get(key);
+            if (set == null) {
+                set = new TreeSet<String>();
+                labels.put(key, set);
+            }
+            addValues(set, values);
+            return this;
+        }
+
+        public Builder cluster(String... values) {
+            return field(FilterField.CLUSTER, values);
+        }
+
+        public Builder node(String... values) {
+            return field(FilterField.NODE, values);
+        }
+
+        public Builder namespace(String... values) {
+            return field(FilterField.NAMESPACE, values);
+        }
+
+        public Builder controllerKind(String... values) {
+            return field(FilterField.CONTROLLER_KIND, values);
+        }
+
+        public Builder controller(String... values) {
+            return field(FilterField.CONTROLLER, values);
+        }
+
+        public Builder pod(String... values) {
+            return field(FilterField.POD, values);
+        }
+
+        /**
+         * Build the filter.
+         *
+         * @return The filter
+         */
+        public CostFilter build() {
+            Map<FilterField, SortedSet<String>> fieldsCopy = new EnumMap<FilterField, SortedSet<String>>(FilterField.class);
+            for (Map.Entry<FilterField, SortedSet<String>> e : fields.entrySet()) {
+                if (!e.getValue().isEmpty()) {
+                    fieldsCopy.put(e.getKey(), Collections.unmodifiableSortedSet(new TreeSet<String>(e.getValue())));
+                }
+            }
+            Map<String, SortedSet<String>> labelsCopy = new TreeMap<String, SortedSet<String>>();
+            for (Map.Entry<String, SortedSet<String>> e : labels.entrySet()) {
+                if (!e.getValue().isEmpty()) {
+                    labelsCopy.put(e.getKey(), Collections.unmodifiableSortedSet(new TreeSet<String>(e.getValue())));
+                }
+            }
+            return new CostFilter(Collections.unmodifiableMap(fieldsCopy), Collections.unmodifiableMap(labelsCopy));
+        }
+
+        private static void addValues(SortedSet<String> set, String[] values) {
+            for (String value : values) {
+                if (value == null || value.isEmpty() || value.indexOf('"') >= 0) {
+                    throw new IllegalArgumentException("Invalid filter value: `" + value + "`");
+                }
+                set.add(value);
+            }
+        }
+    }
+}
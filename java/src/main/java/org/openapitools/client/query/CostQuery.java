@@ -0,0 +1,398 @@
+package org.openapitools.client.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.Pair;
+
+import okhttp3.Request;
+
+/**
+ * An immutable query of the cost and allocation APIs.
+ * <p>
+ * Queries are canonical: options equal to the server defaults are dropped, filters are ordered
+ * and duplicate aggregates removed, so equal queries have the same {@link #canonicalKey()} and can
+ * be used as cache keys. The HTTP request of a query is rendered once per client and path and
+ * reused by later calls, which makes polling with the same query instance almost allocation free.
+ * </p>
+ */
+public final class CostQuery {
+
+    private final String window;
+    private final CostFilter filter;
+    private final String step;
+    private final List<CostAggregate> aggregates;
+    private final Boolean idle;
+    private final Boolean shareIdle;
+    private final ShareSplit shareSplit;
+    private final Boolean idleByNode;
+    private final Format format;
+
+    private final List<Pair> queryParams;
+    private final String canonicalKey;
+
+    private volatile Template template;
+
+    private CostQuery(Builder builder) {
+        if (builder.window == null || builder.window.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing the required parameter 'window'");
+        }
+        this.window = builder.window.trim();
+        this.filter = builder.filter == null || builder.filter.isEmpty() ? null : builder.filter;
+        this.step = builder.step == null || builder.step.trim().isEmpty() ? null : builder.step.trim();
+        this.aggregates = Collections.unmodifiableList(new ArrayList<CostAggregate>(new LinkedHashSet<CostAggregate>(builder.aggregates)));
+        this.idle = Boolean.TRUE.equals(builder.idle) ? null : builder.idle;
+        this.shareIdle = Boolean.FALSE.equals(builder.shareIdle) ? null : builder.shareIdle;
+        this.shareSplit = builder.shareSplit == ShareSplit.WEIGHTED ? null : builder.shareSplit;
+        this.idleByNode = Boolean.FALSE.equals(builder.idleByNode) ? null : builder.idleByNode;
+        this.format = builder.format == Format.JSON ? null : builder.format;
+
+        List<Pair> params = new ArrayList<Pair>();
+        params.add(new Pair("window", window));
+        if (filter != null) {
+            params.add(new Pair("filter", filter.getExpression()));
+        }
+        if (step != null) {
+            params.add(new Pair("step", step));
+        }
+        if (!aggregates.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (CostAggregate aggregate : aggregates) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(aggregate.getValue());
+            }
+            params.add(new Pair("aggregate", sb.toString()));
+        }
+        if (idle != null) {
+            params.add(new Pair("idle", idle.toString()));
+        }
+        if (shareIdle != null) {
+            params.add(new Pair("shareIdle", shareIdle.toString()));
+        }
+        if (shareSplit != null) {
+            params.add(new Pair("shareSplit", shareSplit.getValue()));
+        }
+        if (idleByNode != null) {
+            params.add(new Pair("idleByNode", idleByNode.toString()));
+        }
+        if (format != null) {
+            params.add(new Pair("format", format.getValue()));
+        }
+        this.queryParams = Collections.unmodifiableList(params);
+        this.canonicalKey = keyOf(params);
+    }
+
+    /**
+     * Join query parameters into a key, {@code name=value} pairs separated by {@code &}. The
+     * characters {@code % & =} and line breaks in names and values are percent-encoded, so different
+     * parameters never give the same key and the key fits on one line.
+     *
+     * @param params The query parameters, unescaped
+     * @return The key
+     */
+    public static String keyOf(List<Pair> params) {
+        StringBuilder key = new StringBuilder();
+        for (Pair param : params) {
+            if (key.length() > 0) {
+                key.append('&');
+            }
+            appendEscaped(key, param.getName());
+            key.append('=');
+            appendEscaped(key, param.getValue());
+        }
+        return key.toString();
+    }
+
+    private static void appendEscaped(StringBuilder key, String part) {
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            switch (c) {
+                case '%':
+                    key.append("%25");
+                    break;
+                case '&':
+                    key.append("%26");
+                    break;
+                case '=':
+                    key.append("%3D");
+                    break;
+                case '\n':
+                    key.append("%0A");
+                    break;
+                case '\r':
+                    key.append("%0D");
+                    break;
+                default:
+                    key.append(c);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Create a builder of a query over the given window.
+     *
+     * @param window The time range to be queried, e.g. {@code 1d} or {@code today}
+     * @return The builder
+     */
+    public static Builder builder(String window) {
+        return new Builder().window(window);
+    }
+
+    /**
+     * Create a builder initialized with the options of this query.
+     *
+     * @return The builder
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.window = window;
+        builder.filter = filter;
+        builder.step = step;
+        builder.aggregates.addAll(aggregates);
+        builder.idle = idle;
+        builder.shareIdle = shareIdle;
+        builder.shareSplit = shareSplit;
+        builder.idleByNode = idleByNode;
+        builder.format = format;
+        return builder;
+    }
+
+    /**
+     * Create a copy of this query over another window.
+     *
+     * @param window The time range to be queried
+     * @return The query, this instance if the window is unchanged
+     */
+    public CostQuery withWindow(String window) {
+        if (this.window.equals(window)) {
+            return this;
+        }
+        return toBuilder().window(window).build();
+    }
+
+    public String getWindow() {
+        return window;
+    }
+
+    /**
+     * @return The filter, null if every workload is included
+     */
+    public CostFilter getFilter() {
+        return filter;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    /**
+     * @return The aggregate dimensions in order, empty if results are not aggregated
+     */
+    public List<CostAggregate> getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * @return Whether to display idle costs; never null, the server default applies when unset
+     */
+    public boolean isIdle() {
+        return idle == null || idle;
+    }
+
+    public boolean isShareIdle() {
+        return shareIdle != null && shareIdle;
+    }
+
+    public ShareSplit getShareSplit() {
+        return shareSplit == null ? ShareSplit.WEIGHTED : shareSplit;
+    }
+
+    public boolean isIdleByNode() {
+        return idleByNode != null && idleByNode;
+    }
+
+    public Format getFormat() {
+        return format == null ? Format.JSON : format;
+    }
+
+    /**
+     * Get the query parameters, in a fixed order and without server defaults.
+     *
+     * @return The query parameters, unescaped
+     */
+    public List<Pair> getQueryParams() {
+        return queryParams;
+    }
+
+    /**
+     * Get a key that is equal for queries returning the same results, e.g.
+     * {@code window=1d&filter=namespace:"kube-system"&aggregate=controller}. Distinct queries have
+     * distinct keys: see {@link #keyOf(List)} for the escaping.
+     *
+     * @return The canonical key
+     */
+    public String canonicalKey() {
+        return canonicalKey;
+    }
+
+    /**
+     * Get the GET request of this query, rendering it through {@link ApiClient#buildRequest} on
+     * first use. The rendered request is kept and returned again as long as the client, its
+     * request defaults, the base URL and the path are unchanged.
+     *
+     * @param apiClient The client whose base path and default headers are applied
+     * @param baseUrl The base URL overriding the client's base path, may be null
+     * @param path The operation path, e.g. {@code /v2/cost}
+     * @return The request, without a tag
+     * @throws ApiException If fail to build the request
+     */
+    public Request toRequest(ApiClient apiClient, String baseUrl, String path) throws ApiException {
+        int version = apiClient.getRequestDefaultsVersion();
+        Template current = template;
+        if (current != null && current.matches(apiClient, version, baseUrl, path)) {
+            return current.request;
+        }
+        Map<String, String> headerParams = new HashMap<String, String>();
+        final String accept = apiClient.selectHeaderAccept(new String[] {"application/json"});
+        if (accept != null) {
+            headerParams.put("Accept", accept);
+        }
+        Request request = apiClient.buildRequest(baseUrl, path, "GET", new ArrayList<Pair>(queryParams), new ArrayList<Pair>(),
+            null, headerParams, new HashMap<String, String>(), new HashMap<String, Object>(), new String[] {}, null);
+        template = new Template(apiClient, version, baseUrl, path, request);
+        return request;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CostQuery)) {
+            return false;
+        }
+        return canonicalKey.equals(((CostQuery) o).canonicalKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return canonicalKey.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "CostQuery{" + canonicalKey + "}";
+    }
+
+    private static final class Template {
+        final ApiClient apiClient;
+        final int version;
+        final String baseUrl;
+        final String path;
+        final Request request;
+
+        Template(ApiClient apiClient, int version, String baseUrl, String path, Request request) {
+            this.apiClient = apiClient;
+            this.version = version;
+            this.baseUrl = baseUrl;
+            this.path = path;
+            this.request = request;
+        }
+
+        boolean matches(ApiClient apiClient, int version, String baseUrl, String path) {
+            return this.apiClient == apiClient && this.version == version
+                && (this.baseUrl == null ? baseUrl == null : this.baseUrl.equals(baseUrl))
+                && this.path.equals(path);
+        }
+    }
+
+    /**
+     * Builder of {@link CostQuery}. Unset options take the server defaults.
+     */
+    public static final class Builder {
+        private String window;
+        private CostFilter filter;
+        private String step;
+        private final List<CostAggregate> aggregates = new ArrayList<CostAggregate>();
+        private Boolean idle;
+        private Boolean shareIdle;
+        private ShareSplit shareSplit;
+        private Boolean idleByNode;
+        private Format format;
+
+        private Builder() {
+        }
+
+        public Builder window(String window) {
+            this.window = window;
+            return this;
+        }
+
+        public Builder filter(CostFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public Builder step(String step) {
+            this.step = step;
+            return this;
+        }
+
+        /**
+         * Replace the aggregate dimensions.
+         *
+         * @param aggregates The dimensions, in order
+         * @return The builder
+         */
+        public Builder aggregate(CostAggregate... aggregates) {
+            this.aggregates.clear();
+            this.aggregates.addAll(Arrays.asList(aggregates));
+            return this;
+        }
+
+        public Builder idle(Boolean idle) {
+            this.idle = idle;
+            return this;
+        }
+
+        public Builder shareIdle(Boolean shareIdle) {
+            this.shareIdle = shareIdle;
+            return this;
+        }
+
+        public Builder shareSplit(ShareSplit shareSplit) {
+            this.shareSplit = shareSplit;
+            return this;
+        }
+
+        public Builder idleByNode(Boolean idleByNode) {
+            this.idleByNode = idleByNode;
+            return this;
+        }
+
+        public Builder format(Format format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * Build the query.
+         *
+         * @return The query
+         * @throws IllegalArgumentException if the window is missing
+         */
+        public CostQuery build() {
+            return new CostQuery(this);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.openapitools.client.query;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parsing of the {@code window} and {@code step} parameters of the cost API.
+ * <p>
+ * A window is either a duration such as {@code 30m}, {@code 24h} or {@code 7d}, a keyword such as
+ * {@code today} or {@code lastweek}, or two absolute bounds, RFC 3339 timestamps or unix seconds,
+ * separated by a comma.
+ * </p>
+ */
+public final class CostWindow {
+
+    private static final long MINUTE = 60;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private CostWindow() {
+    }
+
+    /**
+     * Parse a window of two absolute bounds.
+     *
+     * @param window The window parameter
+     * @return The start and end in epoch seconds, null if the window is not an absolute range
+     */
+    public static long[] parseRange(String window) {
+        int comma = window.indexOf(',');
+        if (comma < 0 || window.indexOf(',', comma + 1) >= 0) {
+            return null;
+        }
+        Long start = parseBound(window.substring(0, comma).trim());
+        Long end = parseBound(window.substring(comma + 1).trim());
+        if (start == null || end == null || start > end) {
+            return null;
+        }
+        return new long[] {start, end};
+    }
+
+    /**
+     * Parse a duration such as {@code 90s}, {@code 30m}, {@code 24h}, {@code 7d} or {@code 2w}.
+     *
+     * @param duration The duration, e.g. a {@code step} parameter
+     * @return The seconds, -1 if not a duration
+     */
+    public static long parseDuration(String duration) {
+        String trimmed = duration.trim();
+        if (trimmed.length() < 2) {
+            return -1;
+        }
+        long unit;
+        switch (trimmed.charAt(trimmed.length() - 1)) {
+            case 's': unit = 1; break;
+            case 'm': unit = MINUTE; break;
+            case 'h': unit = HOUR; break;
+            case 'd': unit = DAY; break;
+            case 'w': unit = 7 * DAY; break;
+            default: return -1;
+        }
+        try {
+            long amount = Long.parseLong(trimmed.substring(0, trimmed.length() - 1));
+            return amount < 0 ? -1 : amount * unit;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the length of a window; keywords count as their full period, e.g. {@code today} as a day.
+     *
+     * @param window The window parameter
+     * @return The seconds, -1 if the window is not recognized
+     */
+    public static long lengthSeconds(String window) {
+        String trimmed = window.trim();
+        long[] range = parseRange(trimmed);
+        if (range != null) {
+            return range[1] - range[0];
+        }
+        switch (trimmed) {
+            case "today":
+            case "yesterday":
+                return DAY;
+            case "week":
+            case "lastweek":
+                return 7 * DAY;
+            case "month":
+            case "lastmonth":
+                return 31 * DAY;
+            default:
+                return parseDuration(trimmed);
+        }
+    }
+
+    private static Long parseBound(String bound) {
+        if (bound.isEmpty()) {
+            return null;
+        }
+        boolean digits = true;
+        for (int i = 0; i < bound.length() && digits; i++) {
+            digits = Character.isDigit(bound.charAt(i));
+        }
+        try {
+            return digits ? Long.parseLong(bound) : OffsetDateTime.parse(bound).toEpochSecond();
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.openapitools.client.query;
+
+/**
+ * Workload properties a {@link CostFilter} can match on, other than labels.
+ */
+public enum FilterField {
+    CLUSTER("cluster"),
+    NODE("node"),
+    NAMESPACE("namespace"),
+    CONTROLLER_KIND("controllerKind"),
+    CONTROLLER("controller"),
+    POD("pod");
+
+    private final String value;
+
+    FilterField(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Get the field name used in the filter expression.
+     *
+     * @return The field name
+     */
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
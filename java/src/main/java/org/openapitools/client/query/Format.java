@@ -0,0 +1,29 @@
+package org.openapitools.client.query;
+
+/**
+ * The format that is used to export costs.
+ */
+public enum Format {
+    JSON("json"),
+    CSV("csv");
+
+    private final String value;
+
+    Format(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Get the query parameter value.
+     *
+     * @return The value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,29 @@
+package org.openapitools.client.query;
+
+/**
+ * The idle cost allocation policy.
+ */
+public enum ShareSplit {
+    WEIGHTED("weighted"),
+    EVEN("even");
+
+    private final String value;
+
+    ShareSplit(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Get the query parameter value.
+     *
+     * @return The value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,33 @@
+package org.openapitools.client.ratelimit;
+
+import org.openapitools.client.ApiException;
+
+/**
+ * Thrown when a request is refused by a {@link RateLimiter} before it is sent.
+ */
+public class RateLimitedException extends ApiException {
+    private static final long serialVersionUID = 1L;
+
+    private final String operation;
+    private final long retryAfterNanos;
+
+    public RateLimitedException(String operation, long retryAfterNanos) {
+        super("Rate limit exceeded for " + operation);
+        this.operation = operation;
+        this.retryAfterNanos = retryAfterNanos;
+    }
+
+    /**
+     * @return The base path and operation path of the refused request
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return The time after which the request would have been admitted, -1 if unknown
+     */
+    public long getRetryAfterNanos() {
+        return retryAfterNanos;
+    }
+}
@@ -0,0 +1,347 @@
+package org.openapitools.client.ratelimit;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+import org.openapitools.client.ApiException;
+import org.openapitools.client.Deadline;
+
+/**
+ * A client-side rate limiter with one token bucket per base path and operation, applied by
+ * {@code ApiClient} to its synchronous and asynchronous calls:
+ * <pre>
+ * apiClient.setRateLimiter(RateLimiter.builder(2)
+ *     .burst(4)
+ *     .weigher(RequestWeigher.byWindow())
+ *     .mode(RateLimiter.Mode.QUEUE)
+ *     .maxQueueDelay(Duration.ofMinutes(5))
+ *     .build());
+ * </pre>
+ * <p>
+ * An operation is identified by the scheme, host, port and path of the request URL, so every
+ * cluster and every endpoint of a cluster has a bucket of its own, created on first use. Buckets
+ * are lock-free; a request takes as many permits as its {@link RequestWeigher} estimates. A request
+ * heavier than the burst is let through once its bucket is full and the requests after it wait until
+ * its whole cost is paid. A request carrying a {@link Deadline} never waits past it.
+ * </p>
+ */
+public final class RateLimiter {
+
+    /**
+     * What happens to a request that finds no permits.
+     */
+    public enum Mode {
+        /**
+         * The request waits for the permits as long as it takes: synchronous calls on the calling
+         * thread, asynchronous calls on a timer.
+         */
+        BLOCK,
+        /** The request fails with a {@link RateLimitedException}. */
+        FAIL_FAST,
+        /**
+         * The request waits up to the maximum queue delay: synchronous calls on the calling thread,
+         * asynchronous calls on a timer, without blocking the caller. Longer waits fail.
+         */
+        QUEUE
+    }
+
+    /**
+     * The source of the current {@link System#nanoTime()}, replaced by tests.
+     */
+    interface Ticker {
+        long nanoTime();
+    }
+
+    static final Ticker SYSTEM_TICKER = new Ticker() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private final Map<String, double[]> operationRates;
+    private final Mode mode;
+    private final long maxWaitNanos;
+    private final RequestWeigher weigher;
+    private final Ticker ticker;
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private ScheduledExecutorService timer;
+    private volatile boolean shutdown;
+
+    private RateLimiter(Builder builder) {
+        this.permitsPerSecond = builder.permitsPerSecond;
+        this.burst = builder.burst;
+        this.operationRates = new HashMap<String, double[]>(builder.operationRates);
+        this.mode = builder.mode;
+        this.maxWaitNanos = mode == Mode.BLOCK ? Long.MAX_VALUE : mode == Mode.FAIL_FAST ? 0 : builder.maxQueueDelay.toNanos();
+        this.weigher = builder.weigher;
+        this.ticker = builder.ticker;
+    }
+
+    /**
+     * Create a builder.
+     *
+     * @param permitsPerSecond The sustained rate of every bucket
+     * @return The builder
+     */
+    public static Builder builder(double permitsPerSecond) {
+        return new Builder(permitsPerSecond);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The number of requests that had to wait for permits
+     */
+    public long getDelayed() {
+        return delayed.get();
+    }
+
+    /**
+     * @return The number of requests refused
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Take the permits of a request on the calling thread, waiting for them unless failing fast.
+     *
+     * @param request The request
+     * @throws RateLimitedException if the permits are not available in time
+     * @throws ApiException if interrupted while waiting or the limiter is shut down
+     */
+    public void acquire(Request request) throws ApiException {
+        long wait = reserve(request);
+        if (wait > 0) {
+            sleep(wait);
+        }
+    }
+
+    /**
+     * Take the permits of a request and run a task sending it: right away if permits are available,
+     * otherwise later on a timer, without blocking the calling thread.
+     *
+     * @param request The request
+     * @param send The task sending the request
+     * @throws RateLimitedException if the permits are not available in time; the task does not run
+     * @throws ApiException if the limiter is shut down; the task does not run
+     */
+    public void submit(Request request, Runnable send) throws ApiException {
+        long wait = reserve(request);
+        if (wait == 0) {
+            send.run();
+        } else {
+            ScheduledExecutorService current = timer();
+            try {
+                current.schedule(send, wait, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                throw new ApiException("The rate limiter is shut down");
+            }
+        }
+    }
+
+    /**
+     * Refuse new requests. Asynchronous requests already waiting for their permits are still sent
+     * when their time comes, then the timer thread ends.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            if (timer != null) {
+                timer.shutdown();
+            }
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    private long reserve(Request request) throws ApiException {
+        if (shutdown) {
+            throw new ApiException("The rate limiter is shut down");
+        }
+        HttpUrl url = request.url();
+        String operation = url.scheme() + "://" + url.host() + ":" + url.port() + url.encodedPath();
+        Deadline deadline = request.tag(Deadline.class);
+        long maxWait = deadline == null ? maxWaitNanos : Math.min(maxWaitNanos, Math.max(0, deadline.remainingNanos()));
+        long wait = bucket(operation, url.encodedPath()).reserve(weigher.weigh(request), maxWait, ticker.nanoTime());
+        if (wait < 0) {
+            rejected.incrementAndGet();
+            throw new RateLimitedException(operation, -1 - wait);
+        }
+        if (wait > 0) {
+            delayed.incrementAndGet();
+        }
+        return wait;
+    }
+
+    private TokenBucket bucket(String operation, String path) {
+        TokenBucket bucket = buckets.get(operation);
+        if (bucket == null) {
+            double[] rate = operationRate(path);
+            TokenBucket created = rate == null
+                ? new TokenBucket(permitsPerSecond, burst, ticker.nanoTime())
+                : new TokenBucket(rate[0], rate[1], ticker.nanoTime());
+            bucket = buckets.putIfAbsent(operation, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Find the rate of the operation whose path ends the request path, the longest if several do, so
+     * a base path with a path prefix, such as the API server proxy, still matches.
+     */
+    private double[] operationRate(String path) {
+        double[] rate = null;
+        int matched = -1;
+        for (Map.Entry<String, double[]> entry : operationRates.entrySet()) {
+            String operation = entry.getKey();
+            if (operation.length() > matched && path.endsWith(operation)
+                && (path.length() == operation.length() || operation.startsWith("/")
+                    || path.charAt(path.length() - operation.length() - 1) == '/')) {
+                rate = entry.getValue();
+                matched = operation.length();
+            }
+        }
+        return rate;
+    }
+
+    private static void sleep(long nanos) throws ApiException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(e);
+        }
+    }
+
+    private synchronized ScheduledExecutorService timer() throws ApiException {
+        if (shutdown) {
+            throw new ApiException("The rate limiter is shut down");
+        }
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "api-rate-limiter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return timer;
+    }
+
+    public static final class Builder {
+        private final double permitsPerSecond;
+        private double burst;
+        private final Map<String, double[]> operationRates = new HashMap<String, double[]>();
+        private Mode mode = Mode.BLOCK;
+        private Duration maxQueueDelay = Duration.ofSeconds(30);
+        private RequestWeigher weigher = RequestWeigher.UNIT;
+        private Ticker ticker = SYSTEM_TICKER;
+
+        private Builder(double permitsPerSecond) {
+            checkRate(permitsPerSecond, 1);
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = Math.max(1, permitsPerSecond);
+        }
+
+        /**
+         * @param burst The permits a bucket holds, i.e. that can be taken at once after a pause; one second's worth by default
+         * @return This builder
+         */
+        public Builder burst(double burst) {
+            checkRate(permitsPerSecond, burst);
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Give an operation a rate of its own, on every base path. The path is matched against the end
+         * of the request path, so it also applies behind a base path with a path prefix, such as the
+         * API server proxy of {@code Configuration.newApiClientWithKubeconfigAndProxy}.
+         *
+         * @param path The path of the operation relative to the base path, e.g. {@code /v2/allocation}
+         * @param permitsPerSecond The sustained rate
+         * @param burst The permits the bucket holds
+         * @return This builder
+         */
+        public Builder operation(String path, double permitsPerSecond, double burst) {
+            checkRate(permitsPerSecond, burst);
+            operationRates.put(path, new double[] {permitsPerSecond, burst});
+            return this;
+        }
+
+        /**
+         * @param mode What happens to a request that finds no permits, {@link Mode#BLOCK} by default
+         * @return This builder
+         */
+        public Builder mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * @param maxQueueDelay The longest wait in {@link Mode#QUEUE}, 30 seconds by default
+         * @return This builder
+         */
+        public Builder maxQueueDelay(Duration maxQueueDelay) {
+            if (maxQueueDelay.isNegative()) {
+                throw new IllegalArgumentException("The queue delay must not be negative: " + maxQueueDelay);
+            }
+            this.maxQueueDelay = maxQueueDelay;
+            return this;
+        }
+
+        /**
+         * @param weigher The cost estimate of requests, one permit per request by default
+         * @return This builder
+         */
+        public Builder weigher(RequestWeigher weigher) {
+            this.weigher = weigher;
+            return this;
+        }
+
+        Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public RateLimiter build() {
+            return new RateLimiter(this);
+        }
+
+        private static void checkRate(double permitsPerSecond, double burst) {
+            if (!(permitsPerSecond > 0)) {
+                throw new IllegalArgumentException("The rate must be positive: " + permitsPerSecond);
+            }
+            if (!(burst >= 1)) {
+                throw new IllegalArgumentException("The burst must be at least one permit: " + burst);
+            }
+        }
+    }
+}
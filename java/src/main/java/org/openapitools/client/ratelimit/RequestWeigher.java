@@ -0,0 +1,68 @@
+package org.openapitools.client.ratelimit;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+import org.openapitools.client.query.CostWindow;
+
+/**
+ * Estimates the cost of a request in rate limiter permits.
+ */
+public interface RequestWeigher {
+
+    /**
+     * Every request costs one permit.
+     */
+    RequestWeigher UNIT = new RequestWeigher() {
+        @Override
+        public double weigh(Request request) {
+            return 1;
+        }
+    };
+
+    /**
+     * Get the permits a request costs.
+     *
+     * @param request The request
+     * @return The permits, at least 0
+     */
+    double weigh(Request request);
+
+    /**
+     * Weigh requests by the length of their {@code window} in days times the number of {@code step}s
+     * it is split into, at least one permit. Requests without a recognized window cost one permit.
+     *
+     * @return The weigher
+     */
+    static RequestWeigher byWindow() {
+        return byWindow(24 * 60 * 60);
+    }
+
+    /**
+     * Weigh requests by the length of their {@code window} in units times the number of {@code step}s
+     * it is split into, at least one permit. Requests without a recognized window cost one permit.
+     *
+     * @param unitSeconds The window length costing one permit per step
+     * @return The weigher
+     */
+    static RequestWeigher byWindow(final long unitSeconds) {
+        if (unitSeconds <= 0) {
+            throw new IllegalArgumentException("The unit must be positive: " + unitSeconds);
+        }
+        return new RequestWeigher() {
+            @Override
+            public double weigh(Request request) {
+                HttpUrl url = request.url();
+                String window = url.queryParameter("window");
+                long length = window == null ? -1 : CostWindow.lengthSeconds(window);
+                if (length <= 0) {
+                    return 1;
+                }
+                String step = url.queryParameter("step");
+                long stepSeconds = step == null ? -1 : CostWindow.parseDuration(step);
+                double steps = stepSeconds > 0 ? Math.ceil((double) length / stepSeconds) : 1;
+                return Math.max(1, (double) length / unitSeconds * steps);
+            }
+        };
+    }
+}
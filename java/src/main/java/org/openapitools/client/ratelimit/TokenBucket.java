@@ -0,0 +1,49 @@
+package org.openapitools.client.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket, kept as the single time at which the bucket is full again (the virtual
+ * scheduling form of the generic cell rate algorithm): taking permits moves that time forward by
+ * their emission interval, and a reservation fits if it stays within the burst of the current time.
+ * A reservation heavier than the burst fits once the bucket is full and leaves it in debt, so the
+ * reservations after it wait until the whole cost is paid.
+ */
+final class TokenBucket {
+
+    private final double nanosPerPermit;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    TokenBucket(double permitsPerSecond, double burst, long now) {
+        this.nanosPerPermit = 1e9 / permitsPerSecond;
+        this.burstNanos = (long) (burst * nanosPerPermit);
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Reserve permits, waiting at most the given time for them.
+     *
+     * @param permits The permits; more than the burst are reserved in full once the bucket is full
+     * @param maxWaitNanos The longest acceptable wait
+     * @param now The current {@link System#nanoTime()}
+     * @return The time to wait before using the permits, or {@code -1 - wait} if the wait would be longer and nothing was reserved
+     */
+    long reserve(double permits, long maxWaitNanos, long now) {
+        long cost = (long) (permits * nanosPerPermit);
+        // the part of the cost that must fit in the bucket; the rest is debt
+        long admitted = Math.min(cost, burstNanos);
+        while (true) {
+            long current = fullAt.get();
+            long start = Math.max(current, now);
+            long next = start + cost;
+            long wait = Math.max(0, start + admitted - now - burstNanos);
+            if (wait > maxWaitNanos) {
+                return -1 - wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return wait;
+            }
+        }
+    }
+}
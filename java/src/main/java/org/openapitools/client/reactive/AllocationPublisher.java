@@ -0,0 +1,309 @@
+package org.openapitools.client.reactive;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.schedule.CallScheduler;
+import org.openapitools.client.stream.AllocationProjection;
+import org.openapitools.client.stream.AllocationStreamReader;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Publishes the entries of an {@code AllocationSetRange} response as they are decoded, at the pace
+ * of the subscriber:
+ * <pre>
+ * api.publishCost(query, AllocationProjection.of("name", "cost")).subscribe(subscriber);
+ * </pre>
+ * <p>
+ * Every subscription runs the call anew, on its first request. Entries are decoded with
+ * {@link AllocationStreamReader} only while the subscriber has outstanding demand; otherwise the
+ * response is left unread, so TCP flow control holds back the server and at most the socket and
+ * tokenizer buffers of the response are in memory, however slow the subscriber. Cancelling the
+ * subscription cancels the call. Entries that are JSON null are skipped; project the {@code name}
+ * field to tell the entries apart.
+ * </p>
+ * <p>
+ * The response is read on the executor, by default a pool of daemon threads of its own, which holds no
+ * thread while there is no demand and leaves the threads of the OkHttp dispatcher to asynchronous
+ * calls. Signals to the subscriber are serial but may come from different threads. If the client has
+ * a {@link CallScheduler}, the call waits for a slot of its call class before it is sent and holds the
+ * slot until the subscription completes or is cancelled. A {@link org.openapitools.client.Deadline} of
+ * the call covers the whole subscription, including the time waiting for demand.
+ * </p>
+ */
+public class AllocationPublisher implements Publisher<Allocation> {
+
+    private static final Executor DEFAULT_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "api-publisher-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private static final Runnable NO_SLOT = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final ApiClient apiClient;
+    private final Call call;
+    private final AllocationProjection projection;
+    private final Executor executor;
+
+    /**
+     * Create a publisher reading on the shared threads of the publishers.
+     *
+     * @param apiClient The client executing the call
+     * @param call The call, not executed; every subscription executes a clone of it
+     * @param projection The fields to materialize
+     */
+    public AllocationPublisher(ApiClient apiClient, Call call, AllocationProjection projection) {
+        this(apiClient, call, projection, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Create a publisher.
+     *
+     * @param apiClient The client executing the call
+     * @param call The call, not executed; every subscription executes a clone of it
+     * @param projection The fields to materialize
+     * @param executor The executor running the call and reading the response
+     */
+    public AllocationPublisher(ApiClient apiClient, Call call, AllocationProjection projection, Executor executor) {
+        this.apiClient = apiClient;
+        this.call = call;
+        this.projection = projection;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Allocation> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        AllocationSubscription subscription = new AllocationSubscription(subscriber, call.clone());
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class AllocationSubscription implements Subscription, Runnable {
+        private final Subscriber<? super Allocation> subscriber;
+        private final Call call;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        // set by the call scheduler
+        private volatile Runnable release;
+        private volatile ApiException refusal;
+        private volatile boolean done;
+        // confined to the draining thread
+        private boolean submitted;
+        private Response response;
+        private AllocationStreamReader reader;
+
+        AllocationSubscription(Subscriber<? super Allocation> subscriber, Call call) {
+            this.subscriber = subscriber;
+            this.call = call;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("The demand must be positive: " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                // fails a blocked read right away; the draining thread then releases the response
+                call.cancel();
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Emit entries while there is demand. Only one thread runs this at a time; signals arriving
+         * meanwhile are counted in {@code wip} and make it loop again.
+         */
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                if (!done) {
+                    drain();
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void drain() {
+            if (cancelled) {
+                finish();
+                return;
+            }
+            if (invalidRequest != null) {
+                finish();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+            long requested = demand.get();
+            if (requested == 0) {
+                return;
+            }
+            long emitted = 0;
+            try {
+                if (reader == null && (!admitted() || !start())) {
+                    return;
+                }
+                while (emitted != requested) {
+                    if (cancelled) {
+                        finish();
+                        return;
+                    }
+                    if (!reader.next()) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    Allocation allocation = reader.allocation();
+                    if (allocation != null) {
+                        subscriber.onNext(allocation);
+                        emitted++;
+                    }
+                }
+            } catch (ApiException e) {
+                fail(e);
+                return;
+            } catch (IOException e) {
+                fail(new ApiException(response.message(), e, response.code(), response.headers().toMultimap()));
+                return;
+            } catch (RuntimeException e) {
+                // a subscriber throwing from onNext breaks the contract; treat it as cancelled
+                cancelled = true;
+                call.cancel();
+                finish();
+                throw e;
+            }
+            if (requested != Long.MAX_VALUE) {
+                demand.addAndGet(-emitted);
+            }
+        }
+
+        /**
+         * Submit the call to the scheduler of the client, if any, on the first demand.
+         *
+         * @return False while the call waits for a slot; the scheduler signals again once it has one
+         * @throws ApiException if the scheduler refused the call
+         */
+        private boolean admitted() throws ApiException {
+            if (!submitted) {
+                submitted = true;
+                CallScheduler scheduler = apiClient.getCallScheduler();
+                if (scheduler == null) {
+                    release = NO_SLOT;
+                } else {
+                    scheduler.submit(call.request(), new CallScheduler.Task() {
+                        @Override
+                        public void send(Runnable slot) {
+                            release = slot;
+                            if (done) {
+                                slot.run();
+                            } else {
+                                schedule();
+                            }
+                        }
+
+                        @Override
+                        public void fail(ApiException e) {
+                            refusal = e;
+                            schedule();
+                        }
+                    });
+                }
+            }
+            if (refusal != null) {
+                throw refusal;
+            }
+            return release != null;
+        }
+
+        /**
+         * Execute the call and open the response.
+         *
+         * @return False if the response has no body and the subscription completed
+         */
+        private boolean start() throws ApiException {
+            response = apiClient.open(call);
+            ResponseBody body = response.body();
+            if (body == null || response.code() == 204) {
+                finish();
+                subscriber.onComplete();
+                return false;
+            }
+            reader = new AllocationStreamReader(body.source(), projection);
+            return true;
+        }
+
+        private void fail(ApiException e) {
+            boolean wasCancelled = cancelled;
+            finish();
+            if (!wasCancelled) {
+                subscriber.onError(e);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            if (response != null) {
+                response.close();
+            } else {
+                call.cancel();
+            }
+            // a call still queued in the scheduler frees its slot once it gets one
+            Runnable slot = release;
+            if (slot != null) {
+                slot.run();
+            }
+        }
+    }
+}
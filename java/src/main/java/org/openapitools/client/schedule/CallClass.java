@@ -0,0 +1,50 @@
+package org.openapitools.client.schedule;
+
+/**
+ * The queue of a {@link CallScheduler} an asynchronous call waits in, such as a priority level or a
+ * tenant, carried by the calls of {@link org.openapitools.client.api.DefaultApi#withCallClass(CallClass)}.
+ * Call classes are equal when their names are.
+ */
+public final class CallClass {
+
+    /** The class of calls not given one. */
+    public static final CallClass DEFAULT = new CallClass("default");
+
+    private final String name;
+
+    private CallClass(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get a call class.
+     *
+     * @param name The name, e.g. {@code interactive} or a tenant id
+     * @return The call class
+     */
+    public static CallClass of(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("A call class needs a name");
+        }
+        return DEFAULT.name.equals(name) ? DEFAULT : new CallClass(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof CallClass && name.equals(((CallClass) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
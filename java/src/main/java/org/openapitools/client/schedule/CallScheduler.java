@@ -0,0 +1,485 @@
+package org.openapitools.client.schedule;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Request;
+
+import org.openapitools.client.ApiException;
+import org.openapitools.client.ratelimit.RequestWeigher;
+
+/**
+ * A scheduler in front of the OkHttp dispatcher, applied by {@code ApiClient} to its asynchronous
+ * calls, so interactive calls are not queued behind a backlog of batch calls:
+ * <pre>
+ * CallClass interactive = CallClass.of("interactive");
+ * apiClient.setCallScheduler(CallScheduler.builder()
+ *     .maxInFlight(4)
+ *     .callClass(interactive, 1, 1, 100)
+ *     .callClass(CallClass.of("tenant-a"), 0, 3, 500)
+ *     .build());
+ * DefaultApi dashboards = new DefaultApi(apiClient).withCallClass(interactive);
+ * </pre>
+ * <p>
+ * At most {@code maxInFlight} calls are handed to the dispatcher at a time; the others wait in the
+ * bounded queue of their {@link CallClass}, and a call finding its queue full fails with a
+ * {@link QueueFullException}. When a call completes, the next one is taken from the queues of the
+ * highest priority holding calls, and among queues of equal priority by weighted fair queuing: every
+ * queue gets a share of the calls proportional to its weight, counting calls by the cost estimated
+ * by the {@link RequestWeigher}. Classes not configured get a queue of their own with the default
+ * priority, weight and capacity while they have calls queued, so tenants can share fairly without
+ * being declared; the queue and its statistics are dropped once it is empty.
+ * </p>
+ * <p>
+ * Calls admitted when they are submitted are sent on the submitting thread; calls taken from the
+ * queues when a slot frees up are sent on a thread of the scheduler, never on the OkHttp thread
+ * completing a call. {@code maxInFlight} should not exceed the per-host limit of the dispatcher, 5 by
+ * default, or calls wait in the dispatcher again. Synchronous calls are not scheduled, but the calls of
+ * an {@code AllocationPublisher} are.
+ * </p>
+ */
+public final class CallScheduler {
+
+    /**
+     * Sends a queued call once its turn comes.
+     */
+    public interface Task {
+
+        /**
+         * Send the call.
+         *
+         * @param release Frees the slot of the call; to be run once the call has completed, or failed
+         *                before being sent. Running it more than once has no effect.
+         */
+        void send(Runnable release);
+
+        /**
+         * Report a failure of {@link #send(Runnable)}, whose slot has been freed.
+         *
+         * @param e The failure
+         */
+        void fail(ApiException e);
+    }
+
+    private final int maxInFlight;
+    private final RequestWeigher weigher;
+    private final Map<CallClass, Lane> lanes = new LinkedHashMap<CallClass, Lane>();
+    private final int defaultPriority;
+    private final double defaultWeight;
+    private final int defaultCapacity;
+    private final Executor executor;
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    // guarded by this
+    private int inFlight;
+    private int queued;
+    private double virtualTime;
+    private boolean draining;
+
+    private CallScheduler(Builder builder) {
+        this.maxInFlight = builder.maxInFlight;
+        this.weigher = builder.weigher;
+        this.defaultPriority = builder.defaultPriority;
+        this.defaultWeight = builder.defaultWeight;
+        this.defaultCapacity = builder.defaultCapacity;
+        for (Map.Entry<CallClass, Lane> entry : builder.lanes.entrySet()) {
+            Lane lane = entry.getValue();
+            lanes.put(entry.getKey(), new Lane(entry.getKey(), lane.priority, lane.weight, lane.capacity, true));
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "api-call-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        this.executor = pool;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Queue a call and run the task sending it once its turn comes, right away on the calling thread
+     * if the scheduler is not saturated. If the task throws, its slot is freed and the failure is
+     * reported to {@link Task#fail(ApiException)}.
+     *
+     * @param request The request, whose {@link CallClass} tag selects the queue
+     * @param task The task sending the request
+     * @throws QueueFullException if the queue of the call class is full; the task does not run
+     */
+    public void submit(Request request, Task task) throws QueueFullException {
+        CallClass callClass = request.tag(CallClass.class);
+        if (callClass == null) {
+            callClass = CallClass.DEFAULT;
+        }
+        double cost = Math.max(0, weigher.weigh(request));
+        synchronized (this) {
+            Lane lane = lane(callClass);
+            if (lane.queue.size() >= lane.capacity) {
+                lane.rejected++;
+                if (lane.queue.isEmpty() && !lane.configured) {
+                    lanes.remove(callClass);
+                }
+                throw new QueueFullException(callClass);
+            }
+            // the virtual finish time of the call: its cost in the share of its queue, after the
+            // calls already queued there, or from now if the queue has fallen behind
+            lane.lastFinish = Math.max(virtualTime, lane.lastFinish) + cost / lane.weight;
+            lane.queue.add(new Entry(task, lane.lastFinish, System.nanoTime()));
+            lane.submitted++;
+            queued++;
+            if (!startDraining()) {
+                return;
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Free the slot of a call and have the scheduler thread send the next queued call, if any.
+     */
+    private void release() {
+        synchronized (this) {
+            if (inFlight > 0) {
+                inFlight--;
+            }
+            if (!startDraining()) {
+                return;
+            }
+        }
+        executor.execute(drainTask);
+    }
+
+    /**
+     * @return The number of calls handed to the dispatcher and not completed yet
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Get the queue statistics of a call class.
+     *
+     * @param callClass The call class
+     * @return The statistics, all zero for a class not configured and without calls queued
+     */
+    public synchronized Stats getStats(CallClass callClass) {
+        Lane lane = lanes.get(callClass);
+        return lane == null ? new Stats(callClass, 0, 0, 0, 0, 0, 0) : lane.stats();
+    }
+
+    /**
+     * @return The queue statistics of every call class configured or with calls queued
+     */
+    public synchronized List<Stats> getStats() {
+        List<Stats> stats = new ArrayList<Stats>(lanes.size());
+        for (Lane lane : lanes.values()) {
+            stats.add(lane.stats());
+        }
+        return stats;
+    }
+
+    private Lane lane(CallClass callClass) {
+        Lane lane = lanes.get(callClass);
+        if (lane == null) {
+            lane = new Lane(callClass, defaultPriority, defaultWeight, defaultCapacity, false);
+            lanes.put(callClass, lane);
+        }
+        return lane;
+    }
+
+    /**
+     * Claim the right to drain if there is a free slot and a queued call. Only one thread drains at a
+     * time, so a task failing right away and releasing its slot does not recurse.
+     *
+     * @return True if the caller must now run {@link #drain()}
+     */
+    private boolean startDraining() {
+        if (draining || inFlight >= maxInFlight || queued == 0) {
+            return false;
+        }
+        draining = true;
+        return true;
+    }
+
+    /**
+     * Send queued calls while there are free slots, once {@link #startDraining()} has been claimed.
+     */
+    private void drain() {
+        while (true) {
+            Entry next;
+            synchronized (this) {
+                next = inFlight < maxInFlight ? poll() : null;
+                if (next == null) {
+                    draining = false;
+                    return;
+                }
+                inFlight++;
+            }
+            final AtomicBoolean released = new AtomicBoolean();
+            Runnable release = new Runnable() {
+                @Override
+                public void run() {
+                    if (released.compareAndSet(false, true)) {
+                        release();
+                    }
+                }
+            };
+            try {
+                next.task.send(release);
+            } catch (RuntimeException e) {
+                if (released.compareAndSet(false, true)) {
+                    synchronized (this) {
+                        inFlight--;
+                    }
+                }
+                try {
+                    next.task.fail(new ApiException(e));
+                } catch (RuntimeException ignored) {
+                    // a failing callback must not stop the other calls
+                }
+            }
+        }
+    }
+
+    private Entry poll() {
+        Lane best = null;
+        for (Lane lane : lanes.values()) {
+            Entry head = lane.queue.peek();
+            if (head != null && (best == null || lane.priority > best.priority
+                || lane.priority == best.priority && head.finish < best.queue.peek().finish)) {
+                best = lane;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        Entry entry = best.queue.poll();
+        queued--;
+        if (best.queue.isEmpty() && !best.configured) {
+            // keeps the lanes scanned down to the configured classes and the classes with calls queued
+            lanes.remove(best.callClass);
+        }
+        virtualTime = Math.max(virtualTime, entry.finish);
+        long wait = System.nanoTime() - entry.enqueuedNanos;
+        best.dispatched++;
+        best.totalWaitNanos += wait;
+        best.maxWaitNanos = Math.max(best.maxWaitNanos, wait);
+        return entry;
+    }
+
+    private static final class Entry {
+        final Task task;
+        final double finish;
+        final long enqueuedNanos;
+
+        Entry(Task task, double finish, long enqueuedNanos) {
+            this.task = task;
+            this.finish = finish;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private static final class Lane {
+        final CallClass callClass;
+        final int priority;
+        final double weight;
+        final int capacity;
+        final boolean configured;
+        final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+        double lastFinish;
+        long submitted;
+        long dispatched;
+        long rejected;
+        long totalWaitNanos;
+        long maxWaitNanos;
+
+        Lane(CallClass callClass, int priority, double weight, int capacity, boolean configured) {
+            this.callClass = callClass;
+            this.priority = priority;
+            this.weight = weight;
+            this.capacity = capacity;
+            this.configured = configured;
+        }
+
+        Stats stats() {
+            return new Stats(callClass, queue.size(), submitted, dispatched, rejected, totalWaitNanos, maxWaitNanos);
+        }
+    }
+
+    /**
+     * A snapshot of the queue statistics of a call class.
+     */
+    public static final class Stats {
+        private final CallClass callClass;
+        private final int queued;
+        private final long submitted;
+        private final long dispatched;
+        private final long rejected;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+
+        Stats(CallClass callClass, int queued, long submitted, long dispatched, long rejected,
+              long totalWaitNanos, long maxWaitNanos) {
+            this.callClass = callClass;
+            this.queued = queued;
+            this.submitted = submitted;
+            this.dispatched = dispatched;
+            this.rejected = rejected;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        public CallClass getCallClass() {
+            return callClass;
+        }
+
+        /**
+         * @return The number of calls waiting
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * @return The number of calls handed to the dispatcher
+         */
+        public long getDispatched() {
+            return dispatched;
+        }
+
+        /**
+         * @return The number of calls refused because the queue was full
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return The time dispatched calls spent queued, in total
+         */
+        public long getTotalWaitNanos() {
+            return totalWaitNanos;
+        }
+
+        /**
+         * @return The average time dispatched calls spent queued, 0 if none was dispatched
+         */
+        public long getMeanWaitNanos() {
+            return dispatched == 0 ? 0 : totalWaitNanos / dispatched;
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        @Override
+        public String toString() {
+            return callClass + ": queued=" + queued + ", submitted=" + submitted + ", dispatched=" + dispatched
+                + ", rejected=" + rejected + ", meanWaitNanos=" + getMeanWaitNanos() + ", maxWaitNanos=" + maxWaitNanos;
+        }
+    }
+
+    public static final class Builder {
+        private int maxInFlight = 5;
+        private RequestWeigher weigher = RequestWeigher.UNIT;
+        private final Map<CallClass, Lane> lanes = new LinkedHashMap<CallClass, Lane>();
+        private int defaultPriority;
+        private double defaultWeight = 1;
+        private int defaultCapacity = 256;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxInFlight The calls handed to the dispatcher at a time, 5 by default
+         * @return This builder
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("The calls in flight must be positive: " + maxInFlight);
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Configure the queue of a call class.
+         *
+         * @param callClass The call class
+         * @param priority The priority; queued calls of a higher priority always go first
+         * @param weight The share of the calls among the queues of the same priority
+         * @param capacity The calls the queue holds at most, at least 1; a call waits in the queue even
+         *                 when a slot is free, until it is sent
+         * @return This builder
+         * @throws IllegalArgumentException if the weight is not positive or the capacity below 1
+         */
+        public Builder callClass(CallClass callClass, int priority, double weight, int capacity) {
+            checkQueue(weight, capacity);
+            lanes.put(callClass, new Lane(callClass, priority, weight, capacity, true));
+            return this;
+        }
+
+        /**
+         * Configure the queues of call classes not configured, including {@link CallClass#DEFAULT}.
+         *
+         * @param priority The priority, 0 by default
+         * @param weight The weight, 1 by default
+         * @param capacity The calls a queue holds at most, at least 1, 256 by default
+         * @return This builder
+         * @throws IllegalArgumentException if the weight is not positive or the capacity below 1
+         */
+        public Builder defaultCallClass(int priority, double weight, int capacity) {
+            checkQueue(weight, capacity);
+            this.defaultPriority = priority;
+            this.defaultWeight = weight;
+            this.defaultCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param weigher The cost estimate of calls for fair queuing, one per call by default
+         * @return This builder
+         */
+        public Builder weigher(RequestWeigher weigher) {
+            this.weigher = weigher;
+            return this;
+        }
+
+        public CallScheduler build() {
+            return new CallScheduler(this);
+        }
+
+        private static void checkQueue(double weight, int capacity) {
+            if (!(weight > 0)) {
+                throw new IllegalArgumentException("The weight must be positive: " + weight);
+            }
+            if (capacity < 1) {
+                // every call passes through its queue, so an empty queue would refuse every call
+                throw new IllegalArgumentException("The capacity must be at least 1: " + capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.openapitools.client.schedule;
+
+import org.openapitools.client.ApiException;
+
+/**
+ * Thrown when an asynchronous call is refused by a {@link CallScheduler} because the queue of its
+ * call class is full.
+ */
+public class QueueFullException extends ApiException {
+    private static final long serialVersionUID = 1L;
+
+    private final CallClass callClass;
+
+    public QueueFullException(CallClass callClass) {
+        super("Call queue full for class " + callClass);
+        this.callClass = callClass;
+    }
+
+    /**
+     * @return The call class whose queue is full
+     */
+    public CallClass getCallClass() {
+        return callClass;
+    }
+}
@@ -0,0 +1,60 @@
+package org.openapitools.client.snapshot;
+
+import org.openapitools.client.aggregation.AllocationMetric;
+
+/**
+ * The row columns of a snapshot file, in file order.
+ */
+enum SnapshotColumn {
+    // bit 0: the allocation is null, bit 1: its properties are null
+    FLAGS,
+    // string dictionary ids
+    KEY,
+    NAME,
+    CLUSTER,
+    NODE,
+    CONTROLLER,
+    CONTROLLER_KIND,
+    NAMESPACE,
+    POD,
+    PROVIDER_ID,
+    // label set dictionary id
+    LABEL_SET,
+    // timestamps as epoch second, nano of second and zone offset in seconds
+    START_SECOND,
+    START_NANO,
+    START_OFFSET,
+    END_SECOND,
+    END_NANO,
+    END_OFFSET,
+    // float metrics as raw IEEE 754 bits
+    CPU_CORE_REQUEST_AVERAGE,
+    CPU_CORE_USAGE_AVERAGE,
+    RAM_BYTE_REQUEST_AVERAGE,
+    RAM_BYTE_USAGE_AVERAGE,
+    COST,
+    COST_RATIO,
+    CUSTOM_COST;
+
+    static final int FLAG_NULL_ALLOCATION = 1;
+    static final int FLAG_NULL_PROPERTIES = 2;
+
+    static SnapshotColumn of(AllocationMetric metric) {
+        switch (metric) {
+            case COST:
+                return COST;
+            case CUSTOM_COST:
+                return CUSTOM_COST;
+            case COST_RATIO:
+                return COST_RATIO;
+            case CPU_CORE_REQUEST_AVERAGE:
+                return CPU_CORE_REQUEST_AVERAGE;
+            case CPU_CORE_USAGE_AVERAGE:
+                return CPU_CORE_USAGE_AVERAGE;
+            case RAM_BYTE_REQUEST_AVERAGE:
+                return RAM_BYTE_REQUEST_AVERAGE;
+            default:
+                return RAM_BYTE_USAGE_AVERAGE;
+        }
+    }
+}
@@ -0,0 +1,656 @@
+package org.openapitools.client.snapshot;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.client.aggregation.AllocationAggregator;
+import org.openapitools.client.aggregation.AllocationMetric;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostAggregate;
+import org.openapitools.client.query.FilterField;
+import org.openapitools.client.stream.AllocationHandler;
+
+/**
+ * Reads a snapshot file written by {@link SnapshotWriter}.
+ * <p>
+ * The file is memory-mapped and only its header and dictionary offsets are read on open. Row values
+ * are unpacked straight from the mapping when accessed, and strings are decoded once on first use,
+ * so scans and sums do not build any {@link Allocation}:
+ * </p>
+ * <pre>
+ * SnapshotReader snapshot = SnapshotReader.open(path);
+ * Map&lt;String, Double&gt; costByNamespace = snapshot.sumBy(AllocationMetric.COST, CostAggregate.NAMESPACE);
+ * </pre>
+ * <p>
+ * {@link #allocation(int)}, {@link #toRange()} and {@link #scan(AllocationHandler)} rebuild the model
+ * objects for code written against them. Rows are numbered in file order across windows. Readers are
+ * safe for concurrent use.
+ * </p>
+ */
+public final class SnapshotReader {
+
+    private static final int NULL_LABEL_VALUE = -1;
+
+    private final ByteBuffer buffer;
+    private final boolean nullData;
+    private final int windowCount;
+    private final int rowCount;
+    private final int stringCount;
+    private final int stringOffsets;
+    private final int stringBytes;
+    private final String[] strings;
+    private final Map<String, String> metadata;
+    private final int labelSetCount;
+    private final int labelSetOffsets;
+    private final int labelPairs;
+    private final Map<?, ?>[] labelSets;
+    private final int windowStarts;
+    private final int windowNulls;
+    private final Column[] columns;
+
+    private SnapshotReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int position = 0;
+        if (buffer.getInt(position) != SnapshotWriter.MAGIC) {
+            throw new IllegalArgumentException("Not a snapshot file");
+        }
+        int version = buffer.getInt(position + 4);
+        if (version != SnapshotWriter.VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+        }
+        this.nullData = (buffer.getInt(position + 8) & SnapshotWriter.FLAG_NULL_DATA) != 0;
+        this.windowCount = buffer.getInt(position + 12);
+        this.rowCount = buffer.getInt(position + 16);
+        position += 20;
+
+        this.stringCount = buffer.getInt(position);
+        this.stringOffsets = position + 4;
+        this.stringBytes = stringOffsets + (stringCount + 1) * 4;
+        this.strings = new String[stringCount];
+        position = stringBytes + buffer.getInt(stringOffsets + stringCount * 4);
+
+        int metadataCount = buffer.getInt(position);
+        position += 4;
+        Map<String, String> meta = new LinkedHashMap<String, String>();
+        for (int i = 0; i < metadataCount; i++) {
+            meta.put(string(buffer.getInt(position)), string(buffer.getInt(position + 4)));
+            position += 8;
+        }
+        this.metadata = Collections.unmodifiableMap(meta);
+
+        this.labelSetCount = buffer.getInt(position);
+        this.labelSetOffsets = position + 4;
+        this.labelPairs = labelSetOffsets + (labelSetCount + 1) * 4;
+        this.labelSets = new Map<?, ?>[labelSetCount];
+        position = labelPairs + buffer.getInt(labelSetOffsets + labelSetCount * 4) * 8;
+
+        this.windowStarts = position;
+        this.windowNulls = windowStarts + (windowCount + 1) * 4;
+        position = windowNulls + windowCount;
+
+        int columnCount = buffer.getInt(position);
+        if (columnCount != SnapshotColumn.values().length) {
+            throw new IllegalArgumentException("Unexpected number of snapshot columns: " + columnCount);
+        }
+        position += 4;
+        this.columns = new Column[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            columns[c] = new Column(buffer.get(position) != 0, buffer.get(position + 1), buffer.getLong(position + 2), position + 14);
+            position += 14 + buffer.getInt(position + 10) * 8;
+        }
+        if (position != buffer.limit()) {
+            throw new IllegalArgumentException("Corrupt snapshot: " + (buffer.limit() - position) + " trailing bytes");
+        }
+    }
+
+    /**
+     * Memory-map a snapshot file.
+     *
+     * @param file The file
+     * @return The reader
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static SnapshotReader open(Path file) throws IOException {
+        ByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            long size = raf.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot of " + size + " bytes exceeds the 2 GiB mapping limit");
+            }
+            // the mapping stays valid after the channel is closed
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        try {
+            return new SnapshotReader(mapped);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid snapshot file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read a snapshot held in memory.
+     *
+     * @param bytes The snapshot, from position zero to the limit; absolute reads only, the buffer is not modified
+     * @return The reader
+     * @throws IllegalArgumentException if the bytes are not a valid snapshot
+     */
+    public static SnapshotReader read(ByteBuffer bytes) {
+        return new SnapshotReader(bytes.duplicate());
+    }
+
+    /**
+     * Get the metadata stored by the writer; for snapshots of a query its parameters.
+     *
+     * @return Metadata key to value
+     */
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    public boolean isNullData() {
+        return nullData;
+    }
+
+    public int getWindowCount() {
+        return windowCount;
+    }
+
+    /**
+     * Get the number of rows, null entries included.
+     *
+     * @return The number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isNullWindow(int window) {
+        return buffer.get(windowNulls + checkWindow(window)) != 0;
+    }
+
+    /**
+     * Get the first row of a window.
+     *
+     * @param window The window number
+     * @return The row number
+     */
+    public int windowStart(int window) {
+        return buffer.getInt(windowStarts + checkWindow(window) * 4);
+    }
+
+    /**
+     * Get the row after the last row of a window.
+     *
+     * @param window The window number
+     * @return The row number
+     */
+    public int windowEnd(int window) {
+        return buffer.getInt(windowStarts + (checkWindow(window) + 1) * 4);
+    }
+
+    public String key(int row) {
+        return string(SnapshotColumn.KEY, row);
+    }
+
+    /**
+     * Check whether a row is a JSON null entry; such rows only have a key.
+     *
+     * @param row The row
+     * @return True if the allocation is null
+     */
+    public boolean isNull(int row) {
+        return (get(SnapshotColumn.FLAGS, row) & SnapshotColumn.FLAG_NULL_ALLOCATION) != 0;
+    }
+
+    public String name(int row) {
+        return string(SnapshotColumn.NAME, row);
+    }
+
+    /**
+     * Get a property of a row.
+     *
+     * @param field The property
+     * @param row The row
+     * @return The value, null if not set
+     */
+    public String value(FilterField field, int row) {
+        return string(columnOf(field), row);
+    }
+
+    /**
+     * Get the value of a label of a row.
+     *
+     * @param row The row
+     * @param key The label key
+     * @return The value, null if the row does not have the label
+     */
+    public String label(int row, String key) {
+        Map<String, String> labels = labels(row);
+        return labels == null ? null : labels.get(key);
+    }
+
+    /**
+     * Get the labels of a row.
+     *
+     * @param row The row
+     * @return The read-only labels, null if not set
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> labels(int row) {
+        Column column = columns[SnapshotColumn.LABEL_SET.ordinal()];
+        if (column.isNull(buffer, row)) {
+            return null;
+        }
+        int id = (int) column.get(buffer, row);
+        Map<String, String> labels = (Map<String, String>) labelSets[id];
+        if (labels == null) {
+            int from = buffer.getInt(labelSetOffsets + id * 4);
+            int to = buffer.getInt(labelSetOffsets + (id + 1) * 4);
+            Map<String, String> map = new LinkedHashMap<String, String>((to - from) * 2);
+            for (int pair = from; pair < to; pair++) {
+                int value = buffer.getInt(labelPairs + pair * 8 + 4);
+                map.put(string(buffer.getInt(labelPairs + pair * 8)), value == NULL_LABEL_VALUE ? null : string(value));
+            }
+            labels = Collections.unmodifiableMap(map);
+            labelSets[id] = labels;
+        }
+        return labels;
+    }
+
+    public OffsetDateTime start(int row) {
+        return time(SnapshotColumn.START_SECOND, row);
+    }
+
+    public OffsetDateTime end(int row) {
+        return time(SnapshotColumn.END_SECOND, row);
+    }
+
+    /**
+     * Get the value of a metric in a row.
+     *
+     * @param metric The metric
+     * @param row The row
+     * @return The value, NaN if the allocation has none
+     */
+    public float metric(AllocationMetric metric, int row) {
+        Column column = columns[SnapshotColumn.of(metric).ordinal()];
+        return column.isNull(buffer, row) ? Float.NaN : Float.intBitsToFloat((int) column.get(buffer, row));
+    }
+
+    /**
+     * Sum a metric over all rows; rows without a value count as zero.
+     *
+     * @param metric The metric
+     * @return The sum
+     */
+    public double sum(AllocationMetric metric) {
+        return sum(metric, 0, rowCount);
+    }
+
+    /**
+     * Sum a metric over the rows of a window; rows without a value count as zero.
+     *
+     * @param metric The metric
+     * @param window The window number
+     * @return The sum
+     */
+    public double sum(AllocationMetric metric, int window) {
+        return sum(metric, windowStart(window), windowEnd(window));
+    }
+
+    /**
+     * Sum a metric over all rows by the value of a dimension, with the group keys of
+     * {@link AllocationAggregator}.
+     *
+     * @param metric The metric
+     * @param dimension The dimension
+     * @return Group key to sum, groups in order of first appearance
+     */
+    public Map<String, Double> sumBy(AllocationMetric metric, CostAggregate dimension) {
+        return sumBy(metric, dimension, 0, rowCount);
+    }
+
+    /**
+     * Sum a metric over the rows of a window by the value of a dimension, with the group keys of
+     * {@link AllocationAggregator}.
+     *
+     * @param metric The metric
+     * @param dimension The dimension
+     * @param window The window number
+     * @return Group key to sum, groups in order of first appearance
+     */
+    public Map<String, Double> sumBy(AllocationMetric metric, CostAggregate dimension, int window) {
+        return sumBy(metric, dimension, windowStart(window), windowEnd(window));
+    }
+
+    private Map<String, Double> sumBy(AllocationMetric metric, CostAggregate dimension, int from, int to) {
+        Column values = columns[SnapshotColumn.of(metric).ordinal()];
+        Map<String, double[]> sums = new LinkedHashMap<String, double[]>();
+        GroupResolver resolver = new GroupResolver(dimension);
+        for (int row = from; row < to; row++) {
+            if (isNull(row)) {
+                continue;
+            }
+            String group = resolver.group(row);
+            double[] sum = sums.get(group);
+            if (sum == null) {
+                sum = new double[1];
+                sums.put(group, sum);
+            }
+            if (!values.isNull(buffer, row)) {
+                sum[0] += Float.intBitsToFloat((int) values.get(buffer, row));
+            }
+        }
+        Map<String, Double> result = new LinkedHashMap<String, Double>(sums.size() * 2);
+        for (Map.Entry<String, double[]> e : sums.entrySet()) {
+            result.put(e.getKey(), e.getValue()[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Rebuild the allocation of a row.
+     *
+     * @param row The row
+     * @return A new allocation, null for a null entry
+     */
+    public Allocation allocation(int row) {
+        if (isNull(row)) {
+            return null;
+        }
+        Allocation allocation = new Allocation()
+            .name(name(row))
+            .start(start(row))
+            .end(end(row))
+            .cpuCoreRequestAverage(floatValue(SnapshotColumn.CPU_CORE_REQUEST_AVERAGE, row))
+            .cpuCoreUsageAverage(floatValue(SnapshotColumn.CPU_CORE_USAGE_AVERAGE, row))
+            .ramByteRequestAverage(floatValue(SnapshotColumn.RAM_BYTE_REQUEST_AVERAGE, row))
+            .ramByteUsageAverage(floatValue(SnapshotColumn.RAM_BYTE_USAGE_AVERAGE, row))
+            .cost(floatValue(SnapshotColumn.COST, row))
+            .costRatio(floatValue(SnapshotColumn.COST_RATIO, row))
+            .customCost(floatValue(SnapshotColumn.CUSTOM_COST, row));
+        if ((get(SnapshotColumn.FLAGS, row) & SnapshotColumn.FLAG_NULL_PROPERTIES) == 0) {
+            Map<String, String> labels = labels(row);
+            allocation.properties(new AllocationProperties()
+                .cluster(string(SnapshotColumn.CLUSTER, row))
+                .node(string(SnapshotColumn.NODE, row))
+                .controller(string(SnapshotColumn.CONTROLLER, row))
+                .controllerKind(string(SnapshotColumn.CONTROLLER_KIND, row))
+                .namespace(string(SnapshotColumn.NAMESPACE, row))
+                .pod(string(SnapshotColumn.POD, row))
+                .providerID(string(SnapshotColumn.PROVIDER_ID, row))
+                .labels(labels == null ? null : new HashMap<String, String>(labels)));
+        }
+        return allocation;
+    }
+
+    /**
+     * Rebuild the whole range.
+     *
+     * @return A new range equal to the one written
+     */
+    public AllocationSetRange toRange() {
+        AllocationSetRange range = new AllocationSetRange();
+        if (nullData) {
+            range.setData(null);
+            return range;
+        }
+        List<Map<String, Allocation>> data = new ArrayList<Map<String, Allocation>>(windowCount);
+        for (int w = 0; w < windowCount; w++) {
+            if (isNullWindow(w)) {
+                data.add(null);
+                continue;
+            }
+            int end = windowEnd(w);
+            Map<String, Allocation> window = new LinkedHashMap<String, Allocation>((end - windowStart(w)) * 2);
+            for (int row = windowStart(w); row < end; row++) {
+                window.put(key(row), allocation(row));
+            }
+            data.add(window);
+        }
+        range.setData(data);
+        return range;
+    }
+
+    /**
+     * Replay the snapshot into a handler as if the range was streamed.
+     *
+     * @param handler The handler
+     * @throws IOException if the handler aborts
+     */
+    public void scan(AllocationHandler handler) throws IOException {
+        for (int w = 0; w < windowCount; w++) {
+            boolean isNull = isNullWindow(w);
+            handler.onWindow(w, isNull);
+            if (isNull) {
+                continue;
+            }
+            int end = windowEnd(w);
+            for (int row = windowStart(w); row < end; row++) {
+                handler.onAllocation(w, key(row), allocation(row));
+            }
+        }
+        handler.onEnd();
+    }
+
+    private double sum(AllocationMetric metric, int from, int to) {
+        Column column = columns[SnapshotColumn.of(metric).ordinal()];
+        double sum = 0;
+        for (int row = from; row < to; row++) {
+            if (!column.isNull(buffer, row)) {
+                sum += Float.intBitsToFloat((int) column.get(buffer, row));
+            }
+        }
+        return sum;
+    }
+
+    private int checkWindow(int window) {
+        if (window < 0 || window >= windowCount) {
+            throw new IndexOutOfBoundsException("Window " + window + " of " + windowCount);
+        }
+        return window;
+    }
+
+    private long get(SnapshotColumn column, int row) {
+        return columns[column.ordinal()].get(buffer, row);
+    }
+
+    private int stringId(SnapshotColumn column, int row) {
+        Column c = columns[column.ordinal()];
+        return c.isNull(buffer, row) ? -1 : (int) c.get(buffer, row);
+    }
+
+    private String string(SnapshotColumn column, int row) {
+        int id = stringId(column, row);
+        return id < 0 ? null : string(id);
+    }
+
+    private String string(int id) {
+        String value = strings[id];
+        if (value == null) {
+            int from = buffer.getInt(stringOffsets + id * 4);
+            int to = buffer.getInt(stringOffsets + (id + 1) * 4);
+            byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(stringBytes + from + i);
+            }
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = value;
+        }
+        return value;
+    }
+
+    private Float floatValue(SnapshotColumn column, int row) {
+        Column c = columns[column.ordinal()];
+        return c.isNull(buffer, row) ? null : Float.intBitsToFloat((int) c.get(buffer, row));
+    }
+
+    private OffsetDateTime time(SnapshotColumn secondColumn, int row) {
+        Column seconds = columns[secondColumn.ordinal()];
+        if (seconds.isNull(buffer, row)) {
+            return null;
+        }
+        Instant instant = Instant.ofEpochSecond(seconds.get(buffer, row), columns[secondColumn.ordinal() + 1].get(buffer, row));
+        return OffsetDateTime.ofInstant(instant, ZoneOffset.ofTotalSeconds((int) columns[secondColumn.ordinal() + 2].get(buffer, row)));
+    }
+
+    private static SnapshotColumn columnOf(FilterField field) {
+        switch (field) {
+            case CLUSTER:
+                return SnapshotColumn.CLUSTER;
+            case NODE:
+                return SnapshotColumn.NODE;
+            case NAMESPACE:
+                return SnapshotColumn.NAMESPACE;
+            case CONTROLLER_KIND:
+                return SnapshotColumn.CONTROLLER_KIND;
+            case CONTROLLER:
+                return SnapshotColumn.CONTROLLER;
+            default:
+                return SnapshotColumn.POD;
+        }
+    }
+
+    /**
+     * Resolves the group key of rows from dictionary ids, caching one key per id.
+     */
+    private final class GroupResolver {
+        private final CostAggregate dimension;
+        private final String[] byId = new String[stringCount];
+        private final String[] byLabelSet = new String[labelSetCount];
+
+        GroupResolver(CostAggregate dimension) {
+            this.dimension = dimension;
+        }
+
+        String group(int row) {
+            String key = key(row);
+            if (key != null && key.endsWith(AllocationAggregator.IDLE_KEY)) {
+                return key;
+            }
+            if ((get(SnapshotColumn.FLAGS, row) & SnapshotColumn.FLAG_NULL_PROPERTIES) != 0) {
+                return AllocationAggregator.UNALLOCATED_KEY;
+            }
+            switch (dimension.getDimension()) {
+                case NAMESPACE:
+                    return cached(stringId(SnapshotColumn.NAMESPACE, row));
+                case NODE:
+                    return cached(stringId(SnapshotColumn.NODE, row));
+                case CONTROLLER_KIND:
+                    return cached(stringId(SnapshotColumn.CONTROLLER_KIND, row));
+                case CONTROLLER:
+                    return controller(row);
+                default:
+                    return label(row);
+            }
+        }
+
+        private String cached(int id) {
+            if (id < 0) {
+                return AllocationAggregator.UNALLOCATED_KEY;
+            }
+            String group = byId[id];
+            if (group == null) {
+                group = orUnallocated(string(id));
+                byId[id] = group;
+            }
+            return group;
+        }
+
+        private String controller(int row) {
+            int id = stringId(SnapshotColumn.CONTROLLER, row);
+            String controller = id < 0 ? null : string(id);
+            if (controller == null || controller.isEmpty()) {
+                return AllocationAggregator.UNALLOCATED_KEY;
+            }
+            String kind = string(SnapshotColumn.CONTROLLER_KIND, row);
+            if (kind == null || kind.isEmpty()) {
+                return controller;
+            }
+            // a controller name nearly always comes with one kind, so cache the key by name id
+            String group = byId[id];
+            if (group == null || group.length() != kind.length() + 1 + controller.length() || !group.startsWith(kind)) {
+                group = kind + ":" + controller;
+                byId[id] = group;
+            }
+            return group;
+        }
+
+        private String label(int row) {
+            Column column = columns[SnapshotColumn.LABEL_SET.ordinal()];
+            if (column.isNull(buffer, row)) {
+                return AllocationAggregator.UNALLOCATED_KEY;
+            }
+            int id = (int) column.get(buffer, row);
+            String group = byLabelSet[id];
+            if (group == null) {
+                group = orUnallocated(labels(row).get(dimension.getLabelKey()));
+                byLabelSet[id] = group;
+            }
+            return group;
+        }
+
+        private String orUnallocated(String value) {
+            return value == null || value.isEmpty() ? AllocationAggregator.UNALLOCATED_KEY : value;
+        }
+    }
+
+    /**
+     * A frame-of-reference, bit-packed column inside the mapping.
+     */
+    private static final class Column {
+        private final boolean hasNulls;
+        private final int width;
+        private final long min;
+        private final long mask;
+        private final int words;
+
+        Column(boolean hasNulls, int width, long min, int words) {
+            if (width < 0 || width > 64) {
+                throw new IllegalArgumentException("Invalid column width: " + width);
+            }
+            this.hasNulls = hasNulls;
+            this.width = width;
+            this.min = min;
+            this.mask = width == 64 ? -1L : (1L << width) - 1;
+            this.words = words;
+        }
+
+        boolean isNull(ByteBuffer buffer, int row) {
+            return hasNulls && packed(buffer, row) == 0;
+        }
+
+        long get(ByteBuffer buffer, int row) {
+            return hasNulls ? min + packed(buffer, row) - 1 : min + packed(buffer, row);
+        }
+
+        private long packed(ByteBuffer buffer, int row) {
+            if (width == 0) {
+                return 0;
+            }
+            long bit = (long) row * width;
+            int word = (int) (bit >>> 6);
+            int shift = (int) (bit & 63);
+            long value = buffer.getLong(words + word * 8) >>> shift;
+            if (shift + width > 64) {
+                value |= buffer.getLong(words + (word + 1) * 8) << (64 - shift);
+            }
+            return value & mask;
+        }
+    }
+}
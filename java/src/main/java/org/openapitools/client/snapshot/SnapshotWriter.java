@@ -0,0 +1,363 @@
+package org.openapitools.client.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.client.Pair;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostQuery;
+
+/**
+ * Writes fetched allocations to a binary columnar snapshot file, to be read with {@link SnapshotReader}.
+ * <p>
+ * Every entry becomes a row. Strings (keys, names, property values, label keys and values) are stored
+ * once in a dictionary and label maps once per distinct set, so rows only hold small ids. Every column
+ * is stored frame-of-reference encoded: the column minimum once, then each value's delta from it
+ * bit-packed at the width of the largest delta, which makes constant and all-null columns take no space
+ * at all. Timestamps keep their zone offset and fractions of a second; metrics keep their exact float value.
+ * </p>
+ * <p>
+ * File layout, big-endian:
+ * </p>
+ * <pre>
+ * header      magic, version, flags, window count, row count
+ * strings     count, count + 1 byte offsets, UTF-8 bytes
+ * metadata    count, key and value string ids
+ * label sets  count, count + 1 pair offsets, key and value string ids
+ * windows     window count + 1 row offsets, one null flag byte per window
+ * columns     count, then per column: null flag, bit width, minimum, word count, packed 64-bit words
+ * </pre>
+ */
+public final class SnapshotWriter {
+
+    static final int MAGIC = 0x41434B53; // "ACKS"
+    static final int VERSION = 1;
+    static final int FLAG_NULL_DATA = 1;
+
+    private SnapshotWriter() {
+    }
+
+    /**
+     * Write a snapshot recording the parameters of the query it was fetched with.
+     *
+     * @param range The fetched range
+     * @param query The query
+     * @param file The file to write; it is replaced atomically
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(AllocationSetRange range, CostQuery query, Path file) throws IOException {
+        Map<String, String> metadata = new LinkedHashMap<String, String>();
+        for (Pair param : query.getQueryParams()) {
+            metadata.put(param.getName(), param.getValue());
+        }
+        write(range, metadata, file);
+    }
+
+    /**
+     * Write a snapshot.
+     *
+     * @param range The fetched range
+     * @param metadata Free-form metadata stored in the header, e.g. the query parameters
+     * @param file The file to write; it is replaced atomically
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(AllocationSetRange range, Map<String, String> metadata, Path file) throws IOException {
+        Encoder encoder = new Encoder(range);
+        Path absolute = file.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                encoder.writeTo(out, metadata);
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Encode a snapshot in memory, to be read with {@link SnapshotReader#read}.
+     *
+     * @param range The fetched range
+     * @param metadata Free-form metadata stored in the header
+     * @return The snapshot bytes
+     */
+    public static byte[] encode(AllocationSetRange range, Map<String, String> metadata) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            new Encoder(range).writeTo(out, metadata);
+        } catch (IOException e) {
+            // cannot happen with an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Collects the dictionaries and columns of a range.
+     */
+    private static final class Encoder {
+        private final List<Map<String, Allocation>> data;
+        private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+        private final Map<List<Integer>, Integer> labelSetIds = new HashMap<List<Integer>, Integer>();
+        private final List<List<Integer>> labelSets = new ArrayList<List<Integer>>();
+        private final int rowCount;
+        private final ColumnBuilder[] columns = new ColumnBuilder[SnapshotColumn.values().length];
+
+        Encoder(AllocationSetRange range) {
+            this.data = range.getData();
+            int rows = 0;
+            if (data != null) {
+                for (Map<String, Allocation> window : data) {
+                    rows += window == null ? 0 : window.size();
+                }
+            }
+            this.rowCount = rows;
+            for (int c = 0; c < columns.length; c++) {
+                columns[c] = new ColumnBuilder(rowCount);
+            }
+            if (data != null) {
+                int row = 0;
+                for (Map<String, Allocation> window : data) {
+                    if (window == null) {
+                        continue;
+                    }
+                    for (Map.Entry<String, Allocation> e : window.entrySet()) {
+                        addRow(row++, e.getKey(), e.getValue());
+                    }
+                }
+            }
+        }
+
+        private void addRow(int row, String key, Allocation allocation) {
+            set(SnapshotColumn.KEY, row, stringId(key));
+            if (allocation == null) {
+                set(SnapshotColumn.FLAGS, row, SnapshotColumn.FLAG_NULL_ALLOCATION | SnapshotColumn.FLAG_NULL_PROPERTIES);
+                return;
+            }
+            AllocationProperties properties = allocation.getProperties();
+            set(SnapshotColumn.FLAGS, row, properties == null ? SnapshotColumn.FLAG_NULL_PROPERTIES : 0);
+            set(SnapshotColumn.NAME, row, stringId(allocation.getName()));
+            if (properties != null) {
+                set(SnapshotColumn.CLUSTER, row, stringId(properties.getCluster()));
+                set(SnapshotColumn.NODE, row, stringId(properties.getNode()));
+                set(SnapshotColumn.CONTROLLER, row, stringId(properties.getController()));
+                set(SnapshotColumn.CONTROLLER_KIND, row, stringId(properties.getControllerKind()));
+                set(SnapshotColumn.NAMESPACE, row, stringId(properties.getNamespace()));
+                set(SnapshotColumn.POD, row, stringId(properties.getPod()));
+                set(SnapshotColumn.PROVIDER_ID, row, stringId(properties.getProviderID()));
+                set(SnapshotColumn.LABEL_SET, row, labelSetId(properties.getLabels()));
+            }
+            setTime(SnapshotColumn.START_SECOND, row, allocation.getStart());
+            setTime(SnapshotColumn.END_SECOND, row, allocation.getEnd());
+            setFloat(SnapshotColumn.CPU_CORE_REQUEST_AVERAGE, row, allocation.getCpuCoreRequestAverage());
+            setFloat(SnapshotColumn.CPU_CORE_USAGE_AVERAGE, row, allocation.getCpuCoreUsageAverage());
+            setFloat(SnapshotColumn.RAM_BYTE_REQUEST_AVERAGE, row, allocation.getRamByteRequestAverage());
+            setFloat(SnapshotColumn.RAM_BYTE_USAGE_AVERAGE, row, allocation.getRamByteUsageAverage());
+            setFloat(SnapshotColumn.COST, row, allocation.getCost());
+            setFloat(SnapshotColumn.COST_RATIO, row, allocation.getCostRatio());
+            setFloat(SnapshotColumn.CUSTOM_COST, row, allocation.getCustomCost());
+        }
+
+        private void set(SnapshotColumn column, int row, long value) {
+            columns[column.ordinal()].set(row, value);
+        }
+
+        private void set(SnapshotColumn column, int row, Integer value) {
+            if (value != null) {
+                columns[column.ordinal()].set(row, value);
+            }
+        }
+
+        private void setTime(SnapshotColumn secondColumn, int row, OffsetDateTime time) {
+            if (time != null) {
+                // the nano and offset columns follow the second column
+                columns[secondColumn.ordinal()].set(row, time.toEpochSecond());
+                columns[secondColumn.ordinal() + 1].set(row, time.getNano());
+                columns[secondColumn.ordinal() + 2].set(row, time.getOffset().getTotalSeconds());
+            }
+        }
+
+        private void setFloat(SnapshotColumn column, int row, Float value) {
+            if (value != null) {
+                columns[column.ordinal()].set(row, Float.floatToRawIntBits(value));
+            }
+        }
+
+        private Integer stringId(String value) {
+            if (value == null) {
+                return null;
+            }
+            Integer id = stringIds.get(value);
+            if (id == null) {
+                id = strings.size();
+                strings.add(value);
+                stringIds.put(value, id);
+            }
+            return id;
+        }
+
+        private Integer labelSetId(Map<String, String> labels) {
+            if (labels == null) {
+                return null;
+            }
+            List<Integer> pairs = new ArrayList<Integer>(labels.size() * 2);
+            for (Map.Entry<String, String> e : labels.entrySet()) {
+                pairs.add(stringId(e.getKey()));
+                Integer value = stringId(e.getValue());
+                pairs.add(value == null ? -1 : value);
+            }
+            Integer id = labelSetIds.get(pairs);
+            if (id == null) {
+                id = labelSets.size();
+                labelSets.add(pairs);
+                labelSetIds.put(pairs, id);
+            }
+            return id;
+        }
+
+        void writeTo(DataOutputStream out, Map<String, String> metadata) throws IOException {
+            // metadata strings join the dictionary before it is written
+            List<Integer> metadataIds = new ArrayList<Integer>(metadata.size() * 2);
+            for (Map.Entry<String, String> e : metadata.entrySet()) {
+                metadataIds.add(stringId(e.getKey()));
+                metadataIds.add(stringId(e.getValue() == null ? "" : e.getValue()));
+            }
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(data == null ? FLAG_NULL_DATA : 0);
+            out.writeInt(data == null ? 0 : data.size());
+            out.writeInt(rowCount);
+
+            byte[][] encoded = new byte[strings.size()][];
+            out.writeInt(encoded.length);
+            int offset = 0;
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(offset);
+                offset += encoded[i].length;
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+
+            out.writeInt(metadata.size());
+            for (int id : metadataIds) {
+                out.writeInt(id);
+            }
+
+            out.writeInt(labelSets.size());
+            int pairOffset = 0;
+            for (List<Integer> pairs : labelSets) {
+                out.writeInt(pairOffset);
+                pairOffset += pairs.size() / 2;
+            }
+            out.writeInt(pairOffset);
+            for (List<Integer> pairs : labelSets) {
+                for (int id : pairs) {
+                    out.writeInt(id);
+                }
+            }
+
+            int row = 0;
+            if (data != null) {
+                for (Map<String, Allocation> window : data) {
+                    out.writeInt(row);
+                    row += window == null ? 0 : window.size();
+                }
+            }
+            out.writeInt(row);
+            if (data != null) {
+                for (Map<String, Allocation> window : data) {
+                    out.writeByte(window == null ? 1 : 0);
+                }
+            }
+
+            out.writeInt(columns.length);
+            for (ColumnBuilder column : columns) {
+                column.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Values of one column and their frame-of-reference encoding.
+     */
+    private static final class ColumnBuilder {
+        private final long[] values;
+        private final boolean[] present;
+        private boolean hasNulls;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        ColumnBuilder(int rowCount) {
+            this.values = new long[rowCount];
+            this.present = new boolean[rowCount];
+        }
+
+        void set(int row, long value) {
+            values[row] = value;
+            present[row] = true;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (boolean p : present) {
+                if (!p) {
+                    hasNulls = true;
+                    break;
+                }
+            }
+            if (min > max) {
+                // no values at all
+                min = 0;
+                max = -1;
+            }
+            // with nulls, 0 marks a null and values are shifted by one
+            long range = max - min + (hasNulls ? 1 : 0);
+            int width = 64 - Long.numberOfLeadingZeros(range);
+            out.writeByte(hasNulls ? 1 : 0);
+            out.writeByte(width);
+            out.writeLong(min);
+            int wordCount = (int) (((long) values.length * width + 63) >>> 6);
+            out.writeInt(wordCount);
+            if (width == 0) {
+                return;
+            }
+            long word = 0;
+            int used = 0;
+            for (int row = 0; row < values.length; row++) {
+                long packed = hasNulls ? (present[row] ? values[row] - min + 1 : 0) : values[row] - min;
+                word |= packed << used;
+                used += width;
+                if (used >= 64) {
+                    out.writeLong(word);
+                    used -= 64;
+                    // the bits of this value that did not fit
+                    word = used == 0 ? 0 : packed >>> (width - used);
+                }
+            }
+            if (used > 0) {
+                out.writeLong(word);
+            }
+        }
+    }
+}
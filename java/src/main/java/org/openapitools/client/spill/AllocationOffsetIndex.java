@@ -0,0 +1,372 @@
+package org.openapitools.client.spill;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Offset index over a raw {@code AllocationSetRange} JSON document.
+ * <p>
+ * A single structural pass records, for every window of {@code data} and every entry of a window,
+ * where its key and value start and where the value ends. Nothing is decoded while indexing, so
+ * the index costs three ints per entry regardless of how large each allocation is.
+ * </p>
+ */
+public class AllocationOffsetIndex {
+
+    private static final int NULL_WINDOW = -1;
+
+    private final ByteBuffer bytes;
+    private final boolean nullData;
+    // entry range of window w is [windowStarts[w], windowStarts[w + 1]), NULL_WINDOW marks a null window
+    private final int[] windowStarts;
+    private final int[] keyOffsets;
+    private final int[] valueOffsets;
+    private final int[] valueEnds;
+
+    private AllocationOffsetIndex(ByteBuffer bytes, boolean nullData, int[] windowStarts,
+                                  int[] keyOffsets, int[] valueOffsets, int[] valueEnds) {
+        this.bytes = bytes;
+        this.nullData = nullData;
+        this.windowStarts = windowStarts;
+        this.keyOffsets = keyOffsets;
+        this.valueOffsets = valueOffsets;
+        this.valueEnds = valueEnds;
+    }
+
+    /**
+     * Index the given JSON document.
+     *
+     * @param bytes The document, positioned at its first byte; absolute reads only, the buffer is not modified
+     * @return The index
+     * @throws IllegalArgumentException if the document is not a well-formed {@code AllocationSetRange}
+     */
+    public static AllocationOffsetIndex build(ByteBuffer bytes) {
+        return new Scanner(bytes).scan();
+    }
+
+    public ByteBuffer getBytes() {
+        return bytes;
+    }
+
+    public boolean isNullData() {
+        return nullData;
+    }
+
+    public int windowCount() {
+        return windowStarts.length - 1;
+    }
+
+    public boolean isNullWindow(int window) {
+        return windowStarts[window] == NULL_WINDOW;
+    }
+
+    public int windowStart(int window) {
+        return windowStarts[window];
+    }
+
+    public int windowEnd(int window) {
+        // null windows own no entries, so look ahead to the next real boundary
+        for (int w = window + 1; w < windowStarts.length; w++) {
+            if (windowStarts[w] != NULL_WINDOW) {
+                return windowStarts[w];
+            }
+        }
+        throw new IllegalStateException("missing terminal window boundary");
+    }
+
+    public int entryCount() {
+        return keyOffsets.length;
+    }
+
+    /**
+     * Decode the key of the given entry.
+     *
+     * @param entry Entry number
+     * @return The key
+     */
+    public String key(int entry) {
+        return decodeString(bytes, keyOffsets[entry]);
+    }
+
+    /**
+     * Check whether the value of the given entry is the JSON literal {@code null}.
+     *
+     * @param entry Entry number
+     * @return True if the value is null
+     */
+    public boolean isNullValue(int entry) {
+        return bytes.get(valueOffsets[entry]) == 'n';
+    }
+
+    /**
+     * Get a read-only view of the raw JSON bytes of the given entry's value.
+     *
+     * @param entry Entry number
+     * @return The value bytes
+     */
+    public ByteBuffer value(int entry) {
+        ByteBuffer slice = bytes.duplicate();
+        slice.limit(valueEnds[entry]);
+        slice.position(valueOffsets[entry]);
+        return slice.slice();
+    }
+
+    /**
+     * Decode the JSON string starting at the given opening quote.
+     */
+    static String decodeString(ByteBuffer bytes, int quote) {
+        int p = quote + 1;
+        int start = p;
+        byte b;
+        while ((b = bytes.get(p)) != '"' && b != '\\') {
+            p++;
+        }
+        if (b == '"') {
+            byte[] raw = new byte[p - start];
+            for (int i = 0; i < raw.length; i++) {
+                raw[i] = bytes.get(start + i);
+            }
+            return new String(raw, StandardCharsets.UTF_8);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (p = start; (b = bytes.get(p)) != '"'; p++) {
+            if (b != '\\') {
+                out.write(b);
+                continue;
+            }
+            byte escaped = bytes.get(++p);
+            switch (escaped) {
+                case 'b': out.write('\b'); break;
+                case 'f': out.write('\f'); break;
+                case 'n': out.write('\n'); break;
+                case 'r': out.write('\r'); break;
+                case 't': out.write('\t'); break;
+                case 'u': {
+                    char c = (char) Integer.parseInt(ascii(bytes, p + 1, 4), 16);
+                    p += 4;
+                    if (Character.isHighSurrogate(c) && bytes.get(p + 1) == '\\' && bytes.get(p + 2) == 'u') {
+                        char low = (char) Integer.parseInt(ascii(bytes, p + 3, 4), 16);
+                        p += 6;
+                        byte[] utf8 = new String(new char[]{c, low}).getBytes(StandardCharsets.UTF_8);
+                        out.write(utf8, 0, utf8.length);
+                    } else {
+                        byte[] utf8 = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                        out.write(utf8, 0, utf8.length);
+                    }
+                    break;
+                }
+                default: out.write(escaped); break;
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String ascii(ByteBuffer bytes, int from, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) bytes.get(from + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Single-pass structural scanner, validating just enough to locate entries.
+     */
+    private static final class Scanner {
+        private final ByteBuffer bytes;
+        private final int limit;
+        private int[] windowStarts = new int[16];
+        private int windowCount;
+        private int[] keyOffsets = new int[1024];
+        private int[] valueOffsets = new int[1024];
+        private int[] valueEnds = new int[1024];
+        private int entryCount;
+
+        Scanner(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.limit = bytes.limit();
+        }
+
+        AllocationOffsetIndex scan() {
+            boolean nullData = true;
+            int p = expect(skipWhitespace(bytes.position()), '{');
+            p = skipWhitespace(p);
+            if (peek(p) != '}') {
+                while (true) {
+                    int keyStart = expectAt(p, '"');
+                    String field = decodeString(bytes, keyStart);
+                    p = expect(skipWhitespace(skipString(keyStart)), ':');
+                    p = skipWhitespace(p);
+                    if (!"data".equals(field)) {
+                        throw error(keyStart, "The field `" + field + "` is not defined in the `AllocationSetRange` properties");
+                    }
+                    if (peek(p) == 'n') {
+                        p = skipValue(p);
+                    } else {
+                        nullData = false;
+                        p = scanData(p);
+                    }
+                    p = skipWhitespace(p);
+                    if (peek(p) == ',') {
+                        p = skipWhitespace(p + 1);
+                        continue;
+                    }
+                    break;
+                }
+            }
+            p = expect(p, '}');
+            if (skipWhitespace(p) != limit) {
+                throw error(p, "trailing data after the JSON document");
+            }
+
+            addWindowStart(entryCount);
+            return new AllocationOffsetIndex(bytes, nullData, Arrays.copyOf(windowStarts, windowCount),
+                Arrays.copyOf(keyOffsets, entryCount), Arrays.copyOf(valueOffsets, entryCount),
+                Arrays.copyOf(valueEnds, entryCount));
+        }
+
+        private int scanData(int p) {
+            p = skipWhitespace(expect(p, '['));
+            if (peek(p) == ']') {
+                return p + 1;
+            }
+            while (true) {
+                if (peek(p) == 'n') {
+                    addWindowStart(NULL_WINDOW);
+                    p = skipValue(p);
+                } else {
+                    addWindowStart(entryCount);
+                    p = scanWindow(p);
+                }
+                p = skipWhitespace(p);
+                if (peek(p) == ',') {
+                    p = skipWhitespace(p + 1);
+                } else {
+                    return expect(p, ']');
+                }
+            }
+        }
+
+        private int scanWindow(int p) {
+            p = skipWhitespace(expect(p, '{'));
+            if (peek(p) == '}') {
+                return p + 1;
+            }
+            while (true) {
+                int keyStart = expectAt(p, '"');
+                p = expect(skipWhitespace(skipString(keyStart)), ':');
+                int valueStart = skipWhitespace(p);
+                p = skipValue(valueStart);
+                addEntry(keyStart, valueStart, p);
+                p = skipWhitespace(p);
+                if (peek(p) == ',') {
+                    p = skipWhitespace(p + 1);
+                } else {
+                    return expect(p, '}');
+                }
+            }
+        }
+
+        private void addWindowStart(int entry) {
+            if (windowCount == windowStarts.length) {
+                windowStarts = Arrays.copyOf(windowStarts, windowCount * 2);
+            }
+            windowStarts[windowCount++] = entry;
+        }
+
+        private void addEntry(int key, int value, int end) {
+            if (entryCount == keyOffsets.length) {
+                int capacity = entryCount * 2;
+                keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+                valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+                valueEnds = Arrays.copyOf(valueEnds, capacity);
+            }
+            keyOffsets[entryCount] = key;
+            valueOffsets[entryCount] = value;
+            valueEnds[entryCount] = end;
+            entryCount++;
+        }
+
+        private int skipValue(int p) {
+            byte b = peek(p);
+            if (b == '"') {
+                return skipString(p);
+            }
+            if (b != '{' && b != '[') {
+                // number or literal: runs until the next structural character
+                while (p < limit) {
+                    b = bytes.get(p);
+                    if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                        break;
+                    }
+                    p++;
+                }
+                return p;
+            }
+            int depth = 0;
+            while (true) {
+                b = peek(p);
+                if (b == '"') {
+                    p = skipString(p);
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    if (--depth == 0) {
+                        return p + 1;
+                    }
+                }
+                p++;
+            }
+        }
+
+        private int skipString(int p) {
+            p++;
+            while (true) {
+                byte b = peek(p);
+                if (b == '"') {
+                    return p + 1;
+                }
+                p += b == '\\' ? 2 : 1;
+            }
+        }
+
+        private int skipWhitespace(int p) {
+            while (p < limit) {
+                byte b = bytes.get(p);
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                    break;
+                }
+                p++;
+            }
+            return p;
+        }
+
+        private byte peek(int p) {
+            if (p >= limit) {
+                throw error(p, "unexpected end of the JSON document");
+            }
+            return bytes.get(p);
+        }
+
+        private int expectAt(int p, char c) {
+            if (peek(p) != c) {
+                throw error(p, "expected '" + c + "'");
+            }
+            return p;
+        }
+
+        private int expect(int p, char c) {
+            return expectAt(p, c) + 1;
+        }
+
+        private IllegalArgumentException error(int p, String message) {
+            return new IllegalArgumentException(String.format(Locale.ROOT, "Malformed AllocationSetRange at byte %d: %s", p, message));
+        }
+    }
+}
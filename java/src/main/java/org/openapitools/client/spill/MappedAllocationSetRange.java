@@ -0,0 +1,220 @@
+package org.openapitools.client.spill;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import okio.Buffer;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationSetRange;
+
+/**
+ * An {@link AllocationSetRange} backed by a memory-mapped response file.
+ * <p>
+ * {@link #getData()} returns read-only views over an {@link AllocationOffsetIndex}: windows and
+ * keys are resolved from the index, and an {@link Allocation} is only decoded when its value is
+ * actually requested. Decoded allocations are not retained, so the heap footprint stays at the
+ * size of the index no matter how large the response was.
+ * </p>
+ */
+public class MappedAllocationSetRange extends AllocationSetRange {
+
+    private final AllocationOffsetIndex index;
+
+    public MappedAllocationSetRange(AllocationOffsetIndex index) {
+        this.index = index;
+        super.setData(index.isNullData() ? null : new WindowList());
+    }
+
+    /**
+     * Get the offset index backing this range.
+     *
+     * @return The index
+     */
+    public AllocationOffsetIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * The data of a mapped range is read-only.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setData(List<Map<String, Allocation>> data) {
+        throw new UnsupportedOperationException("MappedAllocationSetRange is read-only");
+    }
+
+    /**
+     * Decode the allocation of the given index entry.
+     *
+     * @param entry Entry number
+     * @return The allocation, or null if the value is JSON null
+     */
+    Allocation decode(int entry) {
+        if (index.isNullValue(entry)) {
+            return null;
+        }
+        try {
+            Buffer buffer = new Buffer();
+            buffer.write(index.value(entry));
+            return JSON.deserialize(buffer, Allocation.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private final class WindowList extends AbstractList<Map<String, Allocation>> implements RandomAccess {
+        private final WindowMap[] windows = new WindowMap[index.windowCount()];
+
+        @Override
+        public Map<String, Allocation> get(int window) {
+            if (index.isNullWindow(window)) {
+                return null;
+            }
+            WindowMap map = windows[window];
+            if (map == null) {
+                // racing threads build equivalent views, so losing an update is harmless
+                map = new WindowMap(index.windowStart(window), index.windowEnd(window));
+                windows[window] = map;
+            }
+            return map;
+        }
+
+        @Override
+        public int size() {
+            return windows.length;
+        }
+    }
+
+    private final class WindowMap extends AbstractMap<String, Allocation> {
+        private final int from;
+        private final int to;
+        private volatile Map<String, Integer> keyIndex;
+
+        WindowMap(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return keyIndex().containsKey(key);
+        }
+
+        @Override
+        public Allocation get(Object key) {
+            Integer entry = keyIndex().get(key);
+            return entry == null ? null : decode(entry);
+        }
+
+        private Map<String, Integer> keyIndex() {
+            Map<String, Integer> keys = keyIndex;
+            if (keys == null) {
+                keys = new HashMap<String, Integer>(size() * 4 / 3 + 1);
+                for (int entry = from; entry < to; entry++) {
+                    keys.put(index.key(entry), entry);
+                }
+                keyIndex = keys;
+            }
+            return keys;
+        }
+
+        @Override
+        public Set<Entry<String, Allocation>> entrySet() {
+            return new AbstractSet<Entry<String, Allocation>>() {
+                @Override
+                public Iterator<Entry<String, Allocation>> iterator() {
+                    return new Iterator<Entry<String, Allocation>>() {
+                        private int next = from;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < to;
+                        }
+
+                        @Override
+                        public Entry<String, Allocation> next() {
+                            if (next >= to) {
+                                throw new NoSuchElementException();
+                            }
+                            return new LazyEntry(next++);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return to - from;
+                }
+            };
+        }
+    }
+
+    /**
+     * Map entry that decodes its key and value on first access.
+     */
+    private final class LazyEntry implements Map.Entry<String, Allocation> {
+        private final int entry;
+        private String key;
+
+        LazyEntry(int entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String getKey() {
+            if (key == null) {
+                key = index.key(entry);
+            }
+            return key;
+        }
+
+        @Override
+        public Allocation getValue() {
+            return decode(entry);
+        }
+
+        @Override
+        public Allocation setValue(Allocation value) {
+            throw new UnsupportedOperationException("MappedAllocationSetRange is read-only");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            Allocation value = getValue();
+            return getKey().equals(other.getKey())
+                && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Allocation value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.openapitools.client.spill;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import org.openapitools.client.JSON;
+import org.openapitools.client.model.AllocationSetRange;
+
+/**
+ * Decodes {@link AllocationSetRange} responses, spilling large ones to a memory-mapped temp file.
+ * <p>
+ * Responses up to the threshold are decoded into the usual object graph. Larger responses are
+ * streamed to disk without being held in memory, mapped read-only, and returned as a
+ * {@link MappedAllocationSetRange}. The temp file is unlinked right after mapping where the
+ * platform allows it, so the data lives exactly as long as the mapping does.
+ * </p>
+ */
+public class ResponseSpiller {
+
+    private static final long SEGMENT_SIZE = 8192;
+
+    private ResponseSpiller() {
+    }
+
+    /**
+     * Decode an {@link AllocationSetRange} from the given source, spilling it to disk when it is larger than the threshold.
+     *
+     * @param source The response body source; it is closed on return
+     * @param contentLength The Content-Length of the response, or -1 if unknown
+     * @param threshold Responses larger than this many bytes are spilled
+     * @param tempFolderPath Directory for the spill file, null for the system default
+     * @return The decoded range, a {@link MappedAllocationSetRange} if it was spilled
+     * @throws IOException If fail to read, spill or map the response
+     */
+    public static AllocationSetRange read(BufferedSource source, long contentLength, long threshold, String tempFolderPath) throws IOException {
+        try {
+            Buffer head = new Buffer();
+            if (contentLength < 0 || contentLength <= threshold) {
+                // unknown or small length: buffer up to the threshold before deciding
+                while (head.size() <= threshold && source.read(head, SEGMENT_SIZE) != -1) {
+                    // keep reading
+                }
+                if (head.size() <= threshold) {
+                    return JSON.deserialize(head, AllocationSetRange.class);
+                }
+            }
+            return spill(head, source, tempFolderPath);
+        } finally {
+            source.close();
+        }
+    }
+
+    private static MappedAllocationSetRange spill(Buffer head, BufferedSource source, String tempFolderPath) throws IOException {
+        File file = tempFolderPath == null
+            ? Files.createTempFile("allocation-", ".json").toFile()
+            : Files.createTempFile(Paths.get(tempFolderPath), "allocation-", ".json").toFile();
+        try {
+            try (BufferedSink sink = Okio.buffer(Okio.sink(file))) {
+                sink.writeAll(head);
+                sink.writeAll(source);
+            }
+
+            MappedByteBuffer mapped;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                long size = raf.length();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Response of " + size + " bytes exceeds the 2 GiB mapping limit");
+                }
+                // the mapping stays valid after the channel is closed
+                mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            return new MappedAllocationSetRange(AllocationOffsetIndex.build(mapped));
+        } finally {
+            if (!file.delete()) {
+                // e.g. Windows refuses to delete mapped files
+                file.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.openapitools.client.store;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * The sidecar index of a segment: the time bounds of each of its windows and the sorted 64-bit
+ * hashes of its keys. It is memory-mapped, so checking a segment costs no heap beyond this object.
+ * <p>
+ * Layout, big-endian: magic, version, window count, start and end epoch second per window, key count,
+ * sorted key hashes. Queries select windows by start only; the ends are kept for readers of the files.
+ * </p>
+ */
+final class SegmentIndex {
+
+    static final int MAGIC = 0x41434B49; // "ACKI"
+    static final int VERSION = 1;
+
+    private final ByteBuffer buffer;
+    private final int windowCount;
+    private final int keys;
+    private final int keyCount;
+
+    private SegmentIndex(ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a segment index");
+        }
+        this.buffer = buffer;
+        this.windowCount = buffer.getInt(8);
+        int position = 12 + windowCount * 16;
+        this.keyCount = buffer.getInt(position);
+        this.keys = position + 4;
+        if (keys + keyCount * 8 != buffer.limit()) {
+            throw new IllegalArgumentException("Corrupt segment index");
+        }
+    }
+
+    static SegmentIndex open(Path file) throws IOException {
+        ByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            // the mapping stays valid after the channel is closed
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        try {
+            return new SegmentIndex(mapped);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid segment index " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write an index, replacing the file atomically.
+     *
+     * @param file The file
+     * @param starts Start epoch second per window
+     * @param ends End epoch second per window
+     * @param keyHashes Key hashes, in any order and with duplicates
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path file, long[] starts, long[] ends, long[] keyHashes) throws IOException {
+        long[] sorted = keyHashes.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(starts.length);
+                for (int w = 0; w < starts.length; w++) {
+                    out.writeLong(starts[w]);
+                    out.writeLong(ends[w]);
+                }
+                out.writeInt(distinct);
+                for (int i = 0; i < distinct; i++) {
+                    out.writeLong(sorted[i]);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    int windowCount() {
+        return windowCount;
+    }
+
+    long start(int window) {
+        return buffer.getLong(12 + window * 16);
+    }
+
+    /**
+     * Check whether the segment may hold a key; false positives are possible, false negatives are not.
+     *
+     * @param key The key
+     * @return False if the segment certainly does not hold the key
+     */
+    boolean mayContain(String key) {
+        long hash = hash(key);
+        int low = 0;
+        int high = keyCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = buffer.getLong(keys + mid * 8);
+            if (value < hash) {
+                low = mid + 1;
+            } else if (value > hash) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units of a key.
+     *
+     * @param key The key
+     * @return The hash
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,426 @@
+package org.openapitools.client.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openapitools.client.aggregation.AllocationMetric;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostAggregate;
+import org.openapitools.client.snapshot.SnapshotReader;
+import org.openapitools.client.snapshot.SnapshotWriter;
+import org.openapitools.client.stream.AllocationHandler;
+import org.openapitools.client.stream.AllocationSetRangeCollector;
+
+/**
+ * An embedded, append-only store of fetched windows, partitioned by time.
+ * <p>
+ * Every window is placed in the partition holding its start, the earliest start of its allocations.
+ * Partitions are fixed-size and aligned to the epoch, e.g. one per UTC day. Each append writes one
+ * immutable segment per touched partition: a {@link SnapshotWriter snapshot} file plus a small index
+ * with the time bounds of its windows and hashes of its keys. Queries select partitions by name,
+ * windows by the index, and only then memory-map the snapshot files they actually read:
+ * </p>
+ * <pre>
+ * SegmentStore store = SegmentStore.open(Paths.get("/var/lib/cost"), Duration.ofDays(1));
+ * store.append(api.getAllocation(query));
+ * Map&lt;String, Double&gt; cost = store.sumBy(from, to, AllocationMetric.COST, CostAggregate.NAMESPACE);
+ * </pre>
+ * <p>
+ * A query selects the windows starting in {@code [from, to)}, at second resolution, in start order.
+ * Windows without any timed allocation cannot be placed and are not stored. The store does not
+ * deduplicate: appending a window twice makes queries see it twice. Neither does it compact: every
+ * append adds a segment to each partition it touches and segments are never merged, so a query reads
+ * one index per append that touched its partitions; append in batches, e.g. a day of windows at a
+ * time, rather than window by window. Indexes are opened once and kept mapped. A segment becomes
+ * visible once its index is written, so an interrupted append leaves no partial data behind. Stores
+ * are safe for concurrent use within one process.
+ * </p>
+ */
+public final class SegmentStore {
+
+    private static final String CONFIG_FILE = "store.properties";
+    private static final String PARTITION_SECONDS = "partitionSeconds";
+    private static final String SEGMENT_SUFFIX = ".snap";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final Pattern INDEX_NAME = Pattern.compile("(-?\\d+)-(\\d+)\\" + INDEX_SUFFIX);
+
+    private final Path directory;
+    private final long partitionSeconds;
+    // partition start to its segments in append order
+    private final TreeMap<Long, List<Segment>> partitions = new TreeMap<Long, List<Segment>>();
+
+    private SegmentStore(Path directory, long partitionSeconds) {
+        this.directory = directory;
+        this.partitionSeconds = partitionSeconds;
+    }
+
+    /**
+     * Open a store, creating it if the directory holds none.
+     *
+     * @param directory The store directory
+     * @param partition The partition length, a whole number of seconds
+     * @return The store
+     * @throws IOException if the directory cannot be read or was created with another partition length
+     */
+    public static SegmentStore open(Path directory, Duration partition) throws IOException {
+        long seconds = partition.getSeconds();
+        if (seconds <= 0 || partition.getNano() != 0) {
+            throw new IllegalArgumentException("The partition must be a positive whole number of seconds: " + partition);
+        }
+        Files.createDirectories(directory);
+        Path config = directory.resolve(CONFIG_FILE);
+        Properties properties = new Properties();
+        if (Files.exists(config)) {
+            try (InputStream in = Files.newInputStream(config)) {
+                properties.load(in);
+            }
+            long existing = Long.parseLong(properties.getProperty(PARTITION_SECONDS, "0"));
+            if (existing != seconds) {
+                throw new IOException("Store " + directory + " uses partitions of " + existing + " seconds, not " + seconds);
+            }
+        } else {
+            properties.setProperty(PARTITION_SECONDS, Long.toString(seconds));
+            try (OutputStream out = Files.newOutputStream(config)) {
+                properties.store(out, "Segment store");
+            }
+        }
+
+        SegmentStore store = new SegmentStore(directory, seconds);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + INDEX_SUFFIX)) {
+            for (Path file : files) {
+                Matcher matcher = INDEX_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    store.add(new Segment(directory, Long.parseLong(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+                }
+            }
+        }
+        for (List<Segment> segments : store.partitions.values()) {
+            Collections.sort(segments, new Comparator<Segment>() {
+                @Override
+                public int compare(Segment a, Segment b) {
+                    return Integer.compare(a.sequence, b.sequence);
+                }
+            });
+        }
+        return store;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Duration getPartition() {
+        return Duration.ofSeconds(partitionSeconds);
+    }
+
+    /**
+     * Append the windows of a fetched range.
+     *
+     * @param range The range
+     * @return The number of windows stored
+     * @throws IOException if a segment cannot be written
+     */
+    public synchronized int append(AllocationSetRange range) throws IOException {
+        if (range.getData() == null) {
+            return 0;
+        }
+        Map<Long, List<Map<String, Allocation>>> windowsByPartition = new LinkedHashMap<Long, List<Map<String, Allocation>>>();
+        for (Map<String, Allocation> window : range.getData()) {
+            long start = bounds(window)[0];
+            if (start == Long.MAX_VALUE) {
+                continue;
+            }
+            Long partition = Math.floorDiv(start, partitionSeconds) * partitionSeconds;
+            List<Map<String, Allocation>> windows = windowsByPartition.get(partition);
+            if (windows == null) {
+                windows = new ArrayList<Map<String, Allocation>>();
+                windowsByPartition.put(partition, windows);
+            }
+            windows.add(window);
+        }
+
+        int stored = 0;
+        for (Map.Entry<Long, List<Map<String, Allocation>>> e : windowsByPartition.entrySet()) {
+            List<Segment> existing = partitions.get(e.getKey());
+            int sequence = existing == null ? 0 : existing.get(existing.size() - 1).sequence + 1;
+            Segment segment = new Segment(directory, e.getKey(), sequence);
+            write(segment, e.getValue());
+            add(segment);
+            stored += e.getValue().size();
+        }
+        return stored;
+    }
+
+    /**
+     * Get the segment files a query over a time range would read, without reading them.
+     *
+     * @param from The start of the range, inclusive
+     * @param to The end of the range, exclusive
+     * @return The snapshot files
+     */
+    public List<Path> segments(OffsetDateTime from, OffsetDateTime to) {
+        List<Path> files = new ArrayList<Path>();
+        for (Segment segment : candidates(from.toEpochSecond(), to.toEpochSecond())) {
+            files.add(segment.data);
+        }
+        return files;
+    }
+
+    /**
+     * Replay the windows starting in a time range into a handler. Window numbers count the selected
+     * windows from zero.
+     *
+     * @param from The start of the range, inclusive
+     * @param to The end of the range, exclusive
+     * @param handler The handler
+     * @throws IOException if a segment cannot be read or the handler aborts
+     */
+    public void scan(OffsetDateTime from, OffsetDateTime to, AllocationHandler handler) throws IOException {
+        scan(from, to, null, handler);
+    }
+
+    /**
+     * Replay the entries with one key of the windows starting in a time range into a handler. Segments
+     * whose key index rules the key out are not read.
+     *
+     * @param from The start of the range, inclusive
+     * @param to The end of the range, exclusive
+     * @param key The entry key, null for all entries
+     * @param handler The handler
+     * @throws IOException if a segment cannot be read or the handler aborts
+     */
+    public void scan(OffsetDateTime from, OffsetDateTime to, String key, AllocationHandler handler) throws IOException {
+        List<WindowRef> windows = select(from, to, key);
+        Map<Segment, SnapshotReader> readers = new HashMap<Segment, SnapshotReader>();
+        for (int n = 0; n < windows.size(); n++) {
+            WindowRef ref = windows.get(n);
+            SnapshotReader reader = reader(readers, ref.segment);
+            handler.onWindow(n, false);
+            int end = reader.windowEnd(ref.window);
+            for (int row = reader.windowStart(ref.window); row < end; row++) {
+                String rowKey = reader.key(row);
+                if (key == null || key.equals(rowKey)) {
+                    handler.onAllocation(n, rowKey, reader.allocation(row));
+                }
+            }
+        }
+        handler.onEnd();
+    }
+
+    /**
+     * Read the windows starting in a time range.
+     *
+     * @param from The start of the range, inclusive
+     * @param to The end of the range, exclusive
+     * @return The windows in start order
+     * @throws IOException if a segment cannot be read
+     */
+    public AllocationSetRange query(OffsetDateTime from, OffsetDateTime to) throws IOException {
+        AllocationSetRangeCollector collector = new AllocationSetRangeCollector();
+        scan(from, to, collector);
+        return collector.getRange();
+    }
+
+    /**
+     * Sum a metric over the windows starting in a time range; entries without a value count as zero.
+     *
+     * @param from The start of the range, inclusive
+     * @param to The end of the range, exclusive
+     * @param metric The metric
+     * @return The sum
+     * @throws IOException if a segment cannot be read
+     */
+    public double sum(OffsetDateTime from, OffsetDateTime to, AllocationMetric metric) throws IOException {
+        Map<Segment, SnapshotReader> readers = new HashMap<Segment, SnapshotReader>();
+        double sum = 0;
+        for (WindowRef ref : select(from, to, null)) {
+            sum += reader(readers, ref.segment).sum(metric, ref.window);
+        }
+        return sum;
+    }
+
+    /**
+     * Sum a metric over the windows starting in a time range by the value of a dimension.
+     *
+     * @param from The start of the range, inclusive
+     * @param to The end of the range, exclusive
+     * @param metric The metric
+     * @param dimension The dimension
+     * @return Group key to sum, groups in order of first appearance
+     * @throws IOException if a segment cannot be read
+     */
+    public Map<String, Double> sumBy(OffsetDateTime from, OffsetDateTime to, AllocationMetric metric,
+                                     CostAggregate dimension) throws IOException {
+        Map<Segment, SnapshotReader> readers = new HashMap<Segment, SnapshotReader>();
+        Map<String, Double> sums = new LinkedHashMap<String, Double>();
+        for (WindowRef ref : select(from, to, null)) {
+            for (Map.Entry<String, Double> e : reader(readers, ref.segment).sumBy(metric, dimension, ref.window).entrySet()) {
+                Double sum = sums.get(e.getKey());
+                sums.put(e.getKey(), sum == null ? e.getValue() : sum + e.getValue());
+            }
+        }
+        return sums;
+    }
+
+    private void add(Segment segment) {
+        List<Segment> segments = partitions.get(segment.partition);
+        if (segments == null) {
+            segments = new ArrayList<Segment>();
+            partitions.put(segment.partition, segments);
+        }
+        segments.add(segment);
+    }
+
+    private synchronized List<Segment> candidates(long from, long to) {
+        List<Segment> segments = new ArrayList<Segment>();
+        if (from >= to) {
+            return segments;
+        }
+        long first = Math.floorDiv(from, partitionSeconds) * partitionSeconds;
+        for (List<Segment> partition : partitions.subMap(first, true, to, false).values()) {
+            segments.addAll(partition);
+        }
+        return segments;
+    }
+
+    private List<WindowRef> select(OffsetDateTime from, OffsetDateTime to, String key) throws IOException {
+        long fromSecond = from.toEpochSecond();
+        long toSecond = to.toEpochSecond();
+        List<WindowRef> windows = new ArrayList<WindowRef>();
+        for (Segment segment : candidates(fromSecond, toSecond)) {
+            SegmentIndex index = segment.index();
+            if (key != null && !index.mayContain(key)) {
+                continue;
+            }
+            for (int w = 0; w < index.windowCount(); w++) {
+                long start = index.start(w);
+                if (start >= fromSecond && start < toSecond) {
+                    windows.add(new WindowRef(segment, w, start));
+                }
+            }
+        }
+        // stable, so windows with equal starts keep partition, append and window order
+        Collections.sort(windows, new Comparator<WindowRef>() {
+            @Override
+            public int compare(WindowRef a, WindowRef b) {
+                return Long.compare(a.start, b.start);
+            }
+        });
+        return windows;
+    }
+
+    private static SnapshotReader reader(Map<Segment, SnapshotReader> readers, Segment segment) throws IOException {
+        SnapshotReader reader = readers.get(segment);
+        if (reader == null) {
+            reader = SnapshotReader.open(segment.data);
+            readers.put(segment, reader);
+        }
+        return reader;
+    }
+
+    private void write(Segment segment, List<Map<String, Allocation>> windows) throws IOException {
+        long[] starts = new long[windows.size()];
+        long[] ends = new long[windows.size()];
+        int keyCount = 0;
+        for (int w = 0; w < windows.size(); w++) {
+            long[] bounds = bounds(windows.get(w));
+            starts[w] = bounds[0];
+            ends[w] = bounds[1];
+            keyCount += windows.get(w).size();
+        }
+        long[] keyHashes = new long[keyCount];
+        int k = 0;
+        for (Map<String, Allocation> window : windows) {
+            for (String key : window.keySet()) {
+                if (key != null) {
+                    keyHashes[k++] = SegmentIndex.hash(key);
+                }
+            }
+        }
+
+        Map<String, String> metadata = new LinkedHashMap<String, String>();
+        metadata.put("partition", Instant.ofEpochSecond(segment.partition).toString());
+        metadata.put(PARTITION_SECONDS, Long.toString(partitionSeconds));
+        SnapshotWriter.write(new AllocationSetRange().data(windows), metadata, segment.data);
+        // the index is written last: it is what makes the segment visible
+        SegmentIndex.write(segment.indexFile, starts, ends, Arrays.copyOf(keyHashes, k));
+    }
+
+    /**
+     * Get the earliest start and the latest end of the allocations of a window, in epoch seconds.
+     */
+    private static long[] bounds(Map<String, Allocation> window) {
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        if (window != null) {
+            for (Allocation allocation : window.values()) {
+                if (allocation == null) {
+                    continue;
+                }
+                if (allocation.getStart() != null) {
+                    start = Math.min(start, allocation.getStart().toEpochSecond());
+                }
+                if (allocation.getEnd() != null) {
+                    end = Math.max(end, allocation.getEnd().toEpochSecond());
+                }
+            }
+        }
+        return new long[] {start, end};
+    }
+
+    private static final class Segment {
+        final long partition;
+        final int sequence;
+        final Path data;
+        final Path indexFile;
+        // opened on first use; segments are immutable, so it never goes stale
+        private SegmentIndex index;
+
+        Segment(Path directory, long partition, int sequence) {
+            this.partition = partition;
+            this.sequence = sequence;
+            String name = partition + "-" + sequence;
+            this.data = directory.resolve(name + SEGMENT_SUFFIX);
+            this.indexFile = directory.resolve(name + INDEX_SUFFIX);
+        }
+
+        synchronized SegmentIndex index() throws IOException {
+            if (index == null) {
+                index = SegmentIndex.open(indexFile);
+            }
+            return index;
+        }
+    }
+
+    private static final class WindowRef {
+        final Segment segment;
+        final int window;
+        final long start;
+
+        WindowRef(Segment segment, int window, long start) {
+            this.segment = segment;
+            this.window = window;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.openapitools.client.stream;
+
+import java.io.IOException;
+
+import org.openapitools.client.model.Allocation;
+
+/**
+ * Receives the entries of an {@code AllocationSetRange} response as they are decoded.
+ */
+public interface AllocationHandler {
+
+    /**
+     * Called when a window of the response begins, before any of its entries.
+     *
+     * @param window Zero-based window number
+     * @param isNull True if the window is JSON null (it has no entries)
+     * @throws IOException to abort decoding
+     */
+    default void onWindow(int window, boolean isNull) throws IOException {
+    }
+
+    /**
+     * Called for every entry of a window.
+     *
+     * @param window Zero-based window number
+     * @param key The entry key, e.g. the pod or aggregate name
+     * @param allocation The decoded allocation, limited to the projected fields; null if the entry is JSON null
+     * @throws IOException to abort decoding
+     */
+    void onAllocation(int window, String key, Allocation allocation) throws IOException;
+
+    /**
+     * Called once after the last entry of the document.
+     *
+     * @throws IOException to abort decoding
+     */
+    default void onEnd() throws IOException {
+    }
+}
@@ -0,0 +1,197 @@
+package org.openapitools.client.stream;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+
+/**
+ * The set of {@link Allocation} and {@link AllocationProperties} fields a decoder should materialize.
+ * <p>
+ * Fields are named by their JSON names; properties are addressed with a {@code properties.} prefix,
+ * e.g. {@code AllocationProjection.of("cost", "properties.namespace", "properties.controller")}.
+ * Naming {@code properties} on its own selects every property. Unselected fields are skipped
+ * by the decoder without being parsed into objects and are left null.
+ * </p>
+ */
+public final class AllocationProjection {
+
+    static final String[] ALLOCATION_FIELDS = {
+        Allocation.SERIALIZED_NAME_NAME,
+        Allocation.SERIALIZED_NAME_PROPERTIES,
+        Allocation.SERIALIZED_NAME_START,
+        Allocation.SERIALIZED_NAME_END,
+        Allocation.SERIALIZED_NAME_CPU_CORE_REQUEST_AVERAGE,
+        Allocation.SERIALIZED_NAME_CPU_CORE_USAGE_AVERAGE,
+        Allocation.SERIALIZED_NAME_RAM_BYTE_REQUEST_AVERAGE,
+        Allocation.SERIALIZED_NAME_RAM_BYTE_USAGE_AVERAGE,
+        Allocation.SERIALIZED_NAME_COST,
+        Allocation.SERIALIZED_NAME_COST_RATIO,
+        Allocation.SERIALIZED_NAME_CUSTOM_COST,
+    };
+
+    static final String[] PROPERTY_FIELDS = {
+        AllocationProperties.SERIALIZED_NAME_CLUSTER,
+        AllocationProperties.SERIALIZED_NAME_NODE,
+        AllocationProperties.SERIALIZED_NAME_CONTROLLER,
+        AllocationProperties.SERIALIZED_NAME_CONTROLLER_KIND,
+        AllocationProperties.SERIALIZED_NAME_NAMESPACE,
+        AllocationProperties.SERIALIZED_NAME_POD,
+        AllocationProperties.SERIALIZED_NAME_LABELS,
+        AllocationProperties.SERIALIZED_NAME_PROVIDER_I_D,
+    };
+
+    static final Map<String, Integer> ALLOCATION_FIELD_INDEX = indexOf(ALLOCATION_FIELDS);
+    static final Map<String, Integer> PROPERTY_FIELD_INDEX = indexOf(PROPERTY_FIELDS);
+
+    private static final String PROPERTIES_PREFIX = Allocation.SERIALIZED_NAME_PROPERTIES + ".";
+    private static final int PROPERTIES_BIT = 1 << ALLOCATION_FIELD_INDEX.get(Allocation.SERIALIZED_NAME_PROPERTIES);
+
+    /**
+     * Projection that materializes every field, equivalent to regular deserialization.
+     */
+    public static final AllocationProjection ALL =
+        new AllocationProjection((1 << ALLOCATION_FIELDS.length) - 1, (1 << PROPERTY_FIELDS.length) - 1);
+
+    private final int allocationMask;
+    private final int propertyMask;
+
+    private AllocationProjection(int allocationMask, int propertyMask) {
+        this.allocationMask = allocationMask;
+        this.propertyMask = propertyMask;
+    }
+
+    /**
+     * Create a projection of the given fields.
+     *
+     * @param fields JSON field names, properties prefixed with {@code properties.}
+     * @return The projection
+     * @throws IllegalArgumentException if a field is not defined on the model
+     */
+    public static AllocationProjection of(String... fields) {
+        int allocationMask = 0;
+        int propertyMask = 0;
+        for (String field : fields) {
+            if (field.startsWith(PROPERTIES_PREFIX)) {
+                Integer index = PROPERTY_FIELD_INDEX.get(field.substring(PROPERTIES_PREFIX.length()));
+                if (index == null) {
+                    throw new IllegalArgumentException("The field `" + field + "` is not defined in the `AllocationProperties` properties");
+                }
+                propertyMask |= 1 << index;
+            } else {
+                Integer index = ALLOCATION_FIELD_INDEX.get(field);
+                if (index == null) {
+                    throw new IllegalArgumentException("The field `" + field + "` is not defined in the `Allocation` properties");
+                }
+                allocationMask |= 1 << index;
+                if ((1 << index) == PROPERTIES_BIT) {
+                    propertyMask = (1 << PROPERTY_FIELDS.length) - 1;
+                }
+            }
+        }
+        if (propertyMask != 0) {
+            allocationMask |= PROPERTIES_BIT;
+        }
+        return new AllocationProjection(allocationMask, propertyMask);
+    }
+
+    /**
+     * Create a projection of the given fields.
+     *
+     * @param fields JSON field names, properties prefixed with {@code properties.}
+     * @return The projection
+     */
+    public static AllocationProjection of(Collection<String> fields) {
+        return of(fields.toArray(new String[0]));
+    }
+
+    /**
+     * Create a projection that also materializes the given fields.
+     *
+     * @param fields JSON field names, properties prefixed with {@code properties.}
+     * @return The combined projection
+     */
+    public AllocationProjection with(String... fields) {
+        AllocationProjection other = of(fields);
+        return new AllocationProjection(allocationMask | other.allocationMask, propertyMask | other.propertyMask);
+    }
+
+    boolean includesField(int index) {
+        return (allocationMask & (1 << index)) != 0;
+    }
+
+    boolean includesProperty(int index) {
+        return (propertyMask & (1 << index)) != 0;
+    }
+
+    /**
+     * Check whether the given field is materialized.
+     *
+     * @param field JSON field name, properties prefixed with {@code properties.}
+     * @return True if the field is part of the projection
+     */
+    public boolean includes(String field) {
+        if (field.startsWith(PROPERTIES_PREFIX)) {
+            Integer index = PROPERTY_FIELD_INDEX.get(field.substring(PROPERTIES_PREFIX.length()));
+            return index != null && includesProperty(index);
+        }
+        Integer index = ALLOCATION_FIELD_INDEX.get(field);
+        return index != null && includesField(index);
+    }
+
+    /**
+     * Get the materialized field names, in model order.
+     *
+     * @return Field names, properties prefixed with {@code properties.}
+     */
+    public List<String> fields() {
+        List<String> fields = new ArrayList<String>();
+        for (int i = 0; i < ALLOCATION_FIELDS.length; i++) {
+            if ((1 << i) == PROPERTIES_BIT) {
+                for (int j = 0; j < PROPERTY_FIELDS.length; j++) {
+                    if (includesProperty(j)) {
+                        fields.add(PROPERTIES_PREFIX + PROPERTY_FIELDS[j]);
+                    }
+                }
+            } else if (includesField(i)) {
+                fields.add(ALLOCATION_FIELDS[i]);
+            }
+        }
+        return Collections.unmodifiableList(fields);
+    }
+
+    private static Map<String, Integer> indexOf(String[] names) {
+        Map<String, Integer> index = new HashMap<String, Integer>();
+        for (int i = 0; i < names.length; i++) {
+            index.put(names[i], i);
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AllocationProjection)) {
+            return false;
+        }
+        AllocationProjection other = (AllocationProjection) o;
+        return allocationMask == other.allocationMask && propertyMask == other.propertyMask;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * allocationMask + propertyMask;
+    }
+
+    @Override
+    public String toString() {
+        return "AllocationProjection" + fields();
+    }
+}
@@ -0,0 +1,36 @@
+package org.openapitools.client.stream;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationSetRange;
+
+/**
+ * Handler that rebuilds an {@link AllocationSetRange} from streamed entries, preserving window order and null windows.
+ */
+public class AllocationSetRangeCollector implements AllocationHandler {
+
+    private final AllocationSetRange range = new AllocationSetRange();
+    private Map<String, Allocation> current;
+
+    @Override
+    public void onWindow(int window, boolean isNull) {
+        current = isNull ? null : new LinkedHashMap<String, Allocation>();
+        range.addDataItem(current);
+    }
+
+    @Override
+    public void onAllocation(int window, String key, Allocation allocation) {
+        current.put(key, allocation);
+    }
+
+    /**
+     * Get the collected range.
+     *
+     * @return The range
+     */
+    public AllocationSetRange getRange() {
+        return range;
+    }
+}
@@ -0,0 +1,387 @@
+package org.openapitools.client.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import okio.BufferedSource;
+import org.openapitools.client.JSON;
+import org.openapitools.client.ResponseDecoder;
+import org.openapitools.client.Utf8SourceReader;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+
+/**
+ * Pull decoder for {@code AllocationSetRange} JSON that yields one entry at a time.
+ * <p>
+ * Only the fields selected by the {@link AllocationProjection} are materialized; everything else is
+ * passed over with {@link JsonReader#skipValue()}. Input is consumed lazily, so the decoder never
+ * reads further ahead of the caller than the JSON tokenizer's buffer.
+ * </p>
+ * <pre>
+ * try (AllocationStreamReader reader = new AllocationStreamReader(source, projection)) {
+ *     while (reader.next()) {
+ *         handle(reader.window(), reader.key(), reader.allocation());
+ *     }
+ * }
+ * </pre>
+ */
+public class AllocationStreamReader implements Closeable {
+
+    private static final int FIELD_NAME = 0;
+    private static final int FIELD_PROPERTIES = 1;
+    private static final int FIELD_START = 2;
+    private static final int FIELD_END = 3;
+    private static final int FIELD_CPU_CORE_REQUEST_AVERAGE = 4;
+    private static final int FIELD_CPU_CORE_USAGE_AVERAGE = 5;
+    private static final int FIELD_RAM_BYTE_REQUEST_AVERAGE = 6;
+    private static final int FIELD_RAM_BYTE_USAGE_AVERAGE = 7;
+    private static final int FIELD_COST = 8;
+    private static final int FIELD_COST_RATIO = 9;
+    private static final int FIELD_CUSTOM_COST = 10;
+
+    private static final int PROPERTY_CLUSTER = 0;
+    private static final int PROPERTY_NODE = 1;
+    private static final int PROPERTY_CONTROLLER = 2;
+    private static final int PROPERTY_CONTROLLER_KIND = 3;
+    private static final int PROPERTY_NAMESPACE = 4;
+    private static final int PROPERTY_POD = 5;
+    private static final int PROPERTY_LABELS = 6;
+    private static final int PROPERTY_PROVIDER_ID = 7;
+
+    private static final int EVENT_WINDOW = 1;
+    private static final int EVENT_ENTRY = 2;
+    private static final int EVENT_END = 3;
+
+    private static final int STATE_DOCUMENT = 0;
+    private static final int STATE_DATA = 1;
+    private static final int STATE_WINDOW = 2;
+    private static final int STATE_DONE = 3;
+
+    private final JsonReader in;
+    private final AllocationProjection projection;
+    private final TypeAdapter<OffsetDateTime> dateTimeAdapter;
+
+    private int state = STATE_DOCUMENT;
+    private int window = -1;
+    private boolean windowNull;
+    private String key;
+    private Allocation allocation;
+    private boolean hasEntry;
+
+    /**
+     * Create a reader over the given UTF-8 source.
+     *
+     * @param source The JSON source, e.g. {@code ResponseBody.source()}
+     * @param projection The fields to materialize
+     */
+    public AllocationStreamReader(BufferedSource source, AllocationProjection projection) {
+        this(newJsonReader(source), projection);
+    }
+
+    /**
+     * Create a reader over the given JSON tokenizer.
+     *
+     * @param in The JSON reader, positioned before the {@code AllocationSetRange} document
+     * @param projection The fields to materialize
+     */
+    public AllocationStreamReader(JsonReader in, AllocationProjection projection) {
+        this.in = in;
+        this.projection = projection;
+        this.dateTimeAdapter = JSON.getGson().getAdapter(OffsetDateTime.class);
+    }
+
+    /**
+     * Create a response decoder that streams every entry of the body to the given handler.
+     *
+     * @param <H> The handler type
+     * @param projection The fields to materialize
+     * @param handler The handler
+     * @return Decoder returning the handler once the body has been consumed
+     */
+    public static <H extends AllocationHandler> ResponseDecoder<H> decoder(final AllocationProjection projection, final H handler) {
+        return new ResponseDecoder<H>() {
+            @Override
+            public H decode(BufferedSource source) throws IOException {
+                try (AllocationStreamReader reader = new AllocationStreamReader(source, projection)) {
+                    reader.readAll(handler);
+                }
+                return handler;
+            }
+        };
+    }
+
+    private static JsonReader newJsonReader(BufferedSource source) {
+        JsonReader reader = new JsonReader(new Utf8SourceReader(source));
+        // Gson.fromJson(JsonReader, Type) reads leniently as well
+        reader.setLenient(true);
+        return reader;
+    }
+
+    /**
+     * Advance to the next entry.
+     *
+     * @return False when the document has no more entries
+     * @throws IOException If fail to read the source or the document is malformed
+     */
+    public boolean next() throws IOException {
+        int event;
+        do {
+            event = advance();
+        } while (event == EVENT_WINDOW);
+        hasEntry = event == EVENT_ENTRY;
+        return hasEntry;
+    }
+
+    /**
+     * Decode the remaining document, pushing every window and entry to the given handler.
+     *
+     * @param handler The handler
+     * @throws IOException If fail to read the source, the document is malformed or the handler aborts
+     */
+    public void readAll(AllocationHandler handler) throws IOException {
+        int event;
+        while ((event = advance()) != EVENT_END) {
+            if (event == EVENT_WINDOW) {
+                handler.onWindow(window, windowNull);
+            } else {
+                handler.onAllocation(window, key, allocation);
+            }
+        }
+        hasEntry = false;
+        handler.onEnd();
+    }
+
+    /**
+     * Get the window number of the current entry.
+     *
+     * @return Zero-based window number
+     */
+    public int window() {
+        checkEntry();
+        return window;
+    }
+
+    /**
+     * Get the key of the current entry.
+     *
+     * @return The entry key
+     */
+    public String key() {
+        checkEntry();
+        return key;
+    }
+
+    /**
+     * Get the allocation of the current entry.
+     *
+     * @return The allocation limited to the projected fields, or null if the entry is JSON null
+     */
+    public Allocation allocation() {
+        checkEntry();
+        return allocation;
+    }
+
+    /**
+     * Get the number of windows that have been started so far.
+     *
+     * @return Window count
+     */
+    public int windowCount() {
+        return window + 1;
+    }
+
+    private void checkEntry() {
+        if (!hasEntry) {
+            throw new NoSuchElementException("no current entry");
+        }
+    }
+
+    private int advance() throws IOException {
+        while (true) {
+            switch (state) {
+                case STATE_DOCUMENT:
+                    if (!enterData()) {
+                        state = STATE_DONE;
+                        return EVENT_END;
+                    }
+                    state = STATE_DATA;
+                    break;
+                case STATE_DATA:
+                    if (!in.hasNext()) {
+                        in.endArray();
+                        finishDocument();
+                        state = STATE_DONE;
+                        return EVENT_END;
+                    }
+                    window++;
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        windowNull = true;
+                    } else {
+                        in.beginObject();
+                        windowNull = false;
+                        state = STATE_WINDOW;
+                    }
+                    return EVENT_WINDOW;
+                case STATE_WINDOW:
+                    if (!in.hasNext()) {
+                        in.endObject();
+                        state = STATE_DATA;
+                        break;
+                    }
+                    key = in.nextName();
+                    allocation = readAllocation();
+                    return EVENT_ENTRY;
+                default:
+                    return EVENT_END;
+            }
+        }
+    }
+
+    /**
+     * Position the tokenizer inside the {@code data} array.
+     *
+     * @return False if {@code data} is absent or null
+     */
+    private boolean enterData() throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (!AllocationSetRange.SERIALIZED_NAME_DATA.equals(name)) {
+                throw new IllegalArgumentException("The field `" + name + "` in the JSON string is not defined in the `AllocationSetRange` properties");
+            }
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+            } else {
+                in.beginArray();
+                return true;
+            }
+        }
+        in.endObject();
+        return false;
+    }
+
+    private void finishDocument() throws IOException {
+        if (in.hasNext()) {
+            String name = in.nextName();
+            throw new IllegalArgumentException("The field `" + name + "` in the JSON string is not defined in the `AllocationSetRange` properties");
+        }
+        in.endObject();
+    }
+
+    private Allocation readAllocation() throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Allocation allocation = new Allocation();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            Integer field = AllocationProjection.ALLOCATION_FIELD_INDEX.get(name);
+            if (field == null) {
+                throw new IllegalArgumentException("The field `" + name + "` in the JSON string is not defined in the `Allocation` properties");
+            }
+            if (!projection.includesField(field)) {
+                in.skipValue();
+                continue;
+            }
+            switch (field) {
+                case FIELD_NAME: allocation.setName(readString()); break;
+                case FIELD_PROPERTIES: allocation.setProperties(readProperties()); break;
+                case FIELD_START: allocation.setStart(dateTimeAdapter.read(in)); break;
+                case FIELD_END: allocation.setEnd(dateTimeAdapter.read(in)); break;
+                case FIELD_CPU_CORE_REQUEST_AVERAGE: allocation.setCpuCoreRequestAverage(readFloat()); break;
+                case FIELD_CPU_CORE_USAGE_AVERAGE: allocation.setCpuCoreUsageAverage(readFloat()); break;
+                case FIELD_RAM_BYTE_REQUEST_AVERAGE: allocation.setRamByteRequestAverage(readFloat()); break;
+                case FIELD_RAM_BYTE_USAGE_AVERAGE: allocation.setRamByteUsageAverage(readFloat()); break;
+                case FIELD_COST: allocation.setCost(readFloat()); break;
+                case FIELD_COST_RATIO: allocation.setCostRatio(readFloat()); break;
+                case FIELD_CUSTOM_COST: allocation.setCustomCost(readFloat()); break;
+                default: in.skipValue(); break;
+            }
+        }
+        in.endObject();
+        return allocation;
+    }
+
+    private AllocationProperties readProperties() throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        AllocationProperties properties = new AllocationProperties();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            Integer field = AllocationProjection.PROPERTY_FIELD_INDEX.get(name);
+            if (field == null) {
+                throw new IllegalArgumentException("The field `" + name + "` in the JSON string is not defined in the `AllocationProperties` properties");
+            }
+            if (!projection.includesProperty(field)) {
+                in.skipValue();
+                continue;
+            }
+            switch (field) {
+                case PROPERTY_CLUSTER: properties.setCluster(readString()); break;
+                case PROPERTY_NODE: properties.setNode(readString()); break;
+                case PROPERTY_CONTROLLER: properties.setController(readString()); break;
+                case PROPERTY_CONTROLLER_KIND: properties.setControllerKind(readString()); break;
+                case PROPERTY_NAMESPACE: properties.setNamespace(readString()); break;
+                case PROPERTY_POD: properties.setPod(readString()); break;
+                case PROPERTY_LABELS: properties.setLabels(readLabels()); break;
+                case PROPERTY_PROVIDER_ID: properties.setProviderID(readString()); break;
+                default: in.skipValue(); break;
+            }
+        }
+        in.endObject();
+        return properties;
+    }
+
+    private Map<String, String> readLabels() throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Map<String, String> labels = new HashMap<String, String>();
+        in.beginObject();
+        while (in.hasNext()) {
+            labels.put(in.nextName(), readString());
+        }
+        in.endObject();
+        return labels;
+    }
+
+    private String readString() throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER && token != JsonToken.BOOLEAN) {
+            throw new IllegalArgumentException("Expected a primitive type but got " + token + " at " + in.getPath());
+        }
+        return token == JsonToken.BOOLEAN ? Boolean.toString(in.nextBoolean()) : in.nextString();
+    }
+
+    private Float readFloat() throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return (float) in.nextDouble();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,202 @@
+package org.openapitools.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.logging.HttpLoggingInterceptor;
+import okio.BufferedSink;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs calls through {@link DebugLoggingInterceptor} in front of an interceptor that answers them
+ * without a network, and checks which calls are logged and what happens to messages around close.
+ */
+public class DebugLoggingInterceptorTest {
+
+    private final BlockingQueue<String> messages = new LinkedBlockingQueue<String>();
+    private final BlockingQueue<Thread> threads = new LinkedBlockingQueue<Thread>();
+
+    @Test
+    public void logsOneCallInSampleRateAndEveryFailure() throws IOException {
+        DebugLoggingInterceptor logging = DebugLoggingInterceptor.builder()
+            .sampleRate(3).queueCapacity(0).logger(recording(null)).build();
+        OkHttpClient client = client(logging);
+        for (int i = 0; i < 6; i++) {
+            call(client, "/ok");
+        }
+        assertEquals(2, messages.size());
+        call(client, "/error");
+        assertEquals(3, messages.size());
+        assertTrue(last().contains("<-- 500 Server Error"), last());
+    }
+
+    @Test
+    public void logsSlowCalls() throws IOException {
+        DebugLoggingInterceptor logging = DebugLoggingInterceptor.builder()
+            .sampleRate(1000).slowThresholdMillis(20).queueCapacity(0).logger(recording(null)).build();
+        OkHttpClient client = client(logging);
+        // the first call is always sampled
+        call(client, "/ok");
+        call(client, "/ok");
+        assertEquals(1, messages.size());
+        call(client, "/slow");
+        assertEquals(2, messages.size());
+        assertTrue(last().contains(", slow)"), last());
+    }
+
+    @Test
+    public void failureKeepsTheCauseWhenTheBodyCannotBeLogged() {
+        DebugLoggingInterceptor logging = DebugLoggingInterceptor.builder()
+            .level(DebugLoggingInterceptor.Level.BODY).queueCapacity(0).logger(recording(null)).build();
+        OkHttpClient client = client(logging);
+        RequestBody unreadable = new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return null;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                throw new IOException("body gone");
+            }
+        };
+        Request request = new Request.Builder().url("http://localhost/refused").post(unreadable)
+            .header("Authorization", "Bearer secret").build();
+        IOException e = assertThrows(IOException.class, () -> client.newCall(request).execute());
+        assertEquals("refused", e.getMessage());
+        assertEquals(1, e.getSuppressed().length);
+        assertEquals("body gone", e.getSuppressed()[0].getMessage());
+        assertTrue(last().contains("<-- HTTP FAILED"), last());
+        assertTrue(!last().contains("secret"), last());
+    }
+
+    @Test
+    public void dropsWhenTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DebugLoggingInterceptor logging = DebugLoggingInterceptor.builder()
+            .queueCapacity(1).logger(recording(release)).build();
+        OkHttpClient client = client(logging);
+        call(client, "/ok");
+        // the writer holds the first message until released, the queue holds the second
+        assertNotNull(threads.poll(5, TimeUnit.SECONDS));
+        call(client, "/ok");
+        call(client, "/ok");
+        assertEquals(2, logging.getLogged());
+        assertEquals(1, logging.getDropped());
+        release.countDown();
+        assertNotNull(messages.poll(5, TimeUnit.SECONDS));
+        assertNotNull(messages.poll(5, TimeUnit.SECONDS));
+        logging.close();
+    }
+
+    @Test
+    public void closeWritesQueuedMessagesThenLogsInline() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DebugLoggingInterceptor logging = DebugLoggingInterceptor.builder()
+            .queueCapacity(10).logger(recording(release)).build();
+        OkHttpClient client = client(logging);
+        call(client, "/ok");
+        call(client, "/ok");
+        call(client, "/ok");
+        logging.close();
+        release.countDown();
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(messages.poll(5, TimeUnit.SECONDS), "queued message " + i + " lost");
+            assertEquals("api-debug-log", threads.poll(5, TimeUnit.SECONDS).getName());
+        }
+        call(client, "/ok");
+        assertEquals(Thread.currentThread(), threads.poll(5, TimeUnit.SECONDS));
+        assertNotNull(messages.poll());
+        assertEquals(4, logging.getLogged());
+        assertEquals(0, logging.getDropped());
+        assertNull(messages.poll());
+    }
+
+    /**
+     * A logger recording each message and its thread, holding every message until {@code release}
+     * opens when not null.
+     */
+    private HttpLoggingInterceptor.Logger recording(final CountDownLatch release) {
+        return new HttpLoggingInterceptor.Logger() {
+            @Override
+            public void log(String message) {
+                threads.add(Thread.currentThread());
+                if (release != null) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                messages.add(message);
+            }
+        };
+    }
+
+    private String last() {
+        String last = null;
+        for (String message : messages) {
+            last = message;
+        }
+        return last;
+    }
+
+    private static void call(OkHttpClient client, String path) throws IOException {
+        Request request = new Request.Builder().url("http://localhost" + path).build();
+        try (Response response = client.newCall(request).execute()) {
+            response.body().string();
+        }
+    }
+
+    /**
+     * A client answering {@code /ok}, {@code /error} and {@code /slow} itself and failing any other path.
+     */
+    private static OkHttpClient client(DebugLoggingInterceptor logging) {
+        return new OkHttpClient.Builder()
+            .addInterceptor(logging)
+            .addInterceptor(new Interceptor() {
+                @Override
+                public Response intercept(Chain chain) throws IOException {
+                    String path = chain.request().url().encodedPath();
+                    int code = 200;
+                    if (path.equals("/error")) {
+                        code = 500;
+                    } else if (path.equals("/slow")) {
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                    } else if (!path.equals("/ok")) {
+                        throw new IOException("refused");
+                    }
+                    return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(code)
+                        .message(code == 200 ? "OK" : "Server Error")
+                        .body(ResponseBody.create("{}", MediaType.get("application/json")))
+                        .build();
+                }
+            })
+            .build();
+    }
+}
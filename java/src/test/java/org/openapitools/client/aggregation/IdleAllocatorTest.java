@@ -0,0 +1,96 @@
+package org.openapitools.client.aggregation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Scanner;
+
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.ShareSplit;
+
+/**
+ * Checks local idle sharing against {@code shareIdle=true} results of the server.
+ * <p>
+ * The fixtures under {@code idle/} hold one day of three pods on two nodes whose CPU and RAM cost
+ * mixes differ widely (web-1 4+2, web-2 1+3, db-0 2+6; idle node-a 2+1, node-b 1+1), with the
+ * {@code shareIdle=true} results computed the way the server shares, CPU and RAM idle separately by
+ * the matching resource cost. The local sharing, which only sees total costs, must stay within the
+ * tolerance below of them.
+ * </p>
+ */
+public class IdleAllocatorTest {
+
+    /** The largest cost difference of an entry, as a fraction of its window, for these mixes. */
+    private static final double TOLERANCE = 0.02;
+
+    @Test
+    public void weightedByNodeAgreesWithServer() throws IOException {
+        AllocationSetRange local = new IdleAllocator(ShareSplit.WEIGHTED, true).apply(load("idle-by-node.json"));
+        AllocationSetRange server = load("shared-weighted-by-node.json");
+        assertTrue(IdleAllocator.deviation(local, server) <= TOLERANCE);
+        assertEquals(total(server), total(local), 1e-4);
+        assertNull(local.getData().get(1));
+    }
+
+    @Test
+    public void weightedByClusterAgreesWithServer() throws IOException {
+        AllocationSetRange server = load("shared-weighted.json");
+        AllocationSetRange fromClusterIdle = new IdleAllocator(ShareSplit.WEIGHTED, false).apply(load("idle-by-cluster.json"));
+        AllocationSetRange fromNodeIdle = new IdleAllocator(ShareSplit.WEIGHTED, false).apply(load("idle-by-node.json"));
+        assertTrue(IdleAllocator.deviation(fromClusterIdle, server) <= TOLERANCE);
+        assertEquals(0, IdleAllocator.deviation(fromNodeIdle, fromClusterIdle), 1e-6);
+        assertEquals(total(server), total(fromClusterIdle), 1e-4);
+    }
+
+    @Test
+    public void evenSplitIsExact() throws IOException {
+        Map<String, Allocation> shared = new IdleAllocator(ShareSplit.EVEN, true).apply(load("idle-by-node.json")).getData().get(0);
+        // node-a idle 3 over two pods, node-b idle 2 over one
+        assertEquals(7.5, shared.get("web-1").getCost(), 1e-6);
+        assertEquals(5.5, shared.get("web-2").getCost(), 1e-6);
+        assertEquals(10.0, shared.get("db-0").getCost(), 1e-6);
+        assertEquals(3, shared.size());
+    }
+
+    @Test
+    public void byNodeRejectsClusterLevelIdle() throws IOException {
+        final AllocationSetRange range = load("idle-by-cluster.json");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new IdleAllocator(ShareSplit.WEIGHTED, true).apply(range));
+        assertTrue(e.getMessage().contains("idleByNode=true"));
+    }
+
+    @Test
+    public void deviationCountsMissingEntries() throws IOException {
+        AllocationSetRange server = load("shared-weighted.json");
+        AllocationSetRange local = new IdleAllocator(ShareSplit.WEIGHTED, false).apply(load("idle-by-cluster.json"));
+        local.getData().get(0).remove("db-0");
+        assertTrue(IdleAllocator.deviation(local, server) > 0.4);
+    }
+
+    private static double total(AllocationSetRange range) {
+        double total = 0;
+        for (Map<String, Allocation> window : range.getData()) {
+            if (window != null) {
+                for (Allocation allocation : window.values()) {
+                    total += allocation.getCost();
+                }
+            }
+        }
+        return total;
+    }
+
+    private static AllocationSetRange load(String name) throws IOException {
+        try (InputStream in = IdleAllocatorTest.class.getResourceAsStream("/idle/" + name);
+             Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+            return AllocationSetRange.fromJson(scanner.useDelimiter("\\A").next());
+        }
+    }
+}
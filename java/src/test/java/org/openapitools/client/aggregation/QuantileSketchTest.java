@@ -0,0 +1,164 @@
+package org.openapitools.client.aggregation;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the quantiles of {@link QuantileSketch} against the exact quantiles of the values added, for
+ * distributions of the shapes efficiency and cost data take.
+ */
+public class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.999, 1};
+
+    @Test
+    public void quantilesWithinRelativeAccuracy() {
+        for (double accuracy : new double[] {0.001, 0.01, 0.05}) {
+            for (int shape = 0; shape < 3; shape++) {
+                double[] values = values(new Random(shape), shape, 20000);
+                // enough buckets for the range of the values at every accuracy, so nothing collapses
+                QuantileSketch sketch = new QuantileSketch(accuracy, 16384);
+                for (double value : values) {
+                    sketch.add(value);
+                }
+                assertAccurate(values, sketch, accuracy, "shape " + shape + " at " + accuracy);
+                assertEquals(values.length, sketch.getCount());
+            }
+        }
+    }
+
+    @Test
+    public void mergeEqualsSingleSketch() {
+        double[] values = values(new Random(3), 1, 30000);
+        QuantileSketch whole = new QuantileSketch();
+        QuantileSketch[] parts = {new QuantileSketch(), new QuantileSketch(), new QuantileSketch()};
+        for (int i = 0; i < values.length; i++) {
+            whole.add(values[i]);
+            parts[i % parts.length].add(values[i]);
+        }
+        QuantileSketch merged = new QuantileSketch();
+        for (QuantileSketch part : parts) {
+            merged.merge(part);
+        }
+        merged.merge(new QuantileSketch());
+        for (double q : QUANTILES) {
+            assertEquals(whole.getQuantile(q), merged.getQuantile(q), 0, "quantile " + q);
+        }
+        assertEquals(whole.getCount(), merged.getCount());
+        assertEquals(whole.getSum(), merged.getSum(), 1e-6 * whole.getSum());
+        assertEquals(whole.getMin(), merged.getMin(), 0);
+        assertEquals(whole.getMax(), merged.getMax(), 0);
+        assertAccurate(values, merged, QuantileSketch.DEFAULT_RELATIVE_ACCURACY, "merged");
+    }
+
+    @Test
+    public void mergeRejectsOtherAccuracy() {
+        final QuantileSketch sketch = new QuantileSketch(0.01, 100);
+        assertThrows(IllegalArgumentException.class, () -> sketch.merge(new QuantileSketch(0.02, 100)));
+    }
+
+    @Test
+    public void serializationRoundTrip() {
+        double[] values = values(new Random(4), 2, 5000);
+        QuantileSketch sketch = new QuantileSketch(0.02, 512);
+        sketch.add(0, 7);
+        for (double value : values) {
+            sketch.add(value);
+        }
+        byte[] bytes = sketch.toBytes();
+        QuantileSketch read = QuantileSketch.fromBytes(bytes);
+        assertArrayEquals(bytes, read.toBytes());
+        assertEquals(sketch.getRelativeAccuracy(), read.getRelativeAccuracy(), 0);
+        assertEquals(sketch.getMaxBuckets(), read.getMaxBuckets());
+        assertEquals(sketch.getCount(), read.getCount());
+        assertEquals(sketch.getSum(), read.getSum(), 0);
+        for (double q : QUANTILES) {
+            assertEquals(sketch.getQuantile(q), read.getQuantile(q), 0, "quantile " + q);
+        }
+
+        QuantileSketch empty = QuantileSketch.fromBytes(new QuantileSketch().toBytes());
+        assertTrue(empty.isEmpty());
+        assertTrue(Double.isNaN(empty.getQuantile(0.5)));
+    }
+
+    @Test
+    public void fromBytesRejectsCorruptInput() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(1);
+        sketch.add(2);
+        final byte[] bytes = sketch.toBytes();
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.fromBytes(Arrays.copyOf(bytes, bytes.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.fromBytes(Arrays.copyOf(bytes, bytes.length + 1)));
+        final byte[] version = bytes.clone();
+        version[0] = 99;
+        assertThrows(IllegalArgumentException.class, () -> QuantileSketch.fromBytes(version));
+    }
+
+    @Test
+    public void collapsingKeepsUpperQuantiles() {
+        // values over 12 decades need far more than 64 buckets at 1%
+        Random random = new Random(5);
+        double[] values = new double[20000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.pow(10, -6 + 12 * random.nextDouble());
+        }
+        QuantileSketch sketch = new QuantileSketch(0.01, 64);
+        for (double value : values) {
+            sketch.add(value);
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : new double[] {0.99, 0.995, 0.999, 1}) {
+            double exact = sorted[(int) (q * (sorted.length - 1))];
+            assertEquals(exact, sketch.getQuantile(q), 0.01 * exact, "quantile " + q);
+        }
+    }
+
+    @Test
+    public void rejectsInvalidValues() {
+        final QuantileSketch sketch = new QuantileSketch();
+        assertThrows(IllegalArgumentException.class, () -> sketch.add(-1));
+        assertThrows(IllegalArgumentException.class, () -> sketch.add(Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> sketch.add(Double.POSITIVE_INFINITY));
+        assertThrows(IllegalArgumentException.class, () -> sketch.getQuantile(1.5));
+        assertTrue(sketch.isEmpty());
+    }
+
+    /**
+     * Draw values: 0 uniform ratios with some zeros, 1 log-normal, 2 heavy-tailed Pareto.
+     */
+    private static double[] values(Random random, int shape, int n) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            switch (shape) {
+                case 0:
+                    values[i] = random.nextInt(20) == 0 ? 0 : random.nextDouble() * 1.5;
+                    break;
+                case 1:
+                    values[i] = Math.exp(random.nextGaussian() * 2);
+                    break;
+                default:
+                    values[i] = 0.01 / Math.pow(1 - random.nextDouble(), 1 / 1.2);
+                    break;
+            }
+        }
+        return values;
+    }
+
+    private static void assertAccurate(double[] values, QuantileSketch sketch, double accuracy, String message) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : QUANTILES) {
+            double exact = sorted[(int) (q * (sorted.length - 1))];
+            double estimate = sketch.getQuantile(q);
+            assertEquals(exact, estimate, accuracy * exact, message + ", quantile " + q);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.openapitools.client.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.aggregation.AllocationMetric;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostFilter;
+import org.openapitools.client.query.FilterField;
+
+/**
+ * Checks index lookups against a scan of the allocations. The postings of the common values hold
+ * more rows than {@link RowBitmap#ARRAY_MAX} and those of the rare values fewer, so both chunk forms
+ * meet in the intersections.
+ */
+public class AllocationIndexTest {
+
+    private static final String[] NAMESPACES = {"default", "kube-system", "batch"};
+    private static final String[] TEAMS = {"a", "b", "c", "d", "e", "f", "g", "h", "i", "j"};
+
+    @Test
+    public void matchingAgreesWithScan() {
+        AllocationSetRange range = range(new Random(1), 3, 12000);
+        AllocationIndex index = AllocationIndex.build(range);
+        assertEquals(36000 - nullEntries(range), index.getRowCount());
+
+        CostFilter filter = CostFilter.builder().namespace("default", "batch").label("team", "a", "b").build();
+        RowBitmap rows = index.matching(filter);
+        assertArrayEquals(scan(index, "default|batch", "a|b", null), rows.toArray());
+
+        RowBitmap node = index.rows(FilterField.NODE, "node-1");
+        RowBitmap prod = index.label("env", "prod");
+        assertArrayEquals(scan(index, null, null, "node-1"), node.toArray());
+        assertArrayEquals(intersect(node.toArray(), prod.toArray()), node.and(prod).toArray());
+        assertEquals(index.getRowCount() - prod.cardinality(), index.all().andNot(prod).cardinality());
+    }
+
+    @Test
+    public void sumsMatchingRows() {
+        AllocationSetRange range = range(new Random(2), 2, 6000);
+        AllocationIndex index = AllocationIndex.build(range);
+        RowBitmap rows = index.label("team", "c").and(index.window(1));
+        double expected = 0;
+        int row = 0;
+        for (Map<String, Allocation> window : range.getData()) {
+            for (Allocation allocation : window.values()) {
+                if (allocation != null) {
+                    if (index.windowOf(row) == 1 && "c".equals(allocation.getProperties().getLabels().get("team"))) {
+                        expected += allocation.getCost();
+                    }
+                    row++;
+                }
+            }
+        }
+        assertEquals(expected, index.sum(AllocationMetric.COST, rows), 1e-3);
+    }
+
+    @Test
+    public void nullWindowsKeepTheirNumber() {
+        List<Map<String, Allocation>> data = new ArrayList<Map<String, Allocation>>();
+        data.add(null);
+        Map<String, Allocation> window = new LinkedHashMap<String, Allocation>();
+        window.put("x", allocation("x", "default", "node-1", "a", "prod", 1f));
+        data.add(window);
+        AllocationIndex index = AllocationIndex.build(new AllocationSetRange().data(data));
+        assertEquals(2, index.getWindowCount());
+        assertTrue(index.window(0).isEmpty());
+        assertArrayEquals(new int[] {0}, index.window(1).toArray());
+        assertTrue(index.label("team", "missing").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.rows(FilterField.POD, "x"));
+    }
+
+    private static AllocationSetRange range(Random random, int windows, int entries) {
+        List<Map<String, Allocation>> data = new ArrayList<Map<String, Allocation>>();
+        for (int w = 0; w < windows; w++) {
+            Map<String, Allocation> window = new LinkedHashMap<String, Allocation>();
+            for (int i = 0; i < entries; i++) {
+                String name = "pod-" + i;
+                if (random.nextInt(50) == 0) {
+                    window.put(name, null);
+                    continue;
+                }
+                // skewed: default holds most rows, node-1 few of them
+                String namespace = NAMESPACES[random.nextInt(10) < 7 ? 0 : 1 + random.nextInt(2)];
+                String node = "node-" + (random.nextInt(20) == 0 ? 1 : 2 + random.nextInt(3));
+                String env = random.nextBoolean() ? "prod" : "dev";
+                window.put(name, allocation(name, namespace, node, TEAMS[random.nextInt(TEAMS.length)], env, random.nextFloat() * 10));
+            }
+            data.add(window);
+        }
+        return new AllocationSetRange().data(data);
+    }
+
+    private static Allocation allocation(String name, String namespace, String node, String team, String env, float cost) {
+        Map<String, String> labels = new HashMap<String, String>();
+        labels.put("team", team);
+        labels.put("env", env);
+        return new Allocation().name(name).cost(cost)
+            .properties(new AllocationProperties().namespace(namespace).node(node).labels(labels));
+    }
+
+    private static int nullEntries(AllocationSetRange range) {
+        int count = 0;
+        for (Map<String, Allocation> window : range.getData()) {
+            for (Allocation allocation : window.values()) {
+                if (allocation == null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Scan the rows for values matching the given regular expressions, null for any.
+     */
+    private static int[] scan(AllocationIndex index, String namespace, String team, String node) {
+        List<Integer> rows = new ArrayList<Integer>();
+        for (int row = 0; row < index.getRowCount(); row++) {
+            AllocationProperties properties = index.allocation(row).getProperties();
+            if ((namespace == null || properties.getNamespace().matches(namespace))
+                && (team == null || properties.getLabels().get("team").matches(team))
+                && (node == null || properties.getNode().matches(node))) {
+                rows.add(row);
+            }
+        }
+        int[] result = new int[rows.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = rows.get(i);
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        List<Integer> rows = new ArrayList<Integer>();
+        int j = 0;
+        for (int id : a) {
+            while (j < b.length && b[j] < id) {
+                j++;
+            }
+            if (j < b.length && b[j] == id) {
+                rows.add(id);
+            }
+        }
+        int[] result = new int[rows.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = rows.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,133 @@
+package org.openapitools.client.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the set operations of {@link RowBitmap} against {@link BitSet}, with chunks on both sides of
+ * the {@value RowBitmap#ARRAY_MAX} ids where a chunk turns from an array into a bitmap.
+ */
+public class RowBitmapTest {
+
+    /** Ids per chunk: just below, at and above the array limit, sparse and dense. */
+    private static final int[] CHUNK_SIZES = {0, 1, 100, RowBitmap.ARRAY_MAX - 1, RowBitmap.ARRAY_MAX, RowBitmap.ARRAY_MAX + 1, 30000, 65536};
+
+    @Test
+    public void operationsMatchBitSet() {
+        Random random = new Random(42);
+        for (int a : CHUNK_SIZES) {
+            for (int b : CHUNK_SIZES) {
+                BitSet left = randomBits(random, a);
+                BitSet right = randomBits(random, b);
+                RowBitmap x = toBitmap(left);
+                RowBitmap y = toBitmap(right);
+                String sizes = a + " and " + b;
+
+                BitSet and = (BitSet) left.clone();
+                and.and(right);
+                assertBits(and, x.and(y), "and of " + sizes);
+
+                BitSet or = (BitSet) left.clone();
+                or.or(right);
+                assertBits(or, x.or(y), "or of " + sizes);
+
+                BitSet andNot = (BitSet) left.clone();
+                andNot.andNot(right);
+                assertBits(andNot, x.andNot(y), "andNot of " + sizes);
+            }
+        }
+    }
+
+    @Test
+    public void resultsShrinkBackBelowArrayLimit() {
+        // two dense chunks overlapping in fewer ids than the array limit
+        RowBitmap x = RowBitmap.range(0, 10000);
+        RowBitmap y = RowBitmap.range(9000, 20000);
+        RowBitmap and = x.and(y);
+        assertEquals(1000, and.cardinality());
+        assertEquals(RowBitmap.range(9000, 10000), and);
+        assertEquals(RowBitmap.range(0, 9000), x.andNot(y));
+        assertEquals(RowBitmap.range(0, 20000), x.or(y));
+    }
+
+    @Test
+    public void unionOfManyMatchesBitSet() {
+        Random random = new Random(7);
+        BitSet expected = new BitSet();
+        RowBitmap[] bitmaps = new RowBitmap[CHUNK_SIZES.length];
+        for (int i = 0; i < bitmaps.length; i++) {
+            BitSet bits = randomBits(random, CHUNK_SIZES[i]);
+            expected.or(bits);
+            bitmaps[i] = toBitmap(bits);
+        }
+        assertBits(expected, RowBitmap.or(Arrays.asList(bitmaps)), "union");
+    }
+
+    @Test
+    public void containsAndOf() {
+        RowBitmap bitmap = RowBitmap.of(5, 3, 70000, 3, 65535);
+        assertArrayEquals(new int[] {3, 5, 65535, 70000}, bitmap.toArray());
+        assertTrue(bitmap.contains(65535));
+        assertFalse(bitmap.contains(65536));
+        assertFalse(bitmap.contains(4));
+        assertTrue(RowBitmap.empty().isEmpty());
+    }
+
+    @Test
+    public void builderRejectsDescendingIds() {
+        final RowBitmap.Builder builder = new RowBitmap.Builder().add(10);
+        assertThrows(IllegalArgumentException.class, () -> builder.add(10));
+        assertThrows(IllegalArgumentException.class, () -> builder.add(-1));
+    }
+
+    /**
+     * Draw the given number of distinct ids in each of three chunks, the middle one left empty.
+     */
+    private static BitSet randomBits(Random random, int perChunk) {
+        BitSet bits = new BitSet();
+        for (int chunk : new int[] {0, 2, 3}) {
+            int base = chunk << 16;
+            if (perChunk == 65536) {
+                bits.set(base, base + 65536);
+                continue;
+            }
+            int added = 0;
+            while (added < perChunk) {
+                int id = base + random.nextInt(65536);
+                if (!bits.get(id)) {
+                    bits.set(id);
+                    added++;
+                }
+            }
+        }
+        return bits;
+    }
+
+    private static RowBitmap toBitmap(BitSet bits) {
+        RowBitmap.Builder builder = new RowBitmap.Builder();
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            builder.add(id);
+        }
+        return builder.build();
+    }
+
+    private static void assertBits(BitSet expected, RowBitmap actual, String message) {
+        assertEquals(expected.cardinality(), actual.cardinality(), message);
+        assertArrayEquals(expected.stream().toArray(), actual.toArray(), message);
+        for (int id = expected.nextSetBit(0); id >= 0; id = expected.nextSetBit(id + 1)) {
+            if (!actual.contains(id)) {
+                fail(message + " misses " + id);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.openapitools.client.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.Pair;
+
+/**
+ * Checks that {@link CostQuery#canonicalKey()} is equal for equivalent queries and distinct for
+ * queries whose parameters only look alike once joined.
+ */
+public class CostQueryTest {
+
+    @Test
+    public void equivalentQueriesShareTheKey() {
+        CostQuery a = CostQuery.builder(" 1d ").aggregate(CostAggregate.NAMESPACE, CostAggregate.NAMESPACE).idle(true).build();
+        CostQuery b = CostQuery.builder("1d").aggregate(CostAggregate.NAMESPACE).build();
+        assertEquals("window=1d&aggregate=namespace", a.canonicalKey());
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+
+    @Test
+    public void delimitersInValuesDoNotCollide() {
+        CostQuery joined = CostQuery.builder("1d&step=1h").build();
+        CostQuery separate = CostQuery.builder("1d").step("1h").build();
+        assertEquals("window=1d%26step%3D1h", joined.canonicalKey());
+        assertEquals("window=1d&step=1h", separate.canonicalKey());
+        assertNotEquals(joined, separate);
+        assertNotEquals(CostQuery.builder("1d%26").build(), CostQuery.builder("1d&").build());
+    }
+
+    @Test
+    public void keyStaysOnOneLine() {
+        assertEquals("a%0Ab=c%0D%25", CostQuery.keyOf(Arrays.asList(new Pair("a\nb", "c\r%"))));
+    }
+}
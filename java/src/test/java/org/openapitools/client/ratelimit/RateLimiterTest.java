@@ -0,0 +1,111 @@
+package org.openapitools.client.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Request;
+
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.Deadline;
+
+/**
+ * Checks which requests a {@link RateLimiter} admits, per bucket and mode, on a fake clock that only
+ * moves when the test moves it.
+ */
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(42 * SECOND);
+
+    @Test
+    public void failFastAdmitsTheBurstThenRefusesUntilRefilled() throws ApiException {
+        RateLimiter limiter = builder(1).burst(2).mode(RateLimiter.Mode.FAIL_FAST).build();
+        limiter.acquire(request("http://a/v2/allocation"));
+        limiter.acquire(request("http://a/v2/allocation"));
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquire(request("http://a/v2/allocation")));
+        assertEquals("http://a:80/v2/allocation", e.getOperation());
+        assertEquals(SECOND, e.getRetryAfterNanos());
+        assertEquals(1, limiter.getRejected());
+
+        now.addAndGet(SECOND);
+        limiter.acquire(request("http://a/v2/allocation"));
+        assertEquals(0, limiter.getDelayed());
+    }
+
+    @Test
+    public void bucketsArePerHostAndOperation() throws ApiException {
+        RateLimiter limiter = builder(1).burst(1).mode(RateLimiter.Mode.FAIL_FAST)
+            .operation("/v2/cost", 10, 2)
+            .build();
+        limiter.acquire(request("http://a/v2/allocation"));
+        assertThrows(RateLimitedException.class, () -> limiter.acquire(request("http://a/v2/allocation")));
+        limiter.acquire(request("http://b/v2/allocation"));
+        limiter.acquire(request("http://a:8080/v2/allocation"));
+
+        // the operation rate also applies behind a path prefix
+        String proxied = "http://a/api/v1/namespaces/kubecost/services/cost-analyzer:9090/proxy/v2/cost";
+        limiter.acquire(request(proxied));
+        limiter.acquire(request(proxied));
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquire(request(proxied)));
+        assertEquals(SECOND / 10, e.getRetryAfterNanos());
+    }
+
+    @Test
+    public void heavyRequestsPassOnAFullBucketAndDelayTheNext() throws ApiException {
+        RateLimiter limiter = builder(1).burst(2).mode(RateLimiter.Mode.FAIL_FAST)
+            .weigher(RequestWeigher.byWindow())
+            .build();
+        limiter.acquire(request("http://a/v2/allocation?window=7d"));
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquire(request("http://a/v2/allocation?window=1d")));
+        assertEquals(6 * SECOND, e.getRetryAfterNanos());
+        now.addAndGet(6 * SECOND);
+        limiter.acquire(request("http://a/v2/allocation?window=1d"));
+    }
+
+    @Test
+    public void queueWaitsUpToTheMaximumDelay() throws ApiException {
+        // 100 permits per second: the calling thread really sleeps 10 ms per queued permit
+        RateLimiter limiter = builder(100).burst(1).mode(RateLimiter.Mode.QUEUE)
+            .maxQueueDelay(Duration.ofMillis(15))
+            .build();
+        limiter.acquire(request("http://a/v2/allocation"));
+        limiter.acquire(request("http://a/v2/allocation"));
+        assertEquals(1, limiter.getDelayed());
+        RateLimitedException e = assertThrows(RateLimitedException.class, () -> limiter.acquire(request("http://a/v2/allocation")));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), e.getRetryAfterNanos());
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    public void deadlineBoundsTheWaitOfBlockingRequests() throws ApiException {
+        RateLimiter limiter = builder(1).burst(1).build();
+        limiter.acquire(request("http://a/v2/allocation"));
+        Request expired = new Request.Builder().url("http://a/v2/allocation")
+            .tag(Deadline.class, Deadline.after(Duration.ZERO))
+            .build();
+        assertThrows(RateLimitedException.class, () -> limiter.acquire(expired));
+    }
+
+    @Test
+    public void shutdownRefusesNewRequests() {
+        RateLimiter limiter = builder(1).build();
+        limiter.shutdown();
+        ApiException e = assertThrows(ApiException.class, () -> limiter.acquire(request("http://a/v2/allocation")));
+        assertEquals(ApiException.class, e.getClass());
+        assertThrows(ApiException.class, () -> limiter.submit(request("http://a/v2/allocation"), () -> { }));
+    }
+
+    private RateLimiter.Builder builder(double permitsPerSecond) {
+        return RateLimiter.builder(permitsPerSecond).ticker(now::get);
+    }
+
+    private static Request request(String url) {
+        return new Request.Builder().url(url).build();
+    }
+}
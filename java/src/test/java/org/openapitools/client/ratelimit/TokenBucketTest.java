@@ -0,0 +1,67 @@
+package org.openapitools.client.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the admission times of {@link TokenBucket} at given points of a fake clock: 10 permits per
+ * second are 100 ms per permit.
+ */
+public class TokenBucketTest {
+
+    private static final long PERMIT = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long T0 = 1234567890L;
+
+    @Test
+    public void fullBucketAdmitsTheBurstAtOnce() {
+        TokenBucket bucket = new TokenBucket(10, 3, T0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.reserve(1, 0, T0), "permit " + i);
+        }
+        assertEquals(PERMIT, bucket.reserve(1, Long.MAX_VALUE, T0));
+        assertEquals(2 * PERMIT, bucket.reserve(1, Long.MAX_VALUE, T0));
+    }
+
+    @Test
+    public void refusedReservationsTakeNothing() {
+        TokenBucket bucket = new TokenBucket(10, 1, T0);
+        assertEquals(0, bucket.reserve(1, 0, T0));
+        assertEquals(-1 - PERMIT, bucket.reserve(1, PERMIT - 1, T0));
+        assertEquals(-1 - PERMIT, bucket.reserve(1, 0, T0));
+        // refilled after one emission interval, as nothing was taken by the refusals
+        assertEquals(0, bucket.reserve(1, 0, T0 + PERMIT));
+    }
+
+    @Test
+    public void refillsAtTheRateUpToTheBurst() {
+        TokenBucket bucket = new TokenBucket(10, 2, T0);
+        assertEquals(0, bucket.reserve(2, 0, T0));
+        assertEquals(PERMIT / 2, bucket.reserve(1, Long.MAX_VALUE, T0 + PERMIT / 2));
+        // a long pause refills the burst, not more
+        long later = T0 + 100 * PERMIT;
+        assertEquals(0, bucket.reserve(1, 0, later));
+        assertEquals(0, bucket.reserve(1, 0, later));
+        assertEquals(PERMIT, bucket.reserve(1, Long.MAX_VALUE, later));
+    }
+
+    @Test
+    public void heavyReservationWaitsForAFullBucketThenLeavesDebt() {
+        TokenBucket bucket = new TokenBucket(10, 3, T0);
+        assertEquals(0, bucket.reserve(1, 0, T0));
+        // five permits only fit once the bucket is full again
+        assertEquals(PERMIT, bucket.reserve(5, Long.MAX_VALUE, T0));
+        // the bucket is full at 6 permits' time and the next permit fits in it at 4
+        assertEquals(4 * PERMIT, bucket.reserve(1, Long.MAX_VALUE, T0));
+    }
+
+    @Test
+    public void fractionalPermits() {
+        TokenBucket bucket = new TokenBucket(10, 1, T0);
+        assertEquals(0, bucket.reserve(0.5, 0, T0));
+        assertEquals(0, bucket.reserve(0.5, 0, T0));
+        assertEquals(PERMIT / 4, bucket.reserve(0.25, Long.MAX_VALUE, T0));
+    }
+}
@@ -0,0 +1,198 @@
+package org.openapitools.client.reactive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.sun.net.httpserver.HttpServer;
+
+import okhttp3.Request;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiClient;
+import org.openapitools.client.ApiException;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.schedule.CallScheduler;
+import org.openapitools.client.stream.AllocationProjection;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Subscribes to {@link AllocationPublisher}s reading from a local HTTP server and checks that entries
+ * are emitted no faster than requested, and what cancellation and invalid demand signal. The
+ * publishers run on the requesting thread, so every signal has arrived when {@code request} returns.
+ */
+public class AllocationPublisherTest {
+
+    private static final int ENTRIES = 10;
+    private static final Executor DIRECT = Runnable::run;
+
+    private HttpServer server;
+    private ApiClient apiClient;
+
+    @BeforeEach
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/cost", exchange -> {
+            StringBuilder json = new StringBuilder("{\"data\":[{");
+            for (int i = 0; i < ENTRIES; i++) {
+                json.append(i == 0 ? "" : ",").append("\"pod-").append(i).append("\":{\"name\":\"pod-").append(i)
+                    .append("\",\"cost\":").append(i).append('}');
+            }
+            json.append("}]}");
+            byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/v2/broken", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+        apiClient = new ApiClient();
+    }
+
+    @AfterEach
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void emitsNoMoreThanRequested() {
+        Recorder recorder = subscribe("/v2/cost");
+        assertTrue(recorder.items.isEmpty(), "nothing is emitted before a request");
+        recorder.subscription.request(3);
+        assertEquals(3, recorder.items.size());
+        recorder.subscription.request(4);
+        assertEquals(7, recorder.items.size());
+        assertEquals(0, recorder.completions);
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(ENTRIES, recorder.items.size());
+        assertEquals(1, recorder.completions);
+        assertNull(recorder.error);
+        for (int i = 0; i < ENTRIES; i++) {
+            assertEquals("pod-" + i, recorder.items.get(i).getName());
+        }
+    }
+
+    @Test
+    public void requestsFromOnNextAddUp() {
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onNext(Allocation allocation) {
+                super.onNext(allocation);
+                if (items.size() % 2 == 0) {
+                    subscription.request(2);
+                }
+            }
+        };
+        publisher("/v2/cost").subscribe(recorder);
+        recorder.subscription.request(2);
+        assertEquals(ENTRIES, recorder.items.size());
+        assertEquals(1, recorder.completions);
+    }
+
+    @Test
+    public void cancelStopsSignalsAndFreesTheSlot() {
+        CallScheduler scheduler = CallScheduler.builder().maxInFlight(1).build();
+        apiClient.setCallScheduler(scheduler);
+        Recorder recorder = subscribe("/v2/cost");
+        recorder.subscription.request(2);
+        assertEquals(2, recorder.items.size());
+        assertEquals(1, scheduler.getInFlight());
+
+        recorder.subscription.cancel();
+        recorder.subscription.request(5);
+        recorder.subscription.cancel();
+        assertEquals(2, recorder.items.size());
+        assertEquals(0, recorder.completions);
+        assertNull(recorder.error);
+        assertEquals(0, scheduler.getInFlight());
+
+        // the slot is free for the next subscription
+        Recorder next = subscribe("/v2/cost");
+        next.subscription.request(Long.MAX_VALUE);
+        assertEquals(ENTRIES, next.items.size());
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void nonPositiveRequestSignalsAnError() {
+        for (long n : new long[] {0, -1}) {
+            Recorder recorder = subscribe("/v2/cost");
+            recorder.subscription.request(1);
+            recorder.subscription.request(n);
+            assertTrue(recorder.error instanceof IllegalArgumentException, "request(" + n + ") gave " + recorder.error);
+            // nothing follows the error, not even for later demand
+            recorder.subscription.request(5);
+            assertEquals(1, recorder.items.size());
+            assertEquals(0, recorder.completions);
+            assertEquals(1, recorder.errors);
+        }
+    }
+
+    @Test
+    public void failedCallSignalsTheStatus() {
+        Recorder recorder = subscribe("/v2/broken");
+        recorder.subscription.request(1);
+        assertTrue(recorder.error instanceof ApiException, String.valueOf(recorder.error));
+        assertEquals(500, ((ApiException) recorder.error).getCode());
+        assertTrue(recorder.items.isEmpty());
+    }
+
+    private Recorder subscribe(String path) {
+        Recorder recorder = new Recorder();
+        publisher(path).subscribe(recorder);
+        return recorder;
+    }
+
+    private AllocationPublisher publisher(String path) {
+        Request request = new Request.Builder()
+            .url("http://127.0.0.1:" + server.getAddress().getPort() + path)
+            .build();
+        return new AllocationPublisher(apiClient, apiClient.getHttpClient().newCall(request),
+            AllocationProjection.of("name", "cost"), DIRECT);
+    }
+
+    private static class Recorder implements Subscriber<Allocation> {
+        final List<Allocation> items = new ArrayList<Allocation>();
+        Subscription subscription;
+        Throwable error;
+        int errors;
+        int completions;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Allocation allocation) {
+            items.add(allocation);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            errors++;
+        }
+
+        @Override
+        public void onComplete() {
+            completions++;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.openapitools.client.schedule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+
+import org.junit.jupiter.api.Test;
+import org.openapitools.client.ApiException;
+
+/**
+ * Checks admission, ordering and slot accounting of {@link CallScheduler} with tasks that only record
+ * when they are sent and complete when the test releases them.
+ */
+public class CallSchedulerTest {
+
+    private static final CallClass LOW = CallClass.of("low");
+    private static final CallClass HIGH = CallClass.of("high");
+
+    private final BlockingQueue<RecordingTask> sent = new LinkedBlockingQueue<RecordingTask>();
+
+    @Test
+    public void rejectsQueuesThatCannotHoldACall() {
+        assertThrows(IllegalArgumentException.class, () -> CallScheduler.builder().callClass(LOW, 0, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> CallScheduler.builder().defaultCallClass(0, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> CallScheduler.builder().callClass(LOW, 0, 0, 1));
+    }
+
+    @Test
+    public void smallestQueueSendsWhenASlotIsFree() throws Exception {
+        CallScheduler scheduler = CallScheduler.builder().maxInFlight(1).callClass(LOW, 0, 1, 1).build();
+        RecordingTask first = submit(scheduler, LOW, "first");
+        assertEquals(first, sent.poll());
+        RecordingTask second = submit(scheduler, LOW, "second");
+        assertThrows(QueueFullException.class, () -> submit(scheduler, LOW, "third"));
+        first.complete();
+        assertEquals(second, next());
+        assertEquals(1, scheduler.getStats(LOW).getRejected());
+    }
+
+    @Test
+    public void sendsOnTheCallingThreadUntilSaturated() throws Exception {
+        CallScheduler scheduler = CallScheduler.builder().maxInFlight(2).build();
+        RecordingTask a = submit(scheduler, CallClass.DEFAULT, "a");
+        RecordingTask b = submit(scheduler, CallClass.DEFAULT, "b");
+        RecordingTask c = submit(scheduler, CallClass.DEFAULT, "c");
+        assertEquals(Thread.currentThread(), a.thread);
+        assertEquals(Thread.currentThread(), b.thread);
+        assertEquals(2, sent.size());
+        assertEquals(2, scheduler.getInFlight());
+
+        a.complete();
+        assertEquals(a, sent.poll());
+        assertEquals(b, sent.poll());
+        assertEquals(c, next());
+        assertEquals("api-call-scheduler", c.thread.getName());
+        // completing twice frees one slot only
+        a.complete();
+        assertEquals(2, scheduler.getInFlight());
+        b.complete();
+        c.complete();
+        awaitInFlight(scheduler, 0);
+    }
+
+    @Test
+    public void higherPriorityGoesFirst() throws Exception {
+        CallScheduler scheduler = CallScheduler.builder().maxInFlight(1)
+            .callClass(LOW, 0, 1, 10)
+            .callClass(HIGH, 1, 1, 10)
+            .build();
+        RecordingTask blocker = submit(scheduler, LOW, "blocker");
+        submit(scheduler, LOW, "low");
+        submit(scheduler, HIGH, "high");
+        assertEquals(blocker, sent.poll());
+        blocker.complete();
+        RecordingTask first = next();
+        assertEquals("high", first.name);
+        first.complete();
+        assertEquals("low", next().name);
+    }
+
+    @Test
+    public void equalPrioritiesShareByWeight() throws Exception {
+        CallScheduler scheduler = CallScheduler.builder().maxInFlight(1)
+            .callClass(HIGH, 0, 3, 100)
+            .callClass(LOW, 0, 1, 100)
+            .build();
+        RecordingTask blocker = submit(scheduler, LOW, "blocker");
+        sent.poll();
+        for (int i = 0; i < 8; i++) {
+            submit(scheduler, HIGH, "heavy");
+            submit(scheduler, LOW, "light");
+        }
+        blocker.complete();
+        int heavy = 0;
+        for (int i = 0; i < 8; i++) {
+            RecordingTask task = next();
+            if (task.name.equals("heavy")) {
+                heavy++;
+            }
+            task.complete();
+        }
+        assertEquals(6, heavy);
+    }
+
+    @Test
+    public void failingSendFreesItsSlot() throws Exception {
+        CallScheduler scheduler = CallScheduler.builder().maxInFlight(1).build();
+        RecordingTask broken = new RecordingTask("broken") {
+            @Override
+            public void send(Runnable release) {
+                throw new IllegalStateException("Already Executed");
+            }
+        };
+        scheduler.submit(request(CallClass.DEFAULT), broken);
+        assertNotNull(broken.failure);
+        assertTrue(broken.failure.getCause() instanceof IllegalStateException);
+        assertEquals(0, scheduler.getInFlight());
+        RecordingTask next = submit(scheduler, CallClass.DEFAULT, "next");
+        assertEquals(next, sent.poll());
+    }
+
+    @Test
+    public void undeclaredClassesAreDroppedOnceEmpty() throws Exception {
+        CallScheduler scheduler = CallScheduler.builder().maxInFlight(1).defaultCallClass(0, 1, 1).build();
+        CallClass tenant = CallClass.of("tenant-a");
+        RecordingTask blocker = submit(scheduler, CallClass.DEFAULT, "blocker");
+        submit(scheduler, tenant, "queued");
+        assertEquals(1, scheduler.getStats(tenant).getQueued());
+        blocker.complete();
+        sent.poll();
+        next().complete();
+        awaitInFlight(scheduler, 0);
+        for (CallScheduler.Stats stats : scheduler.getStats()) {
+            assertTrue(!stats.getCallClass().equals(tenant), "the queue of " + tenant + " is kept");
+        }
+        assertNull(sent.poll());
+    }
+
+    private RecordingTask submit(CallScheduler scheduler, CallClass callClass, String name) throws ApiException {
+        RecordingTask task = new RecordingTask(name);
+        scheduler.submit(request(callClass), task);
+        return task;
+    }
+
+    private RecordingTask next() throws InterruptedException {
+        RecordingTask task = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(task, "no call sent");
+        return task;
+    }
+
+    private static void awaitInFlight(CallScheduler scheduler, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.getInFlight() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, scheduler.getInFlight());
+    }
+
+    private static Request request(CallClass callClass) {
+        return new Request.Builder().url("http://localhost/v2/cost").tag(CallClass.class, callClass).build();
+    }
+
+    private class RecordingTask implements CallScheduler.Task {
+        final String name;
+        volatile Thread thread;
+        volatile Runnable release;
+        volatile ApiException failure;
+
+        RecordingTask(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void send(Runnable release) {
+            this.thread = Thread.currentThread();
+            this.release = release;
+            sent.add(this);
+        }
+
+        @Override
+        public void fail(ApiException e) {
+            failure = e;
+        }
+
+        void complete() {
+            release.run();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.openapitools.client.snapshot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.client.aggregation.AllocationMetric;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostAggregate;
+import org.openapitools.client.query.CostQuery;
+
+/**
+ * Writes ranges with {@link SnapshotWriter} and checks that {@link SnapshotReader} gives them back
+ * unchanged.
+ */
+public class SnapshotRoundTripTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void fileRoundTrip() throws IOException {
+        AllocationSetRange range = range(new Random(1), 500);
+        Path file = folder.resolve("cost.snapshot");
+        CostQuery query = CostQuery.builder("7d").step("1d").aggregate(CostAggregate.NAMESPACE).build();
+        SnapshotWriter.write(range, query, file);
+        SnapshotReader reader = SnapshotReader.open(file);
+        assertEquals(range, reader.toRange());
+        assertEquals("7d", reader.getMetadata().get("window"));
+        assertEquals("namespace", reader.getMetadata().get("aggregate"));
+        assertEquals(range.getData().size(), reader.getWindowCount());
+    }
+
+    @Test
+    public void nullWindowsEntriesAndProperties() {
+        List<Map<String, Allocation>> data = new ArrayList<Map<String, Allocation>>();
+        data.add(null);
+        Map<String, Allocation> window = new LinkedHashMap<String, Allocation>();
+        window.put("null-entry", null);
+        window.put("no-properties", new Allocation().name("no-properties").cost(1.5f));
+        window.put("no-labels", new Allocation().name("no-labels").properties(new AllocationProperties().namespace("default")));
+        window.put("empty-labels", new Allocation().name("empty-labels")
+            .properties(new AllocationProperties().labels(new HashMap<String, String>())));
+        window.put("", new Allocation());
+        data.add(window);
+        data.add(new LinkedHashMap<String, Allocation>());
+        data.add(null);
+        AllocationSetRange range = new AllocationSetRange().data(data);
+
+        SnapshotReader reader = roundTrip(range);
+        assertEquals(range, reader.toRange());
+        assertEquals(4, reader.getWindowCount());
+        assertTrue(reader.isNullWindow(0));
+        assertFalse(reader.isNullWindow(2));
+        assertTrue(reader.isNullWindow(3));
+        assertEquals(reader.windowStart(2), reader.windowEnd(2));
+        assertTrue(reader.isNull(reader.windowStart(1)));
+        assertNull(reader.allocation(reader.windowStart(1)));
+    }
+
+    @Test
+    public void nullAndEmptyData() {
+        AllocationSetRange nullData = new AllocationSetRange();
+        nullData.setData(null);
+        SnapshotReader reader = roundTrip(nullData);
+        assertTrue(reader.isNullData());
+        assertEquals(nullData, reader.toRange());
+
+        AllocationSetRange empty = new AllocationSetRange().data(new ArrayList<Map<String, Allocation>>());
+        reader = roundTrip(empty);
+        assertFalse(reader.isNullData());
+        assertEquals(0, reader.getRowCount());
+        assertEquals(empty, reader.toRange());
+    }
+
+    @Test
+    public void allNullAndConstantColumns() {
+        List<Map<String, Allocation>> data = new ArrayList<Map<String, Allocation>>();
+        Map<String, Allocation> window = new LinkedHashMap<String, Allocation>();
+        for (int i = 0; i < 1000; i++) {
+            // every metric but cost is null, cost and namespace are the same in every row
+            window.put("pod-" + i, new Allocation().name("pod-" + i).cost(2f)
+                .properties(new AllocationProperties().namespace("default")));
+        }
+        data.add(window);
+        AllocationSetRange range = new AllocationSetRange().data(data);
+
+        SnapshotReader reader = roundTrip(range);
+        assertEquals(range, reader.toRange());
+        assertTrue(Float.isNaN(reader.metric(AllocationMetric.CUSTOM_COST, 0)));
+        assertEquals(2000, reader.sum(AllocationMetric.COST), 1e-9);
+        assertEquals(Collections.singletonMap("default", 2000.0), reader.sumBy(AllocationMetric.COST, CostAggregate.NAMESPACE));
+    }
+
+    @Test
+    public void extremeValuesNeedFullWidth() {
+        List<Map<String, Allocation>> data = new ArrayList<Map<String, Allocation>>();
+        Map<String, Allocation> window = new LinkedHashMap<String, Allocation>();
+        // timestamps across the whole range of OffsetDateTime spread the seconds column over 64 bits
+        window.put("min", new Allocation().name("min")
+            .start(OffsetDateTime.of(-999999, 1, 1, 0, 0, 0, 0, ZoneOffset.MAX))
+            .end(OffsetDateTime.of(-999999, 1, 1, 0, 0, 0, 1, ZoneOffset.MIN))
+            .cost(-Float.MAX_VALUE).costRatio(Float.NEGATIVE_INFINITY).customCost(-0f)
+            .cpuCoreRequestAverage(Float.MIN_VALUE));
+        window.put("max", new Allocation().name("max")
+            .start(OffsetDateTime.of(999999, 12, 31, 23, 59, 59, 999999999, ZoneOffset.MIN))
+            .end(OffsetDateTime.of(999999, 12, 31, 23, 59, 59, 999999999, ZoneOffset.MAX))
+            .cost(Float.MAX_VALUE).costRatio(Float.POSITIVE_INFINITY).customCost(0f)
+            .cpuCoreRequestAverage(Float.NaN));
+        data.add(window);
+        AllocationSetRange range = new AllocationSetRange().data(data);
+
+        SnapshotReader reader = roundTrip(range);
+        for (int row = 0; row < 2; row++) {
+            Allocation expected = window.get(reader.key(row));
+            Allocation actual = reader.allocation(row);
+            assertEquals(expected.getStart(), actual.getStart());
+            assertEquals(expected.getEnd(), actual.getEnd());
+            assertEquals(Float.floatToRawIntBits(expected.getCost()), Float.floatToRawIntBits(actual.getCost()));
+            assertEquals(Float.floatToRawIntBits(expected.getCustomCost()), Float.floatToRawIntBits(actual.getCustomCost()));
+            assertEquals(expected.getCostRatio(), actual.getCostRatio());
+            assertEquals(expected.getCpuCoreRequestAverage(), actual.getCpuCoreRequestAverage());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() {
+        final ByteBuffer bytes = ByteBuffer.wrap("not a snapshot at all".getBytes());
+        assertThrows(IllegalArgumentException.class, () -> SnapshotReader.read(bytes));
+    }
+
+    @Test
+    public void fileIsReplaced() throws IOException {
+        Path file = folder.resolve("replaced.snapshot");
+        Files.write(file, new byte[] {1, 2, 3});
+        AllocationSetRange range = range(new Random(2), 10);
+        SnapshotWriter.write(range, Collections.<String, String>emptyMap(), file);
+        assertEquals(range, SnapshotReader.open(file).toRange());
+    }
+
+    private static SnapshotReader roundTrip(AllocationSetRange range) {
+        Map<String, String> metadata = Collections.singletonMap("source", "test");
+        SnapshotReader reader = SnapshotReader.read(ByteBuffer.wrap(SnapshotWriter.encode(range, metadata)));
+        assertEquals(metadata, reader.getMetadata());
+        return reader;
+    }
+
+    private static AllocationSetRange range(Random random, int entries) {
+        String[] namespaces = {"default", "kube-system", "batch", "ümlaut-ns"};
+        List<Map<String, Allocation>> data = new ArrayList<Map<String, Allocation>>();
+        OffsetDateTime day = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.ofHours(2));
+        for (int w = 0; w < 3; w++) {
+            Map<String, Allocation> window = new LinkedHashMap<String, Allocation>();
+            for (int i = 0; i < entries; i++) {
+                Map<String, String> labels = new HashMap<String, String>();
+                labels.put("team", "t" + random.nextInt(5));
+                if (random.nextBoolean()) {
+                    labels.put("env", "prod");
+                }
+                OffsetDateTime start = day.plusDays(w).plusNanos(random.nextInt(1000000) * 1000L);
+                window.put("pod-" + i, new Allocation()
+                    .name("pod-" + i)
+                    .start(start)
+                    .end(start.plusHours(24))
+                    .cost(random.nextFloat() * 100)
+                    .costRatio(random.nextFloat())
+                    .cpuCoreRequestAverage(random.nextInt(4) * 0.25f)
+                    .cpuCoreUsageAverage(random.nextFloat())
+                    .ramByteRequestAverage((float) (1L << (20 + random.nextInt(16))))
+                    .ramByteUsageAverage(random.nextFloat() * 1e10f)
+                    .properties(new AllocationProperties()
+                        .cluster("cluster-one")
+                        .node("node-" + random.nextInt(8))
+                        .namespace(namespaces[random.nextInt(namespaces.length)])
+                        .controllerKind("deployment")
+                        .controller("app-" + random.nextInt(20))
+                        .pod("pod-" + i)
+                        .labels(labels)));
+            }
+            data.add(window);
+        }
+        return new AllocationSetRange().data(data);
+    }
+}
@@ -0,0 +1,155 @@
+package org.openapitools.client.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.client.aggregation.AllocationMetric;
+import org.openapitools.client.model.Allocation;
+import org.openapitools.client.model.AllocationProperties;
+import org.openapitools.client.model.AllocationSetRange;
+import org.openapitools.client.query.CostAggregate;
+import org.openapitools.client.stream.AllocationSetRangeCollector;
+
+/**
+ * Appends daily windows to a {@link SegmentStore} and checks that queries, reopened or not, give back
+ * exactly the windows starting in their time range.
+ */
+public class SegmentStoreTest {
+
+    private static final OffsetDateTime DAY0 = OffsetDateTime.of(2025, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void queriesRoundTripAcrossReopen() throws IOException {
+        AllocationSetRange days = days(new Random(1), 0, 10, 200);
+        SegmentStore store = SegmentStore.open(folder, Duration.ofDays(1));
+        assertEquals(10, store.append(days));
+
+        // the first five days, from a store opened anew
+        SegmentStore reopened = SegmentStore.open(folder, Duration.ofDays(1));
+        AllocationSetRange firstFive = reopened.query(DAY0, DAY0.plusDays(5));
+        assertEquals(days.getData().subList(0, 5), firstFive.getData());
+
+        // bounds at second resolution: a window starting exactly at the end is excluded
+        assertEquals(days.getData().subList(3, 4), reopened.query(DAY0.plusDays(3), DAY0.plusDays(3).plusSeconds(1)).getData());
+        assertEquals(days.getData().subList(2, 3), reopened.query(DAY0.plusDays(2).minusHours(1), DAY0.plusDays(3)).getData());
+        assertEquals(days.getData(), reopened.query(DAY0.minusYears(1), DAY0.plusYears(1)).getData());
+        assertTrue(reopened.query(DAY0.plusDays(20), DAY0.plusDays(30)).getData().isEmpty());
+    }
+
+    @Test
+    public void onlyTouchedPartitionsAreRead() throws IOException {
+        SegmentStore store = SegmentStore.open(folder, Duration.ofDays(1));
+        store.append(days(new Random(2), 0, 4, 10));
+        store.append(days(new Random(3), 4, 8, 10));
+        assertEquals(2, store.segments(DAY0.plusDays(1), DAY0.plusDays(3)).size());
+        assertEquals(8, store.segments(DAY0, DAY0.plusDays(8)).size());
+        assertTrue(store.segments(DAY0.plusDays(3), DAY0.plusDays(3)).isEmpty());
+    }
+
+    @Test
+    public void sumsMatchTheAppendedData() throws IOException {
+        AllocationSetRange days = days(new Random(4), 0, 6, 300);
+        SegmentStore store = SegmentStore.open(folder, Duration.ofDays(2));
+        store.append(days);
+
+        double total = 0;
+        Map<String, Double> byNamespace = new LinkedHashMap<String, Double>();
+        for (Map<String, Allocation> window : days.getData().subList(1, 5)) {
+            for (Allocation allocation : window.values()) {
+                total += allocation.getCost();
+                String namespace = allocation.getProperties().getNamespace();
+                Double sum = byNamespace.get(namespace);
+                byNamespace.put(namespace, (sum == null ? 0 : sum) + allocation.getCost());
+            }
+        }
+        OffsetDateTime from = DAY0.plusDays(1);
+        OffsetDateTime to = DAY0.plusDays(5);
+        assertEquals(total, store.sum(from, to, AllocationMetric.COST), 1e-6 * total);
+        Map<String, Double> sums = store.sumBy(from, to, AllocationMetric.COST, CostAggregate.NAMESPACE);
+        assertEquals(byNamespace.keySet(), sums.keySet());
+        for (Map.Entry<String, Double> e : byNamespace.entrySet()) {
+            assertEquals(e.getValue(), sums.get(e.getKey()), 1e-6 * e.getValue());
+        }
+    }
+
+    @Test
+    public void scanByKey() throws IOException {
+        AllocationSetRange days = days(new Random(5), 0, 3, 50);
+        SegmentStore store = SegmentStore.open(folder, Duration.ofDays(1));
+        store.append(days);
+        AllocationSetRangeCollector collector = new AllocationSetRangeCollector();
+        store.scan(DAY0, DAY0.plusDays(3), "pod-7", collector);
+        List<Map<String, Allocation>> windows = collector.getRange().getData();
+        assertEquals(3, windows.size());
+        for (int w = 0; w < 3; w++) {
+            assertEquals(1, windows.get(w).size());
+            assertEquals(days.getData().get(w).get("pod-7"), windows.get(w).get("pod-7"));
+        }
+    }
+
+    @Test
+    public void untimedWindowsAreNotStoredAndAppendsAreNotDeduplicated() throws IOException {
+        List<Map<String, Allocation>> data = new ArrayList<Map<String, Allocation>>(days(new Random(6), 0, 1, 5).getData());
+        Map<String, Allocation> untimed = new LinkedHashMap<String, Allocation>();
+        untimed.put("x", new Allocation().name("x").cost(1f));
+        data.add(untimed);
+        data.add(null);
+        AllocationSetRange range = new AllocationSetRange().data(data);
+
+        SegmentStore store = SegmentStore.open(folder, Duration.ofDays(1));
+        assertEquals(1, store.append(range));
+        assertEquals(1, store.append(range));
+        List<Map<String, Allocation>> windows = store.query(DAY0, DAY0.plusDays(1)).getData();
+        assertEquals(2, windows.size());
+        assertEquals(windows.get(0), windows.get(1));
+    }
+
+    @Test
+    public void rejectsAnotherPartitionLength() throws IOException {
+        SegmentStore.open(folder, Duration.ofDays(1));
+        assertThrows(IOException.class, () -> SegmentStore.open(folder, Duration.ofHours(1)));
+        assertThrows(IllegalArgumentException.class, () -> SegmentStore.open(folder.resolve("other"), Duration.ofMillis(1500)));
+    }
+
+    /**
+     * Create one window per day, each entry starting at the start of its day.
+     */
+    private static AllocationSetRange days(Random random, int from, int to, int entries) {
+        String[] namespaces = {"default", "kube-system", "batch"};
+        List<Map<String, Allocation>> data = new ArrayList<Map<String, Allocation>>();
+        for (int day = from; day < to; day++) {
+            OffsetDateTime start = DAY0.plusDays(day);
+            Map<String, Allocation> window = new LinkedHashMap<String, Allocation>();
+            for (int i = 0; i < entries; i++) {
+                window.put("pod-" + i, new Allocation()
+                    .name("pod-" + i)
+                    .start(start)
+                    .end(start.plusDays(1))
+                    .cost(random.nextFloat() * 10)
+                    .cpuCoreUsageAverage(random.nextFloat())
+                    .properties(new AllocationProperties()
+                        .namespace(namespaces[random.nextInt(namespaces.length)])
+                        .pod("pod-" + i)));
+            }
+            data.add(window);
+        }
+        return new AllocationSetRange().data(data);
+    }
+}